@@ -21,18 +21,25 @@ package com.yahoo.ycsb.db.accumulo;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.BatchWriter;
 import org.apache.accumulo.core.client.BatchWriterConfig;
 import org.apache.accumulo.core.client.Connector;
@@ -51,23 +58,51 @@ import org.apache.accumulo.core.iterators.user.WholeRowIterator;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.util.CleanUp;
 import org.apache.hadoop.io.Text;
+import org.json.JSONObject;
 
 import com.yahoo.ycsb.ByteArrayByteIterator;
 import com.yahoo.ycsb.ByteIterator;
 import com.yahoo.ycsb.GeoDB;
+import com.yahoo.ycsb.GeoFanOut;
+import com.yahoo.ycsb.GeoPhase;
+import com.yahoo.ycsb.GeoResultSink;
+import com.yahoo.ycsb.GeoResults;
 import com.yahoo.ycsb.DBException;
 import com.yahoo.ycsb.Status;
+import com.yahoo.ycsb.generator.geo.GeoRandom;
+import com.yahoo.ycsb.generator.geo.ParameterGenerator;
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
 
 /**
  * <a href="https://accumulo.apache.org/">Accumulo</a> binding for YCSB.
+ *
+ * Geo documents are stored one row per document with one column per top level field, under the Z-order row keys of
+ * {@link GeoKeys}. Geo queries scan the key ranges of their window with a {@link BatchScanner} and leave the exact
+ * geometry test to {@link GeoFilterIterator} on the tablet servers. An OBJECTID index in the same table serves the
+ * geo scans and updates.
  */
 public class AccumuloClient extends GeoDB {
 
+  /** Field holding the GeoJSON geometry of the geo documents. */
+  private static final String GEOMETRY_FIELD = "geometry";
+
+  private static final int GEO_FILTER_PRIORITY = 100;
+
+  private static final GeoPhase CASE3_DENSITY = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "density");
+  private static final GeoPhase CASE3_SORT = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "sort");
+  private static final GeoPhase CASE3_GRAFFITI = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "graffiti");
+  private static final GeoPhase CASE4_SELECT = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "select");
+  private static final GeoPhase CASE4_DELETE = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "delete");
+
   private ZooKeeperInstance inst;
   private Connector connector;
   private Text colFam = new Text("");
   private byte[] colFamBytes = new byte[0];
   private final ConcurrentHashMap<String, BatchWriter> writers = new ConcurrentHashMap<>();
+  private int geoMaxCells;
+  private int geoScanThreads;
 
   static {
     Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -82,6 +117,8 @@ public class AccumuloClient extends GeoDB {
   public void init() throws DBException {
     colFam = new Text(getProperties().getProperty("accumulo.columnFamily"));
     colFamBytes = colFam.toString().getBytes(UTF_8);
+    geoMaxCells = Integer.parseInt(getProperties().getProperty("accumulo.geo.maxCells", "16"));
+    geoScanThreads = Integer.parseInt(getProperties().getProperty("accumulo.geo.scanThreads", "4"));
 
     inst = new ZooKeeperInstance(
         getProperties().getProperty("accumulo.instanceName"),
@@ -368,4 +405,544 @@ public class AccumuloClient extends GeoDB {
 
     bw.addMutation(deleter);
   }
+
+   /*
+       ================    GEO operations  ======================
+   */
+
+  /**
+   * Load ALL DOCS of the three tables into the calling thread's current grid cell and move on to the next cell. The
+   * seeds are the documents the generator holds under their OBJECTID.
+   */
+  @Override
+  public Status geoLoad(String table1, String table2, String table3, ParameterGenerator generator,
+      Double recordCount) {
+    try {
+      for (String table : new String[] {table1, table2, table3}) {
+        Map<Integer, String> seeds = generator.getSeedDocuments(table);
+        if (seeds.isEmpty()) {
+          System.err.println("No seed documents found for " + table);
+          return Status.ERROR;
+        }
+        boolean schools = table.equals(ParameterGenerator.GEO_DOCUMENT_PREFIX_SCHOOLS);
+        int keyOffset = generator.getTotalDocsCount(table) * generator.getSynthesisCell();
+        for (Map.Entry<Integer, String> seed : seeds.entrySet()) {
+          String id = UUID.randomUUID().toString();
+          String newDocBody = generator.synthesizeDocument(table, seed.getValue(), id);
+          writeGeoDocument(table, new JSONObject(newDocBody), id);
+
+          // If schools table, also add synthesized doc to memcached
+          if (schools) {
+            generator.putDocument(table, (seed.getKey() + keyOffset) + "", newDocBody);
+          }
+        }
+        generator.advanceInsertCounter(table, seeds.size());
+      }
+      generator.incrementSynthesisOffset();
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Error loading geo documents");
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status geoInsert(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    try {
+      writeGeoDocument(table, new JSONObject(gen.getGeoPredicate().getValue()), UUID.randomUUID().toString());
+    } catch (Exception e) {
+      System.err.println("Error performing geo insert.");
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+    return Status.BATCHED_OK;
+  }
+
+  @Override
+  public Status geoInsert(String table, String value, ParameterGenerator gen) {
+    try {
+      JSONObject doc = new JSONObject(value);
+      JSONObject id = doc.optJSONObject("_id");
+      writeGeoDocument(table, doc, id != null && id.has("$oid") ? id.getString("$oid") : UUID.randomUUID().toString());
+    } catch (Exception e) {
+      System.err.println("Error performing geo insert.");
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+    return Status.BATCHED_OK;
+  }
+
+  /**
+   * Write a geo document and its OBJECTID index entry through the table's batch writer.
+   */
+  private void writeGeoDocument(String table, JSONObject doc, String id)
+      throws TableNotFoundException, MutationsRejectedException {
+    Geometry geometry = Geometry.fromJSON(doc.getJSONObject(GEOMETRY_FIELD));
+    String row = GeoKeys.row(GeoShapes.bounds(geometry), id);
+    Mutation mutInsert = new Mutation(row.getBytes(UTF_8));
+    for (String name : JSONObject.getNames(doc)) {
+      Object value = doc.get(name);
+      mutInsert.put(colFamBytes, name.getBytes(UTF_8), value.toString().getBytes(UTF_8));
+    }
+    BatchWriter bw = getWriter(table);
+    bw.addMutation(mutInsert);
+
+    Object objectId = objectId(doc);
+    if (objectId != null) {
+      Mutation index = new Mutation(GeoKeys.indexRow(objectId).getBytes(UTF_8));
+      index.put(colFamBytes, row.getBytes(UTF_8), new byte[0]);
+      bw.addMutation(index);
+    }
+  }
+
+  private static Object objectId(JSONObject doc) {
+    JSONObject properties = doc.optJSONObject("properties");
+    return properties == null ? null : properties.opt("OBJECTID");
+  }
+
+  /**
+   * Move the documents of a random OBJECTID to the predicate's point. The row key follows the geometry, so every
+   * document is rewritten under its new row and the old row is deleted.
+   */
+  @Override
+  public Status geoUpdate(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    int key = GeoRandom.current().nextInt(Integer.parseInt(GeoWorkload.DOCS_START_VALUE),
+        Integer.parseInt(GeoWorkload.TOTAL_DOCS_DEFAULT) + 1);
+    String updateFieldName = gen.getGeoPredicate().getNestedPredicateA().getName();
+    Geometry refPoint = gen.getGeoPredicate().getNestedPredicateA().getGeometry();
+    try {
+      List<GeoRow> rows = getIndexedRows(table, new Range(new Text(GeoKeys.indexRow(key))), Integer.MAX_VALUE,
+          GeoResults.current());
+      if (rows.isEmpty()) {
+        System.err.println("Nothing updated for key " + key);
+        return Status.NOT_FOUND;
+      }
+      BatchWriter bw = getWriter(table);
+      Text indexRow = new Text(GeoKeys.indexRow(key));
+      for (GeoRow old : rows) {
+        String newRow = GeoKeys.row(GeoShapes.bounds(refPoint), old.getId());
+        Mutation moved = new Mutation(new Text(newRow));
+        for (Map.Entry<String, byte[]> column : old.columns.entrySet()) {
+          byte[] value = column.getKey().equals(updateFieldName)
+              ? refPoint.toString().getBytes(UTF_8) : column.getValue();
+          moved.put(colFamBytes, column.getKey().getBytes(UTF_8), value);
+        }
+        Mutation index = new Mutation(indexRow);
+        index.put(colFam, new Text(newRow), new Value(new byte[0]));
+        if (!newRow.equals(old.row)) {
+          bw.addMutation(old.deleter(colFamBytes));
+          index.putDelete(colFam, new Text(old.row));
+        }
+        bw.addMutation(moved);
+        bw.addMutation(index);
+      }
+    } catch (Exception e) {
+      System.err.println("Error performing geo update.");
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+    return Status.BATCHED_OK;
+  }
+
+  @Override
+  public Status geoNear(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    DataFilter predicate = gen.getGeoPredicate().getNestedPredicateA();
+    try {
+      GeoRow nearest = nearest(table, predicate.getName(), predicate.getGeometry(), predicate.getDistance(),
+          GeoResults.current());
+      if (nearest == null) {
+        return Status.NOT_FOUND;
+      }
+      nearest.fill(result);
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Error performing geo near.");
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status geoBox(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    String boxFieldName1 = gen.getGeoPredicate().getNestedPredicateA().getName();
+    Geometry corner1 = gen.getGeoPredicate().getNestedPredicateA().getGeometry();
+    Geometry corner2 = gen.getGeoPredicate().getNestedPredicateB().getGeometry();
+    double[] box = {
+        Math.min(corner1.getX(0, 0), corner2.getX(0, 0)), Math.min(corner1.getY(0, 0), corner2.getY(0, 0)),
+        Math.max(corner1.getX(0, 0), corner2.getX(0, 0)), Math.max(corner1.getY(0, 0), corner2.getY(0, 0))};
+    return geoFirst(table, box, GeoFilterIterator.within(GEO_FILTER_PRIORITY, boxFieldName1, box), result);
+  }
+
+  @Override
+  public Status geoIntersect(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    String fieldName1 = gen.getGeoPredicate().getNestedPredicateA().getName();
+    Geometry geometry = gen.getGeoPredicate().getNestedPredicateC().getGeometry();
+    return geoFirst(table, GeoShapes.bounds(geometry),
+        GeoFilterIterator.intersects(GEO_FILTER_PRIORITY, fieldName1, geometry), result);
+  }
+
+  private Status geoFirst(String table, double[] window, IteratorSetting filter,
+      HashMap<String, ByteIterator> result) {
+    try {
+      List<GeoRow> rows = geoFind(table, window, filter, 1, GeoResults.current());
+      if (rows.isEmpty()) {
+        return Status.NOT_FOUND;
+      }
+      rows.get(0).fill(result);
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Error performing geo query on Accumulo table " + table);
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * Read the documents in OBJECTID order, starting at a random OBJECTID.
+   */
+  @Override
+  public Status geoScan(String table, Vector<HashMap<String, ByteIterator>> result, ParameterGenerator gen) {
+    String startkey = gen.getIncidentIdWithDistribution();
+    int recordcount = gen.getRandomLimit();
+    try {
+      List<GeoRow> rows = getIndexedRows(table, new Range(new Text(GeoKeys.indexRow(startkey)), null), recordcount,
+          GeoResults.current());
+      if (rows.isEmpty()) {
+        System.err.println("Nothing found in scan for key " + startkey);
+        return Status.ERROR;
+      }
+      result.ensureCapacity(rows.size());
+      for (GeoRow row : rows) {
+        HashMap<String, ByteIterator> rowData = new HashMap<>();
+        row.fill(rowData);
+        result.add(rowData);
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Error performing geo scan on Accumulo table " + table);
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status geoUseCase1(String table, HashMap<String, Vector<HashMap<String, ByteIterator>>> result,
+      ParameterGenerator gen) {
+    try {
+      Vector<HashMap<String, ByteIterator>> graffiti = new Vector<>();
+      for (GeoRow row : graffitiBySchools(table, gen)) {
+        HashMap<String, ByteIterator> rowData = new HashMap<>();
+        row.fill(rowData);
+        graffiti.add(rowData);
+      }
+      result.put("", graffiti);
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * @return the graffiti nearest to every school within 500 meters
+   */
+  private List<GeoRow> graffitiBySchools(final String table, ParameterGenerator gen) throws Exception {
+    final GeoResults results = GeoResults.current();
+    List<Callable<GeoRow>> queries = new ArrayList<>();
+    for (final DataFilter school : gen.getGeometryPredicatesList()) {
+      queries.add(new Callable<GeoRow>() {
+        @Override
+        public GeoRow call() throws Exception {
+          DataFilter predicate = school.getNestedPredicateA();
+          return nearest(table, predicate.getName(), predicate.getGeometry(), 500.0, results);
+        }
+      });
+    }
+    List<GeoRow> found = new ArrayList<>();
+    for (GeoRow row : GeoFanOut.getShared(getProperties()).invokeAll(queries, "GEO_CASE_GRAFFITI_BY_SCHOOLS_QUERY")) {
+      if (row != null) {
+        found.add(row);
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public Status geoUseCase2(final String table, HashMap<String, Vector<HashMap<String, ByteIterator>>> result,
+      ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      final GeoResults results = GeoResults.current();
+      ArrayList<DataFilter> neighborhoods = gen.getGeometryPredicatesList();
+      List<Callable<List<GeoRow>>> queries = new ArrayList<>(neighborhoods.size());
+      for (final DataFilter cell : neighborhoods) {
+        queries.add(new Callable<List<GeoRow>>() {
+          @Override
+          public List<GeoRow> call() throws Exception {
+            return geoFind(table, GeoShapes.bounds(cell.getGeometry()),
+                GeoFilterIterator.intersects(GEO_FILTER_PRIORITY, GEOMETRY_FIELD, cell.getGeometry()), 1, results);
+          }
+        });
+      }
+      List<List<GeoRow>> cellResults = GeoFanOut.getShared(getProperties())
+          .invokeAll(queries, "GEO_CASE_GRAFFITI_BY_DENSITY_QUERY");
+      for (int i = 0; i < neighborhoods.size(); i++) {
+        Geometry intersectFieldValue = neighborhoods.get(i).getGeometry();
+        Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
+        for (GeoRow row : cellResults.get(i)) {
+          HashMap<String, ByteIterator> rowData = new HashMap<>();
+          row.fill(rowData);
+          graffitiResults.add(rowData);
+        }
+        result.put(intersectFieldValue.toString(), graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_DENSITY/count", intersectFieldValue, graffitiResults.size());
+        }
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status geoUseCase3(final String table1, String table2,
+      HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      // Get density of BUILDINGS in grid cells (sum of areas)
+      final String shapeArea = gen.getBuildingsShapeArea();
+      final ArrayList<DataFilter> cells = gen.getGeometryPredicatesList();
+      final GeoResults results = GeoResults.current();
+      List<Callable<Double>> queries = new ArrayList<>(cells.size());
+      for (final DataFilter cell : cells) {
+        queries.add(new Callable<Double>() {
+          @Override
+          public Double call() throws Exception {
+            double density = 0;
+            for (GeoRow building : geoFind(table1, GeoShapes.bounds(cell.getGeometry()),
+                GeoFilterIterator.intersects(GEO_FILTER_PRIORITY, cell.getName(), cell.getGeometry()),
+                Integer.MAX_VALUE, results)) {
+              byte[] properties = building.columns.get("properties");
+              if (properties != null) {
+                density += new JSONObject(new String(properties, UTF_8)).optDouble(shapeArea, 0);
+              }
+            }
+            return density;
+          }
+        });
+      }
+      long phaseStart = CASE3_DENSITY.start();
+      final List<Double> densities = GeoFanOut.getShared(getProperties())
+          .invokeAll(queries, "GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC_QUERY");
+      CASE3_DENSITY.end(phaseStart);
+
+      // Sort cells by density in descending order --> take the top HIGH_TRAFFIC_CELL_COUNT
+      phaseStart = CASE3_SORT.start();
+      List<Integer> order = new ArrayList<>(cells.size());
+      for (int i = 0; i < cells.size(); i++) {
+        order.add(i);
+        if (densities.get(i) > 0) {
+          if (sink.isSampled()) {
+            sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/density", cells.get(i).getGeometry(), densities.get(i));
+          }
+        }
+      }
+      Collections.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return densities.get(o2).compareTo(densities.get(o1));
+        }
+      });
+      CASE3_SORT.end(phaseStart);
+
+      // Find graffiti in the top HIGH_TRAFFIC_CELL_COUNT cells
+      phaseStart = CASE3_GRAFFITI.start();
+      for (int i = 0; i < GeoWorkload.TOP_CELL_COUNT && i < order.size(); i++) {
+        Geometry intersectFieldValue = cells.get(order.get(i)).getGeometry();
+        Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
+        for (GeoRow row : geoFind(table2, GeoShapes.bounds(intersectFieldValue),
+            GeoFilterIterator.intersects(GEO_FILTER_PRIORITY, GEOMETRY_FIELD, intersectFieldValue), 1, results)) {
+          HashMap<String, ByteIterator> rowData = new HashMap<>();
+          row.fill(rowData);
+          graffitiResults.add(rowData);
+        }
+        result.put(intersectFieldValue.toString(), graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/graffiti", intersectFieldValue, graffitiResults.size());
+        }
+      }
+      CASE3_GRAFFITI.end(phaseStart);
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  @Override
+  public Status geoUseCase4(String table, String operation, Set<Integer> deleted, ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      // Based on the operation, clean all the graffiti resulting from that search
+      long phaseStart = CASE4_SELECT.start();
+      List<GeoRow> toDelete;
+      switch (operation) {
+      case "geo_case_graffiti_by_schools":
+        toDelete = graffitiBySchools(table, gen);
+        break;
+      default:
+        return Status.ERROR;
+      }
+      CASE4_SELECT.end(phaseStart);
+
+      phaseStart = CASE4_DELETE.start();
+      BatchWriter bw = getWriter(table);
+      for (GeoRow row : toDelete) {
+        bw.addMutation(row.deleter(colFamBytes));
+        byte[] properties = row.columns.get("properties");
+        Object objectId = properties == null ? null : new JSONObject(new String(properties, UTF_8)).opt("OBJECTID");
+        if (objectId != null) {
+          Mutation index = new Mutation(new Text(GeoKeys.indexRow(objectId)));
+          index.putDelete(colFam, new Text(row.row));
+          bw.addMutation(index);
+        }
+      }
+      CASE4_DELETE.end(phaseStart);
+      if (sink.isSampled()) {
+        sink.log("GEO_CASE_CLEAN_GRAFFITI/delete", null, toDelete.size());
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * @return the document whose geometry field is closest to the point within meters, null if there is none
+   */
+  private GeoRow nearest(String table, String field, Geometry point, double meters, GeoResults results)
+      throws TableNotFoundException, IOException {
+    double x = point.getX(0, 0);
+    double y = point.getY(0, 0);
+    GeoRow nearest = null;
+    double nearestDistance = Double.MAX_VALUE;
+    for (GeoRow row : geoFind(table, GeoShapes.around(x, y, meters),
+        GeoFilterIterator.near(GEO_FILTER_PRIORITY, field, point, meters), Integer.MAX_VALUE, results)) {
+      byte[] value = row.columns.get(field);
+      Geometry geometry = value == null ? null : GeoFilterIterator.parse(value);
+      double distance = geometry == null ? Double.MAX_VALUE : GeoShapes.distance(geometry, x, y);
+      if (nearest == null || distance < nearestDistance) {
+        nearest = row;
+        nearestDistance = distance;
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Scan the Z-order ranges of a window through the exact geometry filter.
+   * @param limit most documents to return
+   * @param results the results of the operation every returned document is reported to
+   */
+  private List<GeoRow> geoFind(String table, double[] window, IteratorSetting filter, int limit,
+      GeoResults results) throws TableNotFoundException, IOException {
+    BatchScanner scanner = connector.createBatchScanner(table, Authorizations.EMPTY, geoScanThreads);
+    try {
+      scanner.setRanges(GeoKeys.ranges(window, geoMaxCells));
+      scanner.addScanIterator(filter);
+      List<GeoRow> rows = new ArrayList<>();
+      for (Entry<Key, Value> entry : scanner) {
+        results.row(entry.getKey().getSize() + entry.getValue().getSize());
+        rows.add(new GeoRow(entry));
+        if (rows.size() >= limit) {
+          break;
+        }
+      }
+      return rows;
+    } finally {
+      scanner.close();
+    }
+  }
+
+  /**
+   * Read the documents of the OBJECTID index entries in a range of index rows.
+   * @param limit most documents to return
+   * @param results the results of the operation every returned document is reported to
+   */
+  private List<GeoRow> getIndexedRows(String table, Range indexRange, int limit, GeoResults results)
+      throws TableNotFoundException, IOException {
+    List<Range> rows = new ArrayList<>();
+    Scanner index = connector.createScanner(table, Authorizations.EMPTY);
+    try {
+      index.setRange(indexRange);
+      final Text cq = new Text();
+      for (Entry<Key, Value> entry : index) {
+        rows.add(new Range(new Text(entry.getKey().getColumnQualifier(cq))));
+        if (rows.size() >= limit) {
+          break;
+        }
+      }
+    } finally {
+      index.close();
+    }
+    List<GeoRow> found = new ArrayList<>(rows.size());
+    if (rows.isEmpty()) {
+      return found;
+    }
+    BatchScanner scanner = connector.createBatchScanner(table, Authorizations.EMPTY, geoScanThreads);
+    try {
+      scanner.setRanges(rows);
+      scanner.addScanIterator(new IteratorSetting(GEO_FILTER_PRIORITY, WholeRowIterator.class));
+      for (Entry<Key, Value> entry : scanner) {
+        results.row(entry.getKey().getSize() + entry.getValue().getSize());
+        found.add(new GeoRow(entry));
+      }
+    } finally {
+      scanner.close();
+    }
+    return found;
+  }
+
+  /**
+   * A geo document read as one whole row entry.
+   */
+  private static final class GeoRow {
+    private final String row;
+    private final Map<String, byte[]> columns = new HashMap<>();
+
+    GeoRow(Entry<Key, Value> entry) throws IOException {
+      row = entry.getKey().getRow().toString();
+      SortedMap<Key, Value> decoded = WholeRowIterator.decodeRow(entry.getKey(), entry.getValue());
+      final Text cq = new Text();
+      for (Entry<Key, Value> column : decoded.entrySet()) {
+        column.getKey().getColumnQualifier(cq);
+        columns.put(cq.toString(), column.getValue().get());
+      }
+    }
+
+    /**
+     * @return the document id at the end of the row
+     */
+    String getId() {
+      return row.substring(row.indexOf(':') + 1);
+    }
+
+    void fill(HashMap<String, ByteIterator> result) {
+      for (Map.Entry<String, byte[]> column : columns.entrySet()) {
+        result.put(column.getKey(), new ByteArrayByteIterator(column.getValue()));
+      }
+    }
+
+    Mutation deleter(byte[] family) {
+      Mutation deleter = new Mutation(new Text(row));
+      for (String qualifier : columns.keySet()) {
+        deleter.putDelete(family, qualifier.getBytes(UTF_8));
+      }
+      return deleter;
+    }
+  }
 }
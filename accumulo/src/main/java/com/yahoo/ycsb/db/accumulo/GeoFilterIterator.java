@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2011 YCSB++ project, 2014-2016 YCSB contributors.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.db.accumulo;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.apache.hadoop.io.Text;
+import org.json.JSONObject;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * Server side exact geometry test for the rows of the Z-order ranges. Like {@link WholeRowIterator} it returns every
+ * row as a single entry, but only rows whose geometry column passes the test:
+ * <ul>
+ * <li>{@code intersects}: the geometry shares a point with the query geometry,</li>
+ * <li>{@code within}: the geometry lies within the query box,</li>
+ * <li>{@code near}: the geometry is at most the given distance from the query point.</li>
+ * </ul>
+ * The tablet servers need this binding, the YCSB core and org.json on their classpath.
+ */
+public class GeoFilterIterator extends WholeRowIterator {
+
+  static final String OPERATION = "operation";
+  static final String FIELD = "field";
+  static final String GEOMETRY = "geometry";
+  static final String BOX = "box";
+  static final String DISTANCE = "distance";
+
+  private SortedKeyValueIterator<Key, Value> source;
+  private Map<String, String> options;
+  private String operation;
+  private Text field;
+  private Geometry geometry;
+  private double[] box;
+  private double distance;
+
+  /**
+   * @return the setting of a filter for rows whose geometry field intersects g
+   */
+  static IteratorSetting intersects(int priority, String field, Geometry g) {
+    IteratorSetting setting = setting(priority, "intersects", field);
+    setting.addOption(GEOMETRY, g.toString());
+    return setting;
+  }
+
+  /**
+   * @return the setting of a filter for rows whose geometry field lies within the box {minX, minY, maxX, maxY}
+   */
+  static IteratorSetting within(int priority, String field, double[] box) {
+    IteratorSetting setting = setting(priority, "within", field);
+    setting.addOption(BOX, box[0] + "," + box[1] + "," + box[2] + "," + box[3]);
+    return setting;
+  }
+
+  /**
+   * @return the setting of a filter for rows whose geometry field is at most meters from the point
+   */
+  static IteratorSetting near(int priority, String field, Geometry point, double meters) {
+    IteratorSetting setting = setting(priority, "near", field);
+    setting.addOption(GEOMETRY, point.toString());
+    setting.addOption(DISTANCE, String.valueOf(meters));
+    return setting;
+  }
+
+  private static IteratorSetting setting(int priority, String operation, String field) {
+    IteratorSetting setting = new IteratorSetting(priority, "geo", GeoFilterIterator.class);
+    setting.addOption(OPERATION, operation);
+    setting.addOption(FIELD, field);
+    return setting;
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key, Value> src, Map<String, String> opts, IteratorEnvironment env)
+      throws IOException {
+    super.init(src, opts, env);
+    source = src;
+    options = new HashMap<String, String>(opts);
+    operation = opts.get(OPERATION);
+    field = new Text(opts.get(FIELD));
+    if (opts.containsKey(GEOMETRY)) {
+      geometry = Geometry.fromJSON(new JSONObject(opts.get(GEOMETRY)));
+    }
+    if (opts.containsKey(BOX)) {
+      String[] corners = opts.get(BOX).split(",");
+      box = new double[corners.length];
+      for (int i = 0; i < corners.length; i++) {
+        box[i] = Double.parseDouble(corners[i]);
+      }
+    }
+    if (opts.containsKey(DISTANCE)) {
+      distance = Double.parseDouble(opts.get(DISTANCE));
+    }
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env) {
+    GeoFilterIterator copy = new GeoFilterIterator();
+    try {
+      copy.init(source.deepCopy(env), options, env);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return copy;
+  }
+
+  @Override
+  protected boolean filter(Text currentRow, List<Key> keys, List<Value> values) {
+    Text cq = new Text();
+    for (int i = 0; i < keys.size(); i++) {
+      if (keys.get(i).getColumnQualifier(cq).equals(field)) {
+        return accept(parse(values.get(i).get()));
+      }
+    }
+    return false;
+  }
+
+  private boolean accept(Geometry g) {
+    if (g == null) {
+      return false;
+    }
+    switch (operation) {
+    case "intersects":
+      return GeoShapes.intersects(g, geometry);
+    case "within":
+      return GeoShapes.within(g, box);
+    case "near":
+      return GeoShapes.distance(g, geometry.getX(0, 0), geometry.getY(0, 0)) <= distance;
+    default:
+      throw new IllegalArgumentException("Unknown geo filter operation " + operation);
+    }
+  }
+
+  /**
+   * @return the geometry of a geometry column, null if it holds none
+   */
+  static Geometry parse(byte[] value) {
+    try {
+      return Geometry.fromJSON(new JSONObject(new String(value, UTF_8)));
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2011 YCSB++ project, 2014-2016 YCSB contributors.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.db.accumulo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.accumulo.core.data.Range;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Z-order row keys for geo documents.
+ *
+ * The world is a quadtree of {@link #MAX_LEVEL} levels. A document is stored in the smallest quadtree cell that holds
+ * its whole bounding box, so points sit at the deepest level and large polygons higher up. Its row is
+ * {@code <level><z>:<id>}: the level as two digits, then the Z-order (Morton) value of the cell's lower left corner at
+ * full resolution as twelve hex digits. The rows of a level are thereby sorted along the Z curve, and the documents
+ * of any cell are one contiguous range of rows per level.
+ *
+ * A query window becomes one range per level for every quadtree cell inside it, plus the exact cells along its
+ * border down to the level where the border cells would exceed the range budget. Below that level the border cells
+ * are scanned whole; the exact geometry test of {@link GeoFilterIterator} drops what they add.
+ */
+final class GeoKeys {
+
+  /** Deepest quadtree level; cells there are about 2 meters wide. */
+  static final int MAX_LEVEL = 24;
+
+  /** Rows of the OBJECTID index; they sort after all geo rows. */
+  static final String INDEX_PREFIX = "~oid:";
+
+  private static final int CELLS = 1 << MAX_LEVEL;
+
+  private GeoKeys() {
+  }
+
+  /**
+   * @param box bounding box {minX, minY, maxX, maxY} of the document geometry
+   * @param id unique id of the document
+   * @return the row of the document
+   */
+  static String row(double[] box, String id) {
+    int x0 = quantizeX(box[0]);
+    int y0 = quantizeY(box[1]);
+    int x1 = quantizeX(box[2]);
+    int y1 = quantizeY(box[3]);
+    // the box fits into one cell of every level down to where its corners first differ
+    int shift = Math.max(32 - Integer.numberOfLeadingZeros(x0 ^ x1), 32 - Integer.numberOfLeadingZeros(y0 ^ y1));
+    int mask = -1 << shift;
+    return prefix(MAX_LEVEL - shift, interleave(x0 & mask, y0 & mask)) + ":" + id;
+  }
+
+  /**
+   * @return the index row of an OBJECTID
+   */
+  static String indexRow(Object objectId) {
+    return INDEX_PREFIX + objectId;
+  }
+
+  /**
+   * The ranges holding every document whose bounding box overlaps the window.
+   * @param box window {minX, minY, maxX, maxY}
+   * @param maxCells most border cells refined per level; more cells give tighter but more ranges
+   */
+  static List<Range> ranges(double[] box, int maxCells) {
+    int x0 = quantizeX(box[0]);
+    int y0 = quantizeY(box[1]);
+    int x1 = quantizeX(box[2]);
+    int y1 = quantizeY(box[3]);
+
+    // spans[level] holds {firstZ, lastZ} pairs of that level
+    List<List<long[]>> spans = new ArrayList<List<long[]>>(MAX_LEVEL + 1);
+    for (int level = 0; level <= MAX_LEVEL; level++) {
+      spans.add(new ArrayList<long[]>());
+    }
+
+    // cells of the current depth that overlap the window without being inside it, as {x, y} at that depth
+    List<int[]> border = new ArrayList<int[]>();
+    border.add(new int[] {0, 0});
+    for (int depth = 0; depth <= MAX_LEVEL && !border.isEmpty(); depth++) {
+      int shift = MAX_LEVEL - depth;
+      List<int[]> next = new ArrayList<int[]>();
+      for (int[] cell : border) {
+        // documents stored at this depth in the cell
+        long z = interleave(cell[0] << shift, cell[1] << shift);
+        spans.get(depth).add(new long[] {z, z});
+        if (depth == MAX_LEVEL) {
+          continue;
+        }
+        for (int child = 0; child < 4; child++) {
+          int cx = cell[0] * 2 + (child & 1);
+          int cy = cell[1] * 2 + (child >> 1);
+          int lowX = cx << (shift - 1);
+          int lowY = cy << (shift - 1);
+          int highX = lowX + (1 << (shift - 1)) - 1;
+          int highY = lowY + (1 << (shift - 1)) - 1;
+          if (lowX > x1 || highX < x0 || lowY > y1 || highY < y0) {
+            continue;
+          }
+          if (lowX >= x0 && highX <= x1 && lowY >= y0 && highY <= y1) {
+            addSubtree(spans, depth + 1, cx, cy);
+          } else {
+            next.add(new int[] {cx, cy});
+          }
+        }
+      }
+      if (next.size() > maxCells) {
+        // out of budget, take the border cells whole
+        for (int[] cell : next) {
+          addSubtree(spans, depth + 1, cell[0], cell[1]);
+        }
+        break;
+      }
+      border = next;
+    }
+
+    List<Range> ranges = new ArrayList<Range>();
+    for (int level = 0; level <= MAX_LEVEL; level++) {
+      for (long[] span : merge(spans.get(level))) {
+        ranges.add(new Range(new Text(prefix(level, span[0])), true, new Text(prefix(level, span[1]) + ";"), false));
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * Add the documents of every level from depth down that lie in the cell.
+   */
+  private static void addSubtree(List<List<long[]>> spans, int depth, int x, int y) {
+    int shift = MAX_LEVEL - depth;
+    long first = interleave(x << shift, y << shift);
+    long last = first + (1L << (2 * shift)) - 1;
+    for (int level = depth; level <= MAX_LEVEL; level++) {
+      spans.get(level).add(new long[] {first, last});
+    }
+  }
+
+  private static List<long[]> merge(List<long[]> spans) {
+    Collections.sort(spans, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] o1, long[] o2) {
+        return Long.compare(o1[0], o2[0]);
+      }
+    });
+    List<long[]> merged = new ArrayList<long[]>(spans.size());
+    for (long[] span : spans) {
+      long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+      if (last != null && span[0] <= last[1] + 1) {
+        last[1] = Math.max(last[1], span[1]);
+      } else {
+        merged.add(new long[] {span[0], span[1]});
+      }
+    }
+    return merged;
+  }
+
+  private static String prefix(int level, long z) {
+    return String.format("%02d%012x", level, z);
+  }
+
+  static int quantizeX(double x) {
+    return quantize((x + 180.0) / 360.0);
+  }
+
+  static int quantizeY(double y) {
+    return quantize((y + 90.0) / 180.0);
+  }
+
+  private static int quantize(double fraction) {
+    return (int) Math.max(0, Math.min(CELLS - 1, Math.floor(fraction * CELLS)));
+  }
+
+  /**
+   * @return the Morton value of a cell, x bits at even and y bits at odd positions
+   */
+  static long interleave(int x, int y) {
+    return spread(x) | (spread(y) << 1);
+  }
+
+  private static long spread(int v) {
+    long x = v & 0xffffffffL;
+    x = (x | (x << 16)) & 0x0000ffff0000ffffL;
+    x = (x | (x << 8)) & 0x00ff00ff00ff00ffL;
+    x = (x | (x << 4)) & 0x0f0f0f0f0f0f0f0fL;
+    x = (x | (x << 2)) & 0x3333333333333333L;
+    x = (x | (x << 1)) & 0x5555555555555555L;
+    return x;
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2011 YCSB++ project, 2014-2016 YCSB contributors.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.db.accumulo;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * Exact geometry predicates on longitude/latitude coordinates, used by {@link GeoFilterIterator} to drop the false
+ * positives of the row key ranges. Distances use an equirectangular projection around the reference point, which is
+ * exact enough for the few hundred meters the near queries search.
+ */
+final class GeoShapes {
+
+  /** Meters per degree of latitude. */
+  static final double METERS_PER_DEGREE = 111320.0;
+
+  private GeoShapes() {
+  }
+
+  /**
+   * @return the bounding box of a geometry as {minX, minY, maxX, maxY}
+   */
+  static double[] bounds(Geometry g) {
+    return g.getBounds();
+  }
+
+  /**
+   * @return the box {minX, minY, maxX, maxY} around a point that holds everything within meters of it
+   */
+  static double[] around(double x, double y, double meters) {
+    double dy = meters / METERS_PER_DEGREE;
+    double dx = meters / (METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(y))));
+    return new double[] {x - dx, y - dy, x + dx, y + dy};
+  }
+
+  /**
+   * @return true if every position of g lies within the box
+   */
+  static boolean within(Geometry g, double[] box) {
+    for (int i = 0; i < g.getPartCount(); i++) {
+      for (int j = 0; j < g.getPositionCount(i); j++) {
+        double x = g.getX(i, j);
+        double y = g.getY(i, j);
+        if (x < box[0] || y < box[1] || x > box[2] || y > box[3]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the two geometries share at least one point
+   */
+  static boolean intersects(Geometry a, Geometry b) {
+    double[] boxA = bounds(a);
+    double[] boxB = bounds(b);
+    if (boxA[0] > boxB[2] || boxB[0] > boxA[2] || boxA[1] > boxB[3] || boxB[1] > boxA[3]) {
+      return false;
+    }
+    // one inside the other
+    if (contains(a, b.getX(0, 0), b.getY(0, 0)) || contains(b, a.getX(0, 0), a.getY(0, 0))) {
+      return true;
+    }
+    // crossing boundaries
+    for (int i = 0; i < a.getPartCount(); i++) {
+      for (int j = 0; j < segmentCount(a, i); j++) {
+        for (int k = 0; k < b.getPartCount(); k++) {
+          for (int l = 0; l < segmentCount(b, k); l++) {
+            if (segmentsIntersect(a, i, j, b, k, l)) {
+              return true;
+            }
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the distance in meters from the point to the closest point of g, 0 if g is a polygon containing it
+   */
+  static double distance(Geometry g, double x, double y) {
+    if (contains(g, x, y)) {
+      return 0;
+    }
+    double scale = Math.cos(Math.toRadians(y));
+    double min = Double.MAX_VALUE;
+    for (int i = 0; i < g.getPartCount(); i++) {
+      for (int j = 0; j < segmentCount(g, i); j++) {
+        double x1 = (g.getX(i, j) - x) * scale;
+        double y1 = g.getY(i, j) - y;
+        double x2 = (g.getX(i, end(g, i, j)) - x) * scale;
+        double y2 = g.getY(i, end(g, i, j)) - y;
+        // closest point of the segment to the origin
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, -(x1 * dx + y1 * dy) / length));
+        double px = x1 + t * dx;
+        double py = y1 + t * dy;
+        min = Math.min(min, px * px + py * py);
+      }
+    }
+    return Math.sqrt(min) * METERS_PER_DEGREE;
+  }
+
+  /**
+   * Even-odd test over all rings, so holes are left out. Only polygons contain anything but their own position.
+   */
+  private static boolean contains(Geometry g, double x, double y) {
+    if (g instanceof Geometry.Point) {
+      return g.getX(0, 0) == x && g.getY(0, 0) == y;
+    }
+    if (!(g instanceof Geometry.Polygon)) {
+      return false;
+    }
+    boolean inside = false;
+    for (int i = 0; i < g.getPartCount(); i++) {
+      int n = g.getPositionCount(i);
+      for (int j = 0, k = n - 1; j < n; k = j++) {
+        double yj = g.getY(i, j);
+        double yk = g.getY(i, k);
+        if ((yj > y) != (yk > y)
+            && x < (g.getX(i, k) - g.getX(i, j)) * (y - yj) / (yk - yj) + g.getX(i, j)) {
+          inside = !inside;
+        }
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * A point is one segment from itself to itself; rings and lines have one segment per pair of positions.
+   */
+  private static int segmentCount(Geometry g, int part) {
+    return Math.max(1, g.getPositionCount(part) - 1);
+  }
+
+  private static int end(Geometry g, int part, int segment) {
+    return Math.min(segment + 1, g.getPositionCount(part) - 1);
+  }
+
+  /**
+   * @return true if segment j of part i of g crosses or touches segment l of part k of h
+   */
+  private static boolean segmentsIntersect(Geometry g, int i, int j, Geometry h, int k, int l) {
+    double ax = g.getX(i, j);
+    double ay = g.getY(i, j);
+    double bx = g.getX(i, end(g, i, j));
+    double by = g.getY(i, end(g, i, j));
+    double cx = h.getX(k, l);
+    double cy = h.getY(k, l);
+    double dx = h.getX(k, end(h, k, l));
+    double dy = h.getY(k, end(h, k, l));
+    int o1 = orientation(ax, ay, bx, by, cx, cy);
+    int o2 = orientation(ax, ay, bx, by, dx, dy);
+    int o3 = orientation(cx, cy, dx, dy, ax, ay);
+    int o4 = orientation(cx, cy, dx, dy, bx, by);
+    if (o1 != o2 && o3 != o4) {
+      return true;
+    }
+    // collinear cases
+    return (o1 == 0 && onSegment(ax, ay, bx, by, cx, cy))
+        || (o2 == 0 && onSegment(ax, ay, bx, by, dx, dy))
+        || (o3 == 0 && onSegment(cx, cy, dx, dy, ax, ay))
+        || (o4 == 0 && onSegment(cx, cy, dx, dy, bx, by));
+  }
+
+  private static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+    double cross = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    return cross > 0 ? 1 : cross < 0 ? -1 : 0;
+  }
+
+  /**
+   * @return true if c, collinear with a and b, lies between them
+   */
+  private static boolean onSegment(double ax, double ay, double bx, double by, double cx, double cy) {
+    return cx >= Math.min(ax, bx) && cx <= Math.max(ax, bx) && cy >= Math.min(ay, by) && cy <= Math.max(ay, by);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 YCSB contributors.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.db.accumulo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Tests for the Z-order row keys and the geometry predicates of the geo operations.
+ */
+public class GeoKeysTest {
+
+  private static boolean covered(List<Range> ranges, String row) {
+    for (Range range : ranges) {
+      if (range.contains(new Key(new Text(row)))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testRangesCoverEveryOverlappingBox() {
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      double x = -111.98 + random.nextDouble() * 0.2;
+      double y = 33.32 + random.nextDouble() * 0.2;
+      double size = random.nextBoolean() ? 0 : random.nextDouble() * 0.01;
+      double[] box = {x, y, x + size, y + size};
+      String row = GeoKeys.row(box, "doc" + i);
+
+      double wx = x - random.nextDouble() * 0.02;
+      double wy = y - random.nextDouble() * 0.02;
+      double[] window = {wx, wy, x + random.nextDouble() * 0.001, y + random.nextDouble() * 0.001};
+      List<Range> ranges = GeoKeys.ranges(window, 16);
+      assertTrue("box " + i + " not covered", covered(ranges, row));
+      assertTrue(ranges.size() < 500);
+    }
+  }
+
+  @Test
+  public void testFarAwayPointIsNotCovered() {
+    String row = GeoKeys.row(new double[] {10.0, 10.0, 10.0, 10.0}, "far");
+    assertFalse(covered(GeoKeys.ranges(new double[] {-111.98, 33.32, -111.87, 33.47}, 64), row));
+  }
+
+  @Test
+  public void testLargerBoxesAreStoredHigherUp() {
+    String point = GeoKeys.row(new double[] {-111.9, 33.4, -111.9, 33.4}, "a");
+    String polygon = GeoKeys.row(new double[] {-111.9, 33.4, -111.8, 33.5}, "b");
+    assertEquals(String.valueOf(GeoKeys.MAX_LEVEL), point.substring(0, 2));
+    assertTrue(polygon.substring(0, 2).compareTo(point.substring(0, 2)) < 0);
+    assertTrue(point.compareTo(GeoKeys.INDEX_PREFIX) < 0);
+  }
+
+  @Test
+  public void testGeometryPredicates() {
+    Geometry square = new Geometry.Polygon(new double[] {0, 0, 1, 0, 1, 1, 0, 1, 0, 0});
+    assertTrue(GeoShapes.intersects(square, new Geometry.Point(0.5, 0.5)));
+    assertTrue(GeoShapes.intersects(square, new Geometry.Polygon(new double[] {0.5, 0.5, 2, 0.5, 2, 2, 0.5, 0.5})));
+    assertFalse(GeoShapes.intersects(square, new Geometry.Point(1.5, 0.5)));
+    assertTrue(GeoShapes.within(new Geometry.Point(0.5, 0.5), new double[] {0, 0, 1, 1}));
+    assertFalse(GeoShapes.within(square, new double[] {0, 0, 0.5, 0.5}));
+
+    assertEquals(0, GeoShapes.distance(square, 0.5, 0.5), 0);
+    double meters = GeoShapes.distance(new Geometry.Point(-111.9, 33.401), -111.9, 33.4);
+    assertEquals(GeoShapes.METERS_PER_DEGREE * 0.001, meters, 1e-6);
+  }
+}
@@ -0,0 +1,213 @@
+package com.yahoo.ycsb;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Open-loop issue of operations: one thread lets operations arrive at the {@link Client#TARGET_PROPERTY} rate, at
+ * constant or exponentially distributed (Poisson) intervals, whether or not earlier ones have completed, and the
+ * client threads work them off as a pool. With the default closed loop each client thread instead waits for its own
+ * operation before it issues the next, so a long operation such as a use case of thousands of sub-queries holds back
+ * all that would have followed it.
+ *
+ * An operation's intended start is its arrival, so the intended latencies include the time it waited for a client
+ * thread; {@link Measurements#MEASUREMENT_INTERVAL} defaults to "both" in this mode. The wait is also recorded on its
+ * own as {@link #QUEUE_DELAY}, next to the service time of the operation.
+ *
+ * At most {@link #MAX_BACKLOG_PROPERTY} arrived operations wait for a client thread; an operation that arrives while
+ * that many are waiting is dropped, and counts against the operation count. The number of arrivals, of dropped
+ * arrivals and the backlog each time an operation is taken are exported as {@link #ARRIVAL}, as counts rather than
+ * latencies.
+ */
+public final class ArrivalScheduler implements Runnable {
+
+  /** How operations arrive: "closed" (the default fixed-tick loop per thread), "constant" or "poisson". */
+  public static final String ARRIVAL_PROPERTY = "arrival";
+  public static final String ARRIVAL_PROPERTY_DEFAULT = "closed";
+
+  /** Arrived operations that may wait for a client thread before further arrivals are dropped. */
+  public static final String MAX_BACKLOG_PROPERTY = "arrival.maxbacklog";
+  public static final String MAX_BACKLOG_PROPERTY_DEFAULT = "100000";
+
+  /** Time from the arrival of an operation until a client thread takes it, in us. */
+  public static final String QUEUE_DELAY = "QUEUE_DELAY";
+
+  /** Name the arrival and backlog counts are exported under. */
+  public static final String ARRIVAL = "ARRIVAL";
+
+  private final boolean poisson;
+  private final double intervalNs;
+  private final long count;
+  private final Workload workload;
+  private volatile boolean done;
+
+  /* arrival times waiting for a client thread, a ring of backlog.length from head on */
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final long[] backlog;
+  private int head;
+  private int size;
+
+  /* guarded by lock */
+  private long arrived;
+  private long dropped;
+  private long taken;
+  private long backlogSum;
+  private int maxBacklog;
+
+  private ArrivalScheduler(boolean poisson, double intervalNs, long count, Workload workload, int maxBacklog) {
+    this.poisson = poisson;
+    this.intervalNs = intervalNs;
+    this.count = count;
+    this.workload = workload;
+    backlog = new long[maxBacklog];
+  }
+
+  /**
+   * Create the scheduler of {@link #ARRIVAL_PROPERTY}; call before the measurements are set up.
+   * @param count number of operations to issue, 0 to issue until the workload is stopped
+   * @return the scheduler, or null for the closed loop
+   * @throws IllegalArgumentException if the arrival process is unknown, there is no target rate or the backlog is not
+   * positive
+   */
+  public static ArrivalScheduler create(Properties p, Workload workload, long count) {
+    String arrival = p.getProperty(ARRIVAL_PROPERTY, ARRIVAL_PROPERTY_DEFAULT);
+    if (arrival.equals("closed")) {
+      return null;
+    }
+    if (!arrival.equals("constant") && !arrival.equals("poisson")) {
+      throw new IllegalArgumentException("Unknown " + ARRIVAL_PROPERTY + " \"" + arrival + "\"");
+    }
+    int target = Integer.parseInt(p.getProperty(Client.TARGET_PROPERTY, "0"));
+    if (target <= 0) {
+      throw new IllegalArgumentException(ARRIVAL_PROPERTY + "=" + arrival + " needs a " + Client.TARGET_PROPERTY
+          + " rate");
+    }
+    int maxBacklog = Integer.parseInt(p.getProperty(MAX_BACKLOG_PROPERTY, MAX_BACKLOG_PROPERTY_DEFAULT));
+    if (maxBacklog <= 0) {
+      throw new IllegalArgumentException(MAX_BACKLOG_PROPERTY + " must be positive");
+    }
+    if (p.getProperty(Measurements.MEASUREMENT_INTERVAL) == null) {
+      p.setProperty(Measurements.MEASUREMENT_INTERVAL, "both");
+    }
+    return new ArrivalScheduler(arrival.equals("poisson"), 1e9 / target, count, workload, maxBacklog);
+  }
+
+  /**
+   * Start letting operations arrive.
+   */
+  public void start() {
+    Thread thread = new Thread(this, "ArrivalScheduler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    Random random = Utils.random();
+    double next = System.nanoTime();
+    long issued = 0;
+    while ((count == 0 || issued < count) && !workload.isStopRequested()) {
+      long now = System.nanoTime();
+      // catch up on every arrival that fell due while parked; the bound of the backlog drops what does not fit
+      while (next <= now && (count == 0 || issued < count)) {
+        offer((long) next);
+        issued++;
+        next += poisson ? -Math.log(1 - random.nextDouble()) * intervalNs : intervalNs;
+      }
+      LockSupport.parkNanos((long) next - now);
+    }
+    lock.lock();
+    try {
+      done = true;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (dropped() > 0) {
+      System.err.println("Dropped " + dropped() + " arrivals while " + backlog.length + " were waiting, see "
+          + MAX_BACKLOG_PROPERTY);
+    }
+  }
+
+  private void offer(long arrival) {
+    lock.lock();
+    try {
+      arrived++;
+      if (size == backlog.length) {
+        dropped++;
+        return;
+      }
+      backlog[(head + size) % backlog.length] = arrival;
+      size++;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long dropped() {
+    lock.lock();
+    try {
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait for the next arrived operation.
+   * @return its arrival time, or -1 once all operations were taken or the workload was stopped
+   */
+  public long take() throws InterruptedException {
+    long arrival;
+    lock.lock();
+    try {
+      while (true) {
+        if (workload.isStopRequested()) {
+          return -1;
+        }
+        if (size > 0) {
+          break;
+        }
+        if (done) {
+          return -1;
+        }
+        notEmpty.await(100, TimeUnit.MILLISECONDS);
+      }
+      arrival = backlog[head];
+      head = (head + 1) % backlog.length;
+      size--;
+      taken++;
+      backlogSum += size;
+      maxBacklog = Math.max(maxBacklog, size);
+    } finally {
+      lock.unlock();
+    }
+    Measurements.getMeasurements().measure(QUEUE_DELAY, (int) ((System.nanoTime() - arrival) / 1000));
+    return arrival;
+  }
+
+  /**
+   * Export the arrival counts and the backlog seen by the client threads.
+   */
+  public void exportMeasurements(MeasurementsExporter exporter) throws IOException {
+    lock.lock();
+    try {
+      exporter.write(ARRIVAL, "Arrivals", arrived);
+      exporter.write(ARRIVAL, "Dropped", dropped);
+      exporter.write(ARRIVAL, "AverageBacklog", taken == 0 ? 0 : (double) backlogSum / taken);
+      exporter.write(ARRIVAL, "MaxBacklog", maxBacklog);
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -380,6 +380,11 @@ class ClientThread implements Runnable {
     this.threadcount = threadcount;
   }
 
+  private ArrivalScheduler scheduler;
+  public void setScheduler(ArrivalScheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
   private Object workloadstate;
   private Properties props;
   private long targetOpsTickNs;
@@ -409,7 +414,9 @@ class ClientThread implements Runnable {
     }
     this.props = props;
     measurements = Measurements.getMeasurements();
-    spinSleep = Boolean.valueOf(this.props.getProperty("spin.sleep", "false"));
+    // a spinning virtual thread would keep its carrier thread from running the others
+    spinSleep = Boolean.valueOf(this.props.getProperty("spin.sleep", "false"))
+        && !props.getProperty(Client.THREAD_MODEL_PROPERTY, Client.THREAD_MODEL_PROPERTY_DEFAULT).equals("virtual");
     this.completeLatch = completeLatch;
   }
 
@@ -446,7 +453,20 @@ class ClientThread implements Runnable {
       sleepUntil(System.nanoTime() + randomMinorDelay);
     }
     try {
-      if (dotransactions) {
+      if (scheduler != null) {
+        // open loop: take the operations as they arrive, measured from their arrival
+        while (!workload.isStopRequested()) {
+          long arrival = scheduler.take();
+          if (arrival < 0) {
+            break;
+          }
+          measurements.setIntendedStartTimeNs(arrival);
+          if (!(dotransactions ? workload.doTransaction(db, workloadstate) : workload.doInsert(db, workloadstate))) {
+            break;
+          }
+          opsdone++;
+        }
+      } else if (dotransactions) {
         long startTimeNanos = System.nanoTime();
 
         while (((opcount == 0) || (opsdone < opcount)) && !workload.isStopRequested()) {
@@ -564,6 +584,19 @@ public final class Client {
    */
   public static final String THREAD_COUNT_PROPERTY = "threadcount";
 
+  /**
+   * What the client loops run on: "platform" threads (the default), or "virtual" threads (Java 21 or later), which
+   * park instead of blocking a carrier thread while they wait for the database, so one client can run many more of
+   * them.
+   */
+  public static final String THREAD_MODEL_PROPERTY = "threadmodel";
+  public static final String THREAD_MODEL_PROPERTY_DEFAULT = "platform";
+
+  /**
+   * Number of carrier threads the virtual threads run on; the default is one per core.
+   */
+  public static final String THREAD_MODEL_CARRIERS_PROPERTY = "threadmodel.carriers";
+
   /**
    * Indicates how many inserts to do if less than recordcount.
    * Useful for partitioning the load among multiple servers if the client is the bottleneck.
@@ -658,7 +691,7 @@ public final class Client {
    *
    * @throws IOException Either failed to write to output stream or failed to close it.
    */
-  private static void exportMeasurements(Properties props, int opcount, long runtime)
+  private static void exportMeasurements(Properties props, int opcount, long runtime, ArrivalScheduler scheduler)
       throws IOException {
     MeasurementsExporter exporter = null;
     try {
@@ -712,6 +745,10 @@ public final class Client {
         exporter.write("MIN_SYS_LOAD_AVG", "Load", statusthread.getMinLoadAvg());
       }
 
+      if (scheduler != null) {
+        scheduler.exportMeasurements(exporter);
+      }
+
       Measurements.getMeasurements().exportMeasurements(exporter);
     } finally {
       if (exporter != null) {
@@ -741,13 +778,21 @@ public final class Client {
       targetperthreadperms = targetperthread / 1000.0;
     }
 
+    String threadModel = initThreadModel(props);
+
     Thread warningthread = setupWarningThread();
     warningthread.start();
 
-    Measurements.setProperties(props);
-
     Workload workload = getWorkload(props);
 
+    ArrivalScheduler scheduler = initScheduler(props, workload);
+    if (scheduler != null) {
+      // the target is the arrival rate, not a per-thread tick
+      targetperthreadperms = -1;
+    }
+
+    Measurements.setProperties(props);
+
     final Tracer tracer = getTracer(props, workload);
 
     initWorkload(props, warningthread, workload, tracer);
@@ -757,6 +802,11 @@ public final class Client {
 
     final List<ClientThread> clients = initDb(dbname, props, threadcount, targetperthreadperms,
         workload, tracer, completeLatch);
+    if (scheduler != null) {
+      for (ClientThread client : clients) {
+        client.setScheduler(scheduler);
+      }
+    }
 
     if (status) {
       boolean standardstatus = false;
@@ -779,8 +829,9 @@ public final class Client {
     try (final TraceScope span = tracer.newScope(CLIENT_WORKLOAD_SPAN)) {
 
       final Map<Thread, ClientThread> threads = new HashMap<>(threadcount);
-      for (ClientThread client : clients) {
-        threads.put(new Thread(tracer.wrap(client, "ClientThread")), client);
+      for (int i = 0; i < clients.size(); i++) {
+        ClientThread client = clients.get(i);
+        threads.put(newClientThread(threadModel, tracer.wrap(client, "ClientThread"), "ClientThread-" + i), client);
       }
 
       st = System.currentTimeMillis();
@@ -788,6 +839,9 @@ public final class Client {
       for (Thread t : threads.keySet()) {
         t.start();
       }
+      if (scheduler != null) {
+        scheduler.start();
+      }
 
       if (maxExecutionTime > 0) {
         terminator = new TerminatorThread(maxExecutionTime, threads.keySet(), workload);
@@ -836,7 +890,7 @@ public final class Client {
 
     try {
       try (final TraceScope span = tracer.newScope(CLIENT_EXPORT_MEASUREMENTS_SPAN)) {
-        exportMeasurements(props, opsDone, en - st);
+        exportMeasurements(props, opsDone, en - st, scheduler);
       }
     } catch (IOException e) {
       System.err.println("Could not export measurements, error: " + e.getMessage());
@@ -855,16 +909,7 @@ public final class Client {
 
     final List<ClientThread> clients = new ArrayList<>(threadcount);
     try (final TraceScope span = tracer.newScope(CLIENT_INIT_SPAN)) {
-      int opcount;
-      if (dotransactions) {
-        opcount = Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY, "0"));
-      } else {
-        if (props.containsKey(INSERT_COUNT_PROPERTY)) {
-          opcount = Integer.parseInt(props.getProperty(INSERT_COUNT_PROPERTY, "0"));
-        } else {
-          opcount = Integer.parseInt(props.getProperty(RECORD_COUNT_PROPERTY, DEFAULT_RECORD_COUNT));
-        }
-      }
+      int opcount = getOperationCount(props);
 
       for (int threadid = 0; threadid < threadcount; threadid++) {
         GeoDB db;
@@ -898,6 +943,85 @@ public final class Client {
     return clients;
   }
 
+  private static String initThreadModel(Properties props) {
+    String threadModel = props.getProperty(THREAD_MODEL_PROPERTY, THREAD_MODEL_PROPERTY_DEFAULT);
+    try {
+      configureThreadModel(threadModel, props.getProperty(THREAD_MODEL_CARRIERS_PROPERTY));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(0);
+    }
+    return threadModel;
+  }
+
+  private static ArrivalScheduler initScheduler(Properties props, Workload workload) {
+    try {
+      return ArrivalScheduler.create(props, workload, getOperationCount(props));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(0);
+      return null;
+    }
+  }
+
+  /**
+   * Check that the JVM supports a {@link #THREAD_MODEL_PROPERTY} and size the carrier pool of virtual threads. Call
+   * before the first virtual thread is created.
+   * @param carriers the {@link #THREAD_MODEL_CARRIERS_PROPERTY}, or null for the JVM default
+   * @throws IllegalArgumentException if the model is unknown or not supported
+   */
+  static void configureThreadModel(String threadModel, String carriers) {
+    if (threadModel.equals("platform")) {
+      return;
+    }
+    if (!threadModel.equals("virtual")) {
+      throw new IllegalArgumentException("Unknown " + THREAD_MODEL_PROPERTY + " \"" + threadModel + "\"");
+    }
+    try {
+      Thread.class.getMethod("ofVirtual");
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(THREAD_MODEL_PROPERTY + "=virtual needs Java 21 or later");
+    }
+    if (carriers != null) {
+      int parallelism = Integer.parseInt(carriers);
+      System.setProperty("jdk.virtualThreadScheduler.parallelism", String.valueOf(parallelism));
+      System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", String.valueOf(Math.max(256, parallelism)));
+    }
+  }
+
+  /**
+   * Create the thread of a client loop, not started yet.
+   * @param threadModel the {@link #THREAD_MODEL_PROPERTY}, see {@link #configureThreadModel(String, String)}
+   */
+  static Thread newClientThread(String threadModel, Runnable client, String name) {
+    if (!threadModel.equals("virtual")) {
+      return new Thread(client, name);
+    }
+    try {
+      // Thread.ofVirtual().name(name).unstarted(client), by reflection while the build targets Java 7
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+      return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, client);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Could not create a virtual thread", e);
+    }
+  }
+
+  /**
+   * @return the number of operations of the phase, 0 for no limit
+   */
+  private static int getOperationCount(Properties props) {
+    boolean dotransactions = Boolean.valueOf(props.getProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(true)));
+    if (dotransactions) {
+      return Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY, "0"));
+    }
+    if (props.containsKey(INSERT_COUNT_PROPERTY)) {
+      return Integer.parseInt(props.getProperty(INSERT_COUNT_PROPERTY, "0"));
+    }
+    return Integer.parseInt(props.getProperty(RECORD_COUNT_PROPERTY, DEFAULT_RECORD_COUNT));
+  }
+
   private static Tracer getTracer(Properties props, Workload workload) {
     return new Tracer.Builder("YCSB " + workload.getClass().getSimpleName())
         .conf(getHTraceConfiguration(props))
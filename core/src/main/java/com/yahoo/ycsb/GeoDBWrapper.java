@@ -24,6 +24,7 @@ import org.apache.htrace.core.TraceScope;
 import org.apache.htrace.core.Tracer;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Author: Yuvraj
@@ -43,6 +44,44 @@ public class GeoDBWrapper extends GeoDB {
 
   private static final String LATENCY_TRACKED_ERRORS_PROPERTY = "latencytrackederrors";
 
+  /* Predicate generation, measured apart from the database time of the operations. */
+  private static final GeoPhase INSERT_PREDICATE = GeoPhase.of("GEO_INSERT", "predicate");
+  private static final GeoPhase UPDATE_PREDICATE = GeoPhase.of("GEO_UPDATE", "predicate");
+  private static final GeoPhase NEAR_PREDICATE = GeoPhase.of("GEO_NEAR", "predicate");
+  private static final GeoPhase BOX_PREDICATE = GeoPhase.of("GEO_BOX", "predicate");
+  private static final GeoPhase INTERSECT_PREDICATE = GeoPhase.of("GEO_INTERSECT", "predicate");
+  private static final GeoPhase CASE1_PREDICATE = GeoPhase.of("GEO_CASE_GRAFFITI_BY_SCHOOLS", "predicate");
+  private static final GeoPhase CASE2_PREDICATE = GeoPhase.of("GEO_CASE_GRAFFITI_BY_DENSITY", "predicate");
+  private static final GeoPhase CASE3_PREDICATE = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "predicate");
+
+  /* Result consumption of the geo queries, see GeoResults. */
+  private final GeoResults nearResults = new GeoResults("GEO_NEAR");
+  private final GeoResults boxResults = new GeoResults("GEO_BOX");
+  private final GeoResults intersectResults = new GeoResults("GEO_INTERSECT");
+  private final GeoResults scanResults = new GeoResults("GEO_SCAN");
+  private final GeoResults case1Results = new GeoResults("GEO_CASE_GRAFFITI_BY_SCHOOLS");
+  private final GeoResults case2Results = new GeoResults("GEO_CASE_GRAFFITI_BY_DENSITY");
+  private final GeoResults case3Results = new GeoResults("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC");
+
+  /* Measurement handles of the operations, see Op. */
+  private final Op cleanupOp;
+  private final Op readOp;
+  private final Op scanOp;
+  private final Op updateOp;
+  private final Op insertOp;
+  private final Op deleteOp;
+  private final Op geoLoadOp;
+  private final Op geoInsertOp;
+  private final Op geoUpdateOp;
+  private final Op geoNearOp;
+  private final Op geoBoxOp;
+  private final Op geoIntersectOp;
+  private final Op geoScanOp;
+  private final Op geoCase1Op;
+  private final Op geoCase2Op;
+  private final Op geoCase3Op;
+  private final Op geoCase4Op;
+
   private final String scopeStringCleanup;
   private final String scopeStringDelete;
   private final String scopeStringInit;
@@ -53,10 +92,54 @@ public class GeoDBWrapper extends GeoDB {
 
 
 
+  /**
+   * The measurement handles of an operation, registered when the wrapper is created so that measuring an operation
+   * does not look up or build its measurement names.
+   */
+  private static final class Op {
+    private final String name;
+    private final int ok;
+    private final int failed;
+    /** Handles of the errors whose latency is tracked on its own, registered when an error is first seen. */
+    private final ConcurrentHashMap<Status, Integer> errors = new ConcurrentHashMap<>();
+
+    private Op(Measurements measurements, String name) {
+      this.name = name;
+      ok = measurements.register(name);
+      failed = measurements.register(name + "-FAILED");
+    }
+
+    private int error(Measurements measurements, Status status) {
+      Integer handle = errors.get(status);
+      if (handle == null) {
+        handle = measurements.register(name + "-" + status.getName());
+        errors.putIfAbsent(status, handle);
+      }
+      return handle;
+    }
+  }
+
   public GeoDBWrapper(final GeoDB db, final Tracer tracer) {
     this.db = db;
     measurements = Measurements.getMeasurements();
     this.tracer = tracer;
+    cleanupOp = new Op(measurements, "CLEANUP");
+    readOp = new Op(measurements, "READ");
+    scanOp = new Op(measurements, "SCAN");
+    updateOp = new Op(measurements, "UPDATE");
+    insertOp = new Op(measurements, "INSERT");
+    deleteOp = new Op(measurements, "DELETE");
+    geoLoadOp = new Op(measurements, "GEO_LOAD");
+    geoInsertOp = new Op(measurements, "GEO_INSERT");
+    geoUpdateOp = new Op(measurements, "GEO_UPDATE");
+    geoNearOp = new Op(measurements, "GEO_NEAR");
+    geoBoxOp = new Op(measurements, "GEO_BOX");
+    geoIntersectOp = new Op(measurements, "GEO_INTERSECT");
+    geoScanOp = new Op(measurements, "GEO_SCAN");
+    geoCase1Op = new Op(measurements, "GEO_CASE_GRAFFITI_BY_SCHOOLS");
+    geoCase2Op = new Op(measurements, "GEO_CASE_GRAFFITI_BY_DENSITY");
+    geoCase3Op = new Op(measurements, "GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC");
+    geoCase4Op = new Op(measurements, "GEO_CASE_CLEAN_GRAFFITI");
     final String simple = db.getClass().getSimpleName();
     scopeStringCleanup = simple + "#cleanup";
     scopeStringDelete = simple + "#delete";
@@ -118,7 +201,7 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       db.cleanup();
       long en = System.nanoTime();
-      measure("CLEANUP", Status.OK, ist, st, en);
+      measure(cleanupOp, Status.OK, ist, st, en);
     }
   }
 
@@ -139,8 +222,8 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.read(table, key, fields, result);
       long en = System.nanoTime();
-      measure("READ", res, ist, st, en);
-      measurements.reportStatus("READ", res);
+      measure(readOp, res, ist, st, en);
+      measurements.reportStatus(readOp.ok, res);
       return res;
     }
   }
@@ -163,26 +246,26 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.scan(table, startkey, recordcount, fields, result);
       long en = System.nanoTime();
-      measure("SCAN", res, ist, st, en);
-      measurements.reportStatus("SCAN", res);
+      measure(scanOp, res, ist, st, en);
+      measurements.reportStatus(scanOp.ok, res);
       return res;
     }
   }
 
-  private void measure(String op, Status result, long intendedStartTimeNanos,
+  private void measure(Op op, Status result, long intendedStartTimeNanos,
                        long startTimeNanos, long endTimeNanos) {
-    String measurementName = op;
+    int handle = op.ok;
     if (result == null || !result.isOk()) {
-      if (this.reportLatencyForEachError ||
-          this.latencyTrackedErrors.contains(result.getName())) {
-        measurementName = op + "-" + result.getName();
+      if (result != null && (this.reportLatencyForEachError ||
+          this.latencyTrackedErrors.contains(result.getName()))) {
+        handle = op.error(measurements, result);
       } else {
-        measurementName = op + "-FAILED";
+        handle = op.failed;
       }
     }
-    measurements.measure(measurementName,
+    measurements.measure(handle,
         (int) ((endTimeNanos - startTimeNanos) / 1000));
-    measurements.measureIntended(measurementName,
+    measurements.measureIntended(handle,
         (int) ((endTimeNanos - intendedStartTimeNanos) / 1000));
   }
 
@@ -202,8 +285,8 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.update(table, key, values);
       long en = System.nanoTime();
-      measure("UPDATE", res, ist, st, en);
-      measurements.reportStatus("UPDATE", res);
+      measure(updateOp, res, ist, st, en);
+      measurements.reportStatus(updateOp.ok, res);
       return res;
     }
   }
@@ -225,8 +308,8 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.insert(table, key, values);
       long en = System.nanoTime();
-      measure("INSERT", res, ist, st, en);
-      measurements.reportStatus("INSERT", res);
+      measure(insertOp, res, ist, st, en);
+      measurements.reportStatus(insertOp.ok, res);
       return res;
     }
   }
@@ -244,8 +327,8 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.delete(table, key);
       long en = System.nanoTime();
-      measure("DELETE", res, ist, st, en);
-      measurements.reportStatus("DELETE", res);
+      measure(deleteOp, res, ist, st, en);
+      measurements.reportStatus(deleteOp.ok, res);
       return res;
     }
   }
@@ -263,8 +346,8 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.geoLoad(table, generator, recordCount);
       long en = System.nanoTime();
-      measure("GEO_LOAD", res, ist, st, en);
-      measurements.reportStatus("GEO_LOAD", res);
+      measure(geoLoadOp, res, ist, st, en);
+      measurements.reportStatus(geoLoadOp.ok, res);
       return res;
     }
   }
@@ -277,21 +360,23 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.geoLoad(table1, table2, table3, generator, recordCount);
       long en = System.nanoTime();
-      measure("GEO_LOAD", res, ist, st, en);
-      measurements.reportStatus("GEO_LOAD", res);
+      measure(geoLoadOp, res, ist, st, en);
+      measurements.reportStatus(geoLoadOp.ok, res);
       return res;
     }
   }
 
   public Status geoInsert(String table, HashMap<String, ByteIterator> result, ParameterGenerator generator) {
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
+      long pst = INSERT_PREDICATE.start();
       generator.buildGeoInsertDocument();
+      INSERT_PREDICATE.end(pst);
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
       Status res = db.geoInsert(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_INSERT", res, ist, st, en);
-      measurements.reportStatus("GEO_INSERT", res);
+      measure(geoInsertOp, res, ist, st, en);
+      measurements.reportStatus(geoInsertOp.ok, res);
       return res;
     }
   }
@@ -299,52 +384,66 @@ public class GeoDBWrapper extends GeoDB {
 
   public Status geoUpdate(String table, HashMap<String, ByteIterator> result, ParameterGenerator generator) {
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
+      long pst = UPDATE_PREDICATE.start();
       generator.buildGeoUpdatePredicate();
+      UPDATE_PREDICATE.end(pst);
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
       Status res = db.geoUpdate(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_UPDATE", res, ist, st, en);
-      measurements.reportStatus("GEO_UPDATE", res);
+      measure(geoUpdateOp, res, ist, st, en);
+      measurements.reportStatus(geoUpdateOp.ok, res);
       return res;
     }
   }
 
   public Status geoNear(String table, HashMap<String, ByteIterator> result, ParameterGenerator generator) {
+    long pst = NEAR_PREDICATE.start();
     generator.buildGeoReadPredicate();
+    NEAR_PREDICATE.end(pst);
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
+      nearResults.begin(st);
       Status res = db.geoNear(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_NEAR", res, ist, st, en);
-      measurements.reportStatus("GEO_NEAR", res);
+      nearResults.end(res, en);
+      measure(geoNearOp, res, ist, st, en);
+      measurements.reportStatus(geoNearOp.ok, res);
       return res;
     }
   }
 
   public Status geoBox(String table, HashMap<String, ByteIterator> result, ParameterGenerator generator) {
+    long pst = BOX_PREDICATE.start();
     generator.buildGeoReadPredicate();
+    BOX_PREDICATE.end(pst);
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
+      boxResults.begin(st);
       Status res = db.geoBox(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_BOX", res, ist, st, en);
-      measurements.reportStatus("GEO_BOX", res);
+      boxResults.end(res, en);
+      measure(geoBoxOp, res, ist, st, en);
+      measurements.reportStatus(geoBoxOp.ok, res);
       return res;
     }
   }
 
   public Status geoIntersect(String table, HashMap<String, ByteIterator> result, ParameterGenerator generator) {
+    long pst = INTERSECT_PREDICATE.start();
     generator.buildGeoReadPredicate();
+    INTERSECT_PREDICATE.end(pst);
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
+      intersectResults.begin(st);
       Status res = db.geoIntersect(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_INTERSECT", res, ist, st, en);
-      measurements.reportStatus("GEO_INTERSECT", res);
+      intersectResults.end(res, en);
+      measure(geoIntersectOp, res, ist, st, en);
+      measurements.reportStatus(geoIntersectOp.ok, res);
       return res;
     }
   }
@@ -354,10 +453,12 @@ public class GeoDBWrapper extends GeoDB {
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
+      scanResults.begin(st);
       Status res = db.geoScan(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_SCAN", res, ist, st, en);
-      measurements.reportStatus("GEO_SCAN", res);
+      scanResults.end(res, en);
+      measure(geoScanOp, res, ist, st, en);
+      measurements.reportStatus(geoScanOp.ok, res);
       return res;
     }
   }
@@ -366,14 +467,18 @@ public class GeoDBWrapper extends GeoDB {
   
   public Status geoUseCase1(String table, HashMap<String, 
       Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator generator) {
+    long pst = CASE1_PREDICATE.start();
     generator.buildGeoPredicateCase1();
+    CASE1_PREDICATE.end(pst);
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
+      case1Results.begin(st);
       Status res = db.geoUseCase1(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_CASE_GRAFFITI_BY_SCHOOLS", res, ist, st, en);
-      measurements.reportStatus("GEO_CASE_GRAFFITI_BY_SCHOOLS", res);
+      case1Results.end(res, en);
+      measure(geoCase1Op, res, ist, st, en);
+      measurements.reportStatus(geoCase1Op.ok, res);
       return res;
     } catch (Exception e) {
       e.printStackTrace();
@@ -383,14 +488,18 @@ public class GeoDBWrapper extends GeoDB {
   
   public Status geoUseCase2(String table, 
       HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator generator) {
+    long pst = CASE2_PREDICATE.start();
     generator.buildGeoPredicateCase3();
+    CASE2_PREDICATE.end(pst);
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
+      case2Results.begin(st);
       Status res = db.geoUseCase2(table, result, generator);
       long en = System.nanoTime();
-      measure("GEO_CASE_GRAFFITI_BY_DENSITY", res, ist, st, en);
-      measurements.reportStatus("GEO_CASE_GRAFFITI_BY_DENSITY", res);
+      case2Results.end(res, en);
+      measure(geoCase2Op, res, ist, st, en);
+      measurements.reportStatus(geoCase2Op.ok, res);
       
       // post processing: true result is only top cell count in length
 //      HashMap<String, Integer> count = new HashMap<String, Integer>();
@@ -418,14 +527,18 @@ public class GeoDBWrapper extends GeoDB {
   
   public Status geoUseCase3(String table1, String table2, 
       HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator generator) {
+    long pst = CASE3_PREDICATE.start();
     generator.buildGeoPredicateCase3();
+    CASE3_PREDICATE.end(pst);
     try (final TraceScope span = tracer.newScope(scopeStringRead)) {
       long ist = measurements.getIntendedtartTimeNs();
       long st = System.nanoTime();
+      case3Results.begin(st);
       Status res = db.geoUseCase3(table1, table2, result, generator);
       long en = System.nanoTime();
-      measure("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", res, ist, st, en);
-      measurements.reportStatus("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", res);
+      case3Results.end(res, en);
+      measure(geoCase3Op, res, ist, st, en);
+      measurements.reportStatus(geoCase3Op.ok, res);
       return res;
     }
   }
@@ -436,8 +549,8 @@ public class GeoDBWrapper extends GeoDB {
       long st = System.nanoTime();
       Status res = db.geoUseCase4(table, operation, deleted, generator);
       long en = System.nanoTime();
-      measure("GEO_CASE_CLEAN_GRAFFITI", res, ist, st, en);
-      measurements.reportStatus("GEO_CASE_CLEAN_GRAFFITI", res);
+      measure(geoCase4Op, res, ist, st, en);
+      measurements.reportStatus(geoCase4Op.ok, res);
       return res;
     }
   }
@@ -0,0 +1,164 @@
+package com.yahoo.ycsb;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the sub-queries of a use case operation (one query per school, per cell, ...) on a bounded pool shared by all
+ * client threads, so a macro operation takes about as long as its slowest batch of sub-queries instead of the sum of
+ * all of them.
+ *
+ * The operation itself is still measured once by {@link GeoDBWrapper}; every sub-query is additionally measured under
+ * its own name. Without {@link #FANOUT_THREADS_PROPERTY} the sub-queries run one after another on the calling thread.
+ */
+public final class GeoFanOut {
+
+  /**
+   * Number of pool threads shared by all client threads. Default is 0, run sub-queries on the calling thread.
+   */
+  public static final String FANOUT_THREADS_PROPERTY = "geo_fanout_threads";
+  public static final String FANOUT_THREADS_PROPERTY_DEFAULT = "0";
+
+  /**
+   * Most sub-queries a single operation may have in flight. Default is the pool size.
+   */
+  public static final String FANOUT_CONCURRENCY_PROPERTY = "geo_fanout_concurrency";
+
+  private static GeoFanOut shared;
+
+  private final ExecutorService pool;
+  private final int concurrency;
+
+  GeoFanOut(int threads, int concurrency) {
+    this.concurrency = Math.max(1, concurrency);
+    if (threads <= 0) {
+      pool = null;
+      return;
+    }
+    final AtomicInteger count = new AtomicInteger();
+    pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "geo-fanout-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Returns the fan-out executor of the JVM, creating it from the properties on the first call.
+   */
+  public static synchronized GeoFanOut getShared(Properties p) {
+    if (shared == null) {
+      int threads = Integer.parseInt(p.getProperty(FANOUT_THREADS_PROPERTY, FANOUT_THREADS_PROPERTY_DEFAULT));
+      int concurrency = Integer.parseInt(p.getProperty(FANOUT_CONCURRENCY_PROPERTY,
+          String.valueOf(Math.max(1, threads))));
+      shared = new GeoFanOut(threads, concurrency);
+    }
+    return shared;
+  }
+
+  /**
+   * Run all tasks and wait for them.
+   * @param tasks the sub-queries of one operation
+   * @param metric name the latency of every sub-query is measured under
+   * @return the task results, in task order
+   * @throws Exception the failure of the first failed task, or the interruption of the calling thread, which stays
+   * interrupted; either way the tasks not yet finished are cancelled
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks, String metric) throws Exception {
+    List<T> results = new ArrayList<T>(tasks.size());
+    Measurements measurements = Measurements.getMeasurements();
+    int handle = measurements.register(metric);
+    if (pool == null) {
+      for (Callable<T> task : tasks) {
+        results.add(measured(task, measurements, handle).call());
+      }
+      return results;
+    }
+    for (int i = 0; i < tasks.size(); i++) {
+      results.add(null);
+    }
+    CompletionService<Indexed<T>> completion = new ExecutorCompletionService<Indexed<T>>(pool);
+    List<Future<Indexed<T>>> futures = new ArrayList<Future<Indexed<T>>>(tasks.size());
+    int submitted = 0;
+    boolean finished = false;
+    try {
+      for (; submitted < tasks.size() && submitted < concurrency; submitted++) {
+        futures.add(completion.submit(new Indexed<T>(submitted, measured(tasks.get(submitted), measurements, handle))));
+      }
+      for (int done = 0; done < tasks.size(); done++) {
+        Indexed<T> result = completion.take().get();
+        results.set(result.index, result.value);
+        if (submitted < tasks.size()) {
+          futures.add(completion.submit(new Indexed<T>(submitted,
+              measured(tasks.get(submitted), measurements, handle))));
+          submitted++;
+        }
+      }
+      finished = true;
+      return results;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    } catch (InterruptedException e) {
+      // the caller may only look at the flag, e.g. a client thread stopped by the terminator
+      Thread.currentThread().interrupt();
+      throw e;
+    } finally {
+      // whatever ended the wait early, the remaining sub-queries must not keep running for nobody
+      if (!finished) {
+        for (Future<Indexed<T>> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  private static <T> Callable<T> measured(final Callable<T> task, final Measurements measurements, final int handle) {
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        long st = System.nanoTime();
+        try {
+          return task.call();
+        } finally {
+          measurements.measure(handle, (int) ((System.nanoTime() - st) / 1000));
+        }
+      }
+    };
+  }
+
+  /**
+   * A task that remembers its position, so results can be put back in order.
+   */
+  private static final class Indexed<T> implements Callable<Indexed<T>> {
+    private final int index;
+    private final Callable<T> task;
+    private T value;
+
+    Indexed(int index, Callable<T> task) {
+      this.index = index;
+      this.task = task;
+    }
+
+    @Override
+    public Indexed<T> call() throws Exception {
+      value = task.call();
+      return this;
+    }
+  }
+}
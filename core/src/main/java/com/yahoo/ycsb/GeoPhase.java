@@ -0,0 +1,62 @@
+package com.yahoo.ycsb;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * A named sub-phase of a geo operation, e.g. the density part of a use case or the predicate generation before a
+ * query. Its latency is recorded like any operation, under the name {@code <operation>.phase=<phase>}.
+ *
+ * Create phases once, in static fields, and time them with
+ * <pre>
+ *   long start = PHASE.start();
+ *   ...
+ *   PHASE.end(start);
+ * </pre>
+ * which allocates nothing.
+ */
+public final class GeoPhase {
+
+  private final String name;
+  private int handle;
+  private volatile Measurements measurements;
+
+  private GeoPhase(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @param operation name the operation is measured under, e.g. GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC
+   * @param phase name of the phase within the operation
+   */
+  public static GeoPhase of(String operation, String phase) {
+    return new GeoPhase(operation + ".phase=" + phase);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the start time to pass to {@link #end(long)}
+   */
+  public long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Record the time since start.
+   * @param start what {@link #start()} returned
+   */
+  public void end(long start) {
+    long end = System.nanoTime();
+    Measurements m = measurements;
+    if (m == null) {
+      // the singleton may not exist yet when the phase is created; any thread may look it up, and registering
+      // again returns the same handle
+      m = Measurements.getMeasurements();
+      handle = m.register(name);
+      measurements = m;
+    }
+    m.measure(handle, (int) ((end - start) / 1000));
+  }
+}
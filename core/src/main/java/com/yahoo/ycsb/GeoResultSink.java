@@ -0,0 +1,252 @@
+package com.yahoo.ycsb;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Where the geo operations and bindings report what they found, e.g. the graffiti count of every school or cell, for
+ * checking a run by hand. Printing these lines from the client threads made them queue up on the lock of
+ * {@code System.out}; here a thread only puts a record into a ring buffer, and one background thread formats and
+ * writes the records.
+ *
+ * <ul>
+ * <li>{@code geo_sink_output}: {@code off}, the default, {@code stdout}, or a file, compressed if it ends in .gz,</li>
+ * <li>{@code geo_sink_sample}: keep one of every n records of a thread, default 1,</li>
+ * <li>{@code geo_sink_buffer}: records the ring buffer holds, rounded up to a power of two, default 65536.</li>
+ * </ul>
+ *
+ * A record is written as a line {@code operation<TAB>subject<TAB>value}, without the fields that are null. Records
+ * that find the buffer full are dropped and counted rather than holding up the operation. Ask {@link #isSampled()}
+ * before building a record, so that nothing is formatted or allocated for records that are not kept:
+ * <pre>
+ *   GeoResultSink sink = GeoResultSink.get();
+ *   if (sink.isSampled()) {
+ *     sink.log("GEO_CASE_GRAFFITI_BY_SCHOOLS", school, count);
+ *   }
+ * </pre>
+ */
+public final class GeoResultSink {
+
+  public static final String OUTPUT_PROPERTY = "geo_sink_output";
+  public static final String OUTPUT_PROPERTY_DEFAULT = "off";
+  public static final String SAMPLE_PROPERTY = "geo_sink_sample";
+  public static final String SAMPLE_PROPERTY_DEFAULT = "1";
+  public static final String BUFFER_PROPERTY = "geo_sink_buffer";
+  public static final String BUFFER_PROPERTY_DEFAULT = "65536";
+
+  private static final GeoResultSink OFF = new GeoResultSink();
+  private static volatile GeoResultSink current = OFF;
+
+  private final boolean enabled;
+  private final int sample;
+  private final int mask;
+  private final AtomicReferenceArray<Record> ring;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Writer out;
+  private final boolean closeOut;
+  private final Thread writer;
+  private volatile boolean closed;
+
+  private final ThreadLocal<int[]> skipped = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  private static final class Record {
+    private final String operation;
+    private final Object subject;
+    private final Object value;
+
+    private Record(String operation, Object subject, Object value) {
+      this.operation = operation;
+      this.subject = subject;
+      this.value = value;
+    }
+  }
+
+  private GeoResultSink() {
+    enabled = false;
+    sample = 1;
+    mask = 0;
+    ring = null;
+    out = null;
+    closeOut = false;
+    writer = null;
+  }
+
+  private GeoResultSink(Writer out, boolean closeOut, int sample, int capacity) {
+    enabled = true;
+    this.sample = sample;
+    this.out = out;
+    this.closeOut = closeOut;
+    int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    mask = size - 1;
+    ring = new AtomicReferenceArray<Record>(size);
+    writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "GeoResultSink");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * @return the sink of the process, which is off until {@link #configure(Properties)} enables it
+   */
+  public static GeoResultSink get() {
+    return current;
+  }
+
+  /**
+   * Set up the sink of the process from the properties, closing the previous one.
+   * @throws IOException if the output file cannot be created
+   */
+  public static synchronized void configure(Properties p) throws IOException {
+    String output = p.getProperty(OUTPUT_PROPERTY, OUTPUT_PROPERTY_DEFAULT);
+    GeoResultSink sink = OFF;
+    if (!output.equals("off")) {
+      OutputStream stream;
+      if (output.equals("stdout")) {
+        stream = System.out;
+      } else if (output.endsWith(".gz")) {
+        stream = new GZIPOutputStream(new FileOutputStream(output), 1 << 16);
+      } else {
+        stream = new FileOutputStream(output);
+      }
+      sink = new GeoResultSink(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16),
+          stream != System.out, Math.max(1, Integer.parseInt(p.getProperty(SAMPLE_PROPERTY, SAMPLE_PROPERTY_DEFAULT))),
+          Integer.parseInt(p.getProperty(BUFFER_PROPERTY, BUFFER_PROPERTY_DEFAULT)));
+    }
+    GeoResultSink previous = current;
+    current = sink;
+    previous.close();
+  }
+
+  /**
+   * Write the records still buffered and close the output of the process' sink; the sink is off afterwards.
+   */
+  public static synchronized void shutdown() throws IOException {
+    GeoResultSink previous = current;
+    current = OFF;
+    previous.close();
+  }
+
+  /**
+   * @return whether the calling thread's next record is kept; false for every record if the sink is off
+   */
+  public boolean isSampled() {
+    if (!enabled) {
+      return false;
+    }
+    if (sample == 1) {
+      return true;
+    }
+    int[] count = skipped.get();
+    if (++count[0] < sample) {
+      return false;
+    }
+    count[0] = 0;
+    return true;
+  }
+
+  /**
+   * Queue a record for writing; formatting happens on the writer thread, so subject and value must not change
+   * afterwards.
+   * @param subject what the record is about, e.g. a school, or null
+   * @param value the value, or null for a record without one
+   */
+  public void log(String operation, Object subject, Object value) {
+    if (!enabled || closed) {
+      return;
+    }
+    long slot;
+    do {
+      slot = tail.get();
+      if (slot - head > mask) {
+        dropped.incrementAndGet();
+        return;
+      }
+    } while (!tail.compareAndSet(slot, slot + 1));
+    ring.set((int) (slot & mask), new Record(operation, subject, value));
+  }
+
+  /**
+   * @return the records dropped so far because the buffer was full
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private void drain() {
+    try {
+      while (true) {
+        long next = head;
+        // read before the tail: once closed is seen, every record logged before the close is counted in the tail
+        boolean last = closed;
+        Record record = ring.get((int) (next & mask));
+        if (record == null) {
+          if (next == tail.get()) {
+            out.flush();
+            if (last) {
+              return;
+            }
+            LockSupport.parkNanos(1000000);
+          }
+          // else a producer has claimed the slot and is about to fill it
+          continue;
+        }
+        ring.set((int) (next & mask), null);
+        head = next + 1;
+        out.write(record.operation);
+        if (record.subject != null) {
+          out.write('\t');
+          out.write(String.valueOf(record.subject));
+        }
+        if (record.value != null) {
+          out.write('\t');
+          out.write(String.valueOf(record.value));
+        }
+        out.write('\n');
+      }
+    } catch (IOException e) {
+      System.err.println("Could not write the geo results " + e.getMessage());
+    }
+  }
+
+  private void close() throws IOException {
+    if (!enabled) {
+      return;
+    }
+    closed = true;
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (closeOut) {
+      out.close();
+    } else {
+      // System.out stays open
+      out.flush();
+    }
+    if (dropped.get() > 0) {
+      System.err.println("Dropped " + dropped.get() + " geo result records, the sink buffer was full");
+    }
+  }
+}
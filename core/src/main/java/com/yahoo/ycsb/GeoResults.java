@@ -0,0 +1,152 @@
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * How much of a geo query's result a binding consumes, and what it cost to receive it.
+ *
+ * The {@code geo_result_mode} property selects what the bindings fetch of every query:
+ * <ul>
+ * <li>{@code first}: only the first document, the default,</li>
+ * <li>{@code limit}: at most {@code geo_result_limit} documents,</li>
+ * <li>{@code drain}: every document of the result.</li>
+ * </ul>
+ *
+ * {@link GeoDBWrapper} opens a tracker for every geo query and use case, and the binding reports each document it
+ * returns with {@link #row(int)}, from any thread. A successful operation records, next to its latency,
+ * <ul>
+ * <li>{@code <operation>.result=ttfb}: time to the first document, in us,</li>
+ * <li>{@code <operation>.result=ttlb}: time to the last document, in us,</li>
+ * <li>{@code <operation>.result=docs}: the documents returned,</li>
+ * <li>{@code <operation>.result=bytes}: the bytes of these documents.</li>
+ * </ul>
+ */
+public final class GeoResults {
+
+  public static final String RESULT_MODE_PROPERTY = "geo_result_mode";
+  public static final String RESULT_MODE_PROPERTY_DEFAULT = "first";
+
+  /** Most documents per query in the limit mode. */
+  public static final String RESULT_LIMIT_PROPERTY = "geo_result_limit";
+  public static final String RESULT_LIMIT_PROPERTY_DEFAULT = "100";
+
+  /** The tracker of the calling thread when no operation is open; it ignores everything. */
+  private static final GeoResults NONE = new GeoResults(null);
+
+  private static final ThreadLocal<GeoResults> CURRENT = new ThreadLocal<GeoResults>() {
+    @Override
+    protected GeoResults initialValue() {
+      return NONE;
+    }
+  };
+
+  private final String ttfbName;
+  private final String ttlbName;
+  private final String docsName;
+  private final String bytesName;
+  /* measurement handles of the names, registered on the first end() */
+  private int ttfbHandle = -1;
+  private int ttlbHandle;
+  private int docsHandle;
+  private int bytesHandle;
+
+  private long start;
+  private final AtomicLong first = new AtomicLong();
+  private final AtomicLong last = new AtomicLong();
+  private final AtomicLong docs = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+
+  /**
+   * @param operation name the operation is measured under, e.g. GEO_NEAR; null for a tracker that ignores all rows
+   */
+  GeoResults(String operation) {
+    ttfbName = operation + ".result=ttfb";
+    ttlbName = operation + ".result=ttlb";
+    docsName = operation + ".result=docs";
+    bytesName = operation + ".result=bytes";
+  }
+
+  /**
+   * @return the most documents a query fetches under the configured mode: 1 for first, the limit for limit and 0, no
+   *         limit, for drain
+   * @throws IllegalArgumentException if the mode is unknown
+   */
+  public static int getRowLimit(Properties p) {
+    String mode = p.getProperty(RESULT_MODE_PROPERTY, RESULT_MODE_PROPERTY_DEFAULT);
+    switch (mode) {
+    case "first":
+      return 1;
+    case "limit":
+      return Math.max(1, Integer.parseInt(p.getProperty(RESULT_LIMIT_PROPERTY, RESULT_LIMIT_PROPERTY_DEFAULT)));
+    case "drain":
+      return 0;
+    default:
+      throw new IllegalArgumentException("Unknown " + RESULT_MODE_PROPERTY + " " + mode
+          + ", expected first, limit or drain");
+    }
+  }
+
+  /**
+   * @return the tracker of the operation the calling thread runs; hand it to the threads that fetch for it
+   */
+  public static GeoResults current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Report a returned document. Thread safe.
+   * @param size bytes of the document as received, 0 if unknown
+   */
+  public void row(int size) {
+    if (this == NONE) {
+      return;
+    }
+    long now = System.nanoTime();
+    first.compareAndSet(0, now);
+    last.set(now);
+    docs.incrementAndGet();
+    bytes.addAndGet(size);
+  }
+
+  /**
+   * Open the tracker for an operation of the calling thread.
+   * @param startNanos when the operation started
+   */
+  void begin(long startNanos) {
+    start = startNanos;
+    first.set(0);
+    last.set(0);
+    docs.set(0);
+    bytes.set(0);
+    CURRENT.set(this);
+  }
+
+  /**
+   * Close the tracker, recording the result series if the operation succeeded.
+   * @param endNanos when the operation returned; the time to the last document if it reported none
+   */
+  void end(Status status, long endNanos) {
+    CURRENT.set(NONE);
+    if (status == null || !status.isOk()) {
+      return;
+    }
+    Measurements measurements = Measurements.getMeasurements();
+    if (ttfbHandle < 0) {
+      ttfbHandle = measurements.register(ttfbName);
+      ttlbHandle = measurements.register(ttlbName);
+      docsHandle = measurements.register(docsName);
+      bytesHandle = measurements.register(bytesName);
+    }
+    long firstNanos = first.get();
+    long lastNanos = last.get();
+    if (firstNanos != 0) {
+      measurements.measure(ttfbHandle, (int) ((firstNanos - start) / 1000));
+    }
+    measurements.measure(ttlbHandle, (int) (((lastNanos != 0 ? lastNanos : endNanos) - start) / 1000));
+    measurements.measure(docsHandle, (int) Math.min(Integer.MAX_VALUE, docs.get()));
+    measurements.measure(bytesHandle, (int) Math.min(Integer.MAX_VALUE, bytes.get()));
+  }
+}
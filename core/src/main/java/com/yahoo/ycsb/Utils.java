@@ -45,6 +45,13 @@ public final class Utils {
     return ret;
   }
 
+  /**
+   * Replace the calling thread's generator, e.g. with a seeded one so that the choices of the thread are reproducible.
+   */
+  public static void setRandom(Random random) {
+    RNG.set(random);
+  }
+
   /**
    * Hash an integer value.
    */
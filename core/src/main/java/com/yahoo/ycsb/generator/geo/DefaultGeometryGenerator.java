@@ -0,0 +1,57 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.util.Properties;
+import java.util.Random;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * The shapes the geo workload has always queried with: geo_near around a stored incident drawn with the request
+ * distribution, a box from that incident to a random point, and two random line segments for geo_intersect. Random
+ * points lie in the square degree west of -111 and north of 33, regardless of the loaded dataset. Only the radius of
+ * geo_near is configurable.
+ */
+public class DefaultGeometryGenerator extends GeometryGenerator {
+
+  private final double radius;
+
+  public DefaultGeometryGenerator(Properties p) {
+    radius = Double.parseDouble(p.getProperty(RADIUS_PROPERTY, RADIUS_PROPERTY_DEFAULT));
+  }
+
+  private static Geometry.Point randomPoint() {
+    Random rand = GeoRandom.current();
+    return new Geometry.Point(-111 - rand.nextDouble(), 33 + rand.nextDouble());
+  }
+
+  @Override
+  public Geometry nextNearCenter(ParameterGenerator gen) {
+    return gen.getIncidentGeometryWithDistribution();
+  }
+
+  @Override
+  public double nextNearRadius(ParameterGenerator gen) {
+    return radius;
+  }
+
+  @Override
+  public Geometry nextBoxCorner(ParameterGenerator gen, Geometry corner) {
+    return randomPoint();
+  }
+
+  @Override
+  public Geometry nextIntersect(ParameterGenerator gen) {
+    Geometry.Point a = randomPoint();
+    Geometry.Point b = randomPoint();
+    Geometry.Point c = randomPoint();
+    Geometry.Point d = randomPoint();
+    return new Geometry.MultiLineString(
+        new double[]{a.getX(), a.getY(), b.getX(), b.getY()},
+        new double[]{c.getX(), c.getY(), d.getX(), d.getY()});
+  }
+
+  @Override
+  public Geometry nextUpdateLocation(ParameterGenerator gen) {
+    return randomPoint();
+  }
+}
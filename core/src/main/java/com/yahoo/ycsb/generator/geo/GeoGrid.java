@@ -0,0 +1,133 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * The grid of use cases 2 and 3: {@link GeoWorkload#GRID_COLS} by {@link GeoWorkload#GRID_ROWS} cells per data tile
+ * over the {@link GeoWorkload#LONG_OFFSET} by {@link GeoWorkload#LAT_OFFSET} area starting at
+ * {@link GeoWorkload#LONG_MIN}, {@link GeoWorkload#LAT_MIN}, with n by n tiles for a datasize of n.
+ *
+ * Cell bounds are computed arithmetically; the predicate of a cell is only built the first time it is asked for and
+ * then kept. There is one grid per datasize in the JVM, so client threads share the cells and everything the bindings
+ * render from them, see {@link Geometry#render(Geometry.Renderer)}.
+ */
+public final class GeoGrid {
+
+  private static final Map<Integer, GeoGrid> SHARED = new HashMap<Integer, GeoGrid>();
+
+  private final int columns;
+  private final int rows;
+  private final double cellWidth;
+  private final double cellHeight;
+  private final AtomicReferenceArray<DataFilter> cells;
+  private final List<DataFilter> view = new CellList();
+
+  /**
+   * @param dataSize the datasize n, i.e. the number of data tiles per row and column
+   * @return the grid shared by all generators of the JVM with this datasize
+   */
+  public static GeoGrid getShared(int dataSize) {
+    synchronized (SHARED) {
+      GeoGrid grid = SHARED.get(dataSize);
+      if (grid == null) {
+        grid = new GeoGrid(dataSize);
+        SHARED.put(dataSize, grid);
+      }
+      return grid;
+    }
+  }
+
+  private GeoGrid(int dataSize) {
+    columns = GeoWorkload.GRID_COLS * dataSize;
+    rows = GeoWorkload.GRID_ROWS * dataSize;
+    cellWidth = GeoWorkload.LONG_OFFSET / columns;
+    cellHeight = GeoWorkload.LAT_OFFSET / rows;
+    cells = new AtomicReferenceArray<DataFilter>(columns * rows);
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public int size() {
+    return columns * rows;
+  }
+
+  /**
+   * Finds the cell of a position arithmetically.
+   * @param x longitude
+   * @param y latitude
+   * @return index of the cell in row-major order, or -1 if the position is outside of the grid
+   */
+  public int getCell(double x, double y) {
+    int col = (int) Math.floor((x - GeoWorkload.LONG_MIN) * columns / GeoWorkload.LONG_OFFSET);
+    int row = (int) Math.floor((y - GeoWorkload.LAT_MIN) * rows / GeoWorkload.LAT_OFFSET);
+    if (col < 0 || col >= columns || row < 0 || row >= rows) {
+      return -1;
+    }
+    return row * columns + col;
+  }
+
+  /**
+   * @return the bounding box {minX, minY, maxX, maxY} of a cell
+   */
+  public double[] getBounds(int cell) {
+    int row = cell / columns;
+    int col = cell % columns;
+    return new double[]{GeoWorkload.LONG_MIN + cellWidth * col, GeoWorkload.LAT_MIN + cellHeight * row,
+        GeoWorkload.LONG_MIN + cellWidth * (col + 1), GeoWorkload.LAT_MIN + cellHeight * (row + 1)};
+  }
+
+  /**
+   * @return the predicate of a cell: a closed polygon through its bottom left, upper left, upper right and bottom
+   *         right corners on the "geometry" field
+   */
+  public DataFilter getPredicate(int cell) {
+    DataFilter predicate = cells.get(cell);
+    if (predicate == null) {
+      double[] box = getBounds(cell);
+      DataFilter created = new DataFilter();
+      created.setName("geometry");
+      created.setGeometry(new Geometry.Polygon(new double[]{
+          box[0], box[1], box[0], box[3], box[2], box[3], box[2], box[1], box[0], box[1]}));
+      // a racing thread may have built the same cell; keep the first
+      predicate = cells.compareAndSet(cell, null, created) ? created : cells.get(cell);
+    }
+    return predicate;
+  }
+
+  /**
+   * @return an unmodifiable view of the cell predicates in row-major order, built as they are read
+   */
+  public List<DataFilter> asList() {
+    return view;
+  }
+
+  private final class CellList extends AbstractList<DataFilter> implements RandomAccess {
+    @Override
+    public DataFilter get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Cell " + index + " of " + size());
+      }
+      return getPredicate(index);
+    }
+
+    @Override
+    public int size() {
+      return GeoGrid.this.size();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.yahoo.ycsb.Utils;
+
+/**
+ * Seedable random generator of the geo workload, so that the same configuration issues the same operation stream.
+ *
+ * Seeds form a hierarchy: the run seed {@link #SEED_PROPERTY} and the client id {@link #CLIENT_PROPERTY} give the
+ * seed of the client process, and the process seed and the YCSB thread id give the seed of a client thread, see
+ * {@link #seedThread(int)}. The thread's generator also becomes its {@link Utils#random()}, so the operation chooser
+ * and the zipfian request distributions draw from the same stream as the predicates and ids. Without a run seed every
+ * process gets a random one, as before.
+ *
+ * A generator is a SplitMix64 sequence: it is not synchronized and a step is an add and a few multiplies, unlike the
+ * compare-and-set of {@link java.util.Random}. Not thread safe; use {@link #current()}.
+ */
+public final class GeoRandom extends Random {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Seed of the run; all client processes of a run use the same one. */
+  public static final String SEED_PROPERTY = "geo_seed";
+
+  /** Number of this client process among the processes of a run, default 0. */
+  public static final String CLIENT_PROPERTY = "geo_client_id";
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private static volatile long processSeed = mix64(System.nanoTime());
+  private static final AtomicInteger UNNUMBERED_THREADS = new AtomicInteger();
+  private static final ThreadLocal<GeoRandom> THREAD = new ThreadLocal<GeoRandom>();
+
+  private long state;
+
+  public GeoRandom(long seed) {
+    super(seed);
+    state = seed;
+  }
+
+  /**
+   * Derive the seed of this client process from the run seed and the client id. Call before the client threads
+   * start; without {@link #SEED_PROPERTY} the process keeps a random seed.
+   */
+  public static void configure(Properties p) {
+    String seed = p.getProperty(SEED_PROPERTY);
+    if (seed != null) {
+      processSeed = child(Long.parseLong(seed.trim()), Long.parseLong(p.getProperty(CLIENT_PROPERTY, "0").trim()));
+    }
+  }
+
+  /**
+   * Give the calling thread the generator of a client thread, and make it the thread's {@link Utils#random()}.
+   * @param threadId the YCSB thread id, which does not depend on thread scheduling
+   * @return the thread's generator
+   */
+  public static GeoRandom seedThread(int threadId) {
+    GeoRandom random = new GeoRandom(child(processSeed, threadId));
+    THREAD.set(random);
+    Utils.setRandom(random);
+    return random;
+  }
+
+  /**
+   * @return the calling thread's generator; a thread that was never seeded, e.g. one outside the client threads, gets
+   *         the next unnumbered stream of the process
+   */
+  public static GeoRandom current() {
+    GeoRandom random = THREAD.get();
+    if (random == null) {
+      random = seedThread(-1 - UNNUMBERED_THREADS.getAndIncrement());
+    }
+    return random;
+  }
+
+  private static long child(long parent, long child) {
+    return mix64(mix64(parent) + GOLDEN_GAMMA * (child + 1));
+  }
+
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * @return an independent generator seeded from this one, e.g. for a task handed to another thread
+   */
+  public GeoRandom split() {
+    return new GeoRandom(nextLong());
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    state = seed;
+  }
+
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> (64 - bits));
+  }
+
+  @Override
+  public long nextLong() {
+    state += GOLDEN_GAMMA;
+    return mix64(state);
+  }
+
+  @Override
+  public int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+  @Override
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  /**
+   * @return a value between origin (inclusive) and bound (exclusive)
+   */
+  public int nextInt(int origin, int bound) {
+    return origin + nextInt(bound - origin);
+  }
+}
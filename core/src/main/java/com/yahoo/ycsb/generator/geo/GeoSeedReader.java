@@ -0,0 +1,179 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the features of a seed dataset file one at a time, so that files far larger than the heap can be read.
+ *
+ * Two layouts are understood:
+ * <ul>
+ * <li>NDJSON: one feature object per line, for files named {@code *.ndjson}, {@code *.jsonl} or {@code *.geojsonl},
+ * optionally followed by {@code .gz},</li>
+ * <li>GeoJSON: a FeatureCollection, whose {@code features} array is read element by element, for any other name.</li>
+ * </ul>
+ * Gzip compressed files are recognized by their magic bytes and inflated on the fly. Plain files are memory-mapped
+ * a window at a time instead of being copied through a stream buffer.
+ *
+ * Features are returned as their JSON text; the reader only splits the input, it does not parse it. Not thread safe.
+ */
+public final class GeoSeedReader implements Closeable {
+
+  /** Bytes mapped at a time; a mapped buffer cannot exceed 2 GB. */
+  private static final long WINDOW_SIZE = 1L << 30;
+  private static final int STREAM_BUFFER_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+  private final InputStream stream;
+  private final byte[] streamBuffer;
+  private final long size;
+  private long position;
+  private ByteBuffer window;
+
+  /** Nesting depth at which the features start: 0 for NDJSON, 2 for the features array of a FeatureCollection. */
+  private final int featureDepth;
+  private int depth;
+  private boolean arrayAtFeatureDepth;
+  private boolean inString;
+  private boolean escaped;
+
+  private byte[] feature = new byte[4096];
+  private int featureLength = -1;
+
+  public GeoSeedReader(File file) throws IOException {
+    String name = file.getName().toLowerCase();
+    if (name.endsWith(".gz")) {
+      name = name.substring(0, name.length() - 3);
+    }
+    featureDepth = name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".geojsonl") ? 0 : 2;
+
+    if (isGzip(file)) {
+      channel = null;
+      size = 0;
+      stream = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE),
+          STREAM_BUFFER_SIZE);
+      streamBuffer = new byte[STREAM_BUFFER_SIZE];
+    } else {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      channel = raf.getChannel();
+      size = channel.size();
+      stream = null;
+      streamBuffer = null;
+    }
+  }
+
+  private static boolean isGzip(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return in.read() == 0x1f && in.read() == 0x8b;
+    }
+  }
+
+  /**
+   * @return the next buffer of input, or null at the end of the file
+   */
+  private ByteBuffer nextWindow() throws IOException {
+    if (channel != null) {
+      if (position >= size) {
+        return null;
+      }
+      long length = Math.min(WINDOW_SIZE, size - position);
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      position += length;
+      return mapped;
+    }
+    int read = stream.read(streamBuffer);
+    while (read == 0) {
+      read = stream.read(streamBuffer);
+    }
+    return read < 0 ? null : ByteBuffer.wrap(streamBuffer, 0, read);
+  }
+
+  /**
+   * @return the JSON text of the next feature, or null once the file is exhausted
+   */
+  public String next() throws IOException {
+    while (true) {
+      if (window == null || !window.hasRemaining()) {
+        window = nextWindow();
+        if (window == null) {
+          return null;
+        }
+      }
+      while (window.hasRemaining()) {
+        byte b = window.get();
+        if (featureLength >= 0) {
+          append(b);
+        }
+        if (inString) {
+          if (escaped) {
+            escaped = false;
+          } else if (b == '\\') {
+            escaped = true;
+          } else if (b == '"') {
+            inString = false;
+          }
+          continue;
+        }
+        switch (b) {
+        case '"':
+          inString = true;
+          break;
+        case '{':
+          if (depth == featureDepth && featureLength < 0 && (featureDepth == 0 || arrayAtFeatureDepth)) {
+            featureLength = 0;
+            append(b);
+          }
+          depth++;
+          break;
+        case '[':
+          if (depth == featureDepth - 1) {
+            arrayAtFeatureDepth = true;
+          }
+          depth++;
+          break;
+        case '}':
+        case ']':
+          depth--;
+          if (depth == featureDepth - 1) {
+            arrayAtFeatureDepth = false;
+          }
+          if (depth == featureDepth && b == '}' && featureLength >= 0) {
+            String text = new String(feature, 0, featureLength, StandardCharsets.UTF_8);
+            featureLength = -1;
+            return text;
+          }
+          break;
+        default:
+          break;
+        }
+      }
+    }
+  }
+
+  private void append(byte b) {
+    if (featureLength == feature.length) {
+      feature = Arrays.copyOf(feature, feature.length * 2);
+    }
+    feature[featureLength++] = b;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    if (channel != null) {
+      channel.close();
+    } else {
+      stream.close();
+    }
+  }
+}
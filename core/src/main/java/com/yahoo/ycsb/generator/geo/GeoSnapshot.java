@@ -0,0 +1,351 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * Versioned binary image of the prepared geo dataset, so that a restarted client can fill its generator without
+ * parsing and tokenizing every seed document again.
+ *
+ * The file holds, per table, the storage keys, document ids and bodies of the stored documents next to their
+ * geometries in columns: one type per document, part and position offsets, and all longitudes and all latitudes as
+ * plain double arrays, plus the bounding box of every document. Property strings such as school names are interned
+ * into one string table. The bounding boxes of the grid cells of use cases 2 and 3 follow the tables. Everything is
+ * big-endian; a reader memory-maps the file and bulk-copies the columns out of it.
+ *
+ * <pre>
+ * int magic "GEOS", int version, int datasize, byte single table,
+ * int strings, (int length, UTF-8)*,
+ * int tables, (name, int total docs, int docs, int[docs] keys, (int length, UTF-8)[docs] doc ids, int[docs] names,
+ *              byte[docs] types, int[docs + 1] part offsets, int[parts + 1] position offsets,
+ *              double[positions] x, double[positions] y, double[4 * docs] bounds,
+ *              int[docs + 1] body offsets, byte[] bodies)*,
+ * int cells, double[4 * cells] bounds
+ * </pre>
+ */
+final class GeoSnapshot {
+
+  static final int MAGIC = 0x47454F53;
+  static final int VERSION = 1;
+
+  private static final String[] TYPES = {Geometry.TYPE_POINT, Geometry.TYPE_POLYGON, Geometry.TYPE_MULTILINESTRING};
+
+  /**
+   * The stored documents of one table.
+   */
+  static final class Table {
+    private final String name;
+    private final int totalDocs;
+    private final List<Integer> keys = new ArrayList<Integer>();
+    private final List<String> docIds = new ArrayList<String>();
+    private final List<String> names = new ArrayList<String>();
+    private final List<Geometry> geometries = new ArrayList<Geometry>();
+    private final List<String> bodies = new ArrayList<String>();
+
+    Table(String name, int totalDocs) {
+      this.name = name;
+      this.totalDocs = totalDocs;
+    }
+
+    void add(int key, String docId, String docName, Geometry geometry, String body) {
+      keys.add(key);
+      docIds.add(docId);
+      names.add(docName);
+      geometries.add(geometry);
+      bodies.add(body);
+    }
+
+    String getName() {
+      return name;
+    }
+
+    int getTotalDocs() {
+      return totalDocs;
+    }
+
+    int size() {
+      return keys.size();
+    }
+
+    int getKey(int i) {
+      return keys.get(i);
+    }
+
+    String getDocId(int i) {
+      return docIds.get(i);
+    }
+
+    /**
+     * @return the name property of the document, or null
+     */
+    String getDocName(int i) {
+      return names.get(i);
+    }
+
+    Geometry getGeometry(int i) {
+      return geometries.get(i);
+    }
+
+    String getBody(int i) {
+      return bodies.get(i);
+    }
+  }
+
+  private final int dataSize;
+  private final boolean singleTable;
+  private final List<Table> tables;
+  private final List<double[]> gridBounds;
+
+  GeoSnapshot(int dataSize, boolean singleTable, List<Table> tables, List<double[]> gridBounds) {
+    this.dataSize = dataSize;
+    this.singleTable = singleTable;
+    this.tables = tables;
+    this.gridBounds = gridBounds;
+  }
+
+  int getDataSize() {
+    return dataSize;
+  }
+
+  boolean isSingleTable() {
+    return singleTable;
+  }
+
+  List<Table> getTables() {
+    return tables;
+  }
+
+  /**
+   * @return the bounding boxes of the grid cells in row-major order
+   */
+  List<double[]> getGridBounds() {
+    return gridBounds;
+  }
+
+  private static int typeCode(String type) {
+    for (int i = 0; i < TYPES.length; i++) {
+      if (TYPES[i].equals(type)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported geometry type " + type);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Write the snapshot, replacing the file.
+   */
+  void write(File file) throws IOException {
+    Map<String, Integer> interned = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+    for (Table table : tables) {
+      for (String docName : table.names) {
+        if (docName != null && !interned.containsKey(docName)) {
+          interned.put(docName, strings.size());
+          strings.add(docName);
+        }
+      }
+    }
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(dataSize);
+      out.writeBoolean(singleTable);
+      out.writeInt(strings.size());
+      for (String string : strings) {
+        writeString(out, string);
+      }
+
+      out.writeInt(tables.size());
+      for (Table table : tables) {
+        int docs = table.size();
+        writeString(out, table.name);
+        out.writeInt(table.totalDocs);
+        out.writeInt(docs);
+        for (int key : table.keys) {
+          out.writeInt(key);
+        }
+        for (String docId : table.docIds) {
+          writeString(out, docId);
+        }
+        for (String docName : table.names) {
+          out.writeInt(docName == null ? -1 : interned.get(docName));
+        }
+        for (Geometry geometry : table.geometries) {
+          out.writeByte(typeCode(geometry.getType()));
+        }
+        int parts = 0;
+        out.writeInt(0);
+        for (Geometry geometry : table.geometries) {
+          parts += geometry.getPartCount();
+          out.writeInt(parts);
+        }
+        int positions = 0;
+        out.writeInt(0);
+        for (Geometry geometry : table.geometries) {
+          for (int i = 0; i < geometry.getPartCount(); i++) {
+            positions += geometry.getPositionCount(i);
+            out.writeInt(positions);
+          }
+        }
+        for (Geometry geometry : table.geometries) {
+          for (int i = 0; i < geometry.getPartCount(); i++) {
+            for (int j = 0; j < geometry.getPositionCount(i); j++) {
+              out.writeDouble(geometry.getX(i, j));
+            }
+          }
+        }
+        for (Geometry geometry : table.geometries) {
+          for (int i = 0; i < geometry.getPartCount(); i++) {
+            for (int j = 0; j < geometry.getPositionCount(i); j++) {
+              out.writeDouble(geometry.getY(i, j));
+            }
+          }
+        }
+        for (Geometry geometry : table.geometries) {
+          for (double bound : geometry.getBounds()) {
+            out.writeDouble(bound);
+          }
+        }
+        List<byte[]> encoded = new ArrayList<byte[]>(docs);
+        int offset = 0;
+        out.writeInt(0);
+        for (String body : table.bodies) {
+          byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+          encoded.add(bytes);
+          offset += bytes.length;
+          out.writeInt(offset);
+        }
+        for (byte[] bytes : encoded) {
+          out.write(bytes);
+        }
+      }
+
+      out.writeInt(gridBounds.size());
+      for (double[] bounds : gridBounds) {
+        for (double bound : bounds) {
+          out.writeDouble(bound);
+        }
+      }
+    }
+  }
+
+  private static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int[] readInts(ByteBuffer in, int count) {
+    int[] values = new int[count];
+    in.asIntBuffer().get(values);
+    in.position(in.position() + count * 4);
+    return values;
+  }
+
+  private static double[] readDoubles(ByteBuffer in, int count) {
+    double[] values = new double[count];
+    DoubleBuffer doubles = in.asDoubleBuffer();
+    doubles.get(values);
+    in.position(in.position() + count * 8);
+    return values;
+  }
+
+  /**
+   * Memory-map and read a snapshot.
+   * @return the snapshot, or null if the file is not a snapshot of this version
+   */
+  static GeoSnapshot read(File file) throws IOException {
+    ByteBuffer in;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot " + file + " is larger than 2 GB");
+      }
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+      return null;
+    }
+    int dataSize = in.getInt();
+    boolean singleTable = in.get() != 0;
+    String[] strings = new String[in.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = readString(in);
+    }
+
+    int tableCount = in.getInt();
+    List<Table> tables = new ArrayList<Table>(tableCount);
+    for (int t = 0; t < tableCount; t++) {
+      Table table = new Table(readString(in), in.getInt());
+      int docs = in.getInt();
+      int[] keys = readInts(in, docs);
+      String[] docIds = new String[docs];
+      for (int i = 0; i < docs; i++) {
+        docIds[i] = readString(in);
+      }
+      int[] nameIndex = readInts(in, docs);
+      byte[] types = new byte[docs];
+      in.get(types);
+      int[] partOffsets = readInts(in, docs + 1);
+      int[] positionOffsets = readInts(in, partOffsets[docs] + 1);
+      int positions = positionOffsets[partOffsets[docs]];
+      double[] xs = readDoubles(in, positions);
+      double[] ys = readDoubles(in, positions);
+      double[] bounds = readDoubles(in, docs * 4);
+      int[] bodyOffsets = readInts(in, docs + 1);
+      int bodyStart = in.position();
+
+      for (int i = 0; i < docs; i++) {
+        double[][] parts = new double[partOffsets[i + 1] - partOffsets[i]][];
+        for (int p = 0; p < parts.length; p++) {
+          int first = positionOffsets[partOffsets[i] + p];
+          int last = positionOffsets[partOffsets[i] + p + 1];
+          double[] part = new double[(last - first) * 2];
+          for (int j = first; j < last; j++) {
+            part[(j - first) * 2] = xs[j];
+            part[(j - first) * 2 + 1] = ys[j];
+          }
+          parts[p] = part;
+        }
+        double[] box = {bounds[i * 4], bounds[i * 4 + 1], bounds[i * 4 + 2], bounds[i * 4 + 3]};
+        byte[] body = new byte[bodyOffsets[i + 1] - bodyOffsets[i]];
+        in.position(bodyStart + bodyOffsets[i]);
+        in.get(body);
+        table.add(keys[i], docIds[i], nameIndex[i] < 0 ? null : strings[nameIndex[i]],
+            Geometry.of(TYPES[types[i]], parts, box), new String(body, StandardCharsets.UTF_8));
+      }
+      in.position(bodyStart + bodyOffsets[docs]);
+      tables.add(table);
+    }
+
+    int cells = in.getInt();
+    double[] cellBounds = readDoubles(in, cells * 4);
+    List<double[]> gridBounds = new ArrayList<double[]>(cells);
+    for (int i = 0; i < cells; i++) {
+      gridBounds.add(new double[]{cellBounds[i * 4], cellBounds[i * 4 + 1], cellBounds[i * 4 + 2],
+          cellBounds[i * 4 + 3]});
+    }
+    return new GeoSnapshot(dataSize, singleTable, tables, gridBounds);
+  }
+}
@@ -0,0 +1,119 @@
+package com.yahoo.ycsb.generator.geo;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded cache of the parsed parts of stored documents, keyed by their storage key.
+ *
+ * Stored documents never change once written, so a document only has to be parsed the first time one of its
+ * predicates is built. The cache is shared by all generators of the JVM, so it takes no lock: lookups go to a
+ * {@link ConcurrentHashMap} and only mark the entry as used, and eviction approximates LRU with the CLOCK (second
+ * chance) algorithm, dropping the oldest entry that was not used since the clock last passed it. The size may
+ * briefly overshoot the capacity while several threads add entries at once.
+ */
+final class GeometryCache {
+
+  /**
+   * Parsed view of a stored document.
+   */
+  static final class Entry {
+    private final Geometry geometry;
+    private final String name;
+
+    Entry(Geometry geometry, String name) {
+      this.geometry = geometry;
+      this.name = name;
+    }
+
+    Geometry getGeometry() {
+      return geometry;
+    }
+
+    String getName() {
+      return name;
+    }
+  }
+
+  /**
+   * A cached entry and whether it was used since the clock last passed it.
+   */
+  private static final class Node {
+    private final String key;
+    private final Entry entry;
+    private volatile boolean referenced;
+
+    Node(String key, Entry entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+  }
+
+  private static GeometryCache shared;
+
+  private final int capacity;
+  private final ConcurrentHashMap<String, Node> entries;
+  /** The nodes in the order the clock hand visits them. */
+  private final ConcurrentLinkedQueue<Node> clock = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  static synchronized GeometryCache getShared(final int capacity) {
+    if (shared == null) {
+      shared = new GeometryCache(capacity);
+    }
+    return shared;
+  }
+
+  GeometryCache(final int capacity) {
+    this.capacity = capacity;
+    entries = new ConcurrentHashMap<>(Math.min(capacity, 1024));
+  }
+
+  Entry get(String key) {
+    Node node = entries.get(key);
+    if (node == null) {
+      return null;
+    }
+    // only write when the flag changes, so hot entries do not bounce their cache line between cores
+    if (!node.referenced) {
+      node.referenced = true;
+    }
+    return node.entry;
+  }
+
+  /**
+   * Add the parsed document unless the key is already cached; both parse the same unchanging document.
+   */
+  void put(String key, Entry entry) {
+    Node node = new Node(key, entry);
+    if (entries.putIfAbsent(key, node) != null) {
+      return;
+    }
+    clock.offer(node);
+    if (size.incrementAndGet() > capacity) {
+      evict();
+    }
+  }
+
+  private void evict() {
+    while (size.get() > capacity) {
+      Node node = clock.poll();
+      if (node == null) {
+        return;
+      }
+      if (node.referenced) {
+        node.referenced = false;
+        clock.offer(node);
+      } else if (entries.remove(node.key, node)) {
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  int size() {
+    return size.get();
+  }
+}
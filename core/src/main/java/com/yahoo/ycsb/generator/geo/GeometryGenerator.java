@@ -0,0 +1,78 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.util.Properties;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * Produces the geometries of the geo query predicates: the point and radius of geo_near, the corners of geo_box, the
+ * geometry of geo_intersect and the new location of geo_update.
+ *
+ * The {@code geo_query_generator} property selects the implementation:
+ * <ul>
+ * <li>{@code default}: the shapes the workload always queried with, see {@link DefaultGeometryGenerator},</li>
+ * <li>{@code synthetic}: shapes of a configured size or selectivity over the extent of the loaded dataset, see
+ * {@link SyntheticGeometryGenerator},</li>
+ * <li>the name of any other subclass, which needs a public constructor taking the workload properties.</li>
+ * </ul>
+ *
+ * One generator is shared by all client threads, so implementations must be thread safe.
+ */
+public abstract class GeometryGenerator {
+
+  public static final String GENERATOR_PROPERTY = "geo_query_generator";
+  public static final String GENERATOR_PROPERTY_DEFAULT = "default";
+
+  /** Radius of geo_near in meters. */
+  public static final String RADIUS_PROPERTY = "geo_query_radius";
+  public static final String RADIUS_PROPERTY_DEFAULT = "1000";
+
+  /** Meters of a degree of latitude, and of a degree of longitude at the equator. */
+  public static final double METERS_PER_DEGREE = 111320.0;
+
+  /**
+   * @throws IllegalArgumentException if the configured generator cannot be created
+   */
+  public static GeometryGenerator create(Properties p) {
+    String name = p.getProperty(GENERATOR_PROPERTY, GENERATOR_PROPERTY_DEFAULT);
+    switch (name) {
+    case "default":
+      return new DefaultGeometryGenerator(p);
+    case "synthetic":
+      return new SyntheticGeometryGenerator(p);
+    default:
+      try {
+        return Class.forName(name).asSubclass(GeometryGenerator.class).getConstructor(Properties.class)
+            .newInstance(p);
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        throw new IllegalArgumentException("Cannot create the " + GENERATOR_PROPERTY + " " + name, e);
+      }
+    }
+  }
+
+  /**
+   * @return the center of a geo_near query; geo_box uses it as its first corner
+   */
+  public abstract Geometry nextNearCenter(ParameterGenerator gen);
+
+  /**
+   * @return the radius of a geo_near query in meters
+   */
+  public abstract double nextNearRadius(ParameterGenerator gen);
+
+  /**
+   * @param corner the first corner of the box, the center of the geo_near query
+   * @return the opposite corner of a geo_box query
+   */
+  public abstract Geometry nextBoxCorner(ParameterGenerator gen, Geometry corner);
+
+  /**
+   * @return the geometry of a geo_intersect query
+   */
+  public abstract Geometry nextIntersect(ParameterGenerator gen);
+
+  /**
+   * @return the location a geo_update moves a document to
+   */
+  public abstract Geometry nextUpdateLocation(ParameterGenerator gen);
+}
@@ -8,6 +8,7 @@ import net.spy.memcached.internal.OperationFuture;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 //import java.net.InetSocketAddress;
 
@@ -155,6 +156,16 @@ public class MemcachedGenerator extends ParameterGenerator {
     }
   }
 
+  @Override
+  protected Future<Map<String, Object>> getBulkValAsync(Collection<String> keys) {
+    return client.asyncGetBulk(keys);
+  }
+
+  @Override
+  protected Future<Long> incrementAsync(String key, int step) {
+    return client.asyncIncr(key, step);
+  }
+
   @Override
   protected int increment(String key, int step) {
     try {
@@ -0,0 +1,96 @@
+package com.yahoo.ycsb.generator.geo;
+
+import com.yahoo.ycsb.workloads.CoreWorkload;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Storage-based generator that keeps the pre-generated documents and counters in an in-process, off-heap
+ * {@link OffHeapStore} instead of a memcached server, so predicate generation costs no network round trips.
+ *
+ * All generators of one JVM share the same store. Without a file the data only lives as long as the process, so the
+ * documents have to be loaded by the same process that runs the transactions; with
+ * {@link #OFFHEAP_FILE_PROPERTY} set, the store is memory-mapped from that file and survives between the load and
+ * the transaction phase.
+ */
+public class OffHeapGenerator extends ParameterGenerator {
+
+  /**
+   * File to memory-map the store from. Default is none, i.e. direct memory.
+   */
+  public static final String OFFHEAP_FILE_PROPERTY = "geo_offheap_file";
+
+  /**
+   * Size of one arena chunk in bytes. A single document must fit into one chunk.
+   */
+  public static final String OFFHEAP_CHUNK_SIZE_PROPERTY = "geo_offheap_chunksize";
+
+  private final OffHeapStore store;
+
+  public OffHeapGenerator(Properties p, String totalDocs) throws IOException {
+    super(p);
+    store = openStore(p);
+    initCounters(p, GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER, totalDocs,
+        GEO_SYSTEMFIELD_TOTALDOCS_COUNT_INCIDENTS, GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS,
+        GEO_SYSTEMFIELD_STORAGEDOCS_COUNT_INCIDENTS);
+  }
+
+  /**
+   *  Constructor for a store containing 3 tables' worth of data.
+   */
+  public OffHeapGenerator(Properties p, String totalDocs1, String totalDocs2, String totalDocs3)
+      throws IOException {
+    this(p, totalDocs1);
+    initCounters(p, GEO_DOCUMENT_PREFIX_SCHOOLS + GEO_SYSTEMFIELD_DELIMITER, totalDocs2,
+        GEO_SYSTEMFIELD_TOTALDOCS_COUNT_SCHOOLS, GEO_SYSTEMFIELD_INSERTDOC_COUNTER_SCHOOLS,
+        GEO_SYSTEMFIELD_STORAGEDOCS_COUNT_SCHOOLS);
+    initCounters(p, GEO_DOCUMENT_PREFIX_BUILDINGS + GEO_SYSTEMFIELD_DELIMITER, totalDocs3,
+        GEO_SYSTEMFIELD_TOTALDOCS_COUNT_BUILDINGS, GEO_SYSTEMFIELD_INSERTDOC_COUNTER_BUILDINGS,
+        GEO_SYSTEMFIELD_STORAGEDOCS_COUNT_BUILDINGS);
+  }
+
+  private static OffHeapStore openStore(Properties p) throws IOException {
+    int chunkSize = Integer.parseInt(p.getProperty(OFFHEAP_CHUNK_SIZE_PROPERTY,
+        String.valueOf(OffHeapStore.DEFAULT_CHUNK_SIZE)));
+    return OffHeapStore.getShared(p.getProperty(OFFHEAP_FILE_PROPERTY), chunkSize);
+  }
+
+  private void initCounters(Properties p, String prefix, String totalDocs, String totalField,
+                            String insertField, String storageField) {
+    int insertOffset = Integer.parseInt(p.getProperty(CoreWorkload.INSERT_START_PROPERTY,
+        CoreWorkload.INSERT_START_PROPERTY_DEFAULT));
+    store.addCounter(prefix + totalField, Long.parseLong(totalDocs));
+    store.addCounter(prefix + insertField, Long.parseLong(totalDocs) + 1 + insertOffset);
+    store.addCounter(prefix + storageField, 0);
+  }
+
+  /**
+   * Flush a file-backed store so a later process can reopen it.
+   */
+  public void sync() throws IOException {
+    store.sync();
+  }
+
+  @Override
+  protected void setVal(String key, String value) {
+    store.add(key, value);
+  }
+
+  @Override
+  protected String getVal(String key) {
+    return store.get(key);
+  }
+
+  @Override
+  protected Map<String, Object> getBulkVal(Collection<String> keys) {
+    return store.getBulk(keys);
+  }
+
+  @Override
+  protected int increment(String key, int step) {
+    return (int) store.incr(key, step);
+  }
+}
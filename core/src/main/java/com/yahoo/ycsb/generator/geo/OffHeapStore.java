@@ -0,0 +1,327 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process key/value store backing the {@link OffHeapGenerator}.
+ *
+ * Values live outside the Java heap in an append-only arena made of fixed-size chunks, either direct buffers or,
+ * when a file is given, memory-mapped regions of that file. The on-heap index only keeps one packed long per key
+ * (chunk number and offset), so the heap cost of the stored documents stays small and GC does not have to trace them.
+ * Counters are plain atomic longs.
+ *
+ * The store follows the memcached semantics the generators rely on: {@link #add} never overwrites an existing key
+ * and {@link #incr} returns -1 for a missing key.
+ *
+ * A file-backed store can be reopened by a later process (e.g. a transaction phase after the load phase): records
+ * are scanned on open to rebuild the index, and counters are persisted by {@link #sync}, which appends a record for a
+ * counter the first time and overwrites its value in place afterwards. Only one process may use a file at a time.
+ */
+public final class OffHeapStore {
+
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final byte RECORD_VALUE = 1;
+  private static final byte RECORD_COUNTER = 2;
+
+  /** Key length marker meaning "the rest of this chunk is unused". */
+  private static final int CHUNK_END = -1;
+
+  /** Characters of a persisted counter value, enough for any long, so that a later sync fits into the record. */
+  private static final int COUNTER_WIDTH = 20;
+
+  private static final Map<String, OffHeapStore> SHARED = new HashMap<>();
+
+  private final int chunkSize;
+  private final FileChannel channel;
+
+  private final ConcurrentHashMap<String, Long> index = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+  /** Handles of the persisted counter records, guarded by this. */
+  private final Map<String, Long> counterRecords = new HashMap<>();
+
+  private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+  private int writeChunk = -1;
+  private int writeOffset;
+
+  /**
+   * Return the store shared by every generator in this JVM for the given file (or the anonymous direct-memory
+   * store when path is null).
+   */
+  public static OffHeapStore getShared(String path, int chunkSize) throws IOException {
+    String key = path == null ? "" : new File(path).getCanonicalPath();
+    synchronized (SHARED) {
+      OffHeapStore store = SHARED.get(key);
+      if (store == null) {
+        store = new OffHeapStore(path, chunkSize);
+        SHARED.put(key, store);
+      }
+      return store;
+    }
+  }
+
+  /**
+   * @param path file to memory-map, or null to allocate direct buffers
+   * @param chunkSize size of one arena chunk in bytes; no single record may be larger
+   */
+  public OffHeapStore(String path, int chunkSize) throws IOException {
+    if (chunkSize < 1024) {
+      throw new IllegalArgumentException("chunk size must be at least 1024 bytes, was " + chunkSize);
+    }
+    this.chunkSize = chunkSize;
+    if (path == null) {
+      channel = null;
+    } else {
+      channel = new RandomAccessFile(path, "rw").getChannel();
+      recover();
+    }
+  }
+
+  /**
+   * Store the value unless the key is already present.
+   */
+  public void add(String key, String value) {
+    if (index.containsKey(key) || counters.containsKey(key)) {
+      return;
+    }
+    synchronized (this) {
+      if (index.containsKey(key)) {
+        return;
+      }
+      index.put(key, append(RECORD_VALUE, key, value));
+    }
+  }
+
+  /**
+   * Create a counter with the given initial value unless it already exists.
+   */
+  public void addCounter(String key, long initial) {
+    if (!counters.containsKey(key)) {
+      counters.putIfAbsent(key, new AtomicLong(initial));
+    }
+  }
+
+  /**
+   * @return the stored value, the decimal value of a counter, or null if the key is unknown
+   */
+  public String get(String key) {
+    AtomicLong counter = counters.get(key);
+    if (counter != null) {
+      return String.valueOf(counter.get());
+    }
+    Long handle = index.get(key);
+    if (handle == null) {
+      return null;
+    }
+    return read(handle);
+  }
+
+  /**
+   * @return the found keys mapped to their values; unknown keys are left out
+   */
+  public Map<String, Object> getBulk(Collection<String> keys) {
+    Map<String, Object> result = new HashMap<>(keys.size() * 2);
+    for (String key : keys) {
+      String value = get(key);
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Atomically add step to a counter. A numeric value stored with {@link #add} is promoted to a counter on first use.
+   *
+   * @return the new value, or -1 if the key does not exist or is not numeric
+   */
+  public long incr(String key, int step) {
+    AtomicLong counter = counters.get(key);
+    if (counter == null) {
+      Long handle = index.get(key);
+      if (handle == null) {
+        return -1;
+      }
+      long initial;
+      try {
+        initial = Long.parseLong(read(handle).trim());
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+      counters.putIfAbsent(key, new AtomicLong(initial));
+      counter = counters.get(key);
+    }
+    return counter.addAndGet(step);
+  }
+
+  /**
+   * @return number of stored values, not counting counters
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Persist the current counter values and flush a file-backed store to disk. No-op for direct memory.
+   */
+  public synchronized void sync() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+      String value = toCounterValue(entry.getValue().get());
+      Long handle = counterRecords.get(entry.getKey());
+      if (handle == null) {
+        counterRecords.put(entry.getKey(), append(RECORD_COUNTER, entry.getKey(), value));
+      } else {
+        writeBytes(chunks[chunkOf(handle)], offsetOf(handle) + 4, value.getBytes(UTF8));
+      }
+    }
+    channel.force(false);
+  }
+
+  /**
+   * @return the value right-aligned in {@link #COUNTER_WIDTH} characters
+   */
+  private static String toCounterValue(long value) {
+    String digits = Long.toString(value);
+    StringBuilder padded = new StringBuilder(COUNTER_WIDTH);
+    for (int i = digits.length(); i < COUNTER_WIDTH; i++) {
+      padded.append(' ');
+    }
+    return padded.append(digits).toString();
+  }
+
+  /**
+   * Record layout: type byte, key length, key bytes, value length, value bytes. Records never span chunks.
+   *
+   * @return packed handle of the record's value length field
+   */
+  private long append(byte type, String key, String value) {
+    byte[] k = key.getBytes(UTF8);
+    byte[] v = value.getBytes(UTF8);
+    int recordSize = 1 + 4 + k.length + 4 + v.length;
+    // leave room for the chunk end marker
+    if (recordSize + 4 > chunkSize) {
+      throw new IllegalArgumentException("Record for key " + key + " is " + recordSize
+          + " bytes, which does not fit into an arena chunk of " + chunkSize + " bytes");
+    }
+    if (writeChunk < 0 || writeOffset + recordSize + 4 > chunkSize) {
+      if (writeChunk >= 0) {
+        chunks[writeChunk].putInt(writeOffset, CHUNK_END);
+      }
+      newChunk();
+    }
+    ByteBuffer buf = chunks[writeChunk];
+    int pos = writeOffset;
+    buf.putInt(pos + 1, k.length);
+    writeBytes(buf, pos + 5, k);
+    int valuePos = pos + 5 + k.length;
+    buf.putInt(valuePos, v.length);
+    writeBytes(buf, valuePos + 4, v);
+    // the type byte goes last so a torn record is never seen as valid during recovery
+    buf.put(pos, type);
+    writeOffset = pos + recordSize;
+    return pack(writeChunk, valuePos);
+  }
+
+  private void newChunk() {
+    int next = writeChunk + 1;
+    ByteBuffer chunk;
+    try {
+      chunk = channel == null ? ByteBuffer.allocateDirect(chunkSize)
+          : channel.map(FileChannel.MapMode.READ_WRITE, (long) next * chunkSize, chunkSize);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to map arena chunk " + next, e);
+    }
+    ByteBuffer[] grown = new ByteBuffer[next + 1];
+    System.arraycopy(chunks, 0, grown, 0, chunks.length);
+    grown[next] = chunk;
+    chunks = grown;
+    writeChunk = next;
+    writeOffset = 0;
+  }
+
+  private String read(long handle) {
+    ByteBuffer buf = chunks[chunkOf(handle)].duplicate();
+    int pos = offsetOf(handle);
+    int len = buf.getInt(pos);
+    byte[] bytes = new byte[len];
+    buf.position(pos + 4);
+    buf.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  /**
+   * Rebuild the index and counters from an existing file.
+   */
+  private void recover() throws IOException {
+    long chunkCount = channel.size() / chunkSize;
+    for (int c = 0; c < chunkCount; c++) {
+      newChunk();
+      ByteBuffer buf = chunks[c].duplicate();
+      int pos = 0;
+      while (pos + 5 <= chunkSize) {
+        // anything but a record type is either the chunk end marker or space that was never written
+        byte type = buf.get(pos);
+        if (type != RECORD_VALUE && type != RECORD_COUNTER) {
+          break;
+        }
+        int keyLen = buf.getInt(pos + 1);
+        byte[] k = new byte[keyLen];
+        buf.position(pos + 5);
+        buf.get(k);
+        String key = new String(k, UTF8);
+        int valuePos = pos + 5 + keyLen;
+        int valueLen = buf.getInt(valuePos);
+        long handle = pack(c, valuePos);
+        if (type == RECORD_VALUE) {
+          if (!index.containsKey(key)) {
+            index.put(key, handle);
+          }
+        } else {
+          // files of older versions appended the counters on every sync, so the last record wins; only a record of
+          // the full width can be overwritten by the next sync
+          counters.put(key, new AtomicLong(Long.parseLong(read(handle).trim())));
+          if (valueLen == COUNTER_WIDTH) {
+            counterRecords.put(key, handle);
+          } else {
+            counterRecords.remove(key);
+          }
+        }
+        pos = valuePos + 4 + valueLen;
+      }
+      writeOffset = pos;
+    }
+  }
+
+  private static void writeBytes(ByteBuffer buf, int pos, byte[] bytes) {
+    ByteBuffer dup = buf.duplicate();
+    dup.position(pos);
+    dup.put(bytes);
+  }
+
+  private static long pack(int chunk, int offset) {
+    return ((long) chunk << 32) | (offset & 0xFFFFFFFFL);
+  }
+
+  private static int chunkOf(long handle) {
+    return (int) (handle >>> 32);
+  }
+
+  private static int offsetOf(long handle) {
+    return (int) handle;
+  }
+}
@@ -2,9 +2,17 @@ package com.yahoo.ycsb.generator.geo;
 
 import com.yahoo.ycsb.generator.ZipfianGenerator;
 import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoTrace;
+import com.yahoo.ycsb.workloads.geo.Geometry;
 import com.yahoo.ycsb.workloads.geo.GeoWorkload;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import org.json.*;
 
 
@@ -17,22 +25,20 @@ import org.json.*;
  *
  * It also provides the ability to query rich JSON documents by splitting JSON documents into query predicates
  * (field, value, type, field-value relation, logical operation)
+ *
+ * One generator is shared by all client threads. The dataset it reads (stored documents, counters, school and grid
+ * predicates) is shared and never modified once built; everything that moves while a thread works (the predicate it
+ * built last, its synthesis offset, its load position) lives in a per-thread {@link Cursor}.
  */
 public abstract class ParameterGenerator {
 
-  private int totalDocsCountIncidents = 0;
-  private int totalDocsCountSchools = 0;
-  private int totalDocsCountBuildings = 0;
+  private volatile int totalDocsCountIncidents = 0;
+  private volatile int totalDocsCountSchools = 0;
+  private volatile int totalDocsCountBuildings = 0;
     
-  private int storedDocsCountIncidents = 0;
-  
-  private int nextInsertDocIdIncidents = 0;
-  private int nextInsertDocIdSchools = 0;
-  private int nextInsertDocIdBuildings = 0;
-  
-  private Random rand = new Random();
+  private volatile int storedDocsCountIncidents = 0;
 
-  private boolean allValuesInitialized = false;
+  private volatile boolean allValuesInitialized = false;
   private Properties properties;
   private int queryLimitMin = 0;
   private int queryLimitMax = 0;
@@ -41,16 +47,48 @@ public abstract class ParameterGenerator {
 
   private boolean isZipfian = false;
   private boolean isLatest = false;
-  private ZipfianGenerator zipfianGenerator = null;
+  private volatile ZipfianGenerator zipfianGenerator = null;
   
   /* synthesis will result in a grid of size n^2 */
-  private int synthesisOffsetCols = 1;  // current column counter var for synthesizing - zero-index
-  private int synthesisOffsetRows = 0;  // current row counter var for synthesizing - zero-index
-  private static int synthesisOffsetMax; // maximum index of a row or column (n) 
+  private final int synthesisOffsetMax; // maximum index of a row or column (n) 
 
-  private DataFilter geoPredicate;
-  
-  private ArrayList<DataFilter> geometryPredicatesList;
+  /* shared, read-only predicate lists for the use cases, built on first use */
+  private volatile List<DataFilter> schoolPredicates;
+  private final GeoGrid grid;
+
+  private final GeometryCache geometryCache;
+  private final int prefetchSize;
+  private final GeometryGenerator geometryGenerator;
+  private final Set<String> seededTables = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  /* seed documents by table, read from the store once they are all there */
+  private final Map<String, Map<Integer, String>> seedDocuments = new ConcurrentHashMap<String, Map<Integer, String>>();
+
+  /**
+   * Per-thread state of the generator.
+   */
+  private static final class Cursor {
+    private DataFilter geoPredicate;
+    private ArrayList<DataFilter> geometryPredicatesList;
+    private ArrayList<DataFilter> schoolsOrder;
+
+    private int synthesisOffsetCols = 1;  // current column counter var for synthesizing - zero-index
+    private int synthesisOffsetRows = 0;  // current row counter var for synthesizing - zero-index
+
+    private int nextInsertDocIdIncidents = 0;
+    private int nextInsertDocIdSchools = 0;
+    private int nextInsertDocIdBuildings = 0;
+
+    private PrefetchQueue prefetch;
+
+    private GeoTrace.Op trace;
+  }
+
+  private final ThreadLocal<Cursor> cursors = new ThreadLocal<Cursor>() {
+    @Override
+    protected Cursor initialValue() {
+      return new Cursor();
+    }
+  };
 
   public static final String GEO_DOCUMENT_PREFIX_INCIDENTS = "incidents";
   public static final String GEO_DOCUMENT_PREFIX_SCHOOLS = "schools";
@@ -180,6 +218,36 @@ public abstract class ParameterGenerator {
 
   protected abstract int increment(String key, int step);
 
+  /**
+   * Start fetching values for a {@link PrefetchQueue}. The default fetches them at once; stores with an asynchronous
+   * client return while the request is in flight.
+   */
+  protected Future<Map<String, Object>> getBulkValAsync(final Collection<String> keys) {
+    FutureTask<Map<String, Object>> task = new FutureTask<Map<String, Object>>(new Callable<Map<String, Object>>() {
+      @Override
+      public Map<String, Object> call() {
+        return getBulkVal(keys);
+      }
+    });
+    task.run();
+    return task;
+  }
+
+  /**
+   * Start incrementing a counter for a {@link PrefetchQueue}, see {@link #getBulkValAsync(Collection)}.
+   * @return the future of the incremented value
+   */
+  protected Future<Long> incrementAsync(final String key, final int step) {
+    FutureTask<Long> task = new FutureTask<Long>(new Callable<Long>() {
+      @Override
+      public Long call() {
+        return (long) increment(key, step);
+      }
+    });
+    task.run();
+    return task;
+  }
+
   public ParameterGenerator(Properties p) {
     properties = p;
 
@@ -211,6 +279,13 @@ public abstract class ParameterGenerator {
 //    synthesisOffsetMax = (int) Math.round(Math.sqrt(GeoWorkload.getRecordCount()));
     synthesisOffsetMax = Integer.parseInt(p.getProperty(GeoWorkload.DATA_SIZE, 
         ((int)Math.round(Math.sqrt(GeoWorkload.getRecordCount())) + "")));
+
+    geometryCache = GeometryCache.getShared(Integer.parseInt(p.getProperty(GeoWorkload.GEO_GEOMETRY_CACHE_SIZE,
+        GeoWorkload.GEO_GEOMETRY_CACHE_SIZE_DEFAULT)));
+    grid = GeoGrid.getShared(synthesisOffsetMax);
+    prefetchSize = Integer.parseInt(p.getProperty(GeoWorkload.GEO_PREFETCH_SIZE,
+        GeoWorkload.GEO_PREFETCH_SIZE_DEFAULT));
+    geometryGenerator = GeometryGenerator.create(p);
   }
 
   public final Map<String, Set<String>> getAllGeoFields() {
@@ -264,88 +339,132 @@ public abstract class ParameterGenerator {
     }
   }
 
-  public DataFilter getGeoPredicate() {
-    return geoPredicate;
+  /**
+   * Start recording what the calling thread draws for an operation into a trace record, see {@link GeoTrace}.
+   */
+  public void beginTrace(GeoTrace.Op op) {
+    Cursor cursor = cursors.get();
+    cursor.trace = op;
+    cursor.geoPredicate = null;
+    cursor.geometryPredicatesList = null;
   }
 
-  public void buildGeoReadPredicate() {
-    String storageKey = GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER +
-        GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + getIncidentIdWithDistribution();
+  /**
+   * Stop recording and complete the record with the predicates the calling thread built since
+   * {@link #beginTrace(GeoTrace.Op)}.
+   * @return the record
+   */
+  public GeoTrace.Op endTrace() {
+    Cursor cursor = cursors.get();
+    GeoTrace.Op op = cursor.trace;
+    cursor.trace = null;
+    op.setPredicate(cursor.geoPredicate);
+    op.setPredicates(cursor.geometryPredicatesList);
+    return op;
+  }
 
-    String docBody = getVal(storageKey);
-    String keyPrefix = GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER;
-    int docCounter = increment(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS, 1);
+  /**
+   * Make a predicate and a use case predicate list the calling thread's current ones, as if it had built them.
+   */
+  protected final void setCurrentPredicates(DataFilter predicate, ArrayList<DataFilter> predicates) {
+    Cursor cursor = cursors.get();
+    cursor.geoPredicate = predicate;
+    cursor.geometryPredicatesList = predicates;
+  }
 
-    geoPredicate = new DataFilter();
-    geoPredicate.setDocid(keyPrefix + docCounter);
-    geoPredicate.setValue(docBody);
+  /**
+   * @return the predicate built last by the calling thread
+   */
+  public DataFilter getGeoPredicate() {
+    return cursors.get().geoPredicate;
+  }
+
+  /**
+   * Build the predicate of a geo query: nested predicate A holds the center and radius of geo_near and the first
+   * corner of geo_box, B the opposite corner of geo_box and C the geometry of geo_intersect, all drawn by the
+   * configured {@link GeometryGenerator}.
+   */
+  public DataFilter buildGeoReadPredicate() {
     DataFilter queryPredicate = new DataFilter();
     queryPredicate.setName(GEO_FIELD_INCIDENTS_GEOMETRY);
-    JSONObject obj = new JSONObject(geoPredicate.getValue());
-    JSONObject jobj = (JSONObject) obj.get("geometry");
-    queryPredicate.setValueA(jobj);
+    queryPredicate.setGeometry(geometryGenerator.nextNearCenter(this));
+    queryPredicate.setDistance(geometryGenerator.nextNearRadius(this));
 
     buildGeoInsertDocument();
     DataFilter queryPredicate2 = new DataFilter();
     queryPredicate2.setName(GEO_FIELD_INCIDENTS_GEOMETRY);
-    double[] latLong2 = {-111-rand.nextDouble(), 33+rand.nextDouble()};
-    JSONArray jsonArray2 = new JSONArray(latLong2);
-    JSONObject jobj2 = new JSONObject().put("type", "Point");
-    jobj2.put("coordinates", jsonArray2);
-    queryPredicate2.setValueA(jobj2);
+    queryPredicate2.setGeometry(geometryGenerator.nextBoxCorner(this, queryPredicate.getGeometry()));
 
-    buildGeoInsertDocument();
+    DataFilter geoPredicate = buildGeoInsertDocument();
     DataFilter queryPredicate3 = new DataFilter();
     queryPredicate3.setName(GEO_FIELD_INCIDENTS_GEOMETRY);
-    double[] latLong = {-111-rand.nextDouble(), 33+rand.nextDouble()};
-    JSONArray jsonArray = new JSONArray(latLong);
-    double[] latLong3 = {-111-rand.nextDouble(), 33+rand.nextDouble()};
-    double[] latLong4 = {-111-rand.nextDouble(), 33+rand.nextDouble()};
-    JSONArray jsonArray3 = new JSONArray(latLong3);
-    JSONArray jsonArray4 = new JSONArray(latLong4);
-    JSONArray jsonArray5 = new JSONArray();
-    JSONArray jsonArray6 = new JSONArray();
-    JSONArray jsonArray7 = new JSONArray();
-    jsonArray5.put(jsonArray);
-    jsonArray5.put(jsonArray2);
-    jsonArray6.put(jsonArray3);
-    jsonArray6.put(jsonArray4);
-    jsonArray7.put(jsonArray5);
-    jsonArray7.put(jsonArray6);
-    JSONObject jobj3 = new JSONObject().put("type", "MultiLineString");
-    jobj3.put("coordinates", jsonArray7);
-    queryPredicate3.setValueA(jobj3);
+    queryPredicate3.setGeometry(geometryGenerator.nextIntersect(this));
     geoPredicate.setNestedPredicateC(queryPredicate3);
     geoPredicate.setNestedPredicateB(queryPredicate2);
     geoPredicate.setNestedPredicateA(queryPredicate);
-
-
+    return geoPredicate;
   }
 
-  public void buildGeoInsertDocument() {
-    String storageKey = GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER +
-        GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + getNumberRandom(getStoredIncidentsCount());
-
-    String docBody = getVal(storageKey);
+  public DataFilter buildGeoInsertDocument() {
+    PrefetchQueue prefetch = getPrefetchQueue();
+    String docBody = prefetch != null ? prefetch.nextIncidentBody() : getVal(nextIncidentStorageKey());
     String keyPrefix = GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER;
-    int docCounter = increment(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS, 1);
+    int docCounter = nextInsertId(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS);
 
-    geoPredicate = new DataFilter();
+    DataFilter geoPredicate = new DataFilter();
     geoPredicate.setDocid(keyPrefix + docCounter);
     geoPredicate.setValue(docBody);
+    cursors.get().geoPredicate = geoPredicate;
+    return geoPredicate;
+  }
+
+  /**
+   * @return the storage key of a random stored incident
+   */
+  String nextIncidentStorageKey() {
+    return GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER +
+        GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + getNumberRandom(getStoredIncidentsCount());
+  }
 
+  /**
+   * @return the calling thread's prefetch queue, or null if prefetching is off, see
+   *         {@link GeoWorkload#GEO_PREFETCH_SIZE}
+   */
+  private PrefetchQueue getPrefetchQueue() {
+    if (prefetchSize <= 0) {
+      return null;
+    }
+    Cursor cursor = cursors.get();
+    if (cursor.prefetch == null) {
+      cursor.prefetch = new PrefetchQueue(this, prefetchSize);
+    }
+    return cursor.prefetch;
   }
 
-  public void buildGeoUpdatePredicate() {
-    buildGeoInsertDocument();
+  /**
+   * Take the next id of an insert document counter, from the calling thread's reserved block if prefetching is on.
+   */
+  private int nextInsertId(String counterKey) {
+    PrefetchQueue prefetch = getPrefetchQueue();
+    return prefetch != null ? prefetch.nextInsertId(counterKey) : increment(counterKey, 1);
+  }
+
+  public DataFilter buildGeoUpdatePredicate() {
+    DataFilter geoPredicate = buildGeoInsertDocument();
     DataFilter queryPredicate = new DataFilter();
     queryPredicate.setName(GEO_FIELD_INCIDENTS_GEOMETRY);
-    double[] latLong = {-111-rand.nextDouble(), 33+rand.nextDouble()};
-    JSONArray jsonArray = new JSONArray(latLong);
-    JSONObject jobj = new JSONObject().put("type", "Point");
-    jobj.put("coordinates", jsonArray);
-    queryPredicate.setValueA(jobj);
+    queryPredicate.setGeometry(geometryGenerator.nextUpdateLocation(this));
     geoPredicate.setNestedPredicateA(queryPredicate);
+    return geoPredicate;
+  }
+
+  /**
+   * @return the geometry of a stored incident drawn with the request distribution
+   */
+  public Geometry getIncidentGeometryWithDistribution() {
+    String storageKey = GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER +
+        GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + getIncidentIdWithDistribution();
+    return getParsedDocument(storageKey, null).getGeometry();
   }
 
   public String getIncidentsIdRandom() {
@@ -353,28 +472,43 @@ public abstract class ParameterGenerator {
   }
 
   public String getIncidentIdWithDistribution() {
+    String id;
     if (isZipfian) {
-      return getNumberZipfianUnifrom(getTotalIncidentsCount())+"";
+      id = getNumberZipfianUnifrom(getTotalIncidentsCount())+"";
+    } else if (isLatest) {
+      id = getNumberZipfianLatests(getTotalIncidentsCount())+"";
+    } else {
+      id = getIncidentsIdRandom();
     }
-    if (isLatest) {
-      return getNumberZipfianLatests(getTotalIncidentsCount())+"";
+    GeoTrace.Op trace = cursors.get().trace;
+    if (trace != null) {
+      trace.setStartKey(id);
     }
-    return getIncidentsIdRandom();
+    return id;
   }
 
   public int getRandomLimit(){
-    if (queryLimitMax == queryLimitMin) {
-      return queryLimitMax;
+    int limit = queryLimitMax;
+    if (queryLimitMax != queryLimitMin) {
+      limit = GeoRandom.current().nextInt(queryLimitMax - queryLimitMin + 1) + queryLimitMin;
+    }
+    GeoTrace.Op trace = cursors.get().trace;
+    if (trace != null) {
+      trace.setLimit(limit);
     }
-    return rand.nextInt(queryLimitMax - queryLimitMin + 1) + queryLimitMin;
+    return limit;
   }
 
   public int getRandomOffset(){
-
-    if (queryOffsetMax == queryOffsetMin) {
-      return queryOffsetMax;
+    int offset = queryOffsetMax;
+    if (queryOffsetMax != queryOffsetMin) {
+      offset = GeoRandom.current().nextInt(queryOffsetMax - queryOffsetMin + 1) + queryOffsetMin;
+    }
+    GeoTrace.Op trace = cursors.get().trace;
+    if (trace != null) {
+      trace.setOffset(offset);
     }
-    return rand.nextInt(queryOffsetMax - queryOffsetMin + 1) + queryOffsetMin;
+    return offset;
   }
 
   private HashMap<String, String> tokenize(String jsonString) {
@@ -519,23 +653,31 @@ public abstract class ParameterGenerator {
 
 
   private int getNumberZipfianUnifrom(int totalItems) {
-    if (zipfianGenerator == null) {
-      zipfianGenerator = new ZipfianGenerator(1L, Long.valueOf(getStoredIncidentsCount()-1).longValue());
-    }
-    return  totalItems - zipfianGenerator.nextValue().intValue();
+    return  totalItems - getZipfianGenerator().nextValue().intValue();
   }
 
 
   //getting latest docId shifted back on (max limit + max offest) to ensure the query returns expected amount of results
   private int getNumberZipfianLatests(int totalItems) {
-    if (zipfianGenerator == null) {
-      zipfianGenerator = new ZipfianGenerator(1L, Long.valueOf(getStoredIncidentsCount()-1).longValue());
+    return  totalItems - getZipfianGenerator().nextValue().intValue() - queryLimitMax - queryOffsetMax;
+  }
+
+  private ZipfianGenerator getZipfianGenerator() {
+    ZipfianGenerator zipfian = zipfianGenerator;
+    if (zipfian == null) {
+      synchronized (this) {
+        zipfian = zipfianGenerator;
+        if (zipfian == null) {
+          zipfian = new ZipfianGenerator(1L, Long.valueOf(getStoredIncidentsCount()-1).longValue());
+          zipfianGenerator = zipfian;
+        }
+      }
     }
-    return  totalItems - zipfianGenerator.nextValue().intValue() - queryLimitMax - queryOffsetMax;
+    return zipfian;
   }
 
   public int getNumberRandom(int limit) {
-    return rand.nextInt(limit);
+    return GeoRandom.current().nextInt(limit);
   }
   
   /*
@@ -543,27 +685,65 @@ public abstract class ParameterGenerator {
    */
   
   public int getSynthesisOffsetCols() {
-    return synthesisOffsetCols;
+    return cursors.get().synthesisOffsetCols;
   }
   
   public int getSynthesisOffsetRows() {
-    return synthesisOffsetRows;
+    return cursors.get().synthesisOffsetRows;
   }
 
-  public static int getSynthesisOffsetMax() {
+  public int getSynthesisOffsetMax() {
     return synthesisOffsetMax;
   }
 
   /**
-   * Increment synthesis offset by 1.
+   * @return whether the workload runs against the incidents table only, i.e. {@code table2} or {@code table3} is not
+   * set
+   */
+  public boolean isSingleTable() {
+    return properties.getProperty(GeoWorkload.TABLE2NAME_PROPERTY) == null
+        || properties.getProperty(GeoWorkload.TABLE3NAME_PROPERTY) == null;
+  }
+
+  /**
+   * @return grid cells along each side the loaded documents are spread over: a multi-table load synthesizes the seed
+   * documents into every cell of the {@link #getSynthesisOffsetMax()} x {@link #getSynthesisOffsetMax()} grid, a
+   * single-table load keeps them all in the seed area
+   */
+  public int getSynthesisTiles() {
+    return isSingleTable() ? 1 : synthesisOffsetMax;
+  }
+
+  /**
+   * Move the calling thread's synthesis offset to a grid cell. Cells are counted row by row, cell 0 being the seed
+   * data itself, so a thread starts at cell 1 and every {@link #incrementSynthesisOffset()} moves it one cell on.
+   * @param cell index of the grid cell
+   */
+  public void setSynthesisOffset(int cell) {
+    Cursor cursor = cursors.get();
+    cursor.synthesisOffsetCols = cell % synthesisOffsetMax;
+    cursor.synthesisOffsetRows = cell / synthesisOffsetMax;
+  }
+
+  /**
+   * @return index of the calling thread's current grid cell, see {@link #setSynthesisOffset(int)}
+   */
+  public int getSynthesisCell() {
+    Cursor cursor = cursors.get();
+    return cursor.synthesisOffsetRows * synthesisOffsetMax + cursor.synthesisOffsetCols;
+  }
+
+  /**
+   * Increment the calling thread's synthesis offset by 1.
    * @return
    */
   public void incrementSynthesisOffset() {
-    if(synthesisOffsetCols + 1 == synthesisOffsetMax) {
-      synthesisOffsetCols = (synthesisOffsetCols + 1) % synthesisOffsetMax;
-      synthesisOffsetRows++;
+    Cursor cursor = cursors.get();
+    if(cursor.synthesisOffsetCols + 1 == synthesisOffsetMax) {
+      cursor.synthesisOffsetCols = (cursor.synthesisOffsetCols + 1) % synthesisOffsetMax;
+      cursor.synthesisOffsetRows++;
     } else {
-      synthesisOffsetCols++;
+      cursor.synthesisOffsetCols++;
     }
   }
   
@@ -624,21 +804,25 @@ public abstract class ParameterGenerator {
    * @return the next ID
    */
   public String getNextId(String table) {
+    Cursor cursor = cursors.get();
     String nextId = "";
     switch(table) {
     case GEO_DOCUMENT_PREFIX_SCHOOLS:
       // return the next ID shifted up by 1, because object IDs start at 1
-      nextId += (nextInsertDocIdSchools + 1);
+      nextId += (cursor.nextInsertDocIdSchools + 1);
       // increment
-      nextInsertDocIdSchools = (nextInsertDocIdSchools + 1) % getTotalDocsCount(GEO_DOCUMENT_PREFIX_SCHOOLS); 
+      cursor.nextInsertDocIdSchools = (cursor.nextInsertDocIdSchools + 1)
+          % getTotalDocsCount(GEO_DOCUMENT_PREFIX_SCHOOLS);
       break;
     case GEO_DOCUMENT_PREFIX_BUILDINGS:
-      nextId += (nextInsertDocIdBuildings + 1);
-      nextInsertDocIdBuildings = (nextInsertDocIdBuildings + 1) % getTotalDocsCount(GEO_DOCUMENT_PREFIX_BUILDINGS);
+      nextId += (cursor.nextInsertDocIdBuildings + 1);
+      cursor.nextInsertDocIdBuildings = (cursor.nextInsertDocIdBuildings + 1)
+          % getTotalDocsCount(GEO_DOCUMENT_PREFIX_BUILDINGS);
       break;
     default:
-      nextId += (nextInsertDocIdIncidents + 1);
-      nextInsertDocIdIncidents = (nextInsertDocIdIncidents + 1) % getTotalDocsCount(GEO_DOCUMENT_PREFIX_INCIDENTS);
+      nextId += (cursor.nextInsertDocIdIncidents + 1);
+      cursor.nextInsertDocIdIncidents = (cursor.nextInsertDocIdIncidents + 1)
+          % getTotalDocsCount(GEO_DOCUMENT_PREFIX_INCIDENTS);
       break;
     }
     return nextId;
@@ -733,7 +917,7 @@ public abstract class ParameterGenerator {
       while(docBody == null) {
         docBody = getVal(storageKey);
       }
-      docCounter = increment(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_SCHOOLS, 1);
+      docCounter = nextInsertId(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_SCHOOLS);
       break;
     case GEO_DOCUMENT_PREFIX_BUILDINGS:
       keyPrefix = GEO_DOCUMENT_PREFIX_BUILDINGS + GEO_SYSTEMFIELD_DELIMITER;
@@ -743,7 +927,7 @@ public abstract class ParameterGenerator {
         System.out.println("STALL");
         docBody = getVal(storageKey);
       }
-      docCounter = increment(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_BUILDINGS, 1);
+      docCounter = nextInsertId(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_BUILDINGS);
       break;
     default:
       keyPrefix = GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER;
@@ -752,7 +936,7 @@ public abstract class ParameterGenerator {
       while(docBody == null) {
         docBody = getVal(storageKey);
       }
-      docCounter = increment(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS, 1);
+      docCounter = nextInsertId(keyPrefix + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS);
     }
     
     // Synthesize data
@@ -765,6 +949,278 @@ public abstract class ParameterGenerator {
     return newDocBody;
   }
   
+  /**
+   * Synthesizes the copy of a seed document for the calling thread's current grid cell. Unlike
+   * {@link #buildGeoInsertDocument(String, int, String)} the seed is passed in rather than read from storage, and the
+   * insert document counter is left alone; bulk loaders advance it with {@link #advanceInsertCounter(String, int)}.
+   * @param table table of the document
+   * @param docBody the seed document
+   * @param generatedId the _id of the new document
+   * @return the synthesized document
+   */
+  public String synthesizeDocument(String table, String docBody, String generatedId) {
+    return synthesize(table, docBody, generatedId);
+  }
+
+  /**
+   * Advance the insert document counter of a table in one storage round trip.
+   * @param table table of the documents
+   * @param count number of documents inserted
+   */
+  public void advanceInsertCounter(String table, int count) {
+    switch(table) {
+    case GEO_DOCUMENT_PREFIX_SCHOOLS:
+      increment(GEO_DOCUMENT_PREFIX_SCHOOLS + GEO_SYSTEMFIELD_DELIMITER
+          + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_SCHOOLS, count);
+      break;
+    case GEO_DOCUMENT_PREFIX_BUILDINGS:
+      increment(GEO_DOCUMENT_PREFIX_BUILDINGS + GEO_SYSTEMFIELD_DELIMITER
+          + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_BUILDINGS, count);
+      break;
+    default:
+      increment(GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER
+          + GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS, count);
+      break;
+    }
+  }
+
+  /**
+   * Store the seed documents of a table from a GeoJSON or NDJSON file, see {@link GeoSeedReader}, so that the
+   * bindings need not read them back from the database. Every feature is stored under its OBJECTID, or under its
+   * position in the file if it has none. A single-table workload stores the incidents with
+   * {@link #putIncidentsDocument(String, String)}, which also splits them into query predicates; a multi-table
+   * workload stores each table with {@link #putDocument(String, String, String)}. A table whose seeds are already
+   * in the store, e.g. a memcached shared with an earlier run, is not stored again.
+   * @param table table of the documents
+   * @param file the seed file
+   * @param singleTable whether the workload runs against the incidents table only
+   * @return the documents stored
+   */
+  public int loadSeedFile(String table, File file, boolean singleTable) throws Exception {
+    seededTables.add(table);
+    if (getStoredSeedCount(table, singleTable) > 0) {
+      return 0;
+    }
+    int count = 0;
+    try (GeoSeedReader reader = new GeoSeedReader(file)) {
+      String feature;
+      while ((feature = reader.next()) != null) {
+        count++;
+        JSONObject obj = new JSONObject(feature);
+        JSONObject props = obj.optJSONObject(GEO_FIELD_INCIDENTS_PROPERTIES);
+        int objectId = props == null ? count : props.optInt(GEO_FIELD_INCIDENTS_PROPERTIES_OBJ_OBJECTID, count);
+        if (singleTable) {
+          putIncidentsDocument(String.valueOf(objectId), obj.toString());
+        } else {
+          putDocument(table, String.valueOf(objectId), obj.toString());
+        }
+      }
+    }
+    return count;
+  }
+
+  private int getStoredSeedCount(String table, boolean singleTable) {
+    try {
+      return singleTable ? getStoredIncidentsCount() : getStoredDocsCount(table);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * @return whether the seeds of the table were loaded from a seed file, so the binding must not read them from the
+   *         database
+   */
+  public boolean isSeeded(String table) {
+    return seededTables.contains(table);
+  }
+
+  /**
+   * Get the seed documents of a table that were stored with {@link #putDocument(String, String, String)} under their
+   * OBJECTID, for bindings that cannot read the seeds from their own store. The seeds are read from the store once
+   * per generator and shared by all threads; as long as none are stored, every call looks again.
+   * @param table table of the documents
+   * @return the stored seeds by OBJECTID, in OBJECTID order, not modifiable; seeds that were never stored are left out
+   */
+  public Map<Integer, String> getSeedDocuments(String table) {
+    Map<Integer, String> seeds = seedDocuments.get(table);
+    if (seeds != null) {
+      return seeds;
+    }
+    synchronized (seedDocuments) {
+      seeds = seedDocuments.get(table);
+      if (seeds == null) {
+        seeds = Collections.unmodifiableMap(readSeedDocuments(table));
+        if (!seeds.isEmpty()) {
+          seedDocuments.put(table, seeds);
+        }
+      }
+      return seeds;
+    }
+  }
+
+  private Map<Integer, String> readSeedDocuments(String table) {
+    String prefix = getTablePrefix(table) + GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER;
+
+    Map<Integer, String> seeds = new LinkedHashMap<Integer, String>();
+    int totalDocs = getTotalDocsCount(table);
+    List<String> keys = new ArrayList<String>(1000);
+    for (int first = 1; first <= totalDocs; first += 1000) {
+      keys.clear();
+      for (int i = first; i < first + 1000 && i <= totalDocs; i++) {
+        keys.add(prefix + i);
+      }
+      Map<String, Object> bulk = getBulkVal(keys);
+      for (int i = first; bulk != null && i < first + 1000 && i <= totalDocs; i++) {
+        Object docBody = bulk.get(prefix + i);
+        if (docBody != null) {
+          seeds.put(i, docBody.toString());
+        }
+      }
+    }
+    return seeds;
+  }
+
+  private static String getTablePrefix(String table) {
+    switch(table) {
+    case GEO_DOCUMENT_PREFIX_SCHOOLS:
+    case GEO_DOCUMENT_PREFIX_BUILDINGS:
+      return table + GEO_SYSTEMFIELD_DELIMITER;
+    default:
+      return GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER;
+    }
+  }
+
+  private static String getStorageCountKey(String table) {
+    switch(table) {
+    case GEO_DOCUMENT_PREFIX_SCHOOLS:
+      return GEO_DOCUMENT_PREFIX_SCHOOLS + GEO_SYSTEMFIELD_DELIMITER + GEO_SYSTEMFIELD_STORAGEDOCS_COUNT_SCHOOLS;
+    case GEO_DOCUMENT_PREFIX_BUILDINGS:
+      return GEO_DOCUMENT_PREFIX_BUILDINGS + GEO_SYSTEMFIELD_DELIMITER + GEO_SYSTEMFIELD_STORAGEDOCS_COUNT_BUILDINGS;
+    default:
+      return GEO_DOCUMENT_PREFIX_INCIDENTS + GEO_SYSTEMFIELD_DELIMITER + GEO_SYSTEMFIELD_STORAGEDOCS_COUNT_INCIDENTS;
+    }
+  }
+
+  /**
+   * Write the prepared dataset to a binary snapshot, see {@link GeoSnapshot}: every stored document of the tables
+   * with its parsed geometry, and the grid cells. A single-table workload snapshots the incidents it stored with
+   * {@link #putIncidentsDocument(String, String)}; a multi-table workload the seeds of every table and the
+   * synthesized schools of all grid cells.
+   * @param file the snapshot file, replaced if it exists
+   * @param singleTable whether the workload runs against the incidents table only
+   * @param tables the tables of the workload
+   * @return the documents written, or 0 if a table holds no documents and nothing was written
+   */
+  public int writeSnapshot(File file, boolean singleTable, String... tables) throws IOException {
+    List<GeoSnapshot.Table> snapshotTables = new ArrayList<GeoSnapshot.Table>(tables.length);
+    int written = 0;
+    for (String table : tables) {
+      String prefix = getTablePrefix(table);
+      int first = singleTable ? 0 : 1;
+      int last = singleTable ? getStoredDocsCount(GEO_DOCUMENT_PREFIX_INCIDENTS) - 1 : getTotalDocsCount(table);
+      if (!singleTable && table.equals(GEO_DOCUMENT_PREFIX_SCHOOLS)) {
+        last *= synthesisOffsetMax * synthesisOffsetMax;
+      }
+
+      GeoSnapshot.Table snapshotTable = new GeoSnapshot.Table(table, getTotalDocsCount(table));
+      List<String> keys = new ArrayList<String>(2000);
+      for (int start = first; start <= last; start += 1000) {
+        int end = Math.min(last, start + 999);
+        keys.clear();
+        for (int i = start; i <= end; i++) {
+          keys.add(prefix + GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + i);
+          keys.add(prefix + GEO_METAFIELD_DOCID + GEO_SYSTEMFIELD_DELIMITER + i);
+        }
+        Map<String, Object> bulk = getBulkVal(keys);
+        for (int i = start; bulk != null && i <= end; i++) {
+          String storageKey = prefix + GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + i;
+          Object docBody = bulk.get(storageKey);
+          if (docBody == null) {
+            continue;
+          }
+          Object docId = bulk.get(prefix + GEO_METAFIELD_DOCID + GEO_SYSTEMFIELD_DELIMITER + i);
+          GeometryCache.Entry parsed = getParsedDocument(storageKey, docBody.toString());
+          snapshotTable.add(i, docId == null ? String.valueOf(i) : docId.toString(), parsed.getName(),
+              parsed.getGeometry(), docBody.toString());
+        }
+      }
+      if (snapshotTable.size() == 0) {
+        System.err.println("No stored documents in table " + table + ", not writing snapshot " + file);
+        return 0;
+      }
+      snapshotTables.add(snapshotTable);
+      written += snapshotTable.size();
+    }
+
+    List<double[]> gridBounds = new ArrayList<double[]>(grid.size());
+    for (int i = 0; i < grid.size(); i++) {
+      gridBounds.add(grid.getBounds(i));
+    }
+    new GeoSnapshot(synthesisOffsetMax, singleTable, snapshotTables, gridBounds).write(file);
+    return written;
+  }
+
+  /**
+   * Fill the generator from a snapshot written by {@link #writeSnapshot(File, boolean, String...)}: the documents
+   * are stored unless the store already holds them, their geometries go straight into the geometry cache, and the
+   * school predicates are built from the snapshot without parsing a document. The tables count as seeded,
+   * see {@link #isSeeded(String)}.
+   * @param file the snapshot file
+   * @param singleTable whether the workload runs against the incidents table only
+   * @param tables the tables of the workload
+   * @return whether the snapshot was loaded; a snapshot of another version, datasize, table layout or dataset is
+   *         ignored
+   */
+  public boolean loadSnapshot(File file, boolean singleTable, String... tables) throws IOException {
+    GeoSnapshot snapshot = GeoSnapshot.read(file);
+    if (snapshot == null) {
+      System.err.println("Ignoring snapshot " + file + ": not a version " + GeoSnapshot.VERSION + " snapshot");
+      return false;
+    }
+    if (snapshot.getDataSize() != synthesisOffsetMax || snapshot.getGridBounds().size() != grid.size()
+        || snapshot.isSingleTable() != singleTable || snapshot.getTables().size() != tables.length) {
+      System.err.println("Ignoring snapshot " + file + ": written for another datasize or table layout");
+      return false;
+    }
+    for (int t = 0; t < tables.length; t++) {
+      GeoSnapshot.Table snapshotTable = snapshot.getTables().get(t);
+      if (!snapshotTable.getName().equals(tables[t]) || snapshotTable.getTotalDocs() != getTotalDocsCount(tables[t])) {
+        System.err.println("Ignoring snapshot " + file + ": written for another dataset of table " + tables[t]);
+        return false;
+      }
+    }
+
+    for (GeoSnapshot.Table snapshotTable : snapshot.getTables()) {
+      String table = snapshotTable.getName();
+      String prefix = getTablePrefix(table);
+      boolean store = getStoredSeedCount(table, singleTable) == 0;
+      boolean schools = !singleTable && table.equals(GEO_DOCUMENT_PREFIX_SCHOOLS);
+      ArrayList<DataFilter> predicates = new ArrayList<DataFilter>();
+      for (int i = 0; i < snapshotTable.size(); i++) {
+        String storageKey = prefix + GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + snapshotTable.getKey(i);
+        if (store) {
+          setVal(prefix + GEO_METAFIELD_DOCID + GEO_SYSTEMFIELD_DELIMITER + snapshotTable.getKey(i),
+              snapshotTable.getDocId(i));
+          setVal(storageKey, snapshotTable.getBody(i));
+        }
+        GeometryCache.Entry parsed = new GeometryCache.Entry(snapshotTable.getGeometry(i), snapshotTable.getDocName(i));
+        geometryCache.put(storageKey, parsed);
+        if (schools) {
+          predicates.add(newSchoolPredicate(storageKey, snapshotTable.getBody(i), parsed));
+        }
+      }
+      if (store) {
+        increment(getStorageCountKey(table), snapshotTable.size());
+      }
+      if (schools) {
+        schoolPredicates = Collections.unmodifiableList(predicates);
+      }
+      seededTables.add(table);
+    }
+    return true;
+  }
+
   /**
    * Tokenizes fields based on a table.
    * @param table
@@ -1000,6 +1456,9 @@ public abstract class ParameterGenerator {
    * @return
    */
   private String synthesize(String table, String jsonString, String generatedId) {
+    Cursor cursor = cursors.get();
+    int synthesisOffsetCols = cursor.synthesisOffsetCols;
+    int synthesisOffsetRows = cursor.synthesisOffsetRows;
     JSONObject obj = new JSONObject(jsonString);
     String geometryField = "";
     String coordinatesField = "";
@@ -1079,46 +1538,40 @@ public abstract class ParameterGenerator {
   }
   
   /**
-   * Builds the predicates necessary for use case 1.
+   * Builds the predicates necessary for use case 1. The schools are fetched and parsed once per generator; every
+   * thread gets its own randomly ordered view of them.
+   * @return the calling thread's list of school predicates
    */
-  public void buildGeoPredicateCase1() {
-    if(geometryPredicatesList != null) {
-      return;
+  public ArrayList<DataFilter> buildGeoPredicateCase1() {
+    Cursor cursor = cursors.get();
+    if(cursor.schoolsOrder == null) {
+      cursor.schoolsOrder = new ArrayList<DataFilter>(getSchoolPredicates());
+      // randomize order
+      Collections.shuffle(cursor.schoolsOrder, GeoRandom.current());
+    }
+    cursor.geometryPredicatesList = cursor.schoolsOrder;
+    return cursor.schoolsOrder;
+  }
+
+  private List<DataFilter> getSchoolPredicates() {
+    List<DataFilter> schools = schoolPredicates;
+    if (schools != null) {
+      return schools;
+    }
+    synchronized (this) {
+      if (schoolPredicates == null) {
+        schoolPredicates = Collections.unmodifiableList(loadSchoolPredicates());
+      }
+      return schoolPredicates;
     }
-    geometryPredicatesList = new ArrayList<DataFilter>();
+  }
+
+  private ArrayList<DataFilter> loadSchoolPredicates() {
+    ArrayList<DataFilter> predicates = new ArrayList<DataFilter>();
     
     // Create list of all schools to bulk get
     ArrayList<String> keys = new ArrayList<String>();
-    Random random = new Random();
     int docCount = getTotalDocsCount(GEO_DOCUMENT_PREFIX_SCHOOLS) * synthesisOffsetMax * synthesisOffsetMax;
-//    
-////    for(int i = 0; i < 3; i++) {
-//    int nextSchool = random.nextInt(2754);
-//    String key = GEO_DOCUMENT_PREFIX_SCHOOLS + GEO_SYSTEMFIELD_DELIMITER 
-//        + GEO_METAFIELD_INSERTDOC + GEO_SYSTEMFIELD_DELIMITER + nextSchool;
-//    String val = getVal(key);
-//
-//    // parse document - get geometry
-//    DataFilter queryPredicate = new DataFilter();
-//    queryPredicate.setName(GEO_FIELD_SCHOOLS_GEOMETRY);
-//    JSONObject obj = new JSONObject(val);
-//    JSONObject jobj = (JSONObject) obj.get(GEO_FIELD_SCHOOLS_GEOMETRY);
-//    queryPredicate.setValueA(jobj);
-//
-//    // original school document
-//    DataFilter schoolPredicate = new DataFilter();
-////    schoolPredicate.setDocid(key);
-////    schoolPredicate.setValue(val);
-//    schoolPredicate.setName(((JSONObject)obj.get(GEO_FIELD_SCHOOLS_PROPERTIES)).
-//        getString(GEO_FIELD_SCHOOLS_PROPERTIES_OBJ_NAME));
-//    // attach specific query predicate
-//    schoolPredicate.setNestedPredicateA(queryPredicate);
-//    
-//    System.out.println(queryPredicate.getValueA());
-//
-//    // add school to list
-//    geometryPredicatesList.add(schoolPredicate);
-//    }
     
     for(int i = 1; i <= docCount; i++) {
       keys.add(GEO_DOCUMENT_PREFIX_SCHOOLS + GEO_SYSTEMFIELD_DELIMITER 
@@ -1134,81 +1587,95 @@ public abstract class ParameterGenerator {
     
     for(String key : bulk.keySet()) {
       // parse document - get geometry
-      DataFilter queryPredicate = new DataFilter();
-      queryPredicate.setName(GEO_FIELD_SCHOOLS_GEOMETRY);
-      JSONObject obj = new JSONObject(bulk.get(key).toString());
-      JSONObject jobj = (JSONObject) obj.get(GEO_FIELD_SCHOOLS_GEOMETRY);
-      queryPredicate.setValueA(jobj);
-      
-      // original school document
-      DataFilter schoolPredicate = new DataFilter();
-      schoolPredicate.setDocid(key);
-      schoolPredicate.setValue(bulk.get(key).toString());
-      schoolPredicate.setName(((JSONObject)obj.get(GEO_FIELD_SCHOOLS_PROPERTIES)).
-          getString(GEO_FIELD_SCHOOLS_PROPERTIES_OBJ_NAME));
-      // attach specific query predicate
-      schoolPredicate.setNestedPredicateA(queryPredicate);
-      
-      // add school to list
-      geometryPredicatesList.add(schoolPredicate);
+      String docBody = bulk.get(key).toString();
+      predicates.add(newSchoolPredicate(key, docBody, getParsedDocument(key, docBody)));
     }
-    // randomize order
-    Collections.shuffle(geometryPredicatesList, random);
+    return predicates;
+  }
+
+  private static DataFilter newSchoolPredicate(String storageKey, String docBody, GeometryCache.Entry parsed) {
+    DataFilter queryPredicate = new DataFilter();
+    queryPredicate.setName(GEO_FIELD_SCHOOLS_GEOMETRY);
+    queryPredicate.setGeometry(parsed.getGeometry());
+
+    // original school document
+    DataFilter schoolPredicate = new DataFilter();
+    schoolPredicate.setDocid(storageKey);
+    schoolPredicate.setValue(docBody);
+    schoolPredicate.setName(parsed.getName());
+    // attach specific query predicate
+    schoolPredicate.setNestedPredicateA(queryPredicate);
+    return schoolPredicate;
   }
   
   /**
-   * Builds the predicates necessary for use case 3.
+   * Builds the predicates necessary for use case 3. The grid is shared by the JVM, see {@link GeoGrid}; every call
+   * returns a new randomly ordered copy of it.
+   * @return the calling thread's list of grid cell predicates
    */
-  public void buildGeoPredicateCase3() {
-    geometryPredicatesList = new ArrayList<DataFilter>();
-    
-    // calculate grid cells length and width
-    double longUnitShift = GeoWorkload.LONG_OFFSET / (GeoWorkload.GRID_COLS * synthesisOffsetMax);
-    double latUnitShift = GeoWorkload.LAT_OFFSET / (GeoWorkload.GRID_ROWS * synthesisOffsetMax);
-    
-    for(int i = 0; i < GeoWorkload.GRID_ROWS * synthesisOffsetMax; i++) {
-      for(int j = 0; j < GeoWorkload.GRID_COLS * synthesisOffsetMax; j++) {
-        // calculate bottom left and upper right points of grid cell
-        double[] bottomLeft = {GeoWorkload.LONG_MIN + longUnitShift * j, 
-            GeoWorkload.LAT_MIN + latUnitShift * i};
-        double[] upperLeft = {GeoWorkload.LONG_MIN + longUnitShift * j, 
-            GeoWorkload.LAT_MIN + latUnitShift * (i + 1)};
-        double[] upperRight = {GeoWorkload.LONG_MIN + longUnitShift * (j + 1),
-            GeoWorkload.LAT_MIN + latUnitShift * (i + 1)};
-        double[] bottomRight = {GeoWorkload.LONG_MIN + longUnitShift * (j + 1),
-            GeoWorkload.LAT_MIN + latUnitShift * i};
-        
-        // add coordinates
-        JSONArray point1 = new JSONArray(bottomLeft);
-        JSONArray point2 = new JSONArray(upperLeft);
-        JSONArray point3 = new JSONArray(upperRight);
-        JSONArray point4 = new JSONArray(bottomRight);
-        JSONArray point5 = new JSONArray(bottomLeft);
-        JSONArray wrapper1 = new JSONArray();
-        JSONArray wrapper2 = new JSONArray();
-        wrapper1.put(point1);
-        wrapper1.put(point2);
-        wrapper1.put(point3);
-        wrapper1.put(point4);
-        wrapper1.put(point5);
-        wrapper2.put(wrapper1);
-        JSONObject jobj = new JSONObject().put("type", "Polygon");
-        jobj.put("coordinates", wrapper2);
-        
-        // add to predicates
-        DataFilter queryPredicate = new DataFilter();
-        queryPredicate.setName("geometry");
-        queryPredicate.setValueA(jobj);
-        
-        geometryPredicatesList.add(queryPredicate);
-      }
-    }
+  public ArrayList<DataFilter> buildGeoPredicateCase3() {
+    ArrayList<DataFilter> cells = new ArrayList<DataFilter>(getGridPredicates());
     // randomize order
-    Collections.shuffle(geometryPredicatesList, new Random());
+    Collections.shuffle(cells, GeoRandom.current());
+    cursors.get().geometryPredicatesList = cells;
+    return cells;
   }
-  
+
+  /**
+   * @return the grid cell predicates of use cases 2 and 3 in row-major order, see {@link #getGridCell(double, double)}
+   */
+  public List<DataFilter> getGridPredicates() {
+    return grid.asList();
+  }
+
+  public int getGridColumns() {
+    return grid.getColumns();
+  }
+
+  public int getGridRows() {
+    return grid.getRows();
+  }
+
+  /**
+   * Finds the grid cell of a position arithmetically; the grid is axis-aligned with cells of equal size.
+   * @param x longitude
+   * @param y latitude
+   * @return index of the cell in {@link #getGridPredicates()}, or -1 if the position is outside of the grid
+   */
+  public int getGridCell(double x, double y) {
+    return grid.getCell(x, y);
+  }
+
+  /**
+   * Returns the parsed geometry (and name, if any) of a stored document, parsing it only on a cache miss.
+   * @param storageKey key the document is stored under
+   * @param docBody the document if it was already fetched, null to fetch it on a cache miss
+   */
+  private GeometryCache.Entry getParsedDocument(String storageKey, String docBody) {
+    GeometryCache.Entry entry = geometryCache.get(storageKey);
+    if (entry != null) {
+      return entry;
+    }
+    if (docBody == null) {
+      docBody = getVal(storageKey);
+    }
+    JSONObject obj = new JSONObject(docBody);
+    Geometry geometry = Geometry.fromJSON(obj.getJSONObject(GEO_FIELD_INCIDENTS_GEOMETRY));
+    String name = null;
+    JSONObject props = obj.optJSONObject(GEO_FIELD_SCHOOLS_PROPERTIES);
+    if (props != null) {
+      name = props.optString(GEO_FIELD_SCHOOLS_PROPERTIES_OBJ_NAME, null);
+    }
+    entry = new GeometryCache.Entry(geometry, name);
+    geometryCache.put(storageKey, entry);
+    return entry;
+  }
+
+  /**
+   * @return the use case predicate list built last by the calling thread
+   */
   public ArrayList<DataFilter> getGeometryPredicatesList() {
-    return geometryPredicatesList;
+    return cursors.get().geometryPredicatesList;
   }
   
   public String getBuildingsShapeArea() {
@@ -0,0 +1,135 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Per-thread read-ahead of the storage values that the incident operations need: random document bodies for insert
+ * and query predicates, and ids from the insert document counters.
+ *
+ * Bodies are fetched a batch at a time with one bulk get, and ids are reserved a block at a time with one increment
+ * by the batch size. Once half of a batch is used up the next one is requested asynchronously, see
+ * {@link ParameterGenerator#getBulkValAsync(java.util.Collection)} and
+ * {@link ParameterGenerator#incrementAsync(String, int)}, so an operation only waits for storage if it outruns the
+ * refill. Ids that a thread reserved but did not use by the end of the run are left as gaps. Not thread safe.
+ */
+final class PrefetchQueue {
+
+  private final ParameterGenerator generator;
+  private final int size;
+  private final int lowWater;
+
+  private final ArrayDeque<String> bodies;
+  private List<String> pendingKeys;
+  private Future<Map<String, Object>> pendingBodies;
+
+  private final Map<String, IdBlock> idBlocks = new HashMap<String, IdBlock>();
+
+  /**
+   * Reserved ids of one counter: the unused part of the current block and the request for the next one.
+   */
+  private static final class IdBlock {
+    private int next;
+    private int end;
+    private Future<Long> pending;
+  }
+
+  PrefetchQueue(ParameterGenerator generator, int size) {
+    this.generator = generator;
+    this.size = size;
+    this.lowWater = size / 2;
+    this.bodies = new ArrayDeque<String>(size * 2);
+  }
+
+  /**
+   * @return the body of a random stored incident, or null if there is none
+   */
+  String nextIncidentBody() {
+    if (pendingBodies != null && (bodies.isEmpty() || pendingBodies.isDone())) {
+      receiveBodies();
+    }
+    if (bodies.isEmpty()) {
+      requestBodies();
+      receiveBodies();
+    }
+    String body = bodies.poll();
+    if (body == null) {
+      // the store holds none of the drawn documents
+      body = generator.getVal(generator.nextIncidentStorageKey());
+    }
+    if (pendingBodies == null && bodies.size() <= lowWater) {
+      requestBodies();
+    }
+    return body;
+  }
+
+  private void requestBodies() {
+    pendingKeys = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      pendingKeys.add(generator.nextIncidentStorageKey());
+    }
+    pendingBodies = generator.getBulkValAsync(pendingKeys);
+  }
+
+  private void receiveBodies() {
+    Map<String, Object> bulk = await(pendingBodies);
+    if (bulk != null) {
+      // keys drawn twice keep their weight
+      for (String key : pendingKeys) {
+        Object body = bulk.get(key);
+        if (body != null) {
+          bodies.add(body.toString());
+        }
+      }
+    }
+    pendingKeys = null;
+    pendingBodies = null;
+  }
+
+  /**
+   * @param counterKey storage key of an insert document counter
+   * @return the next id reserved from the counter, as {@link ParameterGenerator#increment(String, int)} by 1 would
+   *         have returned it
+   */
+  int nextInsertId(String counterKey) {
+    IdBlock block = idBlocks.get(counterKey);
+    if (block == null) {
+      block = new IdBlock();
+      idBlocks.put(counterKey, block);
+    }
+    if (block.next == block.end) {
+      if (block.pending == null) {
+        block.pending = generator.incrementAsync(counterKey, size);
+      }
+      Long last = await(block.pending);
+      block.pending = null;
+      if (last == null || last < 0) {
+        return generator.increment(counterKey, 1);
+      }
+      block.end = (int) (last + 1);
+      block.next = block.end - size;
+    }
+    int id = block.next++;
+    if (block.pending == null && block.end - block.next <= lowWater) {
+      block.pending = generator.incrementAsync(counterKey, size);
+    }
+    return id;
+  }
+
+  private static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      System.err.println("Prefetch from the parameter store failed " + e.getCause());
+      return null;
+    }
+  }
+}
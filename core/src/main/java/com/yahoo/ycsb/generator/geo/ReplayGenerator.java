@@ -0,0 +1,93 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoTrace;
+
+/**
+ * Parameter generator of a replay: instead of drawing predicates from a parameter store it hands the bindings the
+ * ones of the recorded operation set by {@link #setOperation(GeoTrace.Op)}. It has no store; the grid and the geo
+ * field lists, which need none, work as in any generator.
+ */
+public class ReplayGenerator extends ParameterGenerator {
+
+  private final ThreadLocal<GeoTrace.Op> operations = new ThreadLocal<GeoTrace.Op>();
+
+  public ReplayGenerator(Properties p) {
+    super(p);
+  }
+
+  /**
+   * Make a recorded operation the calling thread's current one.
+   */
+  public void setOperation(GeoTrace.Op op) {
+    operations.set(op);
+    setCurrentPredicates(op.getPredicate(), op.getPredicates());
+  }
+
+  @Override
+  public DataFilter buildGeoInsertDocument() {
+    return getGeoPredicate();
+  }
+
+  @Override
+  public DataFilter buildGeoReadPredicate() {
+    return getGeoPredicate();
+  }
+
+  @Override
+  public DataFilter buildGeoUpdatePredicate() {
+    return getGeoPredicate();
+  }
+
+  @Override
+  public ArrayList<DataFilter> buildGeoPredicateCase1() {
+    return getGeometryPredicatesList();
+  }
+
+  @Override
+  public ArrayList<DataFilter> buildGeoPredicateCase3() {
+    return getGeometryPredicatesList();
+  }
+
+  @Override
+  public String getIncidentIdWithDistribution() {
+    return operations.get().getStartKey();
+  }
+
+  @Override
+  public int getRandomLimit() {
+    int limit = operations.get().getLimit();
+    return limit >= 0 ? limit : super.getRandomLimit();
+  }
+
+  @Override
+  public int getRandomOffset() {
+    int offset = operations.get().getOffset();
+    return offset >= 0 ? offset : super.getRandomOffset();
+  }
+
+  @Override
+  protected Map<String, Object> getBulkVal(Collection<String> keys) {
+    throw new UnsupportedOperationException("A replay has no parameter store");
+  }
+
+  @Override
+  protected void setVal(String key, String value) {
+    throw new UnsupportedOperationException("A replay has no parameter store");
+  }
+
+  @Override
+  protected String getVal(String key) {
+    throw new UnsupportedOperationException("A replay has no parameter store");
+  }
+
+  @Override
+  protected int increment(String key, int step) {
+    throw new UnsupportedOperationException("A replay has no parameter store");
+  }
+}
@@ -0,0 +1,294 @@
+package com.yahoo.ycsb.generator.geo;
+
+import java.util.Properties;
+import java.util.Random;
+
+import com.yahoo.ycsb.generator.ScrambledZipfianGenerator;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * Query shapes of a configured size over the extent of the loaded dataset, so that the selectivity of the queries can
+ * be swept rather than being whatever a random box happens to cover.
+ *
+ * The extent is the area the incidents are loaded over: {@code datasize} tiles of the seed area in each direction
+ * for a multi-table load, the seed area itself for a single-table load (see
+ * {@link ParameterGenerator#getSynthesisTiles()}). Every query is placed at a location drawn from
+ * {@code geo_query_distribution}:
+ * <ul>
+ * <li>{@code uniform}: anywhere in the extent, the default,</li>
+ * <li>{@code zipfian}: in one of {@code geo_query_zipfian_cells} x {@code geo_query_zipfian_cells} cells of the
+ * extent, the cells drawn with a scrambled zipfian distribution so that the popular ones are spread out,</li>
+ * <li>{@code hotspot}: {@code geo_query_hotspot_opn_fraction} of the queries in the square at the center of the
+ * extent that covers {@code geo_query_hotspot_data_fraction} of its area, the others outside of it.</li>
+ * </ul>
+ *
+ * The shapes built at a location:
+ * <ul>
+ * <li>geo_near: a circle of {@code geo_query_radius} meters around the location,</li>
+ * <li>geo_box: a square of {@code geo_query_box_area} square meters north east of the location,</li>
+ * <li>geo_intersect: a regular polygon of {@code geo_query_vertices} vertices and the area of the box, centered on
+ * the box, or with {@code geo_query_intersect_shape=linestring} a random walk of {@code geo_query_vertices}
+ * positions as long as the side of the box,</li>
+ * <li>geo_update: the location itself.</li>
+ * </ul>
+ *
+ * A positive {@code geo_query_selectivity} overrides the radius and the area: they are sized so that the circle, the
+ * box and the polygon each cover that many incidents on average, assuming the loaded incidents, the seeds times the
+ * tiles, are spread evenly over the extent. Locations are kept far enough from the edges that the circle and the box
+ * lie inside the extent.
+ */
+public class SyntheticGeometryGenerator extends GeometryGenerator {
+
+  public static final String DISTRIBUTION_PROPERTY = "geo_query_distribution";
+  public static final String DISTRIBUTION_PROPERTY_DEFAULT = "uniform";
+
+  /** Cells of the zipfian distribution along each side of the extent. */
+  public static final String ZIPFIAN_CELLS_PROPERTY = "geo_query_zipfian_cells";
+  public static final String ZIPFIAN_CELLS_PROPERTY_DEFAULT = "100";
+
+  /** Fraction of the extent the hot square of the hotspot distribution covers. */
+  public static final String HOTSPOT_DATA_FRACTION_PROPERTY = "geo_query_hotspot_data_fraction";
+  public static final String HOTSPOT_DATA_FRACTION_PROPERTY_DEFAULT = "0.1";
+
+  /** Fraction of the queries the hotspot distribution places in the hot square. */
+  public static final String HOTSPOT_OPN_FRACTION_PROPERTY = "geo_query_hotspot_opn_fraction";
+  public static final String HOTSPOT_OPN_FRACTION_PROPERTY_DEFAULT = "0.9";
+
+  /** Area of geo_box and of the geo_intersect polygon in square meters. */
+  public static final String BOX_AREA_PROPERTY = "geo_query_box_area";
+  public static final String BOX_AREA_PROPERTY_DEFAULT = "1000000";
+
+  public static final String VERTICES_PROPERTY = "geo_query_vertices";
+  public static final String VERTICES_PROPERTY_DEFAULT = "8";
+
+  public static final String INTERSECT_SHAPE_PROPERTY = "geo_query_intersect_shape";
+  public static final String INTERSECT_SHAPE_PROPERTY_DEFAULT = "polygon";
+
+  /** Incidents a query is expected to match; 0 to use the radius and the area as configured. */
+  public static final String SELECTIVITY_PROPERTY = "geo_query_selectivity";
+  public static final String SELECTIVITY_PROPERTY_DEFAULT = "0";
+
+  private enum Distribution { UNIFORM, ZIPFIAN, HOTSPOT }
+
+  private final Distribution distribution;
+  private final int zipfianCells;
+  private final ScrambledZipfianGenerator zipfian;
+  private final double hotSide;
+  private final double hotOpnFraction;
+  private final double radius;
+  private final double boxArea;
+  private final int vertices;
+  private final boolean polygon;
+  private final double selectivity;
+
+  /**
+   * @throws IllegalArgumentException if a property is out of range
+   */
+  public SyntheticGeometryGenerator(Properties p) {
+    String name = p.getProperty(DISTRIBUTION_PROPERTY, DISTRIBUTION_PROPERTY_DEFAULT);
+    switch (name) {
+    case "uniform":
+      distribution = Distribution.UNIFORM;
+      break;
+    case "zipfian":
+      distribution = Distribution.ZIPFIAN;
+      break;
+    case "hotspot":
+      distribution = Distribution.HOTSPOT;
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown " + DISTRIBUTION_PROPERTY + " " + name
+          + ", expected uniform, zipfian or hotspot");
+    }
+    zipfianCells = Math.max(1, Integer.parseInt(p.getProperty(ZIPFIAN_CELLS_PROPERTY,
+        ZIPFIAN_CELLS_PROPERTY_DEFAULT)));
+    zipfian = distribution == Distribution.ZIPFIAN
+        ? new ScrambledZipfianGenerator(0, (long) zipfianCells * zipfianCells - 1) : null;
+    double hotFraction = Double.parseDouble(p.getProperty(HOTSPOT_DATA_FRACTION_PROPERTY,
+        HOTSPOT_DATA_FRACTION_PROPERTY_DEFAULT));
+    hotOpnFraction = Double.parseDouble(p.getProperty(HOTSPOT_OPN_FRACTION_PROPERTY,
+        HOTSPOT_OPN_FRACTION_PROPERTY_DEFAULT));
+    if (hotFraction <= 0 || hotFraction > 1 || hotOpnFraction < 0 || hotOpnFraction > 1) {
+      throw new IllegalArgumentException(HOTSPOT_DATA_FRACTION_PROPERTY + " must be in (0, 1] and "
+          + HOTSPOT_OPN_FRACTION_PROPERTY + " in [0, 1]");
+    }
+    hotSide = Math.sqrt(hotFraction);
+
+    radius = Double.parseDouble(p.getProperty(RADIUS_PROPERTY, RADIUS_PROPERTY_DEFAULT));
+    boxArea = Double.parseDouble(p.getProperty(BOX_AREA_PROPERTY, BOX_AREA_PROPERTY_DEFAULT));
+    selectivity = Double.parseDouble(p.getProperty(SELECTIVITY_PROPERTY, SELECTIVITY_PROPERTY_DEFAULT));
+    if (radius <= 0 || boxArea <= 0 || selectivity < 0) {
+      throw new IllegalArgumentException(RADIUS_PROPERTY + " and " + BOX_AREA_PROPERTY + " must be positive, "
+          + SELECTIVITY_PROPERTY + " must not be negative");
+    }
+
+    String shape = p.getProperty(INTERSECT_SHAPE_PROPERTY, INTERSECT_SHAPE_PROPERTY_DEFAULT);
+    if (!shape.equals("polygon") && !shape.equals("linestring")) {
+      throw new IllegalArgumentException("Unknown " + INTERSECT_SHAPE_PROPERTY + " " + shape
+          + ", expected polygon or linestring");
+    }
+    polygon = shape.equals("polygon");
+    vertices = Integer.parseInt(p.getProperty(VERTICES_PROPERTY, VERTICES_PROPERTY_DEFAULT));
+    if (vertices < (polygon ? 3 : 2)) {
+      throw new IllegalArgumentException(VERTICES_PROPERTY + " must be at least 3 for a polygon and 2 for a line");
+    }
+  }
+
+  /**
+   * @return {minX, minY, maxX, maxY} of the area the incidents are loaded over
+   */
+  static double[] getExtent(ParameterGenerator gen) {
+    int tiles = gen.getSynthesisTiles();
+    return new double[]{GeoWorkload.LONG_MIN, GeoWorkload.LAT_MIN,
+        GeoWorkload.LONG_MIN + GeoWorkload.LONG_OFFSET * tiles, GeoWorkload.LAT_MIN + GeoWorkload.LAT_OFFSET * tiles};
+  }
+
+  /**
+   * @return meters of a degree of longitude in the middle of the extent
+   */
+  private static double metersPerDegreeX(double[] extent) {
+    return METERS_PER_DEGREE * Math.cos(Math.toRadians((extent[1] + extent[3]) / 2));
+  }
+
+  /**
+   * @return square meters expected to hold the selected number of incidents
+   */
+  private double getTargetArea(ParameterGenerator gen, double[] extent) {
+    double extentArea = (extent[2] - extent[0]) * metersPerDegreeX(extent) * (extent[3] - extent[1])
+        * METERS_PER_DEGREE;
+    return selectivity * extentArea / getLoadedDocsCount(gen);
+  }
+
+  /**
+   * @return incidents in the extent: every seed incident once per tile
+   */
+  static double getLoadedDocsCount(ParameterGenerator gen) {
+    int tiles = gen.getSynthesisTiles();
+    int seeds = gen.getTotalDocsCount(ParameterGenerator.GEO_DOCUMENT_PREFIX_INCIDENTS);
+    return Math.max(1.0, (double) seeds * tiles * tiles);
+  }
+
+  private double getRadius(ParameterGenerator gen, double[] extent) {
+    return selectivity > 0 ? Math.sqrt(getTargetArea(gen, extent) / Math.PI) : radius;
+  }
+
+  private double getArea(ParameterGenerator gen, double[] extent) {
+    return selectivity > 0 ? getTargetArea(gen, extent) : boxArea;
+  }
+
+  /**
+   * @return the position of a location relative to the area locations are drawn from, each between 0 and 1
+   */
+  private double[] nextRelativePosition() {
+    Random rand = GeoRandom.current();
+    switch (distribution) {
+    case ZIPFIAN:
+      long cell = zipfian.nextValue();
+      return new double[]{(cell % zipfianCells + rand.nextDouble()) / zipfianCells,
+          (cell / zipfianCells + rand.nextDouble()) / zipfianCells};
+    case HOTSPOT:
+      double low = (1 - hotSide) / 2;
+      if (rand.nextDouble() < hotOpnFraction || hotSide >= 1) {
+        return new double[]{low + rand.nextDouble() * hotSide, low + rand.nextDouble() * hotSide};
+      }
+      while (true) {
+        double u = rand.nextDouble();
+        double v = rand.nextDouble();
+        if (u < low || u >= low + hotSide || v < low || v >= low + hotSide) {
+          return new double[]{u, v};
+        }
+      }
+    default:
+      return new double[]{rand.nextDouble(), rand.nextDouble()};
+    }
+  }
+
+  private Geometry.Point nextLocation(ParameterGenerator gen) {
+    double[] extent = getExtent(gen);
+    double perDegreeX = metersPerDegreeX(extent);
+    double radiusX = getRadius(gen, extent) / perDegreeX;
+    double radiusY = getRadius(gen, extent) / METERS_PER_DEGREE;
+    double side = Math.sqrt(getArea(gen, extent));
+    double[] position = nextRelativePosition();
+    return new Geometry.Point(
+        between(extent[0] + radiusX, extent[2] - Math.max(radiusX, side / perDegreeX), position[0]),
+        between(extent[1] + radiusY, extent[3] - Math.max(radiusY, side / METERS_PER_DEGREE), position[1]));
+  }
+
+  /**
+   * @return the value at the fraction of the way from low to high, or half way if high is below low
+   */
+  private static double between(double low, double high, double fraction) {
+    if (high < low) {
+      return (low + high) / 2;
+    }
+    return low + (high - low) * fraction;
+  }
+
+  @Override
+  public Geometry nextNearCenter(ParameterGenerator gen) {
+    return nextLocation(gen);
+  }
+
+  @Override
+  public double nextNearRadius(ParameterGenerator gen) {
+    return getRadius(gen, getExtent(gen));
+  }
+
+  @Override
+  public Geometry nextBoxCorner(ParameterGenerator gen, Geometry corner) {
+    double[] extent = getExtent(gen);
+    double side = Math.sqrt(getArea(gen, extent));
+    return new Geometry.Point(corner.getX(0, 0) + side / metersPerDegreeX(extent),
+        corner.getY(0, 0) + side / METERS_PER_DEGREE);
+  }
+
+  /**
+   * A line string is returned as a multi line string of one line, the type every binding already handles.
+   */
+  @Override
+  public Geometry nextIntersect(ParameterGenerator gen) {
+    Random rand = GeoRandom.current();
+    double[] extent = getExtent(gen);
+    double perDegreeX = metersPerDegreeX(extent);
+    double area = getArea(gen, extent);
+    double side = Math.sqrt(area);
+    Geometry.Point location = nextLocation(gen);
+    double x = location.getX();
+    double y = location.getY();
+
+    if (polygon) {
+      // circumradius of the regular polygon of that area, centered on the box
+      double circumradius = Math.sqrt(2 * area / (vertices * Math.sin(2 * Math.PI / vertices)));
+      double centerX = x + side / 2 / perDegreeX;
+      double centerY = y + side / 2 / METERS_PER_DEGREE;
+      double rotation = rand.nextDouble() * 2 * Math.PI;
+      double[] ring = new double[(vertices + 1) * 2];
+      for (int i = 0; i < vertices; i++) {
+        double angle = rotation + 2 * Math.PI * i / vertices;
+        ring[i * 2] = centerX + circumradius * Math.cos(angle) / perDegreeX;
+        ring[i * 2 + 1] = centerY + circumradius * Math.sin(angle) / METERS_PER_DEGREE;
+      }
+      ring[vertices * 2] = ring[0];
+      ring[vertices * 2 + 1] = ring[1];
+      return new Geometry.Polygon(ring);
+    }
+
+    double step = side / (vertices - 1);
+    double[] line = new double[vertices * 2];
+    line[0] = x;
+    line[1] = y;
+    for (int i = 1; i < vertices; i++) {
+      double heading = rand.nextDouble() * 2 * Math.PI;
+      line[i * 2] = line[i * 2 - 2] + step * Math.cos(heading) / perDegreeX;
+      line[i * 2 + 1] = line[i * 2 - 1] + step * Math.sin(heading) / METERS_PER_DEGREE;
+    }
+    return new Geometry.MultiLineString(line);
+  }
+
+  @Override
+  public Geometry nextUpdateLocation(ParameterGenerator gen) {
+    return nextLocation(gen);
+  }
+}
@@ -21,11 +21,15 @@ import com.yahoo.ycsb.Status;
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Collects latency measurements, and reports them when requested.
+ *
+ * Operations measured on every call can be registered once with {@link #register(String)} and then measured by the
+ * returned handle, which skips the lookup of the measurement by name.
  */
 public class Measurements {
   /**
@@ -49,7 +53,12 @@ public class Measurements {
   public static final String MEASUREMENT_TRACK_JVM_PROPERTY = "measurement.trackjvm";
   public static final String MEASUREMENT_TRACK_JVM_PROPERTY_DEFAULT = "false";
 
-  private static Measurements singleton = null;
+  /**
+   * Shards each measurement records into, see {@link Stripes}; defaults to the number of processors.
+   */
+  public static final String MEASUREMENT_STRIPES_PROPERTY = "measurement.stripes";
+
+  private static volatile Measurements singleton = null;
   private static Properties measurementproperties = null;
 
   public static void setProperties(Properties props) {
@@ -59,15 +68,24 @@ public class Measurements {
   /**
    * Return the singleton Measurements object.
    */
-  public static synchronized Measurements getMeasurements() {
-    if (singleton == null) {
-      singleton = new Measurements(measurementproperties);
+  public static Measurements getMeasurements() {
+    Measurements m = singleton;
+    if (m == null) {
+      synchronized (Measurements.class) {
+        m = singleton;
+        if (m == null) {
+          m = new Measurements(measurementproperties);
+          singleton = m;
+        }
+      }
     }
-    return singleton;
+    return m;
   }
 
   private final ConcurrentHashMap<String, OneMeasurement> opToMesurementMap;
   private final ConcurrentHashMap<String, OneMeasurement> opToIntendedMesurementMap;
+  private final ConcurrentHashMap<String, Integer> handleMap = new ConcurrentHashMap<>();
+  private volatile Handle[] handles = new Handle[0];
   private final MeasurementType measurementType;
   private final int measurementInterval;
   private final Properties props;
@@ -144,6 +162,45 @@ public class Measurements {
     }
   }
 
+  /**
+   * A registered operation; its measurements are looked up on first use, so that operations that are never measured
+   * do not show up in the summary and the export.
+   */
+  private static final class Handle {
+    private final String operation;
+    private volatile OneMeasurement measurement;
+    private volatile OneMeasurement intendedMeasurement;
+
+    private Handle(String operation) {
+      this.operation = operation;
+    }
+  }
+
+  /**
+   * Register an operation for {@link #measure(int, int)}, {@link #measureIntended(int, int)} and
+   * {@link #reportStatus(int, Status)}; registering a name again returns the same handle.
+   *
+   * @return the handle of the operation
+   */
+  public int register(String operation) {
+    Integer handle = handleMap.get(operation);
+    if (handle != null) {
+      return handle;
+    }
+    synchronized (this) {
+      handle = handleMap.get(operation);
+      if (handle == null) {
+        handle = handles.length;
+        Handle[] grown = Arrays.copyOf(handles, handle + 1);
+        grown[handle] = new Handle(operation);
+        // publish the handle before its number
+        handles = grown;
+        handleMap.put(operation, handle);
+      }
+      return handle;
+    }
+  }
+
   static class StartTimeHolder {
     protected long time;
 
@@ -184,15 +241,28 @@ public class Measurements {
     if (measurementInterval == 1) {
       return;
     }
-    try {
-      OneMeasurement m = getOpMeasurement(operation);
-      m.measure(latency);
-    } catch (java.lang.ArrayIndexOutOfBoundsException e) {
-      // This seems like a terribly hacky way to cover up for a bug in the measurement code
-      System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
-      e.printStackTrace();
-      e.printStackTrace(System.out);
+    record(getOpMeasurement(operation), latency);
+  }
+
+  /**
+   * Report a single value of a registered metric.
+   *
+   * @param handle what {@link #register(String)} returned for the metric
+   */
+  public void measure(int handle, int latency) {
+    if (measurementInterval == 1) {
+      return;
+    }
+    record(getMeasurement(handles[handle]), latency);
+  }
+
+  private OneMeasurement getMeasurement(Handle h) {
+    OneMeasurement m = h.measurement;
+    if (m == null) {
+      m = getOpMeasurement(h.operation);
+      h.measurement = m;
     }
+    return m;
   }
 
   /**
@@ -203,8 +273,32 @@ public class Measurements {
     if (measurementInterval == 0) {
       return;
     }
+    record(getOpIntendedMeasurement(operation), latency);
+  }
+
+  /**
+   * Report a single value of a registered metric, measured from the intended start.
+   *
+   * @param handle what {@link #register(String)} returned for the metric
+   */
+  public void measureIntended(int handle, int latency) {
+    if (measurementInterval == 0) {
+      return;
+    }
+    record(getIntendedMeasurement(handles[handle]), latency);
+  }
+
+  private OneMeasurement getIntendedMeasurement(Handle h) {
+    OneMeasurement m = h.intendedMeasurement;
+    if (m == null) {
+      m = getOpIntendedMeasurement(h.operation);
+      h.intendedMeasurement = m;
+    }
+    return m;
+  }
+
+  private static void record(OneMeasurement m, int latency) {
     try {
-      OneMeasurement m = getOpIntendedMeasurement(operation);
       m.measure(latency);
     } catch (java.lang.ArrayIndexOutOfBoundsException e) {
       // This seems like a terribly hacky way to cover up for a bug in the measurement code
@@ -249,6 +343,18 @@ public class Measurements {
     m.reportStatus(status);
   }
 
+  /**
+   * Report a return code for a single DB operation of a registered metric.
+   *
+   * @param handle what {@link #register(String)} returned for the operation
+   */
+  public void reportStatus(int handle, Status status) {
+    OneMeasurement m = measurementInterval == 1 ?
+        getIntendedMeasurement(handles[handle]) :
+        getMeasurement(handles[handle]);
+    m.reportStatus(status);
+  }
+
   /**
    * Export the current measurements to a suitable format.
    *
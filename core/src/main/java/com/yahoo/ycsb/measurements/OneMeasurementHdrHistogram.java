@@ -34,6 +34,8 @@ import java.util.Properties;
 /**
  * Take measurements and maintain a HdrHistogram of a given metric, such as READ LATENCY.
  *
+ * The client threads record into a {@link Recorder} per stripe (see {@link Stripes}), and the interval histograms of
+ * the recorders are merged when a summary or the export asks for them.
  */
 public class OneMeasurementHdrHistogram extends OneMeasurement {
 
@@ -41,7 +43,7 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
   private final PrintStream log;
   private final HistogramLogWriter histogramLogWriter;
 
-  private final Recorder histogram;
+  private final Stripes<Recorder> histogram;
   private Histogram totalHistogram;
 
   /**
@@ -78,7 +80,12 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
       histogramLogWriter.setBaseTime(now);
       histogramLogWriter.outputLegend();
     }
-    histogram = new Recorder(3);
+    histogram = new Stripes<Recorder>(props) {
+      @Override
+      protected Recorder create() {
+        return new Recorder(3);
+      }
+    };
   }
 
   /**
@@ -86,7 +93,7 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
    * Using {@link Recorder} to support concurrent updates to histogram.
    */
   public void measure(int latencyInMicros) {
-    histogram.recordValue(latencyInMicros);
+    histogram.get().recordValue(latencyInMicros);
   }
 
   /**
@@ -139,7 +146,14 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
   }
 
   private Histogram getIntervalHistogramAndAccumulate() {
-    Histogram intervalHistogram = histogram.getIntervalHistogram();
+    Histogram intervalHistogram = histogram.get(0).getIntervalHistogram();
+    for (int i = 1; i < histogram.size(); i++) {
+      Histogram stripe = histogram.get(i).getIntervalHistogram();
+      intervalHistogram.add(stripe);
+      // the log writer stamps the interval with these
+      intervalHistogram.setStartTimeStamp(Math.min(intervalHistogram.getStartTimeStamp(), stripe.getStartTimeStamp()));
+      intervalHistogram.setEndTimeStamp(Math.max(intervalHistogram.getEndTimeStamp(), stripe.getEndTimeStamp()));
+    }
     // add this to the total time histogram.
     if (totalHistogram == null) {
       totalHistogram = intervalHistogram;
@@ -26,6 +26,7 @@ import java.util.Properties;
 /**
  * Take measurements and maintain a histogram of a given metric, such as READ LATENCY.
  *
+ * The client threads record into {@link Stripes}, which are merged for the summary and the export.
  */
 public class OneMeasurementHistogram extends OneMeasurement {
   public static final String BUCKETS = "histogram.buckets";
@@ -36,82 +37,119 @@ public class OneMeasurementHistogram extends OneMeasurement {
    */
   private final int buckets;
 
-  /**
-   * Groups operations in discrete blocks of 1ms width.
-   */
-  private final int[] histogram;
+  private final Stripes<Shard> shards;
 
   /**
-   * Counts all operations outside the histogram's range.
+   * The measurements of the threads that record into one stripe, guarded by the shard.
    */
-  private int histogramoverflow;
-
-  /**
-   * The total number of reported operations.
-   */
-  private int operations;
-
-  /**
-   * The sum of each latency measurement over all operations.
-   * Calculated in ms.
-   */
-  private long totallatency;
-
-  /**
-   * The sum of each latency measurement squared over all operations. 
-   * Used to calculate variance of latency.
-   * Calculated in ms. 
-   */
-  private double totalsquaredlatency;
-
-  //keep a windowed version of these stats for printing status
-  private int windowoperations;
-  private long windowtotallatency;
-
-  private int min;
-  private int max;
+  private static final class Shard {
+    /**
+     * Groups operations in discrete blocks of 1ms width.
+     */
+    private final int[] histogram;
+
+    /**
+     * Counts all operations outside the histogram's range.
+     */
+    private int histogramoverflow;
+
+    /**
+     * The total number of reported operations.
+     */
+    private int operations;
+
+    /**
+     * The sum of each latency measurement over all operations.
+     * Calculated in ms.
+     */
+    private long totallatency;
+
+    /**
+     * The sum of each latency measurement squared over all operations.
+     * Used to calculate variance of latency.
+     * Calculated in ms.
+     */
+    private double totalsquaredlatency;
+
+    //keep a windowed version of these stats for printing status
+    private int windowoperations;
+    private long windowtotallatency;
+
+    private int min = -1;
+    private int max = -1;
+
+    private Shard(int buckets) {
+      histogram = new int[buckets];
+    }
+  }
 
   public OneMeasurementHistogram(String name, Properties props) {
     super(name);
     buckets = Integer.parseInt(props.getProperty(BUCKETS, BUCKETS_DEFAULT));
-    histogram = new int[buckets];
-    histogramoverflow = 0;
-    operations = 0;
-    totallatency = 0;
-    totalsquaredlatency = 0;
-    windowoperations = 0;
-    windowtotallatency = 0;
-    min = -1;
-    max = -1;
+    shards = new Stripes<Shard>(props) {
+      @Override
+      protected Shard create() {
+        return new Shard(buckets);
+      }
+    };
   }
 
   /* (non-Javadoc)
    * @see com.yahoo.ycsb.OneMeasurement#measure(int)
    */
-  public synchronized void measure(int latency) {
-    //latency reported in us and collected in bucket by ms.
-    if (latency / 1000 >= buckets) {
-      histogramoverflow++;
-    } else {
-      histogram[latency / 1000]++;
-    }
-    operations++;
-    totallatency += latency;
-    totalsquaredlatency += ((double) latency) * ((double) latency);
-    windowoperations++;
-    windowtotallatency += latency;
-
-    if ((min < 0) || (latency < min)) {
-      min = latency;
-    }
+  public void measure(int latency) {
+    Shard shard = shards.get();
+    synchronized (shard) {
+      //latency reported in us and collected in bucket by ms.
+      if (latency / 1000 >= buckets) {
+        shard.histogramoverflow++;
+      } else {
+        shard.histogram[latency / 1000]++;
+      }
+      shard.operations++;
+      shard.totallatency += latency;
+      shard.totalsquaredlatency += ((double) latency) * ((double) latency);
+      shard.windowoperations++;
+      shard.windowtotallatency += latency;
+
+      if ((shard.min < 0) || (latency < shard.min)) {
+        shard.min = latency;
+      }
 
-    if ((max < 0) || (latency > max)) {
-      max = latency;
+      if ((shard.max < 0) || (latency > shard.max)) {
+        shard.max = latency;
+      }
     }
   }
 
   @Override
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException {
+    int[] histogram = new int[buckets];
+    int histogramoverflow = 0;
+    int operations = 0;
+    long totallatency = 0;
+    double totalsquaredlatency = 0;
+    int min = -1;
+    int max = -1;
+    for (int s = 0; s < shards.size(); s++) {
+      Shard shard = shards.get(s);
+      synchronized (shard) {
+        for (int i = 0; i < buckets; i++) {
+          histogram[i] += shard.histogram[i];
+        }
+        histogramoverflow += shard.histogramoverflow;
+        operations += shard.operations;
+        totallatency += shard.totallatency;
+        totalsquaredlatency += shard.totalsquaredlatency;
+        if (shard.min >= 0 && (min < 0 || shard.min < min)) {
+          min = shard.min;
+        }
+        if (shard.max > max) {
+          max = shard.max;
+        }
+      }
+    }
+
     double mean = totallatency / ((double) operations);
     double variance = totalsquaredlatency / ((double) operations) - (mean * mean);
     exporter.write(getName(), "Operations", operations);
@@ -144,13 +182,22 @@ public class OneMeasurementHistogram extends OneMeasurement {
 
   @Override
   public String getSummary() {
+    int windowoperations = 0;
+    long windowtotallatency = 0;
+    for (int s = 0; s < shards.size(); s++) {
+      Shard shard = shards.get(s);
+      synchronized (shard) {
+        windowoperations += shard.windowoperations;
+        windowtotallatency += shard.windowtotallatency;
+        shard.windowoperations = 0;
+        shard.windowtotallatency = 0;
+      }
+    }
     if (windowoperations == 0) {
       return "";
     }
     DecimalFormat d = new DecimalFormat("#.##");
     double report = ((double) windowtotallatency) / ((double) windowoperations);
-    windowtotallatency = 0;
-    windowoperations = 0;
     return "[" + getName() + " AverageLatency(us)=" + d.format(report) + "]";
   }
 }
@@ -23,6 +23,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
@@ -32,6 +33,7 @@ import java.util.Properties;
  * Record a series of measurements as raw data points without down sampling,
  * optionally write to an output file when configured.
  *
+ * The client threads record into {@link Stripes}, which are merged in timestamp order for the export.
  */
 public class OneMeasurementRaw extends OneMeasurement {
   /**
@@ -92,14 +94,21 @@ public class OneMeasurementRaw extends OneMeasurement {
 
   private boolean noSummaryStats = false;
 
-  private LinkedList<RawDataPoint> measurements;
-  private long totalLatency = 0;
+  private final Stripes<Shard> shards;
 
-  // A window of stats to print summary for at the next getSummary() call.
-  // It's supposed to be a one line summary, so we will just print count and
-  // average.
-  private int windowOperations = 0;
-  private long windowTotalLatency = 0;
+  /**
+   * The data points of the threads that record into one stripe, guarded by the shard.
+   */
+  private static final class Shard {
+    private final LinkedList<RawDataPoint> measurements = new LinkedList<>();
+    private long totalLatency = 0;
+
+    // A window of stats to print summary for at the next getSummary() call.
+    // It's supposed to be a one line summary, so we will just print count and
+    // average.
+    private int windowOperations = 0;
+    private long windowTotalLatency = 0;
+  }
 
   public OneMeasurementRaw(String name, Properties props) {
     super(name);
@@ -126,21 +135,46 @@ public class OneMeasurementRaw extends OneMeasurement {
     noSummaryStats = Boolean.parseBoolean(props.getProperty(NO_SUMMARY_STATS,
         NO_SUMMARY_STATS_DEFAULT));
 
-    measurements = new LinkedList<>();
+    shards = new Stripes<Shard>(props) {
+      @Override
+      protected Shard create() {
+        return new Shard();
+      }
+    };
   }
 
   @Override
-  public synchronized void measure(int latency) {
-    totalLatency += latency;
-    windowTotalLatency += latency;
-    windowOperations++;
-
-    measurements.add(new RawDataPoint(latency));
+  public void measure(int latency) {
+    RawDataPoint point = new RawDataPoint(latency);
+    Shard shard = shards.get();
+    synchronized (shard) {
+      shard.totalLatency += latency;
+      shard.windowTotalLatency += latency;
+      shard.windowOperations++;
+
+      shard.measurements.add(point);
+    }
   }
 
   @Override
   public void exportMeasurements(MeasurementsExporter exporter)
       throws IOException {
+    ArrayList<RawDataPoint> measurements = new ArrayList<>();
+    long totalLatency = 0;
+    for (int i = 0; i < shards.size(); i++) {
+      Shard shard = shards.get(i);
+      synchronized (shard) {
+        measurements.addAll(shard.measurements);
+        totalLatency += shard.totalLatency;
+      }
+    }
+    Collections.sort(measurements, new Comparator<RawDataPoint>() {
+      @Override
+      public int compare(RawDataPoint p1, RawDataPoint p2) {
+        return Long.compare(p1.timeStamp(), p2.timeStamp());
+      }
+    });
+
     // Output raw data points first then print out a summary of percentiles to
     // stdout.
 
@@ -190,7 +224,18 @@ public class OneMeasurementRaw extends OneMeasurement {
   }
 
   @Override
-  public synchronized String getSummary() {
+  public String getSummary() {
+    int windowOperations = 0;
+    long windowTotalLatency = 0;
+    for (int i = 0; i < shards.size(); i++) {
+      Shard shard = shards.get(i);
+      synchronized (shard) {
+        windowOperations += shard.windowOperations;
+        windowTotalLatency += shard.windowTotalLatency;
+        shard.windowOperations = 0;
+        shard.windowTotalLatency = 0;
+      }
+    }
     if (windowOperations == 0) {
       return "";
     }
@@ -199,9 +244,6 @@ public class OneMeasurementRaw extends OneMeasurement {
         getName(), windowOperations,
         (double) windowTotalLatency / (double) windowOperations);
 
-    windowTotalLatency = 0;
-    windowOperations = 0;
-
     return toReturn;
   }
 }
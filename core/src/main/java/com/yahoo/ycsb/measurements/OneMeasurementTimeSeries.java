@@ -21,25 +21,16 @@ import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Vector;
-
-class SeriesUnit {
-  /**
-   * @param time
-   * @param average
-   */
-  public SeriesUnit(long time, double average) {
-    this.time = time;
-    this.average = average;
-  }
-
-  protected final long time;
-  protected final double average;
-}
+import java.util.TreeMap;
 
 /**
  * A time series measurement of a metric, such as READ LATENCY.
+ *
+ * The client threads record into {@link Stripes}, each of which closes its own time units; the export adds up the
+ * units of all stripes.
  */
 public class OneMeasurementTimeSeries extends OneMeasurement {
 
@@ -50,73 +41,127 @@ public class OneMeasurementTimeSeries extends OneMeasurement {
   public static final String GRANULARITY_DEFAULT = "1000";
 
   private final int granularity;
-  private final Vector<SeriesUnit> measurements;
+  private final Stripes<Shard> shards;
 
-  private long start = -1;
-  private long currentunit = -1;
-  private int count = 0;
-  private int sum = 0;
-  private int operations = 0;
-  private long totallatency = 0;
+  private volatile long start = -1;
 
-  //keep a windowed version of these stats for printing status
-  private int windowoperations = 0;
-  private long windowtotallatency = 0;
-
-  private int min = -1;
-  private int max = -1;
+  /**
+   * The series of the threads that record into one stripe, guarded by the shard.
+   */
+  private static final class Shard {
+    /** Closed units, as {unit, count, sum}. */
+    private final ArrayList<long[]> units = new ArrayList<>();
+
+    private long currentunit = -1;
+    private int count = 0;
+    private long sum = 0;
+    private int operations = 0;
+    private long totallatency = 0;
+
+    //keep a windowed version of these stats for printing status
+    private int windowoperations = 0;
+    private long windowtotallatency = 0;
+
+    private int min = -1;
+    private int max = -1;
+  }
 
   public OneMeasurementTimeSeries(String name, Properties props) {
     super(name);
     granularity = Integer.parseInt(props.getProperty(GRANULARITY, GRANULARITY_DEFAULT));
-    measurements = new Vector<>();
+    shards = new Stripes<Shard>(props) {
+      @Override
+      protected Shard create() {
+        return new Shard();
+      }
+    };
   }
 
-  private synchronized void checkEndOfUnit(boolean forceend) {
-    long now = System.currentTimeMillis();
-
+  private long start(long now) {
     if (start < 0) {
-      currentunit = 0;
-      start = now;
+      synchronized (this) {
+        if (start < 0) {
+          start = now;
+        }
+      }
     }
+    return start;
+  }
 
-    long unit = ((now - start) / granularity) * granularity;
+  private void checkEndOfUnit(Shard shard, boolean forceend) {
+    long now = System.currentTimeMillis();
+    long unit = ((now - start(now)) / granularity) * granularity;
 
-    if ((unit > currentunit) || (forceend)) {
-      double avg = ((double) sum) / ((double) count);
-      measurements.add(new SeriesUnit(currentunit, avg));
+    if (shard.currentunit < 0) {
+      shard.currentunit = unit;
+    }
+    if ((unit > shard.currentunit) || (forceend)) {
+      if (shard.count > 0) {
+        shard.units.add(new long[]{shard.currentunit, shard.count, shard.sum});
+      }
 
-      currentunit = unit;
+      shard.currentunit = unit;
 
-      count = 0;
-      sum = 0;
+      shard.count = 0;
+      shard.sum = 0;
     }
   }
 
   @Override
   public void measure(int latency) {
-    checkEndOfUnit(false);
-
-    count++;
-    sum += latency;
-    totallatency += latency;
-    operations++;
-    windowoperations++;
-    windowtotallatency += latency;
-
-    if (latency > max) {
-      max = latency;
-    }
-
-    if ((latency < min) || (min < 0)) {
-      min = latency;
+    Shard shard = shards.get();
+    synchronized (shard) {
+      checkEndOfUnit(shard, false);
+
+      shard.count++;
+      shard.sum += latency;
+      shard.totallatency += latency;
+      shard.operations++;
+      shard.windowoperations++;
+      shard.windowtotallatency += latency;
+
+      if (latency > shard.max) {
+        shard.max = latency;
+      }
+
+      if ((latency < shard.min) || (shard.min < 0)) {
+        shard.min = latency;
+      }
     }
   }
 
 
   @Override
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException {
-    checkEndOfUnit(true);
+    int operations = 0;
+    long totallatency = 0;
+    int min = -1;
+    int max = -1;
+    // unit -> {count, sum}
+    TreeMap<Long, long[]> series = new TreeMap<>();
+    for (int i = 0; i < shards.size(); i++) {
+      Shard shard = shards.get(i);
+      synchronized (shard) {
+        checkEndOfUnit(shard, true);
+        for (long[] unit : shard.units) {
+          long[] merged = series.get(unit[0]);
+          if (merged == null) {
+            merged = new long[2];
+            series.put(unit[0], merged);
+          }
+          merged[0] += unit[1];
+          merged[1] += unit[2];
+        }
+        operations += shard.operations;
+        totallatency += shard.totallatency;
+        if (shard.min >= 0 && (min < 0 || shard.min < min)) {
+          min = shard.min;
+        }
+        if (shard.max > max) {
+          max = shard.max;
+        }
+      }
+    }
 
     exporter.write(getName(), "Operations", operations);
     exporter.write(getName(), "AverageLatency(us)", (((double) totallatency) / ((double) operations)));
@@ -126,20 +171,29 @@ public class OneMeasurementTimeSeries extends OneMeasurement {
     // TODO: 95th and 99th percentile latency
 
     exportStatusCounts(exporter);
-    for (SeriesUnit unit : measurements) {
-      exporter.write(getName(), Long.toString(unit.time), unit.average);
+    for (Map.Entry<Long, long[]> unit : series.entrySet()) {
+      exporter.write(getName(), Long.toString(unit.getKey()), ((double) unit.getValue()[1]) / unit.getValue()[0]);
     }
   }
 
   @Override
   public String getSummary() {
+    int windowoperations = 0;
+    long windowtotallatency = 0;
+    for (int i = 0; i < shards.size(); i++) {
+      Shard shard = shards.get(i);
+      synchronized (shard) {
+        windowoperations += shard.windowoperations;
+        windowtotallatency += shard.windowtotallatency;
+        shard.windowoperations = 0;
+        shard.windowtotallatency = 0;
+      }
+    }
     if (windowoperations == 0) {
       return "";
     }
     DecimalFormat d = new DecimalFormat("#.##");
     double report = ((double) windowtotallatency) / ((double) windowoperations);
-    windowtotallatency = 0;
-    windowoperations = 0;
     return "[" + getName() + " AverageLatency(us)=" + d.format(report) + "]";
   }
 
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2017 YCSB contributors. All rights reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.util.Properties;
+
+/**
+ * A fixed number of shards of one measurement. A thread always records into the shard its id selects, so the client
+ * threads spread over the shards instead of all contending for one lock, and the status thread and the export merge
+ * the shards. The number of shards is {@link Measurements#MEASUREMENT_STRIPES_PROPERTY}, rounded up to a power of two.
+ *
+ * @param <T> the shard type
+ */
+abstract class Stripes<T> {
+
+  private final Object[] shards;
+  private final int mask;
+
+  Stripes(Properties props) {
+    int count = Integer.parseInt(props.getProperty(Measurements.MEASUREMENT_STRIPES_PROPERTY,
+        String.valueOf(Runtime.getRuntime().availableProcessors())));
+    int size = count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+    shards = new Object[size];
+    for (int i = 0; i < size; i++) {
+      shards[i] = create();
+    }
+    mask = size - 1;
+  }
+
+  protected abstract T create();
+
+  /**
+   * @return the shard of the calling thread
+   */
+  @SuppressWarnings("unchecked")
+  T get() {
+    return (T) shards[(int) Thread.currentThread().getId() & mask];
+  }
+
+  int size() {
+    return shards.length;
+  }
+
+  @SuppressWarnings("unchecked")
+  T get(int i) {
+    return (T) shards[i];
+  }
+}
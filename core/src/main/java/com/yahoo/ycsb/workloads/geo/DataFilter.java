@@ -16,10 +16,12 @@ public class DataFilter {
   private String name;
   private JSONObject valueA;
   private JSONArray valueB;
+  private Geometry geometry;
   private String value;
   private String docid;
   private Double[] coordinates;
   private Double[] coordinates2;
+  private double distance;
   private String operation;
   private String relation;
   private String type = GEO_PREDICATE_TYPE_STRING;
@@ -39,6 +41,10 @@ public class DataFilter {
     this.valueA = valueA;
   }
 
+  public void setGeometry(Geometry geometry) {
+    this.geometry = geometry;
+  }
+
   public void setValueB(JSONArray valueB) {
     this.valueB = valueB;
   }
@@ -59,6 +65,13 @@ public class DataFilter {
     this.coordinates2 = val;
   }
 
+  /**
+   * @param distance radius of a distance query in meters
+   */
+  public void setDistance(double distance) {
+    this.distance = distance;
+  }
+
   public void setOperation(String operation) {
     this.operation = operation;
   }
@@ -93,10 +106,20 @@ public class DataFilter {
     return name;
   }
 
+  /**
+   * Predicates built from a {@link Geometry} only render their GeoJSON object when it is first asked for.
+   */
   public JSONObject getValueA() {
+    if (valueA == null && geometry != null) {
+      valueA = geometry.toJSONObject();
+    }
     return valueA;
   }
 
+  public Geometry getGeometry() {
+    return geometry;
+  }
+
   public JSONArray getValueB() {
     return valueB;
   }
@@ -117,6 +140,10 @@ public class DataFilter {
     return coordinates2;
   }
 
+  public double getDistance() {
+    return distance;
+  }
+
   public String getOperation() {
     return operation;
   }
@@ -0,0 +1,150 @@
+package com.yahoo.ycsb.workloads.geo;
+
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.GeoDB;
+import com.yahoo.ycsb.WorkloadException;
+import com.yahoo.ycsb.generator.geo.GeoRandom;
+import com.yahoo.ycsb.generator.geo.ReplayGenerator;
+import com.yahoo.ycsb.measurements.Measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-issues the geo operations of a trace recorded by {@link GeoWorkload}, see {@link GeoWorkload#GEO_TRACE_FILE},
+ * in the order they were recorded. The client threads take the operations from the memory-mapped trace one at a
+ * time; the parameter store and predicate generation are skipped entirely, see {@link ReplayGenerator}.
+ *
+ * With {@link #GEO_REPLAY_SPEED} above 0 every operation waits for its recorded start, scaled by the speed, and its
+ * latency is measured from that start, so a slow backend is charged for the operations that queued up behind it. A
+ * thread stops at the end of the trace. Only the transaction phase can be replayed, and only the geo operations are
+ * recorded.
+ */
+public class GeoReplayWorkload extends GeoWorkload {
+
+  /** Replay speed relative to the recording: 1 keeps the original timing, 2 halves it, 0 issues as fast as possible. */
+  public static final String GEO_REPLAY_SPEED = "geo_replay_speed";
+  public static final String GEO_REPLAY_SPEED_DEFAULT = "1";
+
+  private GeoTrace.Reader reader;
+  private ReplayGenerator generator;
+  private double speed;
+  private String cleanBasedOn;
+  private volatile long replayStartNs;
+
+  @Override
+  public void init(Properties p) throws WorkloadException {
+    super.init(p);
+    if (reader == null) {
+      throw new WorkloadException("The replay needs a trace, set " + GEO_TRACE_FILE);
+    }
+    speed = Double.parseDouble(p.getProperty(GEO_REPLAY_SPEED, GEO_REPLAY_SPEED_DEFAULT));
+    cleanBasedOn = p.getProperty(GEO_CLEAN_BASED_ON_PROPERTY, GEO_CLEAN_BASED_ON_PROPERTY_DEFAULT);
+    generator = new ReplayGenerator(p);
+  }
+
+  /**
+   * Open the trace of {@link #GEO_TRACE_FILE} for reading.
+   */
+  @Override
+  protected void openTrace(File file) throws WorkloadException {
+    try {
+      reader = GeoTrace.Reader.open(file);
+    } catch (IOException e) {
+      throw new WorkloadException("Could not read the trace " + file, e);
+    }
+    if (reader == null) {
+      throw new WorkloadException(file + " is not a geo trace");
+    }
+  }
+
+  @Override
+  public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException {
+    GeoRandom.seedThread(mythreadid);
+    return generator;
+  }
+
+  @Override
+  public boolean doInsert(GeoDB db, Object threadstate) {
+    System.err.println("A trace can only be replayed in the transaction phase");
+    return false;
+  }
+
+  @Override
+  public boolean doTransaction(GeoDB db, Object threadstate) {
+    GeoTrace.Op op = reader.next();
+    if (op == null) {
+      return false;
+    }
+    if (speed > 0) {
+      long due = getReplayStartNs() + (long) (op.getIntendedStartNs() / speed);
+      while (System.nanoTime() < due) {
+        LockSupport.parkNanos(due - System.nanoTime());
+      }
+      Measurements.getMeasurements().setIntendedStartTimeNs(due);
+    }
+    generator.setOperation(op);
+    String[] tables = op.getTables();
+    try {
+      switch (op.getOperation()) {
+      case "GEO_INSERT":
+        db.geoInsert(tables[0], new HashMap<String, ByteIterator>(), generator);
+        break;
+      case "GEO_UPDATE":
+        db.geoUpdate(tables[0], new HashMap<String, ByteIterator>(), generator);
+        break;
+      case "GEO_NEAR":
+        db.geoNear(tables[0], new HashMap<String, ByteIterator>(), generator);
+        break;
+      case "GEO_BOX":
+        db.geoBox(tables[0], new HashMap<String, ByteIterator>(), generator);
+        break;
+      case "GEO_INTERSECT":
+        db.geoIntersect(tables[0], new HashMap<String, ByteIterator>(), generator);
+        break;
+      case "GEO_SCAN":
+        db.geoScan(tables[0], new Vector<HashMap<String, ByteIterator>>(), generator);
+        break;
+      case "GEO_CASE_GRAFFITI_BY_SCHOOLS":
+        db.geoUseCase1(tables[0], new HashMap<String, Vector<HashMap<String, ByteIterator>>>(), generator);
+        break;
+      case "GEO_CASE_GRAFFITI_BY_DENSITY":
+        db.geoUseCase2(tables[0], new HashMap<String, Vector<HashMap<String, ByteIterator>>>(), generator);
+        break;
+      case "GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC":
+        db.geoUseCase3(tables[0], tables[1], new HashMap<String, Vector<HashMap<String, ByteIterator>>>(),
+            generator);
+        break;
+      case "GEO_CASE_CLEAN_GRAFFITI":
+        db.geoUseCase4(tables[0], cleanBasedOn, new HashSet<Integer>(), generator);
+        break;
+      default:
+        System.err.println("Cannot replay " + op.getOperation());
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+    return true;
+  }
+
+  /**
+   * @return the time the replay started, i.e. the first operation was taken
+   */
+  private long getReplayStartNs() {
+    long start = replayStartNs;
+    if (start == 0) {
+      synchronized (this) {
+        if (replayStartNs == 0) {
+          replayStartNs = System.nanoTime();
+        }
+        start = replayStartNs;
+      }
+    }
+    return start;
+  }
+}
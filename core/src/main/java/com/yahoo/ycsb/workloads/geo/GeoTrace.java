@@ -0,0 +1,371 @@
+package com.yahoo.ycsb.workloads.geo;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary log of the geo operations a run issued, written by {@link GeoWorkload} when {@link GeoWorkload#GEO_TRACE_FILE}
+ * is set and re-issued by {@link GeoReplayWorkload}.
+ *
+ * A record holds everything the bindings take from the parameter generator for one operation: the operation, its
+ * tables, the time it was meant to start, the predicate or predicate list it was given and the limit, offset and scan
+ * start it drew. The predicates of the use case lists (schools, grid cells) are written once and referenced by number
+ * afterwards. Everything is big-endian.
+ *
+ * <pre>
+ * int magic "GEOT", int version,
+ * (string operation, byte tables, string[tables], long intended start ns, int limit, int offset, string start key,
+ *  filter predicate, int list size or -1, (int list entry, or -1 and filter)*)*
+ *
+ * string: int length or -1 for null, UTF-8
+ * filter: short fields or -1 for null, [string name], [string docid], [string value], [double distance], [geometry],
+ *         [filter A], [filter B], [filter C]
+ * geometry: byte type, int parts, (int positions, (double x, double y)*)*
+ * </pre>
+ */
+public final class GeoTrace {
+
+  static final int MAGIC = 0x47454F54;
+  static final int VERSION = 1;
+
+  private static final String[] TYPES = {Geometry.TYPE_POINT, Geometry.TYPE_POLYGON, Geometry.TYPE_MULTILINESTRING};
+
+  private static final int NAME = 1;
+  private static final int DOCID = 1 << 1;
+  private static final int VALUE = 1 << 2;
+  private static final int DISTANCE = 1 << 3;
+  private static final int GEOMETRY = 1 << 4;
+  private static final int NESTED_A = 1 << 5;
+  private static final int NESTED_B = 1 << 6;
+  private static final int NESTED_C = 1 << 7;
+
+  private GeoTrace() {
+  }
+
+  /**
+   * One recorded operation. Values the operation did not draw are null, or -1 for the limit and offset.
+   */
+  public static final class Op {
+    private final String operation;
+    private final String[] tables;
+    private final long intendedStartNs;
+    private int limit = -1;
+    private int offset = -1;
+    private String startKey;
+    private DataFilter predicate;
+    private ArrayList<DataFilter> predicates;
+
+    public Op(String operation, String[] tables, long intendedStartNs) {
+      this.operation = operation;
+      this.tables = tables;
+      this.intendedStartNs = intendedStartNs;
+    }
+
+    public String getOperation() {
+      return operation;
+    }
+
+    public String[] getTables() {
+      return tables;
+    }
+
+    /**
+     * @return the intended start of the operation; in a trace that was read back, relative to the first operation
+     */
+    public long getIntendedStartNs() {
+      return intendedStartNs;
+    }
+
+    public int getLimit() {
+      return limit;
+    }
+
+    public void setLimit(int limit) {
+      this.limit = limit;
+    }
+
+    public int getOffset() {
+      return offset;
+    }
+
+    public void setOffset(int offset) {
+      this.offset = offset;
+    }
+
+    public String getStartKey() {
+      return startKey;
+    }
+
+    public void setStartKey(String startKey) {
+      this.startKey = startKey;
+    }
+
+    public DataFilter getPredicate() {
+      return predicate;
+    }
+
+    public void setPredicate(DataFilter predicate) {
+      this.predicate = predicate;
+    }
+
+    public ArrayList<DataFilter> getPredicates() {
+      return predicates;
+    }
+
+    public void setPredicates(ArrayList<DataFilter> predicates) {
+      this.predicates = predicates;
+    }
+  }
+
+  /**
+   * Appends operations to a trace; shared by the client threads.
+   */
+  public static final class Writer implements Closeable {
+    private final DataOutputStream out;
+    private final Map<DataFilter, Integer> listEntries = new IdentityHashMap<DataFilter, Integer>();
+
+    /**
+     * Create the trace, replacing the file.
+     */
+    public Writer(File file) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+    }
+
+    public synchronized void write(Op op) throws IOException {
+      writeString(op.operation);
+      out.writeByte(op.tables.length);
+      for (String table : op.tables) {
+        writeString(table);
+      }
+      out.writeLong(op.intendedStartNs);
+      out.writeInt(op.limit);
+      out.writeInt(op.offset);
+      writeString(op.startKey);
+      writeFilter(op.predicate);
+      if (op.predicates == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(op.predicates.size());
+      for (DataFilter entry : op.predicates) {
+        Integer number = listEntries.get(entry);
+        if (number != null) {
+          out.writeInt(number);
+        } else {
+          listEntries.put(entry, listEntries.size());
+          out.writeInt(-1);
+          writeFilter(entry);
+        }
+      }
+    }
+
+    private void writeString(String value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    private void writeFilter(DataFilter filter) throws IOException {
+      if (filter == null) {
+        out.writeShort(-1);
+        return;
+      }
+      int fields = (filter.getName() != null ? NAME : 0) | (filter.getDocid() != null ? DOCID : 0)
+          | (filter.getValue() != null ? VALUE : 0) | (filter.getDistance() != 0 ? DISTANCE : 0)
+          | (filter.getGeometry() != null ? GEOMETRY : 0) | (filter.getNestedPredicateA() != null ? NESTED_A : 0)
+          | (filter.getNestedPredicateB() != null ? NESTED_B : 0)
+          | (filter.getNestedPredicateC() != null ? NESTED_C : 0);
+      out.writeShort(fields);
+      if ((fields & NAME) != 0) {
+        writeString(filter.getName());
+      }
+      if ((fields & DOCID) != 0) {
+        writeString(filter.getDocid());
+      }
+      if ((fields & VALUE) != 0) {
+        writeString(filter.getValue());
+      }
+      if ((fields & DISTANCE) != 0) {
+        out.writeDouble(filter.getDistance());
+      }
+      if ((fields & GEOMETRY) != 0) {
+        writeGeometry(filter.getGeometry());
+      }
+      if ((fields & NESTED_A) != 0) {
+        writeFilter(filter.getNestedPredicateA());
+      }
+      if ((fields & NESTED_B) != 0) {
+        writeFilter(filter.getNestedPredicateB());
+      }
+      if ((fields & NESTED_C) != 0) {
+        writeFilter(filter.getNestedPredicateC());
+      }
+    }
+
+    private void writeGeometry(Geometry geometry) throws IOException {
+      out.writeByte(typeCode(geometry.getType()));
+      out.writeInt(geometry.getPartCount());
+      for (int i = 0; i < geometry.getPartCount(); i++) {
+        out.writeInt(geometry.getPositionCount(i));
+        for (int j = 0; j < geometry.getPositionCount(i); j++) {
+          out.writeDouble(geometry.getX(i, j));
+          out.writeDouble(geometry.getY(i, j));
+        }
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads a trace back in the order it was written; shared by the client threads.
+   */
+  public static final class Reader {
+    private final ByteBuffer in;
+    private final List<DataFilter> listEntries = new ArrayList<DataFilter>();
+    private long firstStartNs = Long.MIN_VALUE;
+
+    private Reader(ByteBuffer in) {
+      this.in = in;
+    }
+
+    /**
+     * Memory-map a trace.
+     * @return the reader, or null if the file is not a trace of this version
+     */
+    public static Reader open(File file) throws IOException {
+      ByteBuffer in;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        FileChannel channel = raf.getChannel();
+        if (channel.size() > Integer.MAX_VALUE) {
+          throw new IOException("Trace " + file + " is larger than 2 GB");
+        }
+        in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+        return null;
+      }
+      return new Reader(in);
+    }
+
+    /**
+     * @return the next operation, with its intended start relative to the first one, or null at the end of the trace
+     */
+    public synchronized Op next() {
+      if (!in.hasRemaining()) {
+        return null;
+      }
+      String operation = readString();
+      String[] tables = new String[in.get()];
+      for (int i = 0; i < tables.length; i++) {
+        tables[i] = readString();
+      }
+      long startNs = in.getLong();
+      if (firstStartNs == Long.MIN_VALUE) {
+        firstStartNs = startNs;
+      }
+      Op op = new Op(operation, tables, startNs - firstStartNs);
+      op.limit = in.getInt();
+      op.offset = in.getInt();
+      op.startKey = readString();
+      op.predicate = readFilter();
+      int size = in.getInt();
+      if (size >= 0) {
+        op.predicates = new ArrayList<DataFilter>(size);
+        for (int i = 0; i < size; i++) {
+          int number = in.getInt();
+          if (number < 0) {
+            listEntries.add(readFilter());
+            number = listEntries.size() - 1;
+          }
+          op.predicates.add(listEntries.get(number));
+        }
+      }
+      return op;
+    }
+
+    private String readString() {
+      int length = in.getInt();
+      if (length < 0) {
+        return null;
+      }
+      byte[] bytes = new byte[length];
+      in.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private DataFilter readFilter() {
+      int fields = in.getShort();
+      if (fields == -1) {
+        return null;
+      }
+      DataFilter filter = new DataFilter();
+      if ((fields & NAME) != 0) {
+        filter.setName(readString());
+      }
+      if ((fields & DOCID) != 0) {
+        filter.setDocid(readString());
+      }
+      if ((fields & VALUE) != 0) {
+        filter.setValue(readString());
+      }
+      if ((fields & DISTANCE) != 0) {
+        filter.setDistance(in.getDouble());
+      }
+      if ((fields & GEOMETRY) != 0) {
+        filter.setGeometry(readGeometry());
+      }
+      if ((fields & NESTED_A) != 0) {
+        filter.setNestedPredicateA(readFilter());
+      }
+      if ((fields & NESTED_B) != 0) {
+        filter.setNestedPredicateB(readFilter());
+      }
+      if ((fields & NESTED_C) != 0) {
+        filter.setNestedPredicateC(readFilter());
+      }
+      return filter;
+    }
+
+    private Geometry readGeometry() {
+      String type = TYPES[in.get()];
+      double[][] parts = new double[in.getInt()][];
+      for (int i = 0; i < parts.length; i++) {
+        parts[i] = new double[in.getInt() * 2];
+        in.asDoubleBuffer().get(parts[i]);
+        in.position(in.position() + parts[i].length * 8);
+      }
+      return Geometry.of(type, parts, null);
+    }
+  }
+
+  private static int typeCode(String type) {
+    for (int i = 0; i < TYPES.length; i++) {
+      if (TYPES[i].equals(type)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported geometry type " + type);
+  }
+}
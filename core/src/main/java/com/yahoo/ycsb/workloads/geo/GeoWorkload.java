@@ -2,13 +2,20 @@ package com.yahoo.ycsb.workloads.geo;
 
 import com.yahoo.ycsb.ByteIterator;
 import com.yahoo.ycsb.GeoDB;
+import com.yahoo.ycsb.GeoPhase;
+import com.yahoo.ycsb.GeoResultSink;
 import com.yahoo.ycsb.Status;
 import com.yahoo.ycsb.generator.DiscreteGenerator;
+import com.yahoo.ycsb.generator.geo.GeoRandom;
 import com.yahoo.ycsb.generator.geo.ParameterGenerator;
 import com.yahoo.ycsb.workloads.CoreWorkload;
 import com.yahoo.ycsb.generator.geo.MemcachedGenerator;
+import com.yahoo.ycsb.generator.geo.OffHeapGenerator;
+import com.yahoo.ycsb.measurements.Measurements;
 import com.yahoo.ycsb.WorkloadException;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Properties;
@@ -26,6 +33,9 @@ public class GeoWorkload extends CoreWorkload {
   public static final String STORAGE_HOST_DEFAULT = "localhost";
   public static final String STORAGE_PORT = "geo_storage_port";
   public static final String STORAGE_PORT_DEFAULT = "11211";
+  /* Where the generator keeps its documents and counters: "memcached" or the in-process "offheap" store */
+  public static final String STORAGE_BACKEND = "geo_storage_backend";
+  public static final String STORAGE_BACKEND_DEFAULT = "memcached";
   public static final String TOTAL_DOCS = "totalrecordcount";
   public static final String TOTAL_DOCS_DEFAULT = "13348";
   public static final String DOCS_START_VALUE = "1001";
@@ -43,6 +53,15 @@ public class GeoWorkload extends CoreWorkload {
   protected String table3;
   /*-------------------------------------------------*/
 
+  /* GeoJSON or NDJSON files, optionally gzipped, to fill the generator from at startup instead of the database */
+  public static final String SEED_FILE = "geo_seed_file";
+  public static final String SEED_FILE_TABLE2 = "table2_seed_file";
+  public static final String SEED_FILE_TABLE3 = "table3_seed_file";
+  /* Binary snapshot of the prepared dataset: loaded instead of the seeds if it exists, written at cleanup if not */
+  public static final String SNAPSHOT_FILE = "geo_snapshot_file";
+  private String snapshotFile;
+  private boolean snapshotLoaded;
+
   public static final String RECORD_COUNT = "recordcount";
   public static final String RECORD_COUNT_DEFAULT = "1000000";
 
@@ -75,6 +94,16 @@ public class GeoWorkload extends CoreWorkload {
   public static final String GEO_QUERY_OFFSET_MAX_DEFAULT = "100";
   public static final String GEO_REQUEST_DISTRIBUTION = "geo_request_distribution";
   public static final String GEO_REQUEST_DISTRIBUTION_DEFAULT = "uniform";
+  /* Maximum number of parsed document geometries kept in memory */
+  public static final String GEO_GEOMETRY_CACHE_SIZE = "geo_geometry_cache_size";
+  public static final String GEO_GEOMETRY_CACHE_SIZE_DEFAULT = "100000";
+  /* Stored documents and insert ids every thread reads ahead in batches, 0 to fetch them one operation at a time */
+  public static final String GEO_PREFETCH_SIZE = "geo_prefetch_size";
+  public static final String GEO_PREFETCH_SIZE_DEFAULT = "0";
+
+  /* Binary log of the geo operations of the run, see GeoTrace and GeoReplayWorkload. */
+  public static final String GEO_TRACE_FILE = "geo_trace_file";
+  private GeoTrace.Writer traceWriter;
 
   private static double recordCount = 1000000;
   
@@ -95,6 +124,9 @@ public class GeoWorkload extends CoreWorkload {
   public static final String GEO_CLEAN_BASED_ON_PROPERTY = "geo_clean_based_on";
   public static final String GEO_CLEAN_BASED_ON_PROPERTY_DEFAULT = "geo_case_graffiti_by_schools";
   private static String cleanBasedOn;
+  private static final GeoPhase CASE4_PREDICATE = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "predicate");
+  private String storageBackend;
+  private ParameterGenerator sharedGenerator;
   
   public static final String DATA_SIZE = "datasize";
   /*--------------------------------------------*/
@@ -112,6 +144,26 @@ public class GeoWorkload extends CoreWorkload {
   
   @Override
   public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException {
+    // seed the thread's choices by its id, not by the order in which the threads happen to start
+    GeoRandom.seedThread(mythreadid);
+    ParameterGenerator generator = getSharedGenerator(p);
+    if(table2 != null && table3 != null && threadcount > 1) {
+      // split the synthesis grid into one contiguous run of cells per thread; the offset lives in the
+      // calling thread's cursor of the shared generator
+      System.out.println("\tTHREADID: " + mythreadid);
+      generator.setSynthesisOffset(1 + (int) Math.ceil(mythreadid * (recordCount / threadcount)));
+    }
+    return generator;
+  }
+
+  /**
+   * Returns the parameter generator shared by all client threads, creating it on the first call. Sharing it means
+   * one storage connection and one copy of the parsed dataset per process rather than per thread.
+   */
+  private synchronized ParameterGenerator getSharedGenerator(Properties p) throws WorkloadException {
+    if (sharedGenerator != null) {
+      return sharedGenerator;
+    }
     recordCount = Double.parseDouble(
         p.getProperty(RECORD_COUNT, RECORD_COUNT_DEFAULT));
     String memHost = p.getProperty(STORAGE_HOST, STORAGE_HOST_DEFAULT);
@@ -126,40 +178,138 @@ public class GeoWorkload extends CoreWorkload {
         table3 = table3temp;
         String totalDocs2 = p.getProperty(TOTAL_DOCS_TABLE2, TOTAL_DOCS_DEFAULT_TABLE2);
         String totalDocs3 = p.getProperty(TOTAL_DOCS_TABLE3, TOTAL_DOCS_DEFAULT_TABLE3);
-        MemcachedGenerator mcache = new MemcachedGenerator(p, memHost, memPort, totalDocs, totalDocs2, totalDocs3);
-        
-        if(threadcount > 1) {
-          System.out.println("\tTHREADID: " + mythreadid);
-          for(int i = 0; i < mythreadid * (recordCount/threadcount); i++) {
-            mcache.incrementSynthesisOffset();
-          }
-        }
-        
-        return mcache;
+        sharedGenerator = storageBackend.equals("offheap") ?
+            new OffHeapGenerator(p, totalDocs, totalDocs2, totalDocs3)
+            : new MemcachedGenerator(p, memHost, memPort, totalDocs, totalDocs2, totalDocs3);
       } else { // use one table
-        return new MemcachedGenerator(p, memHost, memPort, totalDocs);
+        sharedGenerator = storageBackend.equals("offheap") ?
+            new OffHeapGenerator(p, totalDocs)
+            : new MemcachedGenerator(p, memHost, memPort, totalDocs);
       }
     } catch (Exception e) {
-      System.err.println("Memcached generator init failed " + e.getMessage());
+      System.err.println("Parameter generator init failed " + e.getMessage());
       throw new WorkloadException();
     }
+    boolean singleTable = table2 == null || table3 == null;
+    if (loadSnapshot(snapshotFile, singleTable)) {
+      return sharedGenerator;
+    }
+    loadSeedFile(p.getProperty(SEED_FILE), table, singleTable);
+    if (!singleTable) {
+      loadSeedFile(p.getProperty(SEED_FILE_TABLE2), table2, false);
+      loadSeedFile(p.getProperty(SEED_FILE_TABLE3), table3, false);
+    }
+    return sharedGenerator;
+  }
+
+  private void loadSeedFile(String file, String tableName, boolean singleTable) throws WorkloadException {
+    if (file == null) {
+      return;
+    }
+    try {
+      long st = System.nanoTime();
+      int count = sharedGenerator.loadSeedFile(tableName, new File(file), singleTable);
+      System.out.println("Loaded " + count + " " + tableName + " seed documents from " + file + " in "
+          + (System.nanoTime() - st) / 1000000 + " ms");
+    } catch (Exception e) {
+      throw new WorkloadException("Could not load the seed file " + file, e);
+    }
+  }
+
+  private String[] getTables() {
+    return table2 != null && table3 != null ? new String[]{table, table2, table3} : new String[]{table};
+  }
+
+  private boolean loadSnapshot(String file, boolean singleTable) throws WorkloadException {
+    if (file == null || !new File(file).isFile()) {
+      return false;
+    }
+    try {
+      long st = System.nanoTime();
+      snapshotLoaded = sharedGenerator.loadSnapshot(new File(file), singleTable, getTables());
+      if (snapshotLoaded) {
+        System.out.println("Loaded snapshot " + file + " in " + (System.nanoTime() - st) / 1000000 + " ms");
+      }
+      return snapshotLoaded;
+    } catch (IOException e) {
+      throw new WorkloadException("Could not load the snapshot " + file, e);
+    }
   }
 
   @Override
   public void init(Properties p) throws WorkloadException {
     super.init(p);
+    GeoRandom.configure(p);
     operationchooser = createOperationGenerator(p);
     recordCount = Double.parseDouble(
         p.getProperty(RECORD_COUNT, RECORD_COUNT_DEFAULT));
     cleanBasedOn = p.getProperty(GEO_CLEAN_BASED_ON_PROPERTY, GEO_CLEAN_BASED_ON_PROPERTY_DEFAULT);
+    storageBackend = p.getProperty(STORAGE_BACKEND, STORAGE_BACKEND_DEFAULT);
+    snapshotFile = p.getProperty(SNAPSHOT_FILE);
+    try {
+      GeoResultSink.configure(p);
+    } catch (IOException e) {
+      throw new WorkloadException("Could not open " + GeoResultSink.OUTPUT_PROPERTY, e);
+    }
+    String traceFile = p.getProperty(GEO_TRACE_FILE);
+    if (traceFile != null) {
+      openTrace(new File(traceFile));
+    }
+    if (!storageBackend.equals("memcached") && !storageBackend.equals("offheap")) {
+      throw new WorkloadException("Unknown " + STORAGE_BACKEND + " \"" + storageBackend + "\"");
+    }
+  }
+
+  /**
+   * Open the trace of {@link #GEO_TRACE_FILE}; this workload records its geo operations into it.
+   */
+  protected void openTrace(File file) throws WorkloadException {
+    try {
+      traceWriter = new GeoTrace.Writer(file);
+    } catch (IOException e) {
+      throw new WorkloadException("Could not create the trace " + file, e);
+    }
+  }
+
+  @Override
+  public synchronized void cleanup() throws WorkloadException {
+    super.cleanup();
+    try {
+      GeoResultSink.shutdown();
+    } catch (IOException e) {
+      throw new WorkloadException("Could not write " + GeoResultSink.OUTPUT_PROPERTY, e);
+    }
+    if (traceWriter != null) {
+      try {
+        traceWriter.close();
+      } catch (IOException e) {
+        throw new WorkloadException("Could not write the trace", e);
+      }
+    }
+    if (sharedGenerator instanceof OffHeapGenerator) {
+      try {
+        ((OffHeapGenerator) sharedGenerator).sync();
+      } catch (IOException e) {
+        throw new WorkloadException("Could not sync the off-heap parameter store", e);
+      }
+    }
+    if (sharedGenerator != null && snapshotFile != null && !snapshotLoaded) {
+      try {
+        int count = sharedGenerator.writeSnapshot(new File(snapshotFile), table2 == null || table3 == null,
+            getTables());
+        System.out.println("Wrote " + count + " documents to snapshot " + snapshotFile);
+      } catch (IOException e) {
+        throw new WorkloadException("Could not write the snapshot " + snapshotFile, e);
+      }
+    }
   }
 
   @Override
   public boolean doInsert(GeoDB db, Object threadstate) {
     Status status;
     status = (table2 != null && table3 != null) ? 
-        db.geoLoad(table, table2, table3, (MemcachedGenerator) threadstate, recordCount)
-        : db.geoLoad(table, (MemcachedGenerator) threadstate, recordCount);
+        db.geoLoad(table, table2, table3, (ParameterGenerator) threadstate, recordCount)
+        : db.geoLoad(table, (ParameterGenerator) threadstate, recordCount);
     return null != status && status.isOk();
   }
 
@@ -171,8 +321,18 @@ public class GeoWorkload extends CoreWorkload {
     if(operation == null) {
       return false;
     }
-    MemcachedGenerator  generator = (MemcachedGenerator) threadstate;
-    System.out.println(operation);
+    ParameterGenerator generator = (ParameterGenerator) threadstate;
+    GeoResultSink sink = GeoResultSink.get();
+    if (sink.isSampled()) {
+      sink.log(operation, null, null);
+    }
+    GeoTrace.Op traced = null;
+    if (traceWriter != null && operation.startsWith("GEO_")) {
+      long intendedStart = Measurements.getMeasurements().getIntendedtartTimeNs();
+      traced = new GeoTrace.Op(operation, operation.equals("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC")
+          ? new String[]{table3, table} : new String[]{table}, intendedStart != 0 ? intendedStart : System.nanoTime());
+      generator.beginTrace(traced);
+    }
     switch (operation) {
     case "READ":
       doTransactionRead(db);
@@ -217,6 +377,13 @@ public class GeoWorkload extends CoreWorkload {
       doTransactionReadModifyWrite(db);
     }
 
+    if (traced != null) {
+      try {
+        traceWriter.write(generator.endTrace());
+      } catch (IOException e) {
+        System.err.println("Could not record " + operation + " " + e.getMessage());
+      }
+    }
     return true;
   }
 
@@ -286,9 +453,12 @@ public class GeoWorkload extends CoreWorkload {
     try {
       db.geoUseCase1(table, cells, generator);
       
-      // print result for confirmation
+      // report result for confirmation
+      GeoResultSink sink = GeoResultSink.get();
       for(String school : cells.keySet()) {
-        System.out.println("\tGraffiti around " + school + ": " + cells.get(school).size());
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_SCHOOLS", school, cells.get(school).size());
+        }
       }
     } catch (Exception ex) {
       ex.printStackTrace();
@@ -300,9 +470,12 @@ public class GeoWorkload extends CoreWorkload {
     HashMap<String, Vector<HashMap<String, ByteIterator>>> cells = new HashMap<>();
     try {
       db.geoUseCase2(table, cells, generator);
-      // print result for confirmation
+      // report result for confirmation
+      GeoResultSink sink = GeoResultSink.get();
       for(String key : cells.keySet()) {
-        System.out.println("\t Graffiti in " + key + ": " + cells.get(key).size());
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_DENSITY", key, cells.get(key).size());
+        }
       }
     } catch (Exception ex) {
       ex.printStackTrace();
@@ -314,14 +487,13 @@ public class GeoWorkload extends CoreWorkload {
     HashMap<String, Vector<HashMap<String, ByteIterator>>> cells = new HashMap<>();
     try {
       db.geoUseCase3(table3, table, cells, generator);
-      // print result for confirmation
-      
-      int counter = 1;
+      // report result for confirmation
+      GeoResultSink sink = GeoResultSink.get();
       for(String key : cells.keySet()) {
-        System.out.println("Rank " + counter + " traffic: " + cells.get(key).size());
-        counter++;
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", key, cells.get(key).size());
+        }
       }
-     
     } catch (Exception ex) {
       ex.printStackTrace();
       ex.printStackTrace(System.out);
@@ -331,6 +503,7 @@ public class GeoWorkload extends CoreWorkload {
   public void doTransactionGeoCase4(GeoDB db, ParameterGenerator generator) {
     HashSet<Integer> deleted = new HashSet<Integer>();
     try {
+      long pst = CASE4_PREDICATE.start();
       switch(cleanBasedOn) {
       case GEO_CASE1_PROPERTY:
         generator.buildGeoPredicateCase1();
@@ -344,6 +517,7 @@ public class GeoWorkload extends CoreWorkload {
       default:
         break;
       }
+      CASE4_PREDICATE.end(pst);
       db.geoUseCase4(table, cleanBasedOn, deleted, generator);
     } catch (Exception ex) {
       ex.printStackTrace();
@@ -0,0 +1,295 @@
+package com.yahoo.ycsb.workloads.geo;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, pre-parsed GeoJSON geometry used in query predicates.
+ *
+ * A geometry is made of parts (a single position for a point, the rings of a polygon, the lines of a multi line
+ * string), each stored as a flat array of longitude/latitude pairs. Bindings read the coordinates through the
+ * accessors and build their native query objects from them; {@link #toJSONObject()} and {@link #toString()} render
+ * GeoJSON only for code that still needs it.
+ */
+public abstract class Geometry {
+
+  public static final String TYPE_POINT = "Point";
+  public static final String TYPE_POLYGON = "Polygon";
+  public static final String TYPE_MULTILINESTRING = "MultiLineString";
+
+  private final double[][] parts;
+  private final double[] bounds;
+  private volatile Object[] rendered;
+
+  /**
+   * Converts a geometry into the native query object of a binding, see {@link Geometry#render(Renderer)}.
+   * @param <T> the native type
+   */
+  public interface Renderer<T> {
+    T render(Geometry geometry);
+  }
+
+  Geometry(double[][] parts) {
+    this(parts, null);
+  }
+
+  /**
+   * @param bounds the bounding box of the parts if it is already known, null to compute it
+   */
+  Geometry(double[][] parts, double[] bounds) {
+    this.parts = new double[parts.length][];
+    for (int i = 0; i < parts.length; i++) {
+      if (parts[i].length % 2 != 0) {
+        throw new IllegalArgumentException("Coordinates must come in longitude/latitude pairs");
+      }
+      this.parts[i] = parts[i].clone();
+    }
+    this.bounds = bounds != null ? bounds.clone() : computeBounds(this.parts);
+  }
+
+  private static double[] computeBounds(double[][] parts) {
+    double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+    for (double[] part : parts) {
+      for (int i = 0; i < part.length; i += 2) {
+        box[0] = Math.min(box[0], part[i]);
+        box[1] = Math.min(box[1], part[i + 1]);
+        box[2] = Math.max(box[2], part[i]);
+        box[3] = Math.max(box[3], part[i + 1]);
+      }
+    }
+    return box;
+  }
+
+  /**
+   * Build a geometry from its parts, e.g. when reading it back from a binary snapshot.
+   * @param bounds the bounding box of the parts if it is already known, null to compute it
+   * @throws IllegalArgumentException if the geometry type is not supported
+   */
+  public static Geometry of(String type, double[][] parts, double[] bounds) {
+    switch (type) {
+    case TYPE_POINT:
+      return new Point(parts, bounds);
+    case TYPE_POLYGON:
+      return new Polygon(parts, bounds);
+    case TYPE_MULTILINESTRING:
+      return new MultiLineString(parts, bounds);
+    default:
+      throw new IllegalArgumentException("Unsupported geometry type " + type);
+    }
+  }
+
+  /**
+   * @return the GeoJSON type name
+   */
+  public abstract String getType();
+
+  public int getPartCount() {
+    return parts.length;
+  }
+
+  public int getPositionCount(int part) {
+    return parts[part].length / 2;
+  }
+
+  /**
+   * @return longitude of a position
+   */
+  public double getX(int part, int position) {
+    return parts[part][position * 2];
+  }
+
+  /**
+   * @return latitude of a position
+   */
+  public double getY(int part, int position) {
+    return parts[part][position * 2 + 1];
+  }
+
+  /**
+   * @return the bounding box {minX, minY, maxX, maxY}
+   */
+  public double[] getBounds() {
+    return bounds.clone();
+  }
+
+  /**
+   * Get the native form of the geometry, converting it on the first call only. Shared geometries such as the grid
+   * cells are thus converted once per JVM instead of once per query; the native object must not be modified.
+   * @param renderer the binding's converter; the last renderer used wins the single slot
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T render(Renderer<T> renderer) {
+    Object[] memo = rendered;
+    if (memo != null && memo[0] == renderer) {
+      return (T) memo[1];
+    }
+    T value = renderer.render(this);
+    rendered = new Object[]{renderer, value};
+    return value;
+  }
+
+  /**
+   * Parse the geometry object of a GeoJSON document.
+   *
+   * @throws IllegalArgumentException if the geometry type is not supported
+   */
+  public static Geometry fromJSON(JSONObject geometry) {
+    String type = geometry.getString("type");
+    JSONArray coordinates = geometry.getJSONArray("coordinates");
+    switch (type) {
+    case TYPE_POINT:
+      return new Point(coordinates.getDouble(0), coordinates.getDouble(1));
+    case TYPE_POLYGON:
+      return new Polygon(readParts(coordinates));
+    case TYPE_MULTILINESTRING:
+      return new MultiLineString(readParts(coordinates));
+    default:
+      throw new IllegalArgumentException("Unsupported geometry type " + type);
+    }
+  }
+
+  private static double[][] readParts(JSONArray coordinates) {
+    double[][] result = new double[coordinates.length()][];
+    for (int i = 0; i < result.length; i++) {
+      JSONArray part = coordinates.getJSONArray(i);
+      double[] flat = new double[part.length() * 2];
+      for (int j = 0; j < part.length(); j++) {
+        JSONArray position = part.getJSONArray(j);
+        flat[j * 2] = position.getDouble(0);
+        flat[j * 2 + 1] = position.getDouble(1);
+      }
+      result[i] = flat;
+    }
+    return result;
+  }
+
+  /**
+   * @return a new GeoJSON object for this geometry
+   */
+  public JSONObject toJSONObject() {
+    JSONObject obj = new JSONObject().put("type", getType());
+    if (this instanceof Point) {
+      obj.put("coordinates", new JSONArray(parts[0]));
+    } else {
+      JSONArray coordinates = new JSONArray();
+      for (int i = 0; i < parts.length; i++) {
+        JSONArray part = new JSONArray();
+        for (int j = 0; j < getPositionCount(i); j++) {
+          part.put(new JSONArray(new double[]{getX(i, j), getY(i, j)}));
+        }
+        coordinates.put(part);
+      }
+      obj.put("coordinates", coordinates);
+    }
+    return obj;
+  }
+
+  /**
+   * @return the GeoJSON text of this geometry
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(32 + 40 * parts.length);
+    sb.append("{\"type\":\"").append(getType()).append("\",\"coordinates\":");
+    if (this instanceof Point) {
+      sb.append('[').append(parts[0][0]).append(',').append(parts[0][1]).append(']');
+    } else {
+      sb.append('[');
+      for (int i = 0; i < parts.length; i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        sb.append('[');
+        for (int j = 0; j < getPositionCount(i); j++) {
+          if (j > 0) {
+            sb.append(',');
+          }
+          sb.append('[').append(getX(i, j)).append(',').append(getY(i, j)).append(']');
+        }
+        sb.append(']');
+      }
+      sb.append(']');
+    }
+    return sb.append('}').toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return Arrays.deepEquals(parts, ((Geometry) o).parts);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.deepHashCode(parts);
+  }
+
+  /**
+   * A single position.
+   */
+  public static final class Point extends Geometry {
+    public Point(double x, double y) {
+      super(new double[][]{{x, y}});
+    }
+
+    private Point(double[][] parts, double[] bounds) {
+      super(parts, bounds);
+    }
+
+    public double getX() {
+      return getX(0, 0);
+    }
+
+    public double getY() {
+      return getY(0, 0);
+    }
+
+    @Override
+    public String getType() {
+      return TYPE_POINT;
+    }
+  }
+
+  /**
+   * A polygon; the first ring is the exterior, any further rings are holes.
+   */
+  public static final class Polygon extends Geometry {
+    public Polygon(double[]... rings) {
+      super(rings);
+    }
+
+    private Polygon(double[][] rings, double[] bounds) {
+      super(rings, bounds);
+    }
+
+    @Override
+    public String getType() {
+      return TYPE_POLYGON;
+    }
+  }
+
+  /**
+   * A set of lines.
+   */
+  public static final class MultiLineString extends Geometry {
+    public MultiLineString(double[]... lines) {
+      super(lines);
+    }
+
+    private MultiLineString(double[][] lines, double[] bounds) {
+      super(lines, bounds);
+    }
+
+    @Override
+    public String getType() {
+      return TYPE_MULTILINESTRING;
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.yahoo.ycsb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the open-loop ArrivalScheduler.
+ */
+public class TestArrivalScheduler {
+
+  private static final Workload IDLE = new Workload() {
+    @Override
+    public boolean doInsert(GeoDB db, Object threadstate) {
+      return true;
+    }
+
+    @Override
+    public boolean doTransaction(GeoDB db, Object threadstate) {
+      return true;
+    }
+  };
+
+  /**
+   * Keeps the values written for every metric and measurement.
+   */
+  private static final class Collected implements MeasurementsExporter {
+    private final Map<String, Double> values = new HashMap<>();
+
+    @Override
+    public void write(String metric, String measurement, int i) {
+      values.put(metric + "/" + measurement, (double) i);
+    }
+
+    @Override
+    public void write(String metric, String measurement, double d) {
+      values.put(metric + "/" + measurement, d);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static Properties properties(String arrival) {
+    Properties p = new Properties();
+    p.setProperty(ArrivalScheduler.ARRIVAL_PROPERTY, arrival);
+    p.setProperty(Client.TARGET_PROPERTY, "10000");
+    return p;
+  }
+
+  @Test
+  public void testClosedLoopHasNoScheduler() {
+    assertNull(ArrivalScheduler.create(new Properties(), IDLE, 0));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testOpenLoopNeedsTarget() {
+    Properties p = properties("poisson");
+    p.remove(Client.TARGET_PROPERTY);
+    ArrivalScheduler.create(p, IDLE, 0);
+  }
+
+  @Test
+  public void testArrivalsAreIssuedIndependentlyOfCompletions() throws Exception {
+    Properties p = properties("constant");
+    ArrivalScheduler scheduler = ArrivalScheduler.create(p, IDLE, 50);
+    assertEquals(p.getProperty(Measurements.MEASUREMENT_INTERVAL), "both");
+    Measurements.setProperties(p);
+    scheduler.start();
+
+    // let the arrivals pile up while nothing is taken
+    Thread.sleep(20);
+    long previous = scheduler.take();
+    for (int i = 1; i < 50; i++) {
+      long arrival = scheduler.take();
+      assertEquals(arrival - previous, 100000, 1000);
+      previous = arrival;
+    }
+    assertEquals(scheduler.take(), -1);
+
+    assertTrue(Measurements.getMeasurements().getSummary().contains("[" + ArrivalScheduler.QUEUE_DELAY));
+    Collected exported = new Collected();
+    scheduler.exportMeasurements(exported);
+    assertEquals(exported.values.get(ArrivalScheduler.ARRIVAL + "/Arrivals"), 50.0);
+    assertEquals(exported.values.get(ArrivalScheduler.ARRIVAL + "/Dropped"), 0.0);
+    assertTrue(exported.values.get(ArrivalScheduler.ARRIVAL + "/MaxBacklog") > 0);
+  }
+
+  @Test
+  public void testArrivalsBeyondTheBacklogAreDropped() throws Exception {
+    Properties p = properties("constant");
+    p.setProperty(ArrivalScheduler.MAX_BACKLOG_PROPERTY, "5");
+    ArrivalScheduler scheduler = ArrivalScheduler.create(p, IDLE, 20);
+    Measurements.setProperties(p);
+    scheduler.start();
+
+    // all 20 arrive within 2 ms while nothing is taken
+    Thread.sleep(50);
+    int taken = 0;
+    while (scheduler.take() >= 0) {
+      taken++;
+    }
+    assertEquals(taken, 5);
+    Collected exported = new Collected();
+    scheduler.exportMeasurements(exported);
+    assertEquals(exported.values.get(ArrivalScheduler.ARRIVAL + "/Arrivals"), 20.0);
+    assertEquals(exported.values.get(ArrivalScheduler.ARRIVAL + "/Dropped"), 15.0);
+    assertEquals(exported.values.get(ArrivalScheduler.ARRIVAL + "/MaxBacklog"), 4.0);
+  }
+}
@@ -0,0 +1,129 @@
+package com.yahoo.ycsb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the GeoFanOut class.
+ */
+public class TestGeoFanOut {
+
+  @BeforeClass
+  public void setUp() {
+    Measurements.setProperties(new Properties());
+  }
+
+  private static List<Callable<Integer>> tasks(int count, final AtomicInteger inFlight, final AtomicInteger peak) {
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (int i = 0; i < count; i++) {
+      final int value = i;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          int now = inFlight.incrementAndGet();
+          synchronized (peak) {
+            peak.set(Math.max(peak.get(), now));
+          }
+          Thread.sleep(2);
+          inFlight.decrementAndGet();
+          return value;
+        }
+      });
+    }
+    return tasks;
+  }
+
+  @Test
+  public void testResultsKeepTaskOrder() throws Exception {
+    AtomicInteger peak = new AtomicInteger();
+    List<Integer> results = new GeoFanOut(4, 3).invokeAll(tasks(50, new AtomicInteger(), peak), "TEST_QUERY");
+    assertEquals(results.size(), 50);
+    for (int i = 0; i < 50; i++) {
+      assertEquals(results.get(i).intValue(), i);
+    }
+    assertTrue(peak.get() <= 3, "peak " + peak.get());
+  }
+
+  @Test
+  public void testInlineWithoutPool() throws Exception {
+    AtomicInteger peak = new AtomicInteger();
+    List<Integer> results = new GeoFanOut(0, 8).invokeAll(tasks(5, new AtomicInteger(), peak), "TEST_QUERY");
+    assertEquals(results.size(), 5);
+    assertEquals(peak.get(), 1);
+  }
+
+  @Test
+  public void testFailureIsRethrown() throws Exception {
+    List<Callable<Integer>> tasks = tasks(10, new AtomicInteger(), new AtomicInteger());
+    tasks.add(5, new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        throw new IllegalStateException("query failed");
+      }
+    });
+    try {
+      new GeoFanOut(2, 2).invokeAll(tasks, "TEST_QUERY");
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals(e.getMessage(), "query failed");
+    }
+  }
+
+  @Test
+  public void testInterruptCancelsTheSubQueries() throws Exception {
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch cancelled = new CountDownLatch(2);
+    final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (int i = 0; i < 4; i++) {
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          started.countDown();
+          try {
+            Thread.sleep(60000);
+          } catch (InterruptedException e) {
+            cancelled.countDown();
+            throw e;
+          }
+          return 0;
+        }
+      });
+    }
+    final GeoFanOut fanOut = new GeoFanOut(2, 2);
+    final AtomicBoolean interrupted = new AtomicBoolean();
+    Thread caller = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          fanOut.invokeAll(tasks, "TEST_QUERY");
+        } catch (InterruptedException e) {
+          interrupted.set(Thread.currentThread().isInterrupted());
+        } catch (Exception e) {
+          // the assertion below fails
+        }
+      }
+    });
+    caller.start();
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    caller.interrupt();
+    caller.join(10000);
+    assertFalse(caller.isAlive());
+    assertTrue(interrupted.get(), "interrupt flag restored");
+    assertTrue(cancelled.await(10, TimeUnit.SECONDS), "sub-queries cancelled");
+  }
+}
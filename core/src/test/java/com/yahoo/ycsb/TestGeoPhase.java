@@ -0,0 +1,26 @@
+package com.yahoo.ycsb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the GeoPhase class.
+ */
+public class TestGeoPhase {
+
+  @Test
+  public void testPhaseIsMeasuredUnderItsOwnName() throws Exception {
+    Measurements.setProperties(new Properties());
+    GeoPhase phase = GeoPhase.of("GEO_CASE_TEST", "density");
+    assertEquals(phase.getName(), "GEO_CASE_TEST.phase=density");
+    long start = phase.start();
+    Thread.sleep(1);
+    phase.end(start);
+    assertTrue(Measurements.getMeasurements().getSummary().contains("[GEO_CASE_TEST.phase=density"));
+  }
+}
@@ -0,0 +1,92 @@
+package com.yahoo.ycsb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the GeoResultSink.
+ */
+public class TestGeoResultSink {
+
+  @Test
+  public void testOffByDefault() throws Exception {
+    GeoResultSink.configure(new Properties());
+    GeoResultSink sink = GeoResultSink.get();
+    assertFalse(sink.isSampled());
+    sink.log("GEO_NEAR", null, null);
+    assertEquals(sink.getDropped(), 0);
+    GeoResultSink.shutdown();
+  }
+
+  @Test
+  public void testSampledRecordsAreWritten() throws Exception {
+    File file = File.createTempFile("results", ".log.gz");
+    file.deleteOnExit();
+    Properties p = new Properties();
+    p.setProperty(GeoResultSink.OUTPUT_PROPERTY, file.getPath());
+    p.setProperty(GeoResultSink.SAMPLE_PROPERTY, "2");
+    GeoResultSink.configure(p);
+
+    GeoResultSink sink = GeoResultSink.get();
+    for (int i = 0; i < 6; i++) {
+      if (sink.isSampled()) {
+        sink.log("GEO_CASE_GRAFFITI_BY_SCHOOLS", "school" + i, i);
+      }
+    }
+    sink.log("GEO_NEAR", null, null);
+    GeoResultSink.shutdown();
+    assertFalse(GeoResultSink.get().isSampled());
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8));
+    try {
+      assertEquals(reader.readLine(), "GEO_CASE_GRAFFITI_BY_SCHOOLS\tschool1\t1");
+      assertEquals(reader.readLine(), "GEO_CASE_GRAFFITI_BY_SCHOOLS\tschool3\t3");
+      assertEquals(reader.readLine(), "GEO_CASE_GRAFFITI_BY_SCHOOLS\tschool5\t5");
+      assertEquals(reader.readLine(), "GEO_NEAR");
+      assertNull(reader.readLine());
+    } finally {
+      reader.close();
+    }
+    assertEquals(sink.getDropped(), 0);
+  }
+
+  @Test
+  public void testFullBufferDropsRecords() throws Exception {
+    File file = File.createTempFile("results", ".log");
+    file.deleteOnExit();
+    Properties p = new Properties();
+    p.setProperty(GeoResultSink.OUTPUT_PROPERTY, file.getPath());
+    p.setProperty(GeoResultSink.BUFFER_PROPERTY, "2");
+    GeoResultSink.configure(p);
+
+    GeoResultSink sink = GeoResultSink.get();
+    for (int i = 0; i < 100000; i++) {
+      sink.log("GEO_NEAR", null, i);
+    }
+    GeoResultSink.shutdown();
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        StandardCharsets.UTF_8));
+    long written = 0;
+    try {
+      while (reader.readLine() != null) {
+        written++;
+      }
+    } finally {
+      reader.close();
+    }
+    assertEquals(written + sink.getDropped(), 100000);
+  }
+}
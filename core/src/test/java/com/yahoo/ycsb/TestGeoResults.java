@@ -0,0 +1,73 @@
+package com.yahoo.ycsb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the GeoResults class.
+ */
+public class TestGeoResults {
+
+  private static int rowLimit(String mode, String limit) {
+    Properties p = new Properties();
+    if (mode != null) {
+      p.setProperty(GeoResults.RESULT_MODE_PROPERTY, mode);
+    }
+    if (limit != null) {
+      p.setProperty(GeoResults.RESULT_LIMIT_PROPERTY, limit);
+    }
+    return GeoResults.getRowLimit(p);
+  }
+
+  @Test
+  public void testRowLimitOfEveryMode() {
+    assertEquals(rowLimit(null, null), 1);
+    assertEquals(rowLimit("first", "50"), 1);
+    assertEquals(rowLimit("limit", null), 100);
+    assertEquals(rowLimit("limit", "50"), 50);
+    assertEquals(rowLimit("drain", null), 0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnknownModeIsRejected() {
+    rowLimit("all", null);
+  }
+
+  @Test
+  public void testOperationRecordsResultSeries() throws Exception {
+    Measurements.setProperties(new Properties());
+    GeoResults results = new GeoResults("GEO_RESULTS_TEST");
+    results.begin(System.nanoTime());
+    assertSame(GeoResults.current(), results);
+    Thread.sleep(1);
+    results.row(120);
+    results.row(80);
+    results.end(Status.OK, System.nanoTime());
+    assertFalse(GeoResults.current() == results);
+
+    String summary = Measurements.getMeasurements().getSummary();
+    assertTrue(summary.contains("[GEO_RESULTS_TEST.result=ttfb"));
+    assertTrue(summary.contains("[GEO_RESULTS_TEST.result=ttlb"));
+    assertTrue(summary.contains("[GEO_RESULTS_TEST.result=docs: Count=1, Max=2,"));
+    assertTrue(summary.contains("[GEO_RESULTS_TEST.result=bytes: Count=1, Max=200,"));
+  }
+
+  @Test
+  public void testFailedOperationRecordsNothing() {
+    Measurements.setProperties(new Properties());
+    GeoResults results = new GeoResults("GEO_RESULTS_FAILED");
+    results.begin(System.nanoTime());
+    results.row(10);
+    results.end(Status.ERROR, System.nanoTime());
+    // outside of an operation rows are ignored
+    GeoResults.current().row(10);
+    assertFalse(Measurements.getMeasurements().getSummary().contains("GEO_RESULTS_FAILED"));
+  }
+}
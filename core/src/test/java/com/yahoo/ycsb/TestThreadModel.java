@@ -0,0 +1,75 @@
+package com.yahoo.ycsb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the threads the client loops run on.
+ */
+public class TestThreadModel {
+
+  private static boolean hasVirtualThreads() {
+    try {
+      Thread.class.getMethod("ofVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static void assertRuns(Thread thread) throws Exception {
+    assertFalse(thread.isAlive());
+    thread.start();
+    thread.join();
+    assertEquals(thread.getName(), "ClientThread-0");
+  }
+
+  @Test
+  public void testPlatformThreads() throws Exception {
+    Client.configureThreadModel("platform", null);
+    final AtomicBoolean ran = new AtomicBoolean();
+    Thread thread = Client.newClientThread("platform", new Runnable() {
+      @Override
+      public void run() {
+        ran.set(true);
+      }
+    }, "ClientThread-0");
+    assertRuns(thread);
+    assertTrue(ran.get());
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    if (!hasVirtualThreads()) {
+      try {
+        Client.configureThreadModel("virtual", null);
+        fail("virtual threads need Java 21");
+      } catch (IllegalArgumentException expected) {
+        return;
+      }
+    }
+    Client.configureThreadModel("virtual", null);
+    final AtomicBoolean parked = new AtomicBoolean();
+    Thread thread = Client.newClientThread("virtual", new Runnable() {
+      @Override
+      public void run() {
+        LockSupport.parkNanos(1000000);
+        parked.set(true);
+      }
+    }, "ClientThread-0");
+    assertRuns(thread);
+    assertTrue(parked.get());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnknownThreadModel() {
+    Client.configureThreadModel("fibers", null);
+  }
+}
@@ -0,0 +1,85 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.yahoo.ycsb.Utils;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the seed hierarchy of the geo workload.
+ */
+public class TestGeoRandom {
+
+  private static Properties seeded(String seed, String client) {
+    Properties p = new Properties();
+    p.setProperty(GeoRandom.SEED_PROPERTY, seed);
+    p.setProperty(GeoRandom.CLIENT_PROPERTY, client);
+    return p;
+  }
+
+  private static List<Long> draw(Properties p, int threadId) {
+    GeoRandom.configure(p);
+    GeoRandom random = GeoRandom.seedThread(threadId);
+    List<Long> values = new ArrayList<Long>();
+    for (int i = 0; i < 5; i++) {
+      values.add(random.nextLong());
+    }
+    return values;
+  }
+
+  @Test
+  public void testSameSeedSameStream() {
+    assertEquals(draw(seeded("42", "0"), 3), draw(seeded("42", "0"), 3));
+    assertNotEquals(draw(seeded("42", "0"), 3), draw(seeded("42", "0"), 4));
+    assertNotEquals(draw(seeded("42", "0"), 3), draw(seeded("42", "1"), 3));
+    assertNotEquals(draw(seeded("42", "0"), 3), draw(seeded("43", "0"), 3));
+  }
+
+  @Test
+  public void testThreadGeneratorIsUtilsRandom() {
+    GeoRandom.configure(seeded("7", "0"));
+    GeoRandom random = GeoRandom.seedThread(0);
+    assertSame(GeoRandom.current(), random);
+    assertSame(Utils.random(), random);
+  }
+
+  @Test
+  public void testRanges() {
+    GeoRandom random = new GeoRandom(1);
+    for (int i = 0; i < 10000; i++) {
+      double d = random.nextDouble();
+      assertTrue(d >= 0 && d < 1);
+      int n = random.nextInt(1001, 1010);
+      assertTrue(n >= 1001 && n < 1010);
+    }
+  }
+
+  @Test
+  public void testPredicatesAreReproducible() throws Exception {
+    Properties p = seeded("42", "0");
+    p.setProperty(GeoWorkload.DATA_SIZE, "2");
+    p.setProperty(GeometryGenerator.GENERATOR_PROPERTY, "synthetic");
+    List<String> runs = new ArrayList<String>();
+    for (int run = 0; run < 2; run++) {
+      GeoRandom.configure(p);
+      GeoRandom.seedThread(1);
+      OffHeapGenerator generator = new OffHeapGenerator(p, "10");
+      GeometryGenerator shapes = GeometryGenerator.create(p);
+      StringBuilder operations = new StringBuilder();
+      for (int i = 0; i < 20; i++) {
+        operations.append(shapes.nextIntersect(generator)).append(generator.getRandomLimit())
+            .append(generator.getIncidentsIdRandom());
+      }
+      runs.add(operations.toString());
+    }
+    assertEquals(runs.get(0), runs.get(1));
+  }
+}
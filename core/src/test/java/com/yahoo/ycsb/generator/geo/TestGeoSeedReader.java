@@ -0,0 +1,102 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for reading seed datasets from GeoJSON and NDJSON files.
+ */
+public class TestGeoSeedReader {
+
+  private static final String FEATURE_A =
+      "{\"type\":\"Feature\",\"properties\":{\"OBJECTID\":2,\"Name\":\"a {b} [c] \\\"d\\\"\"},"
+      + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-111.9,33.4]}}";
+  private static final String FEATURE_B =
+      "{\"type\":\"Feature\",\"properties\":{\"OBJECTID\":1},"
+      + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-111.8,33.3]}}";
+
+  private static File write(String suffix, String content, boolean gzip) throws Exception {
+    File file = File.createTempFile("seeds", suffix);
+    file.deleteOnExit();
+    OutputStream out = new FileOutputStream(file);
+    if (gzip) {
+      out = new GZIPOutputStream(out);
+    }
+    try {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private static List<String> readAll(File file) throws Exception {
+    List<String> features = new ArrayList<String>();
+    try (GeoSeedReader reader = new GeoSeedReader(file)) {
+      String feature;
+      while ((feature = reader.next()) != null) {
+        features.add(feature);
+      }
+      assertNull(reader.next());
+    }
+    return features;
+  }
+
+  private static String featureCollection() {
+    return "{\n  \"type\": \"FeatureCollection\",\n  \"crs\": {\"type\": \"name\", \"properties\": {\"name\": \"x\"}},\n"
+        + "  \"bbox\": [0, 0, 1, 1],\n  \"features\": [\n    " + FEATURE_A + ",\n    " + FEATURE_B + "\n  ]\n}\n";
+  }
+
+  @Test
+  public void testFeatureCollection() throws Exception {
+    List<String> features = readAll(write(".geojson", featureCollection(), false));
+    assertEquals(features.size(), 2);
+    assertEquals(features.get(0), FEATURE_A);
+    assertEquals(features.get(1), FEATURE_B);
+  }
+
+  @Test
+  public void testGzippedNdjson() throws Exception {
+    String content = FEATURE_A + "\n" + FEATURE_B + "\n\n";
+    assertEquals(readAll(write(".ndjson", content, false)).size(), 2);
+    List<String> features = readAll(write(".ndjson.gz", content, true));
+    assertEquals(features.size(), 2);
+    assertEquals(features.get(1), FEATURE_B);
+  }
+
+  @Test
+  public void testLoadSeedFileStoresByObjectId() throws Exception {
+    Properties p = new Properties();
+    p.setProperty(GeoWorkload.DATA_SIZE, "2");
+    OffHeapGenerator generator = new OffHeapGenerator(p, "10");
+    String table = ParameterGenerator.GEO_DOCUMENT_PREFIX_INCIDENTS;
+    assertFalse(generator.isSeeded(table));
+
+    File file = write(".geojson.gz", featureCollection(), true);
+    assertEquals(generator.loadSeedFile(table, file, false), 2);
+    assertTrue(generator.isSeeded(table));
+    Map<Integer, String> seeds = generator.getSeedDocuments(table);
+    assertEquals(seeds.size(), 2);
+    assertTrue(new JSONObject(seeds.get(2)).similar(new JSONObject(FEATURE_A)));
+    assertTrue(new JSONObject(seeds.get(1)).similar(new JSONObject(FEATURE_B)));
+
+    // the store already holds the seeds
+    assertEquals(generator.loadSeedFile(table, file, false), 0);
+  }
+}
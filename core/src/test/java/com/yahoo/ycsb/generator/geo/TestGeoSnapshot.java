@@ -0,0 +1,134 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for writing and loading binary snapshots of the prepared dataset.
+ */
+public class TestGeoSnapshot {
+
+  private static final String INCIDENTS = ParameterGenerator.GEO_DOCUMENT_PREFIX_INCIDENTS;
+  private static final String SCHOOLS = ParameterGenerator.GEO_DOCUMENT_PREFIX_SCHOOLS;
+  private static final String BUILDINGS = ParameterGenerator.GEO_DOCUMENT_PREFIX_BUILDINGS;
+
+  private static File tempFile(String suffix) throws Exception {
+    File file = File.createTempFile("snapshot", suffix);
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static OffHeapGenerator newGenerator(String dataSize) throws Exception {
+    Properties p = new Properties();
+    p.setProperty(GeoWorkload.DATA_SIZE, dataSize);
+    // a store of its own, the in-memory store is shared by the whole JVM
+    p.setProperty(OffHeapGenerator.OFFHEAP_FILE_PROPERTY, tempFile(".store").getPath());
+    return new OffHeapGenerator(p, "10", "10", "10");
+  }
+
+  private static String feature(int objectId, String name, double x, double y) {
+    return "{\"type\":\"Feature\",\"properties\":{\"OBJECTID\":" + objectId + ",\"Name\":\"" + name + "\"},"
+        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[" + x + "," + y + "]}}";
+  }
+
+  private static String building(int objectId) {
+    return "{\"type\":\"Feature\",\"properties\":{\"OBJECTID\":" + objectId + "},\"geometry\":{\"type\":\"Polygon\","
+        + "\"coordinates\":[[[-111.92,33.36],[-111.92,33.37],[-111.91,33.37],[-111.92,33.36]]]}}";
+  }
+
+  @Test
+  public void testColumnsRoundTrip() throws Exception {
+    GeoSnapshot.Table table = new GeoSnapshot.Table(BUILDINGS, 3);
+    Geometry point = new Geometry.Point(-111.9, 33.4);
+    Geometry polygon = new Geometry.Polygon(new double[]{0, 0, 0, 1, 1, 1, 0, 0});
+    Geometry lines = new Geometry.MultiLineString(new double[][]{{0, 0, 1, 1}, {2, 2, 3, 3, 4, 4}});
+    table.add(1, "a", "school é", point, "{\"a\":1}");
+    table.add(2, "b", null, polygon, "");
+    table.add(5, "c", "school é", lines, "{\"c\":\"ü\"}");
+    List<double[]> grid = new ArrayList<double[]>();
+    grid.add(new double[]{1, 2, 3, 4});
+
+    File file = tempFile(".snapshot");
+    new GeoSnapshot(3, false, Arrays.asList(table), grid).write(file);
+    GeoSnapshot snapshot = GeoSnapshot.read(file);
+
+    assertEquals(snapshot.getDataSize(), 3);
+    assertFalse(snapshot.isSingleTable());
+    GeoSnapshot.Table read = snapshot.getTables().get(0);
+    assertEquals(read.getName(), BUILDINGS);
+    assertEquals(read.getTotalDocs(), 3);
+    assertEquals(read.size(), 3);
+    assertEquals(read.getKey(2), 5);
+    assertEquals(read.getDocId(1), "b");
+    assertEquals(read.getDocName(0), "school é");
+    assertNull(read.getDocName(1));
+    assertEquals(read.getGeometry(0), point);
+    assertEquals(read.getGeometry(1), polygon);
+    assertEquals(read.getGeometry(2), lines);
+    assertTrue(Arrays.equals(read.getGeometry(2).getBounds(), new double[]{0, 0, 4, 4}));
+    assertEquals(read.getBody(1), "");
+    assertEquals(read.getBody(2), "{\"c\":\"ü\"}");
+    assertTrue(Arrays.equals(snapshot.getGridBounds().get(0), new double[]{1, 2, 3, 4}));
+  }
+
+  @Test
+  public void testOtherFilesAreIgnored() throws Exception {
+    File file = tempFile(".snapshot");
+    assertNull(GeoSnapshot.read(file));
+    assertFalse(newGenerator("1").loadSnapshot(file, true, INCIDENTS));
+  }
+
+  @Test
+  public void testSnapshotRestoresTheDataset() throws Exception {
+    OffHeapGenerator source = newGenerator("1");
+    source.putDocument(INCIDENTS, "9", feature(9, "incident", -111.95, 33.33));
+    source.putDocument(SCHOOLS, "5", feature(5, "north", -111.9, 33.4));
+    source.putDocument(SCHOOLS, "6", feature(6, "south", -111.91, 33.35));
+    source.putDocument(BUILDINGS, "4", building(4));
+
+    File file = tempFile(".snapshot");
+    assertEquals(source.writeSnapshot(file, false, INCIDENTS, SCHOOLS, BUILDINGS), 4);
+
+    // a snapshot of another datasize or table layout is not loaded
+    assertFalse(newGenerator("2").loadSnapshot(file, false, INCIDENTS, SCHOOLS, BUILDINGS));
+    assertFalse(newGenerator("1").loadSnapshot(file, true, INCIDENTS));
+
+    OffHeapGenerator restored = newGenerator("1");
+    assertTrue(restored.loadSnapshot(file, false, INCIDENTS, SCHOOLS, BUILDINGS));
+    assertTrue(restored.isSeeded(SCHOOLS));
+    assertEquals(restored.getStoredDocsCount(SCHOOLS), 2);
+    Map<Integer, String> schools = restored.getSeedDocuments(SCHOOLS);
+    assertEquals(schools.size(), 2);
+    assertEquals(schools.get(6), feature(6, "south", -111.91, 33.35));
+    assertEquals(restored.getSeedDocuments(BUILDINGS).get(4), building(4));
+
+    Set<String> names = new HashSet<String>();
+    for (DataFilter school : restored.buildGeoPredicateCase1()) {
+      names.add(school.getName());
+      assertEquals(school.getNestedPredicateA().getGeometry().getType(), Geometry.TYPE_POINT);
+    }
+    assertEquals(names, new HashSet<String>(Arrays.asList("north", "south")));
+
+    List<DataFilter> grid = source.getGridPredicates();
+    assertEquals(restored.getGridPredicates().size(), grid.size());
+    for (int i = 0; i < grid.size(); i++) {
+      assertEquals(restored.getGridPredicates().get(i).getGeometry(), grid.get(i).getGeometry());
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoTrace;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for recording operations into a trace and handing them to the bindings again.
+ */
+public class TestGeoTrace {
+
+  private static final String DENSITY = "GEO_CASE_GRAFFITI_BY_DENSITY";
+
+  private static Properties properties() {
+    Properties p = new Properties();
+    p.setProperty(GeoWorkload.DATA_SIZE, "2");
+    p.setProperty(GeoWorkload.GEO_QUERY_LIMIT_MIN, "10");
+    p.setProperty(GeoWorkload.GEO_QUERY_LIMIT_MAX, "100");
+    return p;
+  }
+
+  private static DataFilter nearPredicate() {
+    DataFilter center = new DataFilter();
+    center.setName("geometry");
+    center.setGeometry(new Geometry.Point(-111.9, 33.4));
+    center.setDistance(250);
+    DataFilter shape = new DataFilter();
+    shape.setName("geometry");
+    shape.setGeometry(new Geometry.Polygon(new double[]{0, 0, 0, 1, 1, 1, 0, 0}));
+    DataFilter document = new DataFilter();
+    document.setDocid("incidents:::1001");
+    document.setValue("{\"name\":\"é\"}");
+    document.setNestedPredicateA(center);
+    document.setNestedPredicateC(shape);
+    return document;
+  }
+
+  @Test
+  public void testRecordAndReplay() throws Exception {
+    OffHeapGenerator generator = new OffHeapGenerator(properties(), "10");
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+
+    GeoTrace.Writer writer = new GeoTrace.Writer(file);
+    generator.beginTrace(new GeoTrace.Op(DENSITY, new String[]{"incidents"}, 5000));
+    ArrayList<DataFilter> cells = generator.buildGeoPredicateCase3();
+    writer.write(generator.endTrace());
+
+    GeoTrace.Op near = new GeoTrace.Op("GEO_NEAR", new String[]{"incidents"}, 7000);
+    generator.beginTrace(near);
+    int limit = generator.getRandomLimit();
+    generator.setCurrentPredicates(nearPredicate(), null);
+    writer.write(generator.endTrace());
+
+    generator.beginTrace(new GeoTrace.Op(DENSITY, new String[]{"incidents"}, 9000));
+    generator.buildGeoPredicateCase3();
+    writer.write(generator.endTrace());
+    writer.close();
+
+    GeoTrace.Reader reader = GeoTrace.Reader.open(file);
+    GeoTrace.Op first = reader.next();
+    assertEquals(first.getOperation(), DENSITY);
+    assertEquals(first.getIntendedStartNs(), 0);
+    assertNull(first.getPredicate());
+    assertEquals(first.getPredicates().size(), cells.size());
+    for (int i = 0; i < cells.size(); i++) {
+      assertEquals(first.getPredicates().get(i).getGeometry(), cells.get(i).getGeometry());
+    }
+
+    GeoTrace.Op second = reader.next();
+    assertEquals(second.getIntendedStartNs(), 2000);
+    assertEquals(second.getLimit(), limit);
+    assertEquals(second.getOffset(), -1);
+    assertNull(second.getPredicates());
+    DataFilter predicate = second.getPredicate();
+    assertEquals(predicate.getValue(), "{\"name\":\"é\"}");
+    assertEquals(predicate.getNestedPredicateA().getDistance(), 250.0);
+    assertEquals(predicate.getNestedPredicateA().getGeometry(), new Geometry.Point(-111.9, 33.4));
+    assertNull(predicate.getNestedPredicateB());
+    assertEquals(predicate.getNestedPredicateC().getGeometry(), nearPredicate().getNestedPredicateC().getGeometry());
+
+    // cells are written once and referenced afterwards
+    GeoTrace.Op third = reader.next();
+    for (DataFilter cell : third.getPredicates()) {
+      assertTrue(first.getPredicates().contains(cell));
+    }
+    assertNull(reader.next());
+
+    ReplayGenerator replay = new ReplayGenerator(properties());
+    replay.setOperation(second);
+    assertSame(replay.buildGeoReadPredicate(), predicate);
+    assertSame(replay.getGeoPredicate(), predicate);
+    assertEquals(replay.getRandomLimit(), limit);
+    replay.setOperation(third);
+    assertSame(replay.buildGeoPredicateCase3(), third.getPredicates());
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testReplayHasNoStore() throws Exception {
+    new ReplayGenerator(properties()).getVal("incidents:::GEO_insert_document:::1");
+  }
+}
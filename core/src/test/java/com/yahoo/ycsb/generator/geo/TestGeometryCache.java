@@ -0,0 +1,70 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import com.yahoo.ycsb.workloads.geo.Geometry;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the cache of parsed documents.
+ */
+public class TestGeometryCache {
+
+  private static GeometryCache.Entry entry(int i) {
+    return new GeometryCache.Entry(new Geometry.Point(i, i), "doc" + i);
+  }
+
+  @Test
+  public void testFirstEntryOfAKeyIsKept() {
+    GeometryCache cache = new GeometryCache(10);
+    GeometryCache.Entry first = entry(1);
+    cache.put("incidents:1", first);
+    cache.put("incidents:1", entry(2));
+    assertSame(cache.get("incidents:1"), first);
+    assertEquals(cache.size(), 1);
+  }
+
+  @Test
+  public void testUsedEntriesSurviveEviction() {
+    GeometryCache cache = new GeometryCache(4);
+    for (int i = 0; i < 4; i++) {
+      cache.put("incidents:" + i, entry(i));
+    }
+    assertNotNull(cache.get("incidents:0"));
+    cache.put("incidents:4", entry(4));
+    assertEquals(cache.size(), 4);
+    // the oldest entry was used, so the next oldest one goes
+    assertNotNull(cache.get("incidents:0"));
+    assertNull(cache.get("incidents:1"));
+    assertNotNull(cache.get("incidents:4"));
+  }
+
+  @Test
+  public void testConcurrentPutsStayBounded() throws Exception {
+    final GeometryCache cache = new GeometryCache(100);
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int thread = t;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            String key = "incidents:" + (thread * 10000 + i);
+            cache.put(key, entry(i));
+            cache.get(key);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // a put racing with another thread's eviction may leave one entry too many behind
+    assertTrue(cache.size() <= 100 + threads.length, "size " + cache.size());
+  }
+}
@@ -0,0 +1,241 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.Random;
+
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the query shapes of the geometry generators.
+ */
+public class TestGeometryGenerator {
+
+  private static OffHeapGenerator newGenerator(Properties p) throws Exception {
+    p.setProperty(GeoWorkload.DATA_SIZE, "2");
+    return new OffHeapGenerator(p, "10");
+  }
+
+  private static Properties synthetic() {
+    Properties p = new Properties();
+    p.setProperty(GeometryGenerator.GENERATOR_PROPERTY, "synthetic");
+    return p;
+  }
+
+  private static double metersPerDegreeX(double[] extent) {
+    return GeometryGenerator.METERS_PER_DEGREE * Math.cos(Math.toRadians((extent[1] + extent[3]) / 2));
+  }
+
+  /**
+   * A generator that always queries the same place, loaded by class name.
+   */
+  public static class FixedGeometryGenerator extends DefaultGeometryGenerator {
+    public FixedGeometryGenerator(Properties p) {
+      super(p);
+    }
+
+    @Override
+    public Geometry nextUpdateLocation(ParameterGenerator gen) {
+      return new Geometry.Point(1, 2);
+    }
+  }
+
+  @Test
+  public void testDefaultShapes() throws Exception {
+    OffHeapGenerator gen = newGenerator(new Properties());
+    GeometryGenerator shapes = GeometryGenerator.create(new Properties());
+    assertTrue(shapes instanceof DefaultGeometryGenerator);
+    assertEquals(shapes.nextNearRadius(gen), 1000.0);
+    Geometry point = shapes.nextUpdateLocation(gen);
+    assertTrue(point.getX(0, 0) > -112 && point.getX(0, 0) <= -111);
+    assertTrue(point.getY(0, 0) >= 33 && point.getY(0, 0) < 34);
+    Geometry lines = shapes.nextIntersect(gen);
+    assertEquals(lines.getType(), Geometry.TYPE_MULTILINESTRING);
+    assertEquals(lines.getPartCount(), 2);
+  }
+
+  @Test
+  public void testGeneratorByClassName() throws Exception {
+    Properties p = new Properties();
+    p.setProperty(GeometryGenerator.GENERATOR_PROPERTY, FixedGeometryGenerator.class.getName());
+    assertEquals(GeometryGenerator.create(p).nextUpdateLocation(newGenerator(p)), new Geometry.Point(1, 2));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnknownDistributionIsRejected() {
+    Properties p = synthetic();
+    p.setProperty(SyntheticGeometryGenerator.DISTRIBUTION_PROPERTY, "latest");
+    GeometryGenerator.create(p);
+  }
+
+  @Test
+  public void testBoxHasTheConfiguredAreaInsideTheExtent() throws Exception {
+    for (String distribution : new String[]{"uniform", "zipfian", "hotspot"}) {
+      Properties p = synthetic();
+      p.setProperty(SyntheticGeometryGenerator.DISTRIBUTION_PROPERTY, distribution);
+      p.setProperty(SyntheticGeometryGenerator.BOX_AREA_PROPERTY, "4000000");
+      OffHeapGenerator gen = newGenerator(p);
+      GeometryGenerator shapes = GeometryGenerator.create(p);
+      double[] extent = SyntheticGeometryGenerator.getExtent(gen);
+      for (int i = 0; i < 1000; i++) {
+        Geometry corner = shapes.nextNearCenter(gen);
+        Geometry opposite = shapes.nextBoxCorner(gen, corner);
+        assertTrue(corner.getX(0, 0) >= extent[0] && corner.getY(0, 0) >= extent[1], distribution);
+        assertTrue(opposite.getX(0, 0) <= extent[2] && opposite.getY(0, 0) <= extent[3], distribution);
+        assertEquals((opposite.getX(0, 0) - corner.getX(0, 0)) * metersPerDegreeX(extent), 2000, 1e-6);
+        assertEquals((opposite.getY(0, 0) - corner.getY(0, 0)) * GeometryGenerator.METERS_PER_DEGREE, 2000, 1e-6);
+      }
+    }
+  }
+
+  @Test
+  public void testHotspotQueriesTheCenter() throws Exception {
+    Properties p = synthetic();
+    p.setProperty(SyntheticGeometryGenerator.DISTRIBUTION_PROPERTY, "hotspot");
+    p.setProperty(SyntheticGeometryGenerator.HOTSPOT_DATA_FRACTION_PROPERTY, "0.25");
+    p.setProperty(SyntheticGeometryGenerator.HOTSPOT_OPN_FRACTION_PROPERTY, "1");
+    p.setProperty(GeometryGenerator.RADIUS_PROPERTY, "1");
+    p.setProperty(SyntheticGeometryGenerator.BOX_AREA_PROPERTY, "1");
+    OffHeapGenerator gen = newGenerator(p);
+    GeometryGenerator shapes = GeometryGenerator.create(p);
+    double[] extent = SyntheticGeometryGenerator.getExtent(gen);
+    double width = extent[2] - extent[0];
+    for (int i = 0; i < 1000; i++) {
+      double x = shapes.nextUpdateLocation(gen).getX(0, 0);
+      assertTrue(x > extent[0] + width / 4 - 1e-4 && x < extent[2] - width / 4 + 1e-4);
+    }
+  }
+
+  @Test
+  public void testSelectivitySizesTheShapes() throws Exception {
+    Properties p = synthetic();
+    p.setProperty(SyntheticGeometryGenerator.SELECTIVITY_PROPERTY, "2");
+    OffHeapGenerator gen = newGenerator(p);
+    GeometryGenerator shapes = GeometryGenerator.create(p);
+    double[] extent = SyntheticGeometryGenerator.getExtent(gen);
+    // two of ten incidents: a fifth of the extent
+    double area = (extent[2] - extent[0]) * (extent[3] - extent[1]) / 5;
+
+    Geometry corner = shapes.nextNearCenter(gen);
+    Geometry opposite = shapes.nextBoxCorner(gen, corner);
+    assertEquals((opposite.getX(0, 0) - corner.getX(0, 0)) * (opposite.getY(0, 0) - corner.getY(0, 0)), area, 1e-9);
+
+    double radius = shapes.nextNearRadius(gen);
+    assertEquals(Math.PI * radius * radius / metersPerDegreeX(extent) / GeometryGenerator.METERS_PER_DEGREE,
+        area, 1e-9);
+  }
+
+  /**
+   * Spreads the seed incidents evenly over the seed area, one at a random place in each of side x side cells, and
+   * copies them into every tile of the load, the way the multi-table load synthesizes them.
+   * @return {x, y} of every loaded incident
+   */
+  private static double[][] loadIncidents(int side, int tiles) {
+    Random rand = new Random(42);
+    int seeds = side * side;
+    double[][] incidents = new double[seeds * tiles * tiles][];
+    for (int i = 0; i < seeds; i++) {
+      double x = GeoWorkload.LONG_MIN + (i % side + rand.nextDouble()) / side * GeoWorkload.LONG_OFFSET;
+      double y = GeoWorkload.LAT_MIN + (i / side + rand.nextDouble()) / side * GeoWorkload.LAT_OFFSET;
+      for (int tile = 0; tile < tiles * tiles; tile++) {
+        incidents[i * tiles * tiles + tile] = new double[]{x + GeoWorkload.LONG_OFFSET * (tile % tiles),
+            y + GeoWorkload.LAT_OFFSET * (tile / tiles)};
+      }
+    }
+    return incidents;
+  }
+
+  /**
+   * @return average incidents matched by the near and the box queries of the generator
+   */
+  private static double[] averageHits(ParameterGenerator gen, GeometryGenerator shapes, double[][] incidents) {
+    double[] extent = SyntheticGeometryGenerator.getExtent(gen);
+    double perDegreeX = metersPerDegreeX(extent);
+    int queries = 2000;
+    long near = 0;
+    long box = 0;
+    for (int q = 0; q < queries; q++) {
+      Geometry center = shapes.nextNearCenter(gen);
+      double radius = shapes.nextNearRadius(gen);
+      Geometry corner = shapes.nextNearCenter(gen);
+      Geometry opposite = shapes.nextBoxCorner(gen, corner);
+      for (double[] incident : incidents) {
+        double dx = (incident[0] - center.getX(0, 0)) * perDegreeX;
+        double dy = (incident[1] - center.getY(0, 0)) * GeometryGenerator.METERS_PER_DEGREE;
+        if (dx * dx + dy * dy <= radius * radius) {
+          near++;
+        }
+        if (incident[0] >= corner.getX(0, 0) && incident[0] <= opposite.getX(0, 0)
+            && incident[1] >= corner.getY(0, 0) && incident[1] <= opposite.getY(0, 0)) {
+          box++;
+        }
+      }
+    }
+    return new double[]{(double) near / queries, (double) box / queries};
+  }
+
+  private static Properties selective(String selectivity) throws Exception {
+    Properties p = synthetic();
+    p.setProperty(SyntheticGeometryGenerator.SELECTIVITY_PROPERTY, selectivity);
+    // a store of its own, so that the incident count is the one given here
+    File store = File.createTempFile("selectivity", ".store");
+    store.deleteOnExit();
+    p.setProperty(OffHeapGenerator.OFFHEAP_FILE_PROPERTY, store.getPath());
+    return p;
+  }
+
+  @Test
+  public void testSelectivityMatchesAMultiTableLoad() throws Exception {
+    Properties p = selective("20");
+    p.setProperty(GeoWorkload.DATA_SIZE, "3");
+    p.setProperty(GeoWorkload.TABLE2NAME_PROPERTY, "schools");
+    p.setProperty(GeoWorkload.TABLE3NAME_PROPERTY, "buildings");
+    OffHeapGenerator gen = new OffHeapGenerator(p, "400", "10", "10");
+    assertEquals(gen.getSynthesisTiles(), 3);
+
+    double[] hits = averageHits(gen, GeometryGenerator.create(p), loadIncidents(20, 3));
+    assertEquals(hits[0], 20, 2);
+    assertEquals(hits[1], 20, 2);
+  }
+
+  @Test
+  public void testSelectivityMatchesASingleTableLoad() throws Exception {
+    Properties p = selective("20");
+    // the data size of a multi-table load must not spread a single-table load's queries over empty tiles
+    p.setProperty(GeoWorkload.DATA_SIZE, "32");
+    OffHeapGenerator gen = new OffHeapGenerator(p, "400");
+    assertEquals(gen.getSynthesisTiles(), 1);
+
+    double[] hits = averageHits(gen, GeometryGenerator.create(p), loadIncidents(20, 1));
+    assertEquals(hits[0], 20, 2);
+    assertEquals(hits[1], 20, 2);
+  }
+
+  @Test
+  public void testPolygonAndLineString() throws Exception {
+    Properties p = synthetic();
+    p.setProperty(SyntheticGeometryGenerator.VERTICES_PROPERTY, "6");
+    OffHeapGenerator gen = newGenerator(p);
+    double[] extent = SyntheticGeometryGenerator.getExtent(gen);
+    Geometry polygon = GeometryGenerator.create(p).nextIntersect(gen);
+    assertEquals(polygon.getType(), Geometry.TYPE_POLYGON);
+    assertEquals(polygon.getPositionCount(0), 7);
+    assertEquals(polygon.getX(0, 6), polygon.getX(0, 0));
+    double twiceArea = 0;
+    for (int i = 0; i < 6; i++) {
+      twiceArea += polygon.getX(0, i) * polygon.getY(0, i + 1) - polygon.getX(0, i + 1) * polygon.getY(0, i);
+    }
+    double squareMeters = twiceArea / 2 * metersPerDegreeX(extent) * GeometryGenerator.METERS_PER_DEGREE;
+    assertEquals(squareMeters, 1000000, 1);
+
+    p.setProperty(SyntheticGeometryGenerator.INTERSECT_SHAPE_PROPERTY, "linestring");
+    Geometry line = GeometryGenerator.create(p).nextIntersect(gen);
+    assertEquals(line.getPartCount(), 1);
+    assertEquals(line.getPositionCount(0), 6);
+  }
+}
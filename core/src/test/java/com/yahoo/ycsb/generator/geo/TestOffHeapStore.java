@@ -0,0 +1,101 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the OffHeapStore class.
+ */
+public class TestOffHeapStore {
+
+  @Test
+  public void testAddKeepsFirstValue() throws Exception {
+    OffHeapStore store = new OffHeapStore(null, 1024);
+    store.add("a", "first");
+    store.add("a", "second");
+    assertEquals(store.get("a"), "first");
+    assertNull(store.get("b"));
+  }
+
+  @Test
+  public void testValuesSpanManyChunks() throws Exception {
+    OffHeapStore store = new OffHeapStore(null, 1024);
+    for (int i = 0; i < 500; i++) {
+      store.add("key" + i, "value-é-" + i);
+    }
+    assertEquals(store.size(), 500);
+    for (int i = 0; i < 500; i++) {
+      assertEquals(store.get("key" + i), "value-é-" + i);
+    }
+    Map<String, Object> bulk = store.getBulk(Arrays.asList("key1", "key499", "missing"));
+    assertEquals(bulk.size(), 2);
+    assertEquals(bulk.get("key499"), "value-é-499");
+  }
+
+  @Test
+  public void testCounters() throws Exception {
+    OffHeapStore store = new OffHeapStore(null, 1024);
+    assertEquals(store.incr("missing", 1), -1);
+    store.addCounter("c", 10);
+    store.addCounter("c", 0);
+    assertEquals(store.incr("c", 5), 15);
+    assertEquals(store.get("c"), "15");
+    store.add("n", "7");
+    assertEquals(store.incr("n", 1), 8);
+  }
+
+  @Test
+  public void testFileStoreIsReopened() throws Exception {
+    File file = File.createTempFile("offheap", ".store");
+    file.deleteOnExit();
+    OffHeapStore store = new OffHeapStore(file.getPath(), 1024);
+    for (int i = 0; i < 100; i++) {
+      store.add("key" + i, "value" + i);
+    }
+    store.addCounter("c", 1);
+    store.incr("c", 41);
+    store.sync();
+
+    OffHeapStore reopened = new OffHeapStore(file.getPath(), 1024);
+    assertEquals(reopened.size(), 100);
+    assertEquals(reopened.get("key0"), "value0");
+    assertEquals(reopened.get("key99"), "value99");
+    assertEquals(reopened.get("c"), "42");
+    reopened.add("key100", "value100");
+    assertEquals(reopened.get("key100"), "value100");
+    assertFalse(reopened.get("key50") == null);
+  }
+
+  @Test
+  public void testSyncOverwritesTheCounters() throws Exception {
+    File file = File.createTempFile("offheap", ".store");
+    file.deleteOnExit();
+    OffHeapStore store = new OffHeapStore(file.getPath(), 1024);
+    store.addCounter("c", 1);
+    store.addCounter("d", -1);
+    store.sync();
+    long length = file.length();
+    // appending a record per counter on every sync would need dozens of chunks
+    for (int i = 0; i < 200; i++) {
+      store.incr("c", 1);
+      store.incr("d", -1);
+      store.sync();
+    }
+    assertEquals(file.length(), length);
+
+    OffHeapStore reopened = new OffHeapStore(file.getPath(), 1024);
+    assertEquals(reopened.get("c"), "201");
+    assertEquals(reopened.get("d"), "-201");
+    reopened.incr("c", Integer.MAX_VALUE);
+    reopened.sync();
+    assertEquals(file.length(), length);
+    assertEquals(new OffHeapStore(file.getPath(), 1024).get("c"), String.valueOf(201L + Integer.MAX_VALUE));
+  }
+}
@@ -0,0 +1,161 @@
+package com.yahoo.ycsb.generator.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the thread-local cursors of a shared ParameterGenerator.
+ */
+public class TestParameterGenerator {
+
+  private static OffHeapGenerator newGenerator() throws Exception {
+    Properties p = new Properties();
+    p.setProperty(GeoWorkload.DATA_SIZE, "2");
+    return new OffHeapGenerator(p, "10");
+  }
+
+  @Test
+  public void testSynthesisOffsetIsPerThread() throws Exception {
+    final OffHeapGenerator generator = newGenerator();
+    generator.incrementSynthesisOffset();
+    assertEquals(generator.getSynthesisOffsetCols(), 0);
+    assertEquals(generator.getSynthesisOffsetRows(), 1);
+
+    final int[] other = new int[2];
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        other[0] = generator.getSynthesisOffsetCols();
+        other[1] = generator.getSynthesisOffsetRows();
+      }
+    };
+    thread.start();
+    thread.join();
+    assertEquals(other[0], 1);
+    assertEquals(other[1], 0);
+  }
+
+  @Test
+  public void testSetSynthesisOffsetMatchesIncrements() throws Exception {
+    OffHeapGenerator generator = newGenerator();
+    for (int i = 0; i < 2; i++) {
+      generator.incrementSynthesisOffset();
+    }
+    int cols = generator.getSynthesisOffsetCols();
+    int rows = generator.getSynthesisOffsetRows();
+    assertEquals(generator.getSynthesisCell(), 3);
+    generator.setSynthesisOffset(1);
+    generator.setSynthesisOffset(3);
+    assertEquals(generator.getSynthesisOffsetCols(), cols);
+    assertEquals(generator.getSynthesisOffsetRows(), rows);
+  }
+
+  @Test
+  public void testSeedDocumentsByObjectId() throws Exception {
+    OffHeapGenerator generator = newGenerator();
+    String table = ParameterGenerator.GEO_DOCUMENT_PREFIX_INCIDENTS;
+    generator.putDocument(table, "7", "{\"properties\":{\"OBJECTID\":7}}");
+    generator.putDocument(table, "3", "{\"properties\":{\"OBJECTID\":3}}");
+    Map<Integer, String> seeds = generator.getSeedDocuments(table);
+    assertEquals(seeds.get(3), "{\"properties\":{\"OBJECTID\":3}}");
+    assertEquals(seeds.get(7), "{\"properties\":{\"OBJECTID\":7}}");
+    // read once, then shared
+    assertSame(generator.getSeedDocuments(table), seeds);
+    int previous = 0;
+    for (int objectId : seeds.keySet()) {
+      assertTrue(objectId > previous && objectId <= 10);
+      previous = objectId;
+    }
+  }
+
+  @Test
+  public void testGridCellMatchesCellPolygon() throws Exception {
+    OffHeapGenerator generator = newGenerator();
+    List<DataFilter> grid = generator.getGridPredicates();
+    for (int cell : new int[]{0, 7, generator.getGridColumns() + 3, grid.size() - 1}) {
+      Geometry polygon = grid.get(cell).getGeometry();
+      // center of the cell, between its bottom left and upper right corners
+      double x = (polygon.getX(0, 0) + polygon.getX(0, 2)) / 2;
+      double y = (polygon.getY(0, 0) + polygon.getY(0, 2)) / 2;
+      assertEquals(generator.getGridCell(x, y), cell);
+    }
+    assertEquals(generator.getGridCell(GeoWorkload.LONG_MIN - 0.001, GeoWorkload.LAT_MIN), -1);
+    assertEquals(generator.getGridCell(GeoWorkload.LONG_MIN, GeoWorkload.LAT_MIN + GeoWorkload.LAT_OFFSET), -1);
+  }
+
+  @Test
+  public void testGridIsSharedAndShuffledPerCall() throws Exception {
+    final OffHeapGenerator generator = newGenerator();
+    ArrayList<?> first = generator.buildGeoPredicateCase3();
+    assertSame(generator.getGeometryPredicatesList(), first);
+    assertEquals(first.size(), GeoWorkload.GRID_ROWS * GeoWorkload.GRID_COLS * 4);
+
+    final ArrayList<?>[] other = new ArrayList<?>[1];
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        other[0] = generator.buildGeoPredicateCase3();
+      }
+    };
+    thread.start();
+    thread.join();
+    assertNotSame(other[0], first);
+    assertSame(generator.getGeometryPredicatesList(), first);
+    // both threads see the same cell objects, only the order differs
+    assertEquals(new HashSet<Object>(other[0]), new HashSet<Object>(first));
+  }
+
+  @Test
+  public void testGridIsBuiltLazilyOncePerDataSize() throws Exception {
+    OffHeapGenerator generator = newGenerator();
+    GeoGrid grid = GeoGrid.getShared(2);
+    assertSame(generator.getGridPredicates(), grid.asList());
+    assertEquals(grid.size(), generator.getGridColumns() * generator.getGridRows());
+    int cell = grid.size() - 5;
+    assertSame(grid.getPredicate(cell), newGenerator().getGridPredicates().get(cell));
+    double[] bounds = grid.getBounds(cell);
+    Geometry polygon = grid.getPredicate(cell).getGeometry();
+    assertEquals(polygon.getX(0, 0), bounds[0]);
+    assertEquals(polygon.getY(0, 2), bounds[3]);
+    assertEquals(grid.getCell((bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2), cell);
+  }
+
+  @Test
+  public void testPrefetchReservesIdsInBlocks() throws Exception {
+    Properties p = new Properties();
+    p.setProperty(GeoWorkload.DATA_SIZE, "2");
+    p.setProperty(GeoWorkload.GEO_PREFETCH_SIZE, "4");
+    File store = File.createTempFile("prefetch", ".store");
+    store.deleteOnExit();
+    p.setProperty(OffHeapGenerator.OFFHEAP_FILE_PROPERTY, store.getPath());
+    OffHeapGenerator generator = new OffHeapGenerator(p, "10");
+    String body = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-111.9,33.4]}}";
+    generator.putIncidentsDocument("1", body);
+    generator.putIncidentsDocument("2", body);
+
+    String prefix = ParameterGenerator.GEO_DOCUMENT_PREFIX_INCIDENTS + ParameterGenerator.GEO_SYSTEMFIELD_DELIMITER;
+    for (int i = 0; i < 10; i++) {
+      DataFilter predicate = generator.buildGeoInsertDocument();
+      // the counter starts after the 10 seeds, and the first increment returns 12
+      assertEquals(predicate.getDocid(), prefix + (12 + i));
+      assertEquals(predicate.getValue(), body);
+    }
+    // three blocks of 4 taken, the fourth requested below the low-water mark
+    assertEquals(generator.increment(prefix + ParameterGenerator.GEO_SYSTEMFIELD_INSERTDOC_COUNTER_INCIDENTS, 0),
+        27);
+  }
+}
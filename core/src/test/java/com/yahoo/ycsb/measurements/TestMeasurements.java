@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2017 YCSB contributors. All rights reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.yahoo.ycsb.Status;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for measuring by handle and for merging the stripes of the measurements.
+ */
+public class TestMeasurements {
+
+  private static final int THREADS = 8;
+  private static final int PER_THREAD = 5000;
+
+  /**
+   * Keeps the values written for every metric and measurement.
+   */
+  private static final class Collected implements MeasurementsExporter {
+    private final Map<String, Double> values = new HashMap<>();
+
+    @Override
+    public void write(String metric, String measurement, int i) {
+      values.put(metric + "/" + measurement, (double) i);
+    }
+
+    @Override
+    public void write(String metric, String measurement, double d) {
+      values.put(metric + "/" + measurement, d);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static Properties properties(String type) throws IOException {
+    Properties p = new Properties();
+    p.setProperty(Measurements.MEASUREMENT_TYPE_PROPERTY, type);
+    p.setProperty(Measurements.MEASUREMENT_STRIPES_PROPERTY, "4");
+    File raw = File.createTempFile("raw", ".csv");
+    raw.deleteOnExit();
+    p.setProperty(OneMeasurementRaw.OUTPUT_FILE_PATH, raw.getPath());
+    return p;
+  }
+
+  @DataProvider(name = "types")
+  public Object[][] types() {
+    return new Object[][]{{"hdrhistogram", "Operations"}, {"histogram", "Operations"},
+        {"timeseries", "Operations"}, {"raw", "Total Operations"}};
+  }
+
+  @Test
+  public void testRegisterReturnsOneHandlePerName() throws Exception {
+    Measurements measurements = new Measurements(properties("hdrhistogram"));
+    int read = measurements.register("READ");
+    int update = measurements.register("UPDATE");
+    assertNotEquals(read, update);
+    assertEquals(measurements.register("READ"), read);
+
+    // operations that were registered but never measured are not reported
+    assertFalse(measurements.getSummary().contains("[UPDATE"));
+    measurements.measure(read, 100);
+    measurements.measure("READ", 300);
+    measurements.reportStatus(read, Status.OK);
+    Collected exported = new Collected();
+    measurements.exportMeasurements(exported);
+    assertEquals(exported.values.get("READ/Operations"), 2.0);
+    assertEquals(exported.values.get("READ/Return=OK"), 1.0);
+    assertFalse(exported.values.containsKey("UPDATE/Operations"));
+  }
+
+  @Test(dataProvider = "types")
+  public void testStripesAreMerged(String type, String operations) throws Exception {
+    final Measurements measurements = new Measurements(properties(type));
+    final int handle = measurements.register("GEO_NEAR");
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final int latency = (t + 1) * 1000;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < PER_THREAD; i++) {
+            measurements.measure(handle, latency);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(measurements.getSummary().contains("GEO_NEAR"));
+    Collected exported = new Collected();
+    measurements.exportMeasurements(exported);
+    assertEquals(exported.values.get("GEO_NEAR/" + operations), (double) THREADS * PER_THREAD);
+    if (!type.equals("raw")) {
+      // HdrHistogram keeps three significant digits
+      assertEquals(exported.values.get("GEO_NEAR/AverageLatency(us)"), (THREADS + 1) * 500.0, 5.0);
+      assertEquals(exported.values.get("GEO_NEAR/MinLatency(us)"), 1000.0, 1.0);
+      assertEquals(exported.values.get("GEO_NEAR/MaxLatency(us)"), THREADS * 1000.0, 10.0);
+    }
+  }
+}
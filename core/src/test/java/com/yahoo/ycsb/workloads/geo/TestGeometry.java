@@ -0,0 +1,65 @@
+package com.yahoo.ycsb.workloads.geo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the Geometry class.
+ */
+public class TestGeometry {
+
+  @Test
+  public void testParsePoint() {
+    Geometry point = Geometry.fromJSON(new JSONObject("{\"type\":\"Point\",\"coordinates\":[-111.9,33.4]}"));
+    assertTrue(point instanceof Geometry.Point);
+    assertEquals(((Geometry.Point) point).getX(), -111.9);
+    assertEquals(((Geometry.Point) point).getY(), 33.4);
+  }
+
+  @Test
+  public void testPolygonRoundTrip() {
+    String json = "{\"type\":\"Polygon\",\"coordinates\":[[[-111.9,33.3],[-111.9,33.4],[-111.8,33.4],[-111.9,33.3]]]}";
+    Geometry polygon = Geometry.fromJSON(new JSONObject(json));
+    assertEquals(polygon.getPartCount(), 1);
+    assertEquals(polygon.getPositionCount(0), 4);
+    assertEquals(polygon.getX(0, 2), -111.8);
+    assertEquals(polygon.toString(), json);
+    assertEquals(Geometry.fromJSON(polygon.toJSONObject()), polygon);
+  }
+
+  @Test
+  public void testMultiLineString() {
+    Geometry lines = new Geometry.MultiLineString(new double[]{1, 2, 3, 4}, new double[]{5, 6, 7, 8});
+    assertEquals(lines.getType(), Geometry.TYPE_MULTILINESTRING);
+    assertEquals(lines.toString(), "{\"type\":\"MultiLineString\",\"coordinates\":[[[1.0,2.0],[3.0,4.0]],"
+        + "[[5.0,6.0],[7.0,8.0]]]}");
+    assertEquals(Geometry.fromJSON(lines.toJSONObject()), lines);
+  }
+
+  @Test
+  public void testRenderIsMemoized() {
+    final int[] calls = new int[1];
+    Geometry.Renderer<String> renderer = new Geometry.Renderer<String>() {
+      @Override
+      public String render(Geometry geometry) {
+        calls[0]++;
+        return geometry.toString();
+      }
+    };
+    Geometry point = new Geometry.Point(1, 2);
+    String rendered = point.render(renderer);
+    assertSame(point.render(renderer), rendered);
+    assertEquals(calls[0], 1);
+    assertEquals(new Geometry.Point(1, 2).render(renderer), rendered);
+    assertEquals(calls[0], 2);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnsupportedType() {
+    Geometry.fromJSON(new JSONObject("{\"type\":\"GeometryCollection\",\"coordinates\":[]}"));
+  }
+}
@@ -8,6 +8,7 @@ import com.couchbase.client.core.metrics.DefaultLatencyMetricsCollectorConfig;
 import com.couchbase.client.core.metrics.DefaultMetricsCollectorConfig;
 import com.couchbase.client.core.metrics.LatencyMetricsCollectorConfig;
 import com.couchbase.client.core.metrics.MetricsCollectorConfig;
+import com.couchbase.client.core.time.Delay;
 import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonFactory;
 import com.couchbase.client.deps.com.fasterxml.jackson.core.JsonGenerator;
 import com.couchbase.client.deps.com.fasterxml.jackson.databind.JsonNode;
@@ -26,33 +27,45 @@ import com.couchbase.client.java.CouchbaseCluster;
 import com.couchbase.client.java.PersistTo;
 import com.couchbase.client.java.ReplicateTo;
 import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.RawJsonDocument;
 import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.env.CouchbaseEnvironment;
 import com.couchbase.client.java.env.DefaultCouchbaseEnvironment;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
 import com.couchbase.client.java.error.TemporaryFailureException;
 import com.couchbase.client.java.query.*;
 import com.couchbase.client.java.search.SearchQuery;
-import com.couchbase.client.java.search.queries.GeoDistanceQuery;
-import com.couchbase.client.java.search.result.SearchQueryResult;
+import com.couchbase.client.java.search.sort.SearchSort;
+import com.couchbase.client.java.search.result.AsyncSearchQueryResult;
+import com.couchbase.client.java.search.result.SearchQueryRow;
 import com.couchbase.client.java.transcoder.JacksonTransformers;
 import com.couchbase.client.java.util.Blocking;
+import com.couchbase.client.java.util.retry.RetryBuilder;
+import com.couchbase.client.java.view.AsyncSpatialViewResult;
+import com.couchbase.client.java.view.AsyncSpatialViewRow;
 import com.couchbase.client.java.view.SpatialViewQuery;
-import com.couchbase.client.java.view.SpatialViewResult;
 import com.yahoo.ycsb.ByteIterator;
 import com.yahoo.ycsb.GeoDB;
 import com.yahoo.ycsb.DBException;
+import com.yahoo.ycsb.GeoPhase;
+import com.yahoo.ycsb.GeoResultSink;
+import com.yahoo.ycsb.GeoResults;
 import com.yahoo.ycsb.Status;
 import com.yahoo.ycsb.StringByteIterator;
 import com.yahoo.ycsb.generator.geo.ParameterGenerator;
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.Geometry;
 import com.yahoo.ycsb.workloads.geo.GeoWorkload;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.json.JSONObject;
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.functions.Func2;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.channels.spi.SelectorProvider;
@@ -86,7 +99,14 @@ import java.util.concurrent.locks.LockSupport;
  * <li><b>couchbase.runtimeMetricsInterval=0</b> The interval in seconds when runtime metrics will be logged.</li>
  * <li><b>couchbase.documentExpiry=0</b> Document Expiry is the amount of time until a document expires in
  *      Couchbase.</li>
+ * <li><b>couchbase.geo.inflight=16</b> The most spatial view, FTS or KV requests a geo use case or the multi-table
+ *      geo load keeps in flight.</li>
+ * <li><b>couchbase.geo.designDoc=dev_spatial</b> The design document of the spatial views.</li>
+ * <li><b>couchbase.geo.view.&lt;table&gt;=&lt;table&gt;</b> The spatial view over the documents of a table.</li>
+ * <li><b>couchbase.geo.ftsIndex=Index</b> The FTS index over the graffiti geometries.</li>
  * </ul>
+ *
+ * <p> How many documents of every geo query are fetched follows {@code geo_result_mode}, see {@link GeoResults}.
  */
 public class Couchbase2Client extends GeoDB {
 
@@ -101,6 +121,12 @@ public class Couchbase2Client extends GeoDB {
 
   private static volatile CouchbaseEnvironment env = null;
 
+  private static final GeoPhase CASE3_DENSITY = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "density");
+  private static final GeoPhase CASE3_SORT = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "sort");
+  private static final GeoPhase CASE3_GRAFFITI = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "graffiti");
+  private static final GeoPhase CASE4_SELECT = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "select");
+  private static final GeoPhase CASE4_DELETE = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "delete");
+
   private Cluster cluster;
   private Bucket bucket;
   private String bucketName;
@@ -122,6 +148,10 @@ public class Couchbase2Client extends GeoDB {
   private String scanAllQuery;
   private String geoInsertN1qlQuery;
   private int documentExpiry;
+  private int geoInflight;
+  private String geoDesignDoc;
+  private String geoFtsIndex;
+  private int geoRowLimit;
   
   @Override
   public void init() throws DBException {
@@ -145,6 +175,14 @@ public class Couchbase2Client extends GeoDB {
     networkMetricsInterval = Integer.parseInt(props.getProperty("couchbase.networkMetricsInterval", "0"));
     runtimeMetricsInterval = Integer.parseInt(props.getProperty("couchbase.runtimeMetricsInterval", "0"));
     documentExpiry = Integer.parseInt(props.getProperty("couchbase.documentExpiry", "0"));
+    geoInflight = Integer.parseInt(props.getProperty("couchbase.geo.inflight", "16"));
+    geoDesignDoc = props.getProperty("couchbase.geo.designDoc", "dev_spatial");
+    geoFtsIndex = props.getProperty("couchbase.geo.ftsIndex", "Index");
+    try {
+      geoRowLimit = GeoResults.getRowLimit(props);
+    } catch (IllegalArgumentException e) {
+      throw new DBException(e.getMessage());
+    }
     scanAllQuery =  "SELECT RAW meta().id FROM `" + bucketName +
       "` WHERE meta().id >= $1 ORDER BY meta().id LIMIT $2";
     geoInsertN1qlQuery = "INSERT INTO `" + bucketName
@@ -225,12 +263,15 @@ public class Couchbase2Client extends GeoDB {
   @Override
   public Status geoLoad(String table, ParameterGenerator generator, Double recordCount) {
     try {
-      String docId = generator.getIncidentsIdRandom();
-      RawJsonDocument doc = bucket.get(docId, RawJsonDocument.class);
-      if (doc != null) {
-        generator.putIncidentsDocument(docId, doc.content().toString());
-      } else {
-        System.err.println("Error getting document from DB: " + docId);
+      // a seed file already filled the generator; otherwise copy a random document of the bucket into it
+      if (!generator.isSeeded(table)) {
+        String docId = generator.getIncidentsIdRandom();
+        RawJsonDocument doc = bucket.get(docId, RawJsonDocument.class);
+        if (doc != null) {
+          generator.putIncidentsDocument(docId, doc.content().toString());
+        } else {
+          System.err.println("Error getting document from DB: " + docId);
+        }
       }
       generator.buildGeoInsertDocument();
       int inserts = (int) Math.round(recordCount/Integer.parseInt(GeoWorkload.TOTAL_DOCS_DEFAULT))-1;
@@ -245,6 +286,54 @@ public class Couchbase2Client extends GeoDB {
     return Status.OK;
   }
 
+  /**
+   * Load ALL DOCS of the three tables into the calling thread's current grid cell and move on to the next cell. The
+   * documents of a table are stored under the key table:uuid and written with at most couchbase.geo.inflight
+   * mutations in flight.
+   */
+  @Override
+  public Status geoLoad(String table1, String table2, String table3, ParameterGenerator generator,
+      Double recordCount) {
+    try {
+      for (String table : new String[] {table1, table2, table3}) {
+        Map<Integer, String> seeds = generator.getSeedDocuments(table);
+        if (seeds.isEmpty()) {
+          System.err.println("No seed documents found for " + table);
+          return Status.ERROR;
+        }
+        boolean schools = table.equals(ParameterGenerator.GEO_DOCUMENT_PREFIX_SCHOOLS);
+        int keyOffset = generator.getTotalDocsCount(table) * generator.getSynthesisCell();
+        List<RawJsonDocument> docs = new ArrayList<RawJsonDocument>(seeds.size());
+        for (Map.Entry<Integer, String> seed : seeds.entrySet()) {
+          String id = UUID.randomUUID().toString();
+          String newDocBody = generator.synthesizeDocument(table, seed.getValue(), id);
+          docs.add(RawJsonDocument.create(formatId(table, id), documentExpiry, newDocBody));
+
+          // If schools table, also add synthesized doc to memcached
+          if (schools) {
+            generator.putDocument(table, (seed.getKey() + keyOffset) + "", newDocBody);
+          }
+        }
+        Observable.from(docs).flatMap(new Func1<RawJsonDocument, Observable<RawJsonDocument>>() {
+          @Override
+          public Observable<RawJsonDocument> call(RawJsonDocument doc) {
+            return (upsert ? bucket.async().upsert(doc, persistTo, replicateTo)
+                : bucket.async().insert(doc, persistTo, replicateTo))
+                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class)
+                    .delay(Delay.fixed(1, TimeUnit.SECONDS)).max(60).build());
+          }
+        }, geoInflight).toBlocking().lastOrDefault(null);
+        generator.advanceInsertCounter(table, seeds.size());
+      }
+      generator.incrementSynthesisOffset();
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println("Error loading geo documents");
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
   // *********************  GEO Insert ********************************
 
   @Override
@@ -318,7 +407,7 @@ public class Couchbase2Client extends GeoDB {
   private Status geoUpdateKv(ParameterGenerator gen)  {
     waitForMutationResponse(bucket.async().replace(
         RawJsonDocument.create(gen.getIncidentIdWithDistribution(), documentExpiry,
-            gen.getGeoPredicate().getNestedPredicateA().getValueA().toString()),
+            gen.getGeoPredicate().getNestedPredicateA().getGeometry().toString()),
         persistTo,
         replicateTo
     ));
@@ -333,7 +422,8 @@ public class Couchbase2Client extends GeoDB {
 
     N1qlQueryResult queryResult = bucket.query(N1qlQuery.parameterized(
         updateQuery,
-        JsonArray.from(gen.getIncidentIdWithDistribution(), gen.getGeoPredicate().getNestedPredicateA().getValueA()),
+        JsonArray.from(gen.getIncidentIdWithDistribution(),
+            geoJson(gen.getGeoPredicate().getNestedPredicateA().getGeometry())),
         N1qlParams.build().adhoc(adhoc).maxParallelism(maxParallelism)
     ));
 
@@ -347,17 +437,8 @@ public class Couchbase2Client extends GeoDB {
   @Override
   public Status geoNear(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
     try {
-      JSONObject nearFieldValue = gen.getGeoPredicate().getNestedPredicateA().getValueA();
-
-      HashMap<String, Object> boxFields = new ObjectMapper().readValue(nearFieldValue.toString(), HashMap.class);
-      ArrayList coords1 = ((ArrayList) boxFields.get("coordinates"));
-
-      GeoDistanceQuery fts = SearchQuery.geoDistance((Double)coords1.get(0), (Double) coords1.get(1), "1000m");
-      SearchQuery query= new SearchQuery("Index", fts);
-
-      SearchQueryResult queryResult = bucket.query(query);
-
-      return queryResult != null ? Status.OK : Status.NOT_FOUND;
+      DataFilter center = gen.getGeoPredicate().getNestedPredicateA();
+      return first(near(center.getName(), center.getGeometry(), center.getDistance() + "m", geoRowLimit), result);
     } catch (Exception e) {
       System.err.println(e);
       return Status.ERROR;
@@ -368,26 +449,12 @@ public class Couchbase2Client extends GeoDB {
   @Override
   public Status geoBox(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
     try {
-      JSONObject boxFieldValue1 = gen.getGeoPredicate().getNestedPredicateA().getValueA();
-      JSONObject boxFieldValue2 = gen.getGeoPredicate().getNestedPredicateB().getValueA();
-
-      HashMap<String, Object> boxFields = new ObjectMapper().readValue(boxFieldValue1.toString(), HashMap.class);
-      HashMap<String, Object> boxFields1 = new ObjectMapper().readValue(boxFieldValue2.toString(), HashMap.class);
-      List<Double> rp = new ArrayList<>();
-      List coords = (ArrayList) boxFields.get("coordinates");
-      for(Object element: coords) {
-        rp.add((Double) element);
-      }
-      ArrayList coords2 = ((ArrayList) boxFields1.get("coordinates"));
-      for(Object element: coords2) {
-        rp.add((Double) element);
-      }
-
-      SpatialViewQuery q = SpatialViewQuery.from("dev_spatial", "SpatialView")
-          .startRange(JsonArray.from(rp.get(0), rp.get(1)))
-          .endRange(JsonArray.from(rp.get(2), rp.get(3)));
-      SpatialViewResult queryResult = bucket.query(q);
-      return queryResult != null ? Status.OK : Status.NOT_FOUND;
+      Geometry corner1 = gen.getGeoPredicate().getNestedPredicateA().getGeometry();
+      Geometry corner2 = gen.getGeoPredicate().getNestedPredicateB().getGeometry();
+      double[] box = {
+          Math.min(corner1.getX(0, 0), corner2.getX(0, 0)), Math.min(corner1.getY(0, 0), corner2.getY(0, 0)),
+          Math.max(corner1.getX(0, 0), corner2.getX(0, 0)), Math.max(corner1.getY(0, 0), corner2.getY(0, 0))};
+      return first(spatial(limited(spatialRange(box))), result);
     } catch (Exception e) {
       System.err.println(e);
       return Status.ERROR;
@@ -398,33 +465,383 @@ public class Couchbase2Client extends GeoDB {
   @Override
   public Status geoIntersect(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
     try {
-      String boxFieldName1 = gen.getGeoPredicate().getNestedPredicateA().getName();
-      JSONObject boxFieldValue1 = gen.getGeoPredicate().getNestedPredicateA().getValueA();
-      JSONObject boxFieldValue2 = gen.getGeoPredicate().getNestedPredicateB().getValueA();
-      HashMap<String, Object> boxFields = new ObjectMapper().readValue(boxFieldValue1.toString(), HashMap.class);
-      HashMap<String, Object> boxFields1 = new ObjectMapper().readValue(boxFieldValue2.toString(), HashMap.class);
-      List<Double> rp = new ArrayList<>();
-      List coords = (ArrayList) boxFields.get("coordinates");
-      for (Object element : coords) {
-        rp.add((Double) element);
+      // the spatial view only answers bounding box ranges, so intersect with the bounding box of the shape
+      double[] box = gen.getGeoPredicate().getNestedPredicateC().getGeometry().getBounds();
+      return first(spatial(limited(spatialRange(box))), result);
+    } catch (Exception e) {
+      System.err.println(e);
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * @param box the bounding box {minX, minY, maxX, maxY}
+   * @return a query of the spatial view for the documents within the box
+   */
+  private SpatialViewQuery spatialRange(double[] box) {
+    return SpatialViewQuery.from(geoDesignDoc, "SpatialView")
+        .startRange(JsonArray.from(box[0], box[1]))
+        .endRange(JsonArray.from(box[2], box[3]));
+  }
+
+  // *********************  GEO USE CASE 1 ********************************
+  @Override
+  public Status geoUseCase1(String table, HashMap<String, Vector<HashMap<String, ByteIterator>>> result,
+      ParameterGenerator gen) {
+    try {
+      Vector<HashMap<String, ByteIterator>> graffiti = new Vector<>();
+      for (RawJsonDocument doc : graffitiBySchools(gen)) {
+        HashMap<String, ByteIterator> rowData = new HashMap<>();
+        geoFill(rowData, doc);
+        graffiti.add(rowData);
       }
-      ArrayList coords2 = ((ArrayList) boxFields1.get("coordinates"));
-      for (Object element : coords2) {
-        rp.add((Double) element);
+      result.put("", graffiti);
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * @return the graffiti nearest to every school within 500 meters
+   */
+  private List<RawJsonDocument> graffitiBySchools(ParameterGenerator gen) {
+    final GeoResults results = GeoResults.current();
+    List<RawJsonDocument> found = new ArrayList<>();
+    for (List<RawJsonDocument> nearest : fanOut(gen.getGeometryPredicatesList(),
+        "GEO_CASE_GRAFFITI_BY_SCHOOLS_QUERY", new Func1<DataFilter, Observable<List<RawJsonDocument>>>() {
+          @Override
+          public Observable<List<RawJsonDocument>> call(DataFilter school) {
+            DataFilter predicate = school.getNestedPredicateA();
+            return reported(near(predicate.getName(), predicate.getGeometry(), "500m", geoRowLimit), results)
+                .toList();
+          }
+        })) {
+      found.addAll(nearest);
+    }
+    return found;
+  }
+
+  // *********************  GEO USE CASE 2 ********************************
+  @Override
+  public Status geoUseCase2(final String table, HashMap<String, Vector<HashMap<String, ByteIterator>>> result,
+      ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      final GeoResults results = GeoResults.current();
+      ArrayList<DataFilter> neighborhoods = gen.getGeometryPredicatesList();
+      List<List<RawJsonDocument>> cellResults = fanOut(neighborhoods, "GEO_CASE_GRAFFITI_BY_DENSITY_QUERY",
+          new Func1<DataFilter, Observable<List<RawJsonDocument>>>() {
+            @Override
+            public Observable<List<RawJsonDocument>> call(DataFilter cell) {
+              return reported(spatial(limited(spatialQuery(table, cell.getGeometry()))), results).toList();
+            }
+          });
+      for (int i = 0; i < neighborhoods.size(); i++) {
+        Geometry intersectFieldValue = neighborhoods.get(i).getGeometry();
+        Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
+        for (RawJsonDocument doc : cellResults.get(i)) {
+          HashMap<String, ByteIterator> rowData = new HashMap<>();
+          geoFill(rowData, doc);
+          graffitiResults.add(rowData);
+        }
+        result.put(intersectFieldValue.toString(), graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_DENSITY/count", intersectFieldValue, graffitiResults.size());
+        }
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  // *********************  GEO USE CASE 3 ********************************
+  @Override
+  public Status geoUseCase3(final String table1, String table2,
+      HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      // Get density of BUILDINGS in grid cells (sum of areas)
+      final String shapeArea = gen.getBuildingsShapeArea();
+      final ArrayList<DataFilter> cells = gen.getGeometryPredicatesList();
+      final GeoResults results = GeoResults.current();
+      long phaseStart = CASE3_DENSITY.start();
+      final List<Double> densities = fanOut(cells, "GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC_QUERY",
+          new Func1<DataFilter, Observable<Double>>() {
+            @Override
+            public Observable<Double> call(DataFilter cell) {
+              return reported(spatial(spatialQuery(table1, cell.getGeometry())), results).reduce(0.0,
+                  new Func2<Double, RawJsonDocument, Double>() {
+                    @Override
+                    public Double call(Double density, RawJsonDocument building) {
+                      JsonObject properties = JsonObject.fromJson(building.content()).getObject("properties");
+                      Object area = properties == null ? null : properties.get(shapeArea);
+                      return area instanceof Number ? density + ((Number) area).doubleValue() : density;
+                    }
+                  });
+            }
+          });
+      CASE3_DENSITY.end(phaseStart);
+
+      // Sort cells by density in descending order --> take the top HIGH_TRAFFIC_CELL_COUNT
+      phaseStart = CASE3_SORT.start();
+      List<Integer> order = new ArrayList<>(cells.size());
+      for (int i = 0; i < cells.size(); i++) {
+        order.add(i);
+        if (densities.get(i) > 0) {
+          if (sink.isSampled()) {
+            sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/density", cells.get(i).getGeometry(), densities.get(i));
+          }
+        }
+      }
+      Collections.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return densities.get(o2).compareTo(densities.get(o1));
+        }
+      });
+      CASE3_SORT.end(phaseStart);
+
+      // Find graffiti in the top HIGH_TRAFFIC_CELL_COUNT cells
+      phaseStart = CASE3_GRAFFITI.start();
+      for (int i = 0; i < GeoWorkload.TOP_CELL_COUNT && i < order.size(); i++) {
+        Geometry intersectFieldValue = cells.get(order.get(i)).getGeometry();
+        Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
+        for (RawJsonDocument doc : reported(spatial(limited(spatialQuery(table2, intersectFieldValue))),
+            GeoResults.current()).toList().toBlocking().single()) {
+          HashMap<String, ByteIterator> rowData = new HashMap<>();
+          geoFill(rowData, doc);
+          graffitiResults.add(rowData);
+        }
+        result.put(intersectFieldValue.toString(), graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/graffiti", intersectFieldValue, graffitiResults.size());
+        }
       }
+      CASE3_GRAFFITI.end(phaseStart);
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
 
-      SpatialViewQuery q = SpatialViewQuery.from("dev_spatial", "SpatialView")
-          .startRange(JsonArray.from(rp.get(0), rp.get(1)))
-          .endRange(JsonArray.from(rp.get(2), rp.get(3)));
-      SpatialViewResult queryResult = bucket.query(q);
+  // *********************  GEO USE CASE 4 ********************************
+  @Override
+  public Status geoUseCase4(String table, String operation, Set<Integer> deleted, ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      // Based on the operation, clean all the graffiti resulting from that search
+      long phaseStart = CASE4_SELECT.start();
+      List<RawJsonDocument> toDelete;
+      switch (operation) {
+      case "geo_case_graffiti_by_schools":
+        toDelete = graffitiBySchools(gen);
+        break;
+      default:
+        return Status.ERROR;
+      }
+      CASE4_SELECT.end(phaseStart);
 
-      return queryResult != null ? Status.OK : Status.NOT_FOUND;
+      // Several schools may share their nearest graffiti, so a document can be gone already
+      phaseStart = CASE4_DELETE.start();
+      Func1<RawJsonDocument, Observable<Integer>> remove = new Func1<RawJsonDocument, Observable<Integer>>() {
+        @Override
+        public Observable<Integer> call(RawJsonDocument doc) {
+          return bucket.async().remove(doc.id(), persistTo, replicateTo).map(new Func1<JsonDocument, Integer>() {
+            @Override
+            public Integer call(JsonDocument removed) {
+              return 1;
+            }
+          }).onErrorResumeNext(new Func1<Throwable, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Throwable e) {
+              return e instanceof DocumentDoesNotExistException ? Observable.just(0) : Observable.<Integer>error(e);
+            }
+          });
+        }
+      };
+      Observable<Integer> removals = Observable.from(toDelete).flatMap(remove, geoInflight)
+          .reduce(0, new Func2<Integer, Integer, Integer>() {
+            @Override
+            public Integer call(Integer sum, Integer removed) {
+              return sum + removed;
+            }
+          });
+      int counter = removals.toBlocking().single();
+      CASE4_DELETE.end(phaseStart);
+      if (sink.isSampled()) {
+        sink.log("GEO_CASE_CLEAN_GRAFFITI/delete", null, counter);
+      }
+      return Status.OK;
     } catch (Exception e) {
-      System.err.println(e);
+      e.printStackTrace();
       return Status.ERROR;
     }
   }
 
+  /**
+   * Runs one query per item with at most couchbase.geo.inflight of them in flight and waits for all of them.
+   * @param metric name the latency of every query is measured under, from its subscription to its last row
+   * @param query the query of an item; it must emit exactly one result
+   * @return the results in item order
+   */
+  private <I, R> List<R> fanOut(final List<I> items, final String metric, final Func1<I, Observable<R>> query) {
+    final List<R> results = new ArrayList<R>(Collections.<R>nCopies(items.size(), null));
+    Observable.range(0, items.size()).flatMap(new Func1<Integer, Observable<R>>() {
+      @Override
+      public Observable<R> call(final Integer i) {
+        return Observable.defer(new Func0<Observable<R>>() {
+          @Override
+          public Observable<R> call() {
+            final long st = System.nanoTime();
+            return query.call(items.get(i)).doOnNext(new Action1<R>() {
+              @Override
+              public void call(R r) {
+                results.set(i, r);
+              }
+            }).doOnTerminate(new Action0() {
+              @Override
+              public void call() {
+                Measurements.getMeasurements().measure(metric, (int) ((System.nanoTime() - st) / 1000));
+              }
+            });
+          }
+        });
+      }
+    }, geoInflight).toBlocking().lastOrDefault(null);
+    return results;
+  }
+
+  /**
+   * @return the spatial view query for the documents of a table whose bounding box overlaps the geometry's
+   */
+  private SpatialViewQuery spatialQuery(String table, Geometry geometry) {
+    double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+    for (int i = 0; i < geometry.getPartCount(); i++) {
+      for (int j = 0; j < geometry.getPositionCount(i); j++) {
+        box[0] = Math.min(box[0], geometry.getX(i, j));
+        box[1] = Math.min(box[1], geometry.getY(i, j));
+        box[2] = Math.max(box[2], geometry.getX(i, j));
+        box[3] = Math.max(box[3], geometry.getY(i, j));
+      }
+    }
+    String view = getProperties().getProperty("couchbase.geo.view." + table, table);
+    return SpatialViewQuery.from(geoDesignDoc, view)
+        .range(JsonArray.from(box[0], box[1]), JsonArray.from(box[2], box[3]));
+  }
+
+  /**
+   * @return the documents of all rows of a spatial view query, fetched alongside the rows
+   */
+  private Observable<RawJsonDocument> spatial(SpatialViewQuery q) {
+    return bucket.async().query(q.includeDocs(true, RawJsonDocument.class))
+        .flatMap(new Func1<AsyncSpatialViewResult, Observable<AsyncSpatialViewRow>>() {
+          @Override
+          public Observable<AsyncSpatialViewRow> call(AsyncSpatialViewResult result) {
+            if (result.success()) {
+              return result.rows();
+            }
+            return result.error().flatMap(new Func1<JsonObject, Observable<AsyncSpatialViewRow>>() {
+              @Override
+              public Observable<AsyncSpatialViewRow> call(JsonObject error) {
+                return Observable.error(new DBException("Spatial view query failed: " + error));
+              }
+            });
+          }
+        }).concatMap(new Func1<AsyncSpatialViewRow, Observable<RawJsonDocument>>() {
+          @Override
+          public Observable<RawJsonDocument> call(AsyncSpatialViewRow row) {
+            return row.document(RawJsonDocument.class);
+          }
+        });
+  }
+
+  /**
+   * @param limit most documents to return, 0 for the FTS default
+   * @return the graffiti whose geo point field is within distance of the point, nearest first
+   */
+  private Observable<RawJsonDocument> near(String field, Geometry point, String distance, int limit) {
+    double x = point.getX(0, 0);
+    double y = point.getY(0, 0);
+    SearchQuery query = new SearchQuery(geoFtsIndex, SearchQuery.geoDistance(x, y, distance).field(field))
+        .sort(SearchSort.sortGeoDistance(x, y, field));
+    if (limit > 0) {
+      query.limit(limit);
+    }
+    return bucket.async().query(query)
+        .flatMap(new Func1<AsyncSearchQueryResult, Observable<SearchQueryRow>>() {
+          @Override
+          public Observable<SearchQueryRow> call(AsyncSearchQueryResult result) {
+            return result.hits();
+          }
+        }).concatMap(new Func1<SearchQueryRow, Observable<RawJsonDocument>>() {
+          @Override
+          public Observable<RawJsonDocument> call(SearchQueryRow hit) {
+            return bucket.async().get(hit.id(), RawJsonDocument.class);
+          }
+        });
+  }
+
+  /**
+   * @return the query limited to geo_result_mode's number of rows
+   */
+  private SpatialViewQuery limited(SpatialViewQuery q) {
+    return geoRowLimit > 0 ? q.limit(geoRowLimit) : q;
+  }
+
+  /**
+   * @return the documents, each reported with the length of its JSON to the results of the operation
+   */
+  private static Observable<RawJsonDocument> reported(Observable<RawJsonDocument> docs, final GeoResults results) {
+    return docs.doOnNext(new Action1<RawJsonDocument>() {
+      @Override
+      public void call(RawJsonDocument doc) {
+        results.row(doc.content().length());
+      }
+    });
+  }
+
+  /**
+   * Drains all documents, putting the first into the result.
+   */
+  private Status first(Observable<RawJsonDocument> docs, HashMap<String, ByteIterator> result) {
+    List<RawJsonDocument> found = reported(docs, GeoResults.current()).toList().toBlocking().single();
+    if (found.isEmpty()) {
+      return Status.NOT_FOUND;
+    }
+    geoFill(result, found.get(0));
+    return Status.OK;
+  }
+
+  private void geoFill(HashMap<String, ByteIterator> result, RawJsonDocument doc) {
+    decode(doc.content(), null, result);
+    result.put("_id", new StringByteIterator(doc.id()));
+  }
+
+  /**
+   * Builds the GeoJSON object of a predicate geometry straight from its coordinates.
+   */
+  private static JsonObject geoJson(Geometry geometry) {
+    JsonArray coordinates;
+    if (geometry instanceof Geometry.Point) {
+      coordinates = JsonArray.from(geometry.getX(0, 0), geometry.getY(0, 0));
+    } else {
+      coordinates = JsonArray.create();
+      for (int i = 0; i < geometry.getPartCount(); i++) {
+        JsonArray part = JsonArray.create();
+        for (int j = 0; j < geometry.getPositionCount(i); j++) {
+          part.add(JsonArray.from(geometry.getX(i, j), geometry.getY(i, j)));
+        }
+        coordinates.add(part);
+      }
+    }
+    return JsonObject.create().put("type", geometry.getType()).put("coordinates", coordinates);
+  }
+
   // ************************************************************************************************
 
   @Override
@@ -0,0 +1,791 @@
+/**
+ * Copyright (c) 2012 - 2015 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb.db;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.DBException;
+import com.yahoo.ycsb.GeoDB;
+import com.yahoo.ycsb.GeoPhase;
+import com.yahoo.ycsb.GeoResultSink;
+import com.yahoo.ycsb.GeoResults;
+import com.yahoo.ycsb.Status;
+import com.yahoo.ycsb.generator.geo.GeoRandom;
+import com.yahoo.ycsb.generator.geo.ParameterGenerator;
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.workloads.geo.DataFilter;
+import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Geo client for MongoDB on the asynchronous driver from MongoDB Inc.
+ *
+ * Instead of waiting for every request before sending the next one, each client thread keeps up to
+ * {@code mongodb.geo.inflight} requests on the wire: the sub-queries of the use cases are all issued at once, geo
+ * inserts and updates are acknowledged in the background and the synthesized load is written as pipelined unordered
+ * insertMany batches. A failed background write is reported by the next write and by {@link #cleanup()}.
+ *
+ * Only the geo operations are implemented; use the {@code mongodb} or {@code mongodb-async} binding for the core
+ * workloads.
+ */
+public class AsyncMongoDbGeoClient extends GeoDB {
+
+  /** Used to include a field in a response. */
+  private static final Integer INCLUDE = Integer.valueOf(1);
+
+  /** Decodes the raw documents of geo queries. */
+  private static final Codec<Document> DOCUMENT_CODEC = MongoClients.getDefaultCodecRegistry().get(Document.class);
+
+  /** The options to use for inserting many documents. */
+  private static final InsertManyOptions INSERT_UNORDERED = new InsertManyOptions().ordered(false);
+
+  private static final GeoPhase CASE3_DENSITY = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "density");
+  private static final GeoPhase CASE3_SORT = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "sort");
+  private static final GeoPhase CASE3_GRAFFITI = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "graffiti");
+  private static final GeoPhase CASE4_SELECT = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "select");
+  private static final GeoPhase CASE4_DELETE = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "delete");
+
+  /** Count the number of times initialized to teardown on the last {@link #cleanup()}. */
+  private static final AtomicInteger INIT_COUNT = new AtomicInteger(0);
+
+  /** A singleton MongoClient instance. */
+  private static MongoClient mongoClient;
+
+  /** The database to access. */
+  private static MongoDatabase database;
+
+  /** The number of synthesized documents per insertMany of the geo load. */
+  private static int geoLoadBatchSize;
+
+  /** The most requests a client thread has in flight. */
+  private static int inFlight;
+
+  /** Most documents fetched per geo query, 0 for all; see {@link GeoResults}. */
+  private static int geoRowLimit;
+
+  /** Requests whose result the calling operation waits for. */
+  private Pipeline reads;
+
+  /** Inserts, updates and deletes acknowledged in the background. */
+  private Pipeline writes;
+
+  /** The geo field projection of each table, only read once built. */
+  private final Map<String, Document> projections = new HashMap<String, Document>();
+
+  /**
+   * Initialize any state for this DB. Called once per DB instance; there is one
+   * DB instance per client thread.
+   */
+  @Override
+  public void init() throws DBException {
+    INIT_COUNT.incrementAndGet();
+    synchronized (INCLUDE) {
+      if (mongoClient == null) {
+        Properties props = getProperties();
+
+        geoLoadBatchSize = Integer.parseInt(props.getProperty("mongodb.geo.loadbatchsize", "1000"));
+        inFlight = Integer.parseInt(props.getProperty("mongodb.geo.inflight", "16"));
+        if (inFlight < 1) {
+          throw new DBException("mongodb.geo.inflight must be at least 1, got " + inFlight);
+        }
+        try {
+          geoRowLimit = GeoResults.getRowLimit(props);
+        } catch (IllegalArgumentException e) {
+          throw new DBException(e.getMessage());
+        }
+
+        String url = props.getProperty("mongodb.url", null);
+        boolean defaultedUrl = false;
+        if (url == null) {
+          defaultedUrl = true;
+          url = "mongodb://localhost:27017/ycsb?w=1";
+        }
+
+        url = OptionsSupport.updateUrl(url, props);
+
+        if (!url.startsWith("mongodb://")) {
+          System.err.println("ERROR: Invalid URL: '" + url
+              + "'. Must be of the form "
+              + "'mongodb://<host1>:<port1>,<host2>:<port2>/database?options'. "
+              + "http://docs.mongodb.org/manual/reference/connection-string/");
+          System.exit(1);
+        }
+
+        try {
+          ConnectionString uri = new ConnectionString(url);
+
+          String databaseName = uri.getDatabase();
+          if (defaultedUrl || databaseName == null || databaseName.isEmpty() || "admin".equals(databaseName)) {
+            // If no database is specified in URI, use "ycsb"
+            databaseName = "ycsb";
+          }
+
+          mongoClient = MongoClients.create(uri);
+          database = mongoClient.getDatabase(databaseName);
+
+          System.out.println("mongo async geo client connection created with " + url);
+        } catch (Exception e1) {
+          System.err.println("Could not initialize MongoDB connection pool for Loader: " + e1.toString());
+          e1.printStackTrace();
+          return;
+        }
+      }
+    }
+    // the thread's reads and writes share its in-flight limit
+    Semaphore permits = new Semaphore(inFlight);
+    reads = new Pipeline(permits);
+    writes = new Pipeline(permits);
+  }
+
+  /**
+   * Cleanup any state for this DB. Waits for the thread's outstanding writes. Called once per DB instance; there is
+   * one DB instance per client thread.
+   */
+  @Override
+  public void cleanup() throws DBException {
+    Exception failure = null;
+    try {
+      if (writes != null) {
+        writes.await();
+      }
+    } catch (Exception e) {
+      failure = e;
+    }
+    if (INIT_COUNT.decrementAndGet() == 0) {
+      synchronized (INCLUDE) {
+        if (mongoClient != null) {
+          mongoClient.close();
+        }
+        database = null;
+        mongoClient = null;
+      }
+    }
+    if (failure != null) {
+      throw new DBException("Could not write all geo documents: " + failure.toString());
+    }
+  }
+
+  @Override
+  public Status read(String table, String key, Set<String> fields, HashMap<String, ByteIterator> result) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status scan(String table, String startkey, int recordcount, Set<String> fields,
+      Vector<HashMap<String, ByteIterator>> result) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status update(String table, String key, HashMap<String, ByteIterator> values) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status insert(String table, String key, HashMap<String, ByteIterator> values) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+  @Override
+  public Status delete(String table, String key) {
+    return Status.NOT_IMPLEMENTED;
+  }
+
+   /*
+       ================    GEO operations  ======================
+   */
+
+  /**
+   * Load ALL DOCS of the three tables into the calling thread's current grid cell and move on to the next cell. The
+   * synthesized documents of all tables are written as pipelined insertMany batches, which are all acknowledged before
+   * this returns.
+   */
+  @Override
+  public Status geoLoad(String table1, String table2, String table3, ParameterGenerator generator, Double recordCount) {
+    try {
+      for (String table : new String[] {table1, table2, table3}) {
+        if (!geoLoad(table, generator)) {
+          return Status.ERROR;
+        }
+      }
+      writes.await();
+      generator.incrementSynthesisOffset();
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.err.println(e.toString());
+      return Status.ERROR;
+    }
+  }
+
+  private boolean geoLoad(String table, ParameterGenerator generator) throws Exception {
+    Map<Integer, String> seeds = GeoSeeds.get(table, generator, seedReader());
+    if (seeds.isEmpty()) {
+      System.err.println("No seed documents found in " + table);
+      return false;
+    }
+    MongoCollection<Document> collection = database.getCollection(table);
+    boolean schools = table.equals(ParameterGenerator.GEO_DOCUMENT_PREFIX_SCHOOLS);
+    int keyOffset = generator.getTotalDocsCount(table) * generator.getSynthesisCell();
+
+    List<Document> batch = new ArrayList<Document>(Math.min(geoLoadBatchSize, seeds.size()));
+    for (Map.Entry<Integer, String> seed : seeds.entrySet()) {
+      String newDocBody = generator.synthesizeDocument(table, seed.getValue(), new ObjectId().toHexString());
+      batch.add(Document.parse(newDocBody));
+      if (batch.size() >= geoLoadBatchSize) {
+        collection.insertMany(batch, INSERT_UNORDERED, writes.<Void>begin(null, null));
+        batch = new ArrayList<Document>(Math.min(geoLoadBatchSize, seeds.size()));
+      }
+
+      // If schools table, also add synthesized doc to memcached
+      if (schools) {
+        generator.putDocument(table, (seed.getKey() + keyOffset) + "", newDocBody);
+      }
+    }
+    if (!batch.isEmpty()) {
+      collection.insertMany(batch, INSERT_UNORDERED, writes.<Void>begin(null, null));
+    }
+    generator.advanceInsertCounter(table, seeds.size());
+    return true;
+  }
+
+  /**
+   * Reads the seed documents with a single query on the thread's read pipeline.
+   */
+  private GeoSeeds.Reader seedReader() {
+    return new GeoSeeds.Reader() {
+      @Override
+      public Iterable<Document> find(String table, Bson filter) throws Exception {
+        List<Document> found = new ArrayList<Document>();
+        database.getCollection(table).find(filter).into(found, reads.<List<Document>>begin(null, null));
+        reads.await();
+        return found;
+      }
+    };
+  }
+
+  // *********************  GEO Insert ********************************
+
+  @Override
+  public Status geoInsert(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    String key = gen.getGeoPredicate().getDocid();
+    String value = gen.getGeoPredicate().getValue();
+    Document toInsert = new Document("OBJECTID", key);
+    toInsert.put(key, Document.parse(value));
+    return geoInsert(table, toInsert);
+  }
+
+  @Override
+  public Status geoInsert(String table, String value, ParameterGenerator gen) {
+    return geoInsert(table, Document.parse(value));
+  }
+
+  /**
+   * Send the insert and return without waiting for it to be acknowledged.
+   */
+  private Status geoInsert(String table, Document toInsert) {
+    try {
+      if (writesFailed()) {
+        return Status.ERROR;
+      }
+      database.getCollection(table).insertOne(toInsert, writes.<Void>begin(null, null));
+      return Status.BATCHED_OK;
+    } catch (Exception e) {
+      System.err.println("Exception while trying geo insert");
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  // *********************  GEO Update ********************************
+
+  /**
+   * Send the update and return without waiting for it to be acknowledged. A key that matches nothing is reported
+   * when the acknowledgement comes in.
+   */
+  @Override
+  public Status geoUpdate(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    try {
+      if (writesFailed()) {
+        return Status.ERROR;
+      }
+      final int key = GeoRandom.current().nextInt(Integer.parseInt(GeoWorkload.DOCS_START_VALUE),
+          Integer.parseInt(GeoWorkload.TOTAL_DOCS_DEFAULT) + 1);
+      String updateFieldName = gen.getGeoPredicate().getNestedPredicateA().getName();
+      Document refPoint = MongoDbClient.geoJson(gen.getGeoPredicate().getNestedPredicateA().getGeometry());
+      Document update = new Document("$set", new Document(updateFieldName, refPoint));
+
+      database.getCollection(table).updateMany(new Document("properties.OBJECTID", key), update,
+          writes.begin(null, new SingleResultCallback<UpdateResult>() {
+            @Override
+            public void onResult(UpdateResult res, Throwable t) {
+              if (res.wasAcknowledged() && res.getMatchedCount() == 0) {
+                System.err.println("Nothing updated for key " + key);
+              }
+            }
+          }));
+      return Status.BATCHED_OK;
+    } catch (Exception e) {
+      System.err.println(e.toString());
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * @return true, after printing it, if a background write failed since the last check
+   */
+  private boolean writesFailed() {
+    Throwable failure = writes.takeFailure();
+    if (failure != null) {
+      System.err.println("Geo write failed: " + failure.toString());
+      return true;
+    }
+    return false;
+  }
+
+  // *********************  GEO Near, Box, Intersect ********************************
+
+  @Override
+  public Status geoNear(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    DataFilter center = gen.getGeoPredicate().getNestedPredicateA();
+    Document refPoint = MongoDbClient.geoJson(center.getGeometry());
+    return findGeo(table, Filters.near(center.getName(), refPoint, center.getDistance(), 0.0), result, gen);
+  }
+
+  @Override
+  public Status geoBox(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    String boxFieldName1 = gen.getGeoPredicate().getNestedPredicateA().getName();
+    Geometry corner1 = gen.getGeoPredicate().getNestedPredicateA().getGeometry();
+    Geometry corner2 = gen.getGeoPredicate().getNestedPredicateB().getGeometry();
+    return findGeo(table, Filters.geoWithinBox(boxFieldName1,
+        corner1.getX(0, 0), corner1.getY(0, 0), corner2.getX(0, 0), corner2.getY(0, 0)), result, gen);
+  }
+
+  @Override
+  public Status geoIntersect(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    String fieldName1 = gen.getGeoPredicate().getNestedPredicateA().getName();
+    Document refPoint = MongoDbClient.geoJson(gen.getGeoPredicate().getNestedPredicateC().getGeometry());
+    return findGeo(table, Filters.geoIntersects(fieldName1, refPoint), result, gen);
+  }
+
+  /**
+   * Run a geo query, fetching as many documents as the result mode asks for, and fill the result with the first.
+   */
+  private Status findGeo(String table, Bson filter, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
+    try {
+      List<Document> found = new ArrayList<Document>();
+      geoFetch(database.getCollection(table, RawBsonDocument.class).find(filter).projection(projection(table, gen)),
+          geoRowLimit, null, found);
+      reads.await();
+      if (found.isEmpty()) {
+        return Status.NOT_FOUND;
+      }
+      MongoDbClient.geoFillMap(result, found.get(0));
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println(e);
+      return Status.ERROR;
+    }
+  }
+
+  // *********************  GEO Scan ********************************
+
+  @Override
+  public Status geoScan(String table, Vector<HashMap<String, ByteIterator>> result, ParameterGenerator gen) {
+    String startkey = gen.getIncidentIdWithDistribution();
+    int recordcount = gen.getRandomLimit();
+    try {
+      List<Document> found = new ArrayList<Document>(recordcount);
+      geoFetch(database.getCollection(table, RawBsonDocument.class)
+          .find(new Document("OBJECTID", new Document("$gte", startkey)))
+          .limit(recordcount).projection(projection(table, gen)), 0, null, found);
+      reads.await();
+
+      if (found.isEmpty()) {
+        System.err.println("Nothing found in scan for key " + startkey);
+        return Status.ERROR;
+      }
+      result.ensureCapacity(recordcount);
+      for (Document obj : found) {
+        HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
+        MongoDbClient.geoFillMap(resultMap, obj);
+        result.add(resultMap);
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      System.err.println(e.toString());
+      return Status.ERROR;
+    }
+  }
+
+  //*********************  GEO USE CASE 1 ********************************
+
+  /**
+   * Graffiti near every school, with all near queries in flight together.
+   */
+  @Override
+  public Status geoUseCase1(String table, HashMap<String, Vector<HashMap<String, ByteIterator>>> result,
+      ParameterGenerator gen) {
+    try {
+      MongoCollection<RawBsonDocument> collection = database.getCollection(table, RawBsonDocument.class);
+      Document projection = projection(table, gen);
+      ArrayList<DataFilter> schools = gen.getGeometryPredicatesList();
+
+      List<List<Document>> found = new ArrayList<List<Document>>(schools.size());
+      for (DataFilter school : schools) {
+        List<Document> docs = new ArrayList<Document>();
+        found.add(docs);
+        Document refPoint = MongoDbClient.geoJson(school.getNestedPredicateA().getGeometry());
+        geoFetch(collection.find(Filters.near(school.getNestedPredicateA().getName(), refPoint, 500.0, 0.0))
+            .batchSize(2000).projection(projection), geoRowLimit, "GEO_CASE_GRAFFITI_BY_SCHOOLS_QUERY", docs);
+      }
+      reads.await();
+
+      Vector<HashMap<String, ByteIterator>> maxGraffiti = new Vector<>();
+      for (List<Document> docs : found) {
+        maxGraffiti.addAll(graffitiResults(docs));
+      }
+      result.put("", maxGraffiti);
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  //*********************  GEO USE CASE 2 ********************************
+
+  /**
+   * Graffiti within every grid cell, with all cell queries in flight together.
+   */
+  @Override
+  public Status geoUseCase2(String table, HashMap<String, Vector<HashMap<String, ByteIterator>>> result,
+      ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      MongoCollection<RawBsonDocument> collection = database.getCollection(table, RawBsonDocument.class);
+      Document projection = projection(table, gen);
+      ArrayList<DataFilter> neighborhoods = gen.getGeometryPredicatesList();
+
+      List<List<Document>> found = new ArrayList<List<Document>>(neighborhoods.size());
+      for (DataFilter cell : neighborhoods) {
+        List<Document> docs = new ArrayList<Document>();
+        found.add(docs);
+        geoFetch(collection.find(Filters.geoWithin("geometry", MongoDbClient.geoJson(cell.getGeometry())))
+            .batchSize(2000).projection(projection), geoRowLimit, "GEO_CASE_GRAFFITI_BY_DENSITY_QUERY", docs);
+      }
+      reads.await();
+
+      for (int i = 0; i < neighborhoods.size(); i++) {
+        Geometry intersectFieldValue = neighborhoods.get(i).getGeometry();
+        Vector<HashMap<String, ByteIterator>> graffitiResults = graffitiResults(found.get(i));
+        result.put(intersectFieldValue.toString(), graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_DENSITY/count", intersectFieldValue, graffitiResults.size());
+        }
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  //*********************  GEO USE CASE 3 ********************************
+
+  /**
+   * Graffiti in the grid cells with the largest building area. The building queries of all cells are in flight
+   * together, then those of the top cells.
+   */
+  @Override
+  public Status geoUseCase3(String table1, String table2,
+      HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator gen) {
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      MongoCollection<RawBsonDocument> buildings = database.getCollection(table1, RawBsonDocument.class);
+      final String shapeArea = gen.getBuildingsShapeArea();
+      Document buildingsProjection = projection(table1, gen);
+      ArrayList<DataFilter> cells = gen.getGeometryPredicatesList();
+
+      // Sum the building areas of every cell as its buildings come in
+      long phaseStart = CASE3_DENSITY.start();
+      List<List<Document>> buildingLists = new ArrayList<List<Document>>(cells.size());
+      for (DataFilter predicate : cells) {
+        List<Document> buildingList = new ArrayList<Document>();
+        buildingLists.add(buildingList);
+        geoFetch(buildings.find(Filters.geoIntersects(predicate.getName(),
+            MongoDbClient.geoJson(predicate.getGeometry()))).batchSize(2000).projection(buildingsProjection),
+            0, "GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC_QUERY", buildingList);
+      }
+      reads.await();
+      final double[] densities = new double[cells.size()];
+      for (int i = 0; i < cells.size(); i++) {
+        for (Document d : buildingLists.get(i)) {
+          Document properties = (Document) d.get("properties");
+          densities[i] += ((Number) properties.get(shapeArea)).doubleValue();
+        }
+      }
+      CASE3_DENSITY.end(phaseStart);
+
+      // Sort cells by density in descending order --> take the top HIGH_TRAFFIC_CELL_COUNT
+      phaseStart = CASE3_SORT.start();
+      List<Integer> order = new ArrayList<Integer>(cells.size());
+      for (int i = 0; i < cells.size(); i++) {
+        order.add(i);
+        if (densities[i] > 0) {
+          if (sink.isSampled()) {
+            sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/density", cells.get(i).getGeometry(), densities[i]);
+          }
+        }
+      }
+      Collections.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return Double.compare(densities[o2], densities[o1]);
+        }
+      });
+      CASE3_SORT.end(phaseStart);
+
+      // Find graffiti in the top HIGH_TRAFFIC_CELL_COUNT cells
+      phaseStart = CASE3_GRAFFITI.start();
+      MongoCollection<RawBsonDocument> collection = database.getCollection(table2, RawBsonDocument.class);
+      Document projection = projection(table2, gen);
+      int top = Math.min(GeoWorkload.TOP_CELL_COUNT, order.size());
+      List<List<Document>> found = new ArrayList<List<Document>>(top);
+      for (int i = 0; i < top; i++) {
+        Geometry intersectFieldValue = cells.get(order.get(i)).getGeometry();
+        List<Document> docs = new ArrayList<Document>();
+        found.add(docs);
+        geoFetch(collection.find(Filters.geoIntersects("geometry", MongoDbClient.geoJson(intersectFieldValue)))
+            .batchSize(2000).projection(projection), geoRowLimit, null, docs);
+      }
+      reads.await();
+      for (int i = 0; i < top; i++) {
+        Geometry intersectFieldValue = cells.get(order.get(i)).getGeometry();
+        Vector<HashMap<String, ByteIterator>> graffitiResults = graffitiResults(found.get(i));
+        result.put(intersectFieldValue.toString(), graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/graffiti", intersectFieldValue, graffitiResults.size());
+        }
+      }
+      CASE3_GRAFFITI.end(phaseStart);
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  //*********************  GEO USE CASE 4 ********************************
+
+  /**
+   * Delete the graffiti found by use case 1, with all deletes in flight together.
+   */
+  @Override
+  public Status geoUseCase4(String table, String operation, Set<Integer> deleted, ParameterGenerator gen) {
+    HashMap<String, Vector<HashMap<String, ByteIterator>>> toDelete = new HashMap<>();
+    try {
+      GeoResultSink sink = GeoResultSink.get();
+      long phaseStart = CASE4_SELECT.start();
+      Status queryStatus;
+      switch (operation) {
+      case "geo_case_graffiti_by_schools":
+        queryStatus = geoUseCase1(table, toDelete, gen);
+        break;
+      default:
+        return Status.ERROR;
+      }
+      CASE4_SELECT.end(phaseStart);
+      if (queryStatus == Status.ERROR) {
+        return Status.ERROR;
+      }
+
+      phaseStart = CASE4_DELETE.start();
+      MongoCollection<Document> collection = database.getCollection(table);
+      final AtomicInteger counter = new AtomicInteger();
+      SingleResultCallback<DeleteResult> count = new SingleResultCallback<DeleteResult>() {
+        @Override
+        public void onResult(DeleteResult res, Throwable t) {
+          counter.addAndGet((int) res.getDeletedCount());
+        }
+      };
+      for (Vector<HashMap<String, ByteIterator>> docs : toDelete.values()) {
+        for (HashMap<String, ByteIterator> doc : docs) {
+          collection.deleteOne(new Document("_id", new ObjectId(doc.get("_id").toString())),
+              reads.begin(null, count));
+        }
+      }
+      reads.await();
+      CASE4_DELETE.end(phaseStart);
+      if (sink.isSampled()) {
+        sink.log("GEO_CASE_CLEAN_GRAFFITI/delete", null, counter.get());
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+
+  /**
+   * @return the projection of the table's geo fields, built on the first call for the table
+   */
+  private Document projection(String table, ParameterGenerator gen) {
+    Document projection = projections.get(table);
+    if (projection == null) {
+      projection = new Document();
+      for (String field : gen.getAllGeoFields().get(table)) {
+        projection.put(field, INCLUDE);
+      }
+      projections.put(table, projection);
+    }
+    return projection;
+  }
+
+  /**
+   * Send a geo query on the read pipeline. When it returns, every document is reported with its BSON size to the
+   * results of the calling operation and added to found.
+   * @param limit most documents to fetch, 0 for all
+   * @param metric name the latency of the query is measured under, null for none
+   */
+  private void geoFetch(FindIterable<RawBsonDocument> find, int limit, String metric, final List<Document> found)
+      throws InterruptedException {
+    if (limit > 0) {
+      // a negative limit returns a single batch and closes the cursor, like first()
+      find.limit(-limit);
+    }
+    final GeoResults results = GeoResults.current();
+    find.into(new ArrayList<RawBsonDocument>(), reads.begin(metric, new SingleResultCallback<List<RawBsonDocument>>() {
+      @Override
+      public void onResult(List<RawBsonDocument> raws, Throwable t) {
+        for (RawBsonDocument raw : raws) {
+          results.row(raw.getByteBuffer().remaining());
+          found.add(raw.decode(DOCUMENT_CODEC));
+        }
+      }
+    }));
+  }
+
+  private static Vector<HashMap<String, ByteIterator>> graffitiResults(List<Document> docs) {
+    Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>(docs.size());
+    for (Document d : docs) {
+      HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
+      MongoDbClient.geoFillMap(resultMap, d);
+      graffitiResults.add(resultMap);
+    }
+    return graffitiResults;
+  }
+
+  /**
+   * Requests of one client thread that are on the wire. {@link #begin} blocks while the thread has as many requests
+   * in flight as the shared permits allow, {@link #await()} waits for all requests begun on this pipeline and
+   * rethrows the first failure among them.
+   */
+  private static final class Pipeline {
+    private final Semaphore permits;
+    private int pending;
+    private Throwable failure;
+
+    Pipeline(Semaphore permits) {
+      this.permits = permits;
+    }
+
+    /**
+     * Take a permit for a new request.
+     * @param metric name the latency of the request is measured under, null for none
+     * @param callback called with the result of a successful request, may be null
+     * @return the callback to hand to the driver
+     */
+    <T> SingleResultCallback<T> begin(final String metric, final SingleResultCallback<T> callback)
+        throws InterruptedException {
+      permits.acquire();
+      synchronized (this) {
+        pending++;
+      }
+      final long st = metric == null ? 0 : System.nanoTime();
+      return new SingleResultCallback<T>() {
+        @Override
+        public void onResult(T result, Throwable t) {
+          try {
+            if (metric != null) {
+              Measurements.getMeasurements().measure(metric, (int) ((System.nanoTime() - st) / 1000));
+            }
+            if (t == null && callback != null) {
+              callback.onResult(result, null);
+            }
+          } catch (Throwable e) {
+            t = e;
+          } finally {
+            permits.release();
+            finish(t);
+          }
+        }
+      };
+    }
+
+    private synchronized void finish(Throwable t) {
+      if (t != null && failure == null) {
+        failure = t;
+      }
+      pending--;
+      notifyAll();
+    }
+
+    synchronized Throwable takeFailure() {
+      Throwable t = failure;
+      failure = null;
+      return t;
+    }
+
+    synchronized void await() throws Exception {
+      while (pending > 0) {
+        wait();
+      }
+      Throwable t = takeFailure();
+      if (t != null) {
+        throw t instanceof Exception ? (Exception) t : new Exception(t);
+      }
+    }
+  }
+}
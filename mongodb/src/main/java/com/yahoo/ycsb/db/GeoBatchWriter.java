@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2012 - 2015 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb.db;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded write buffer for one collection. Documents are written with an
+ * unordered insertMany as soon as the buffer is full, when the oldest buffered
+ * document has waited longer than the flush interval, or on {@link #flush()}.
+ * The interval is checked when a document is added, so whatever is left at
+ * the end of a run has to be flushed by the owner.
+ * Not thread safe; each client thread owns its writers.
+ */
+final class GeoBatchWriter {
+
+  /** The options to use for inserting many documents. */
+  private static final InsertManyOptions INSERT_UNORDERED =
+      new InsertManyOptions().ordered(false);
+
+  private final MongoCollection<Document> collection;
+  private final int capacity;
+  private final long flushIntervalNanos;
+  private final List<Document> buffer;
+
+  /** When the oldest buffered document was added. */
+  private long firstAddNanos;
+
+  /**
+   * @param capacity documents per insertMany
+   * @param flushIntervalMillis longest time a document stays buffered, 0 for
+   *          no limit
+   */
+  GeoBatchWriter(MongoCollection<Document> collection, int capacity,
+      long flushIntervalMillis) {
+    this.collection = collection;
+    this.capacity = Math.max(1, capacity);
+    this.flushIntervalNanos = flushIntervalMillis * 1000000L;
+    this.buffer = new ArrayList<Document>(Math.min(this.capacity, 4096));
+  }
+
+  /**
+   * Buffer a document, writing the buffer if it is full or old enough.
+   * @return true if the document was written, false if it is still buffered
+   */
+  boolean add(Document document) {
+    long now = System.nanoTime();
+    if (buffer.isEmpty()) {
+      firstAddNanos = now;
+    }
+    buffer.add(document);
+    if (buffer.size() >= capacity
+        || (flushIntervalNanos > 0 && now - firstAddNanos >= flushIntervalNanos)) {
+      flush();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Write all buffered documents. The buffer is emptied even if the write
+   * fails, so a failed batch is reported once and not retried.
+   */
+  void flush() {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    try {
+      collection.insertMany(buffer, INSERT_UNORDERED);
+    } finally {
+      buffer.clear();
+    }
+  }
+
+  int size() {
+    return buffer.size();
+  }
+}
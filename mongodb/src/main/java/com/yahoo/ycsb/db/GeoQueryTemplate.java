@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2012 - 2015 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb.db;
+
+import java.util.Set;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import com.mongodb.client.MongoCollection;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * Prepared geo queries for one collection. The projection is built once,
+ * and each filter is built once per field and then only has its coordinates
+ * overwritten, so a query allocates little more than the changed coordinate
+ * values. The filters are the same BSON that {@code Filters.near},
+ * {@code Filters.geoWithinBox} and {@code Filters.geoIntersects} render.
+ * Not thread safe; each client thread owns its templates. The projection may
+ * be shared with other threads since it is only read.
+ */
+final class GeoQueryTemplate {
+
+  private final MongoCollection<Document> collection;
+  private final MongoCollection<RawBsonDocument> rawCollection;
+  private final BsonDocument projection;
+
+  private String nearField;
+  private BsonDocument near;
+  private BsonDocument nearOperator;
+  private BsonDocument nearGeometry;
+
+  private String boxField;
+  private BsonDocument box;
+  private BsonArray boxLow;
+  private BsonArray boxHigh;
+
+  private String intersectsField;
+  private BsonDocument intersects;
+  private BsonDocument intersectsGeometry;
+
+  /**
+   * @param fields the fields every query returns
+   */
+  GeoQueryTemplate(MongoCollection<Document> collection, Set<String> fields) {
+    this.collection = collection;
+    this.rawCollection = collection == null ? null : collection.withDocumentClass(RawBsonDocument.class);
+    this.projection = new BsonDocument();
+    for (String field : fields) {
+      projection.put(field, new BsonInt32(1));
+    }
+  }
+
+  MongoCollection<Document> collection() {
+    return collection;
+  }
+
+  /**
+   * @return the collection returning its documents as received, for their
+   *         size
+   */
+  MongoCollection<RawBsonDocument> rawCollection() {
+    return rawCollection;
+  }
+
+  BsonDocument projection() {
+    return projection;
+  }
+
+  /**
+   * @return the filter for documents whose field is between minDistance and
+   *         maxDistance meters from the point, nearest first
+   */
+  BsonDocument near(String field, Geometry point, double maxDistance, double minDistance) {
+    if (!field.equals(nearField)) {
+      nearGeometry = new BsonDocument();
+      nearOperator = new BsonDocument("$geometry", nearGeometry);
+      near = new BsonDocument(field, new BsonDocument("$near", nearOperator));
+      nearField = field;
+    }
+    setGeometry(nearGeometry, point);
+    setDouble(nearOperator, "$maxDistance", maxDistance);
+    setDouble(nearOperator, "$minDistance", minDistance);
+    return near;
+  }
+
+  /**
+   * @return the filter for documents whose field lies within the box
+   */
+  BsonDocument withinBox(String field, double lowerLeftX, double lowerLeftY, double upperRightX,
+      double upperRightY) {
+    if (!field.equals(boxField)) {
+      boxLow = new BsonArray();
+      boxHigh = new BsonArray();
+      BsonArray corners = new BsonArray();
+      corners.add(boxLow);
+      corners.add(boxHigh);
+      box = new BsonDocument(field, new BsonDocument("$geoWithin", new BsonDocument("$box", corners)));
+      boxField = field;
+    }
+    setPosition(boxLow, lowerLeftX, lowerLeftY);
+    setPosition(boxHigh, upperRightX, upperRightY);
+    return box;
+  }
+
+  /**
+   * @return the filter for documents whose field shares a point with the
+   *         geometry
+   */
+  BsonDocument intersects(String field, Geometry geometry) {
+    if (!field.equals(intersectsField)) {
+      intersectsGeometry = new BsonDocument();
+      intersects = new BsonDocument(field,
+          new BsonDocument("$geoIntersects", new BsonDocument("$geometry", intersectsGeometry)));
+      intersectsField = field;
+    }
+    setGeometry(intersectsGeometry, geometry);
+    return intersects;
+  }
+
+  /**
+   * Overwrite a GeoJSON document with the geometry, reusing its arrays. Like
+   * {@link MongoDbClient#geoJson(Geometry)}, everything but a point is
+   * written as a list of parts.
+   */
+  static void setGeometry(BsonDocument target, Geometry geometry) {
+    BsonValue type = target.get("type");
+    if (type == null || !type.asString().getValue().equals(geometry.getType())) {
+      target.put("type", new BsonString(geometry.getType()));
+    }
+    BsonValue current = target.get("coordinates");
+    BsonArray coordinates = current == null ? null : current.asArray();
+    if (coordinates == null) {
+      coordinates = new BsonArray();
+      target.put("coordinates", coordinates);
+    }
+
+    if (geometry instanceof Geometry.Point) {
+      if (!coordinates.isEmpty() && coordinates.get(0).isArray()) {
+        coordinates.clear();
+      }
+      setPosition(coordinates, geometry.getX(0, 0), geometry.getY(0, 0));
+      return;
+    }
+    if (!coordinates.isEmpty() && !coordinates.get(0).isArray()) {
+      coordinates.clear();
+    }
+    resize(coordinates, geometry.getPartCount());
+    for (int i = 0; i < geometry.getPartCount(); i++) {
+      BsonArray part = coordinates.get(i).asArray();
+      resize(part, geometry.getPositionCount(i));
+      for (int j = 0; j < geometry.getPositionCount(i); j++) {
+        setPosition(part.get(j).asArray(), geometry.getX(i, j), geometry.getY(i, j));
+      }
+    }
+  }
+
+  /**
+   * Make an array of arrays the given length, keeping the arrays it has.
+   */
+  private static void resize(BsonArray array, int size) {
+    while (array.size() > size) {
+      array.remove(array.size() - 1);
+    }
+    while (array.size() < size) {
+      array.add(new BsonArray());
+    }
+  }
+
+  private static void setPosition(BsonArray position, double x, double y) {
+    if (position.size() != 2) {
+      position.clear();
+      position.add(new BsonDouble(x));
+      position.add(new BsonDouble(y));
+      return;
+    }
+    if (position.get(0).asDouble().getValue() != x) {
+      position.set(0, new BsonDouble(x));
+    }
+    if (position.get(1).asDouble().getValue() != y) {
+      position.set(1, new BsonDouble(y));
+    }
+  }
+
+  private static void setDouble(BsonDocument target, String key, double value) {
+    BsonValue current = target.get(key);
+    if (current == null || current.asDouble().getValue() != value) {
+      target.put(key, new BsonDouble(value));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2012 - 2015 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb.db;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.model.Filters;
+import com.yahoo.ycsb.generator.geo.ParameterGenerator;
+
+/**
+ * The seed documents of the geo load, shared by the synchronous and the
+ * asynchronous geo client. Seeds loaded from a seed file are taken from the
+ * generator; otherwise they are read from the table with a single query the
+ * first time and stored in memcached for the generator.
+ */
+final class GeoSeeds {
+
+  /**
+   * Runs the seed query on one driver.
+   */
+  interface Reader {
+    /**
+     * @return every document of the table matching the filter
+     */
+    Iterable<Document> find(String table, Bson filter) throws Exception;
+  }
+
+  /** Seed documents of each geo table by OBJECTID, read once per process. */
+  private static final Map<String, Map<Integer, String>> SEEDS = new HashMap<String, Map<Integer, String>>();
+
+  private GeoSeeds() {
+    // utility class
+  }
+
+  /**
+   * @return the seed documents of the table by their OBJECTID
+   */
+  static Map<Integer, String> get(String table, ParameterGenerator generator, Reader reader) throws Exception {
+    if (generator.isSeeded(table)) {
+      return generator.getSeedDocuments(table);
+    }
+    synchronized (SEEDS) {
+      Map<Integer, String> seeds = SEEDS.get(table);
+      if (seeds != null) {
+        return seeds;
+      }
+      seeds = new LinkedHashMap<Integer, String>();
+      int totalDocs = generator.getTotalDocsCount(table);
+      // synthesized copies have OBJECTIDs above the seed range, so this also works on a partially loaded table
+      for (Document seed : reader.find(table,
+          Filters.and(Filters.gte("properties.OBJECTID", 1), Filters.lte("properties.OBJECTID", totalDocs)))) {
+        Integer objectId = ((Number) ((Document) seed.get("properties")).get("OBJECTID")).intValue();
+        if (!seeds.containsKey(objectId)) {
+          seeds.put(objectId, seed.toJson());
+        }
+      }
+      for (Map.Entry<Integer, String> seed : seeds.entrySet()) {
+        generator.putDocument(table, seed.getKey().toString(), seed.getValue());
+      }
+      seeds = Collections.unmodifiableMap(seeds);
+      SEEDS.put(table, seeds);
+      return seeds;
+    }
+  }
+}
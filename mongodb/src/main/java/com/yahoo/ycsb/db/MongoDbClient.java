@@ -29,6 +29,8 @@ import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.UpdateOneModel;
@@ -37,23 +39,30 @@ import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.yahoo.ycsb.ByteArrayByteIterator;
 import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.GeoFanOut;
+import com.yahoo.ycsb.GeoPhase;
+import com.yahoo.ycsb.GeoResultSink;
+import com.yahoo.ycsb.GeoResults;
 import com.yahoo.ycsb.StringByteIterator;
 import com.yahoo.ycsb.GeoDB;
 import com.yahoo.ycsb.DBException;
 import com.yahoo.ycsb.Status;
-import com.mongodb.util.JSON;
 
+import com.yahoo.ycsb.generator.geo.GeoRandom;
 import com.yahoo.ycsb.generator.geo.ParameterGenerator;
 import com.yahoo.ycsb.workloads.geo.DataFilter;
 import com.yahoo.ycsb.workloads.geo.GeoWorkload;
+import com.yahoo.ycsb.workloads.geo.Geometry;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
 import org.bson.types.Binary;
 import org.bson.types.ObjectId;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.json.JSONObject;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -76,6 +85,13 @@ public class MongoDbClient extends GeoDB {
   private static final InsertManyOptions INSERT_UNORDERED =
       new InsertManyOptions().ordered(false);
 
+  /* Sub-phases of the use cases. */
+  private static final GeoPhase CASE3_DENSITY = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "density");
+  private static final GeoPhase CASE3_SORT = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "sort");
+  private static final GeoPhase CASE3_GRAFFITI = GeoPhase.of("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC", "graffiti");
+  private static final GeoPhase CASE4_SELECT = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "select");
+  private static final GeoPhase CASE4_DELETE = GeoPhase.of("GEO_CASE_CLEAN_GRAFFITI", "delete");
+
   /** The options to use for inserting a single document. */
   private static final UpdateOptions UPDATE_WITH_UPSERT = new UpdateOptions()
       .upsert(true);
@@ -111,6 +127,39 @@ public class MongoDbClient extends GeoDB {
 
   /** The bulk inserts pending for the thread. */
   private final List<Document> bulkInserts = new ArrayList<Document>();
+
+  /** The batch size of the geo load. */
+  private static int geoLoadBatchSize;
+
+  /** The batch size of geo inserts, 1 to insert every document on its own. */
+  private static int geoBatchSize;
+
+  /** The longest time a geo insert or load document stays buffered, in milliseconds. */
+  private static long geoFlushInterval;
+
+  /**
+   * How use case 2 counts the graffiti per cell: "client" fetches per cell, "aggregate" runs a pipeline per cell,
+   * "scan" streams all graffiti once and bins them in the client, "bucket" bins them in one pipeline.
+   */
+  private static String case2Execution;
+
+  /** If true, use case 3 sums the building areas of each cell with an aggregation pipeline. */
+  private static boolean case3Aggregate;
+
+  /** Most documents fetched per geo query, 0 for all; see {@link GeoResults}. */
+  private static int geoRowLimit;
+
+  /** Decodes the raw geo query results, which are kept raw until then for their size. */
+  private static final Codec<Document> DOCUMENT_CODEC = MongoClient.getDefaultCodecRegistry().get(Document.class);
+
+  /** The geo load writers of the thread, one per table. */
+  private final Map<String, GeoBatchWriter> geoLoadWriters = new HashMap<String, GeoBatchWriter>();
+
+  /** The geo insert writers of the thread, one per table. */
+  private final Map<String, GeoBatchWriter> geoInsertWriters = new HashMap<String, GeoBatchWriter>();
+
+  /** The prepared geo queries of the thread, one per table. */
+  private final Map<String, GeoQueryTemplate> geoQueries = new HashMap<String, GeoQueryTemplate>();
   
   /** Hardcoded for use case 4, tester. */ // UPDATE THESE TO YOUR DELETED OBJECTS AFTER RUNNING UC 4 ONCE
   // private ObjectId[] toDelete = {
@@ -486,6 +535,7 @@ public class MongoDbClient extends GeoDB {
    */
   @Override
   public void cleanup() throws DBException {
+    boolean flushed = flushGeoWriters();
     if (INIT_COUNT.decrementAndGet() == 0) {
       try {
         mongoClient.close();
@@ -499,6 +549,9 @@ public class MongoDbClient extends GeoDB {
         mongoClient = null;
       }
     }
+    if (!flushed) {
+      throw new DBException("Could not write all buffered geo documents");
+    }
   }
 
    /*
@@ -509,24 +562,27 @@ public class MongoDbClient extends GeoDB {
   public Status geoLoad(String table, ParameterGenerator generator, Double recordCount) {
 
     try {
-      String key = generator.getIncidentsIdRandom();
-      MongoCollection<Document> collection = database.getCollection(table);
-      Random rand = new Random();
-      int objId = rand.nextInt((Integer.parseInt(GeoWorkload.TOTAL_DOCS_DEFAULT) -
-          Integer.parseInt(GeoWorkload.DOCS_START_VALUE)) + 1)+Integer.parseInt(GeoWorkload.DOCS_START_VALUE);
-      Document query = new Document("properties.OBJECTID", objId);
-      FindIterable<Document> findIterable = collection.find(query);
-      Document queryResult = findIterable.first();
-      if (queryResult == null) {
-        System.out.println(table+" ++++ "+collection);
-        System.out.println(query);
-        System.out.println("Empty return");
+      // a seed file already filled the generator; otherwise copy a random document of the collection into it
+      if (!generator.isSeeded(table)) {
+        String key = generator.getIncidentsIdRandom();
+        MongoCollection<Document> collection = database.getCollection(table);
+        Random rand = GeoRandom.current();
+        int objId = rand.nextInt((Integer.parseInt(GeoWorkload.TOTAL_DOCS_DEFAULT) -
+            Integer.parseInt(GeoWorkload.DOCS_START_VALUE)) + 1)+Integer.parseInt(GeoWorkload.DOCS_START_VALUE);
+        Document query = new Document("properties.OBJECTID", objId);
+        FindIterable<Document> findIterable = collection.find(query);
+        Document queryResult = findIterable.first();
+        if (queryResult == null) {
+          GeoResultSink sink = GeoResultSink.get();
+          if (sink.isSampled()) {
+            sink.log("GEO_LOAD_EMPTY", table, query);
+          }
 
-        return Status.OK;
-      }
+          return Status.OK;
+        }
 
-      generator.putIncidentsDocument(key, queryResult.toJson());
-      System.out.println("Key : " + key + " Query Result :" + queryResult.toJson());
+        generator.putIncidentsDocument(key, queryResult.toJson());
+      }
       generator.buildGeoInsertDocument();
       int inserts = (int) Math.round(recordCount/Integer.parseInt(GeoWorkload.TOTAL_DOCS_DEFAULT))-1;
       for (double i = inserts; i > 0; i--) {
@@ -570,61 +626,36 @@ public class MongoDbClient extends GeoDB {
   }
   
   /**
-   * Private helper method to load ALL DOCS of a generic table.
+   * Private helper method to load ALL DOCS of a generic table into the calling thread's current grid cell. The seed
+   * documents are read once per process; every seed is synthesized and streamed into the table's batch writer.
    * @param table
    * @param generator
    * @return Status
    */
   private Status geoLoad(String table, ParameterGenerator generator) {
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
-      
-      // Load EVERY document of the collection
-      for(int i = 0; i < generator.getTotalDocsCount(table); i++) {
-        // Get the next document
-        String nextDocObjId = generator.getNextId(table);
-        
-
-        // Query database for the document
-        Document query = new Document("properties.OBJECTID", Integer.parseInt(nextDocObjId));
-        FindIterable<Document> findIterable = collection.find(query);
-        Document queryResult = findIterable.first();
-        if (queryResult == null) {
-          if(table.equals(ParameterGenerator.GEO_DOCUMENT_PREFIX_BUILDINGS)) {
-            continue;
-          } else {
-            System.out.println(table + " ++++ " + collection.toString());
-            System.out.println(query);
-            System.out.println("Empty return");
+      Map<Integer, String> seeds = GeoSeeds.get(table, generator, SEED_READER);
+      if (seeds.isEmpty()) {
+        System.err.println("No seed documents found in " + table);
+        return Status.ERROR;
+      }
+      GeoBatchWriter writer = getGeoWriter(geoLoadWriters, table, geoLoadBatchSize);
+      boolean schools = table.equals(ParameterGenerator.GEO_DOCUMENT_PREFIX_SCHOOLS);
+      int keyOffset = generator.getTotalDocsCount(table) * generator.getSynthesisCell();
 
-            return Status.OK;
-          }
-        }
-        
-        // Load the document to memcached, only ONCE --> if we are on the first iteration of loading
-        if(generator.getSynthesisOffsetCols() == 1 && generator.getSynthesisOffsetRows() == 0) {
-          generator.putDocument(table, nextDocObjId, queryResult.toJson());
-          System.out.println("Key : " + nextDocObjId + " Query Result : " + queryResult.toJson());
-        }
-        
+      for (Map.Entry<Integer, String> seed : seeds.entrySet()) {
         // Synthesize new document
-        ObjectId generatedId = new ObjectId();
-        String newDocBody = generator.buildGeoInsertDocument(table, 
-            Integer.parseInt(nextDocObjId), generatedId.toHexString());
-        // Add to database
-        geoInsert(table, newDocBody, generator);
-        
+        String newDocBody = generator.synthesizeDocument(table, seed.getValue(), new ObjectId().toHexString());
+        writer.add(Document.parse(newDocBody));
 
-        // If schools table, also add synthesized doc to memcached 
-        if(table.equals(ParameterGenerator.GEO_DOCUMENT_PREFIX_SCHOOLS)) {         
-          int newKey = Integer.parseInt(nextDocObjId) + (generator.getTotalDocsCount(table) * 
-              ((generator.getSynthesisOffsetRows() * ParameterGenerator.getSynthesisOffsetMax()) 
-                  + generator.getSynthesisOffsetCols()));
-          generator.putDocument(table, newKey + "", newDocBody);
+        // If schools table, also add synthesized doc to memcached
+        if (schools) {
+          generator.putDocument(table, (seed.getKey() + keyOffset) + "", newDocBody);
         }
       }
-      
-      return Status.OK;
+      generator.advanceInsertCounter(table, seeds.size());
+
+      return writer.size() > 0 ? Status.BATCHED_OK : Status.OK;
       
     } catch (Exception e) {
       e.printStackTrace();
@@ -633,51 +664,110 @@ public class MongoDbClient extends GeoDB {
       return Status.ERROR;
     }
   }
-  
+
+  /** Reads the seed documents with the synchronous driver. */
+  private static final GeoSeeds.Reader SEED_READER = new GeoSeeds.Reader() {
+    @Override
+    public Iterable<Document> find(String table, Bson filter) {
+      return database.getCollection(table).find(filter).into(new ArrayList<Document>());
+    }
+  };
 
   // *********************  GEO Insert ********************************
 
   @Override
   public Status geoInsert(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen)  {
+    String key = gen.getGeoPredicate().getDocid();
+    String value = gen.getGeoPredicate().getValue();
+    Document toInsert = new Document("OBJECTID", key);
+    toInsert.put(key, Document.parse(value));
+    return geoInsert(table, toInsert);
+  }
 
-    try {
-      MongoCollection<Document> collection = database.getCollection(table);
-      String key = gen.getGeoPredicate().getDocid();
-      String value = gen.getGeoPredicate().getValue();
-      Document toInsert = new Document("OBJECTID", key);
-      DBObject body = (DBObject) JSON.parse(value);
-      toInsert.put(key, body);
-      System.out.println("NEW DOC: " + toInsert.toJson() + "\n");
-      collection.insertOne(toInsert);
+  /* A modified geoInsert to work with geoLoad that loads multiple tables. */
+  public Status geoInsert(String table, String value, ParameterGenerator gen) {
+    return geoInsert(table, Document.parse(value));
+  }
 
-      return Status.OK;
+  /**
+   * Insert a geo document on its own, or through the thread's batch writer of the table if mongodb.geo.batchsize is
+   * above 1.
+   */
+  private Status geoInsert(String table, Document toInsert) {
+    GeoBatchWriter writer = null;
+    try {
+      if (geoBatchSize <= 1) {
+        database.getCollection(table).insertOne(toInsert);
+        return Status.OK;
+      }
+      writer = getGeoWriter(geoInsertWriters, table, geoBatchSize);
+      return writer.add(toInsert) ? Status.OK : Status.BATCHED_OK;
     } catch (Exception e) {
-      System.err.println("Exception while trying bulk insert with "
-          + bulkInserts.size());
+      System.err.println("Exception while trying geo insert"
+          + (writer == null ? "" : " with batch of " + geoBatchSize));
       e.printStackTrace();
       return Status.ERROR;
     }
-
   }
 
-  /* A modified geoInsert to work with geoLoad that loads multiple tables. */
-  public Status geoInsert(String table, String value, ParameterGenerator gen) {
+  /**
+   * Fetch the documents of a geo query, reporting every one with its BSON size to the results of the operation.
+   * @param limit most documents to fetch, 0 for all
+   */
+  private static List<Document> geoFetch(FindIterable<RawBsonDocument> find, int limit, GeoResults results) {
+    if (limit > 0) {
+      // a negative limit returns a single batch and closes the cursor, like first()
+      find.limit(-limit);
+    }
+    List<Document> docs = new ArrayList<Document>(limit > 0 ? limit : 16);
+    MongoCursor<RawBsonDocument> cursor = find.iterator();
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
-//      String value = gen.getGeoPredicate().getValue();
-      System.out.println("Synthesis Offset Column: " + gen.getSynthesisOffsetCols() +
-          "\tSynthesis Offset Row: " + gen.getSynthesisOffsetRows());
-      System.out.println("NEW DOC: " + value + "\n");
-      Document toInsert = Document.parse(value);
-      collection.insertOne(toInsert);
+      while (cursor.hasNext()) {
+        RawBsonDocument raw = cursor.next();
+        results.row(raw.getByteBuffer().remaining());
+        docs.add(raw.decode(DOCUMENT_CODEC));
+      }
+    } finally {
+      cursor.close();
+    }
+    return docs;
+  }
 
-      return Status.OK;
-    } catch (Exception e) {
-      System.err.println("Exception while trying bulk insert with "
-          + bulkInserts.size());
-      e.printStackTrace();
-      return Status.ERROR;
+  private GeoQueryTemplate getGeoQuery(String table, ParameterGenerator gen) {
+    GeoQueryTemplate query = geoQueries.get(table);
+    if (query == null) {
+      query = new GeoQueryTemplate(database.getCollection(table), gen.getAllGeoFields().get(table));
+      geoQueries.put(table, query);
+    }
+    return query;
+  }
+
+  private GeoBatchWriter getGeoWriter(Map<String, GeoBatchWriter> writers, String table, int capacity) {
+    GeoBatchWriter writer = writers.get(table);
+    if (writer == null) {
+      writer = new GeoBatchWriter(database.getCollection(table), capacity, geoFlushInterval);
+      writers.put(table, writer);
+    }
+    return writer;
+  }
+
+  /**
+   * Write what is left in the thread's geo batch writers.
+   * @return false if a write failed
+   */
+  private boolean flushGeoWriters() {
+    boolean ok = true;
+    List<GeoBatchWriter> writers = new ArrayList<GeoBatchWriter>(geoLoadWriters.values());
+    writers.addAll(geoInsertWriters.values());
+    for (GeoBatchWriter writer : writers) {
+      try {
+        writer.flush();
+      } catch (Exception e) {
+        System.err.println("Could not flush geo batch: " + e.toString());
+        ok = false;
+      }
     }
+    return ok;
   }
   
   // *********************  GEO Update ********************************
@@ -686,14 +776,11 @@ public class MongoDbClient extends GeoDB {
   public Status geoUpdate(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
     try {
       MongoCollection<Document> collection = database.getCollection(table);
-      Random rand = new Random();
+      Random rand = GeoRandom.current();
       int key = rand.nextInt((Integer.parseInt(GeoWorkload.TOTAL_DOCS_DEFAULT) -
           Integer.parseInt(GeoWorkload.DOCS_START_VALUE)) + 1)+Integer.parseInt(GeoWorkload.DOCS_START_VALUE);
       String updateFieldName = gen.getGeoPredicate().getNestedPredicateA().getName();
-      JSONObject updateFieldValue = gen.getGeoPredicate().getNestedPredicateA().getValueA();
-
-      HashMap<String, Object> updateFields = new ObjectMapper().readValue(updateFieldValue.toString(), HashMap.class);
-      Document refPoint = new Document(updateFields);
+      Document refPoint = geoJson(gen.getGeoPredicate().getNestedPredicateA().getGeometry());
       Document query = new Document().append("properties.OBJECTID", key);
       Document fieldsToSet = new Document();
 
@@ -717,25 +804,15 @@ public class MongoDbClient extends GeoDB {
   @Override
   public Status geoNear(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
-      String nearFieldName = gen.getGeoPredicate().getNestedPredicateA().getName();
-      JSONObject nearFieldValue = gen.getGeoPredicate().getNestedPredicateA().getValueA();
-
-      HashMap<String, Object> nearFields = new ObjectMapper().readValue(nearFieldValue.toString(), HashMap.class);
-      Document refPoint = new Document(nearFields);
-     // Document query = new Document("properties.OBJECTID", key);
-
-      //FindIterable<Document> findIterable = collection.find(query);
+      GeoQueryTemplate query = getGeoQuery(table, gen);
+      DataFilter center = gen.getGeoPredicate().getNestedPredicateA();
 
-      FindIterable<Document> findIterable = collection.find(Filters.near(
-          nearFieldName, refPoint, 1000.0, 0.0));
-      Document projection = new Document();
-      for (String field : gen.getAllGeoFields().get(table)) {
-        projection.put(field, INCLUDE);
-      }
-      findIterable.projection(projection);
+      FindIterable<RawBsonDocument> findIterable = query.rawCollection().find(query.near(
+          center.getName(), center.getGeometry(), center.getDistance(), 0.0));
+      findIterable.projection(query.projection());
 
-      Document queryResult = findIterable.first();
+      List<Document> docs = geoFetch(findIterable, geoRowLimit, GeoResults.current());
+      Document queryResult = docs.isEmpty() ? null : docs.get(0);
 
       if (queryResult != null) {
         geoFillMap(result, queryResult);
@@ -753,39 +830,17 @@ public class MongoDbClient extends GeoDB {
   @Override
   public Status geoBox(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      GeoQueryTemplate query = getGeoQuery(table, gen);
       String boxFieldName1 = gen.getGeoPredicate().getNestedPredicateA().getName();
-      JSONObject boxFieldValue1 = gen.getGeoPredicate().getNestedPredicateA().getValueA();
-      JSONObject boxFieldValue2 = gen.getGeoPredicate().getNestedPredicateB().getValueA();
-
-      HashMap<String, Object> boxFields = new ObjectMapper().readValue(boxFieldValue1.toString(), HashMap.class);
-      Document refPoint = new Document();
-      refPoint.putAll(boxFields);
-      HashMap<String, Object> boxFields1 = new ObjectMapper().readValue(boxFieldValue2.toString(), HashMap.class);
-      Document refPoint2 = new Document();
-      refPoint2.putAll(boxFields1);
-      ArrayList coords1 = ((ArrayList) refPoint.get("coordinates"));
-      List<Double> rp = new ArrayList<>();
-      for(Object element: coords1) {
-        rp.add((Double) element);
-      }
-      ArrayList coords2 = ((ArrayList) refPoint2.get("coordinates"));
-      for(Object element: coords2) {
-        rp.add((Double) element);
-      }
-      // Document query = new Document("properties.OBJECTID", key);
-
-      //FindIterable<Document> findIterable = collection.find(query);
+      Geometry corner1 = gen.getGeoPredicate().getNestedPredicateA().getGeometry();
+      Geometry corner2 = gen.getGeoPredicate().getNestedPredicateB().getGeometry();
 
-      FindIterable<Document> findIterable = collection.find(
-          Filters.geoWithinBox(boxFieldName1, rp.get(0), rp.get(1), rp.get(2), rp.get(3)));
-      Document projection = new Document();
-      for (String field : gen.getAllGeoFields().get(table)) {
-        projection.put(field, INCLUDE);
-      }
-      findIterable.projection(projection);
+      FindIterable<RawBsonDocument> findIterable = query.rawCollection().find(query.withinBox(boxFieldName1,
+          corner1.getX(0, 0), corner1.getY(0, 0), corner2.getX(0, 0), corner2.getY(0, 0)));
+      findIterable.projection(query.projection());
 
-      Document queryResult = findIterable.first();
+      List<Document> docs = geoFetch(findIterable, geoRowLimit, GeoResults.current());
+      Document queryResult = docs.isEmpty() ? null : docs.get(0);
 
       if (queryResult != null) {
         geoFillMap(result, queryResult);
@@ -802,22 +857,15 @@ public class MongoDbClient extends GeoDB {
   @Override
   public Status geoIntersect(String table, HashMap<String, ByteIterator> result, ParameterGenerator gen) {
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      GeoQueryTemplate query = getGeoQuery(table, gen);
       String fieldName1 = gen.getGeoPredicate().getNestedPredicateA().getName();
-      JSONObject intersectFieldValue2 = gen.getGeoPredicate().getNestedPredicateC().getValueA();
-
-      HashMap<String, Object> intersectFields = new ObjectMapper()
-          .readValue(intersectFieldValue2.toString(), HashMap.class);
-      Document refPoint = new Document(intersectFields);
-      FindIterable<Document> findIterable = collection.find(
-          Filters.geoIntersects(fieldName1, refPoint));
-      Document projection = new Document();
-      for (String field : gen.getAllGeoFields().get(table)) {
-        projection.put(field, INCLUDE);
-      }
-      findIterable.projection(projection);
+      Geometry refPoint = gen.getGeoPredicate().getNestedPredicateC().getGeometry();
+      FindIterable<RawBsonDocument> findIterable = query.rawCollection().find(
+          query.intersects(fieldName1, refPoint));
+      findIterable.projection(query.projection());
 
-      Document queryResult = findIterable.first();
+      List<Document> docs = geoFetch(findIterable, geoRowLimit, GeoResults.current());
+      Document queryResult = docs.isEmpty() ? null : docs.get(0);
 
       if (queryResult != null) {
         geoFillMap(result, queryResult);
@@ -834,21 +882,17 @@ public class MongoDbClient extends GeoDB {
   public Status geoScan(String table, final Vector<HashMap<String, ByteIterator>> result, ParameterGenerator gen) {
     String startkey = gen.getIncidentIdWithDistribution();
     int recordcount = gen.getRandomLimit();
-    MongoCursor<Document> cursor = null;
+    GeoResults results = GeoResults.current();
+    MongoCursor<RawBsonDocument> cursor = null;
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      GeoQueryTemplate geoQuery = getGeoQuery(table, gen);
 
       Document scanRange = new Document("$gte", startkey);
       Document query = new Document("OBJECTID", scanRange);
 
-      FindIterable<Document> findIterable =
-          collection.find(query).limit(recordcount);
-
-      Document projection = new Document();
-      for (String field : gen.getAllGeoFields().get(table)) {
-        projection.put(field, INCLUDE);
-      }
-      findIterable.projection(projection);
+      FindIterable<RawBsonDocument> findIterable =
+          geoQuery.rawCollection().find(query).limit(recordcount);
+      findIterable.projection(geoQuery.projection());
 
       cursor = findIterable.iterator();
 
@@ -863,8 +907,9 @@ public class MongoDbClient extends GeoDB {
         HashMap<String, ByteIterator> resultMap =
             new HashMap<String, ByteIterator>();
 
-        Document obj = cursor.next();
-        geoFillMap(resultMap, obj);
+        RawBsonDocument raw = cursor.next();
+        results.row(raw.getByteBuffer().remaining());
+        geoFillMap(resultMap, raw.decode(DOCUMENT_CODEC));
         result.add(resultMap);
       }
       return Status.OK;
@@ -882,7 +927,8 @@ public class MongoDbClient extends GeoDB {
   public Status geoUseCase1(String table, 
       final HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator gen) {
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      final MongoCollection<RawBsonDocument> collection = getGeoQuery(table, gen).rawCollection();
+      final GeoResults results = GeoResults.current();
 //      MongoCursor<Document> cursor = null;
 
       /* ARTIFICIAL USE CASE */
@@ -952,63 +998,35 @@ public class MongoDbClient extends GeoDB {
 
       /* END ARTIFICIAL USE CASE */
       
-      int maxGraffitiCount = Integer.MIN_VALUE;
       String maxGraffitiSchool = "";
       Vector<HashMap<String, ByteIterator>> maxGraffiti = new Vector<>();
       ArrayList<DataFilter> schools = gen.getGeometryPredicatesList();
-      // Perform near query on incidents for all school documents
-      for(int i = 0; i < schools.size(); i++) {
-        DataFilter school = schools.get(i);
-        System.out.println("i = " + i + " " + school.getName() + 
-            ": " + school.getNestedPredicateA().getValueA().toString());
-
-        String nearFieldName = school.getNestedPredicateA().getName();
-        HashMap<String, Object> nearFields = new ObjectMapper().readValue(
-            school.getNestedPredicateA().getValueA().toString(), HashMap.class);
-        Document refPoint = new Document(nearFields);
-        
-        // Query
-        FindIterable<Document> findIterable = collection.find(Filters.near(
-            nearFieldName, refPoint, 500.0, 0.0)).batchSize(2000);
-        
-        // Get all query result's document fields
-        Document projection = new Document();
-        for (String field : gen.getAllGeoFields().get(table)) {
-          projection.put(field, INCLUDE);
-        }
-        findIterable.projection(projection);
-        
-        // Add to results
-        Document d = findIterable.first();
-//        ArrayList<Document> graffitiList = findIterable.into(new ArrayList<Document>());
-////        cursor = findIterable.iterator();      
-  
-//        // If there is graffiti, add the results under the school's name
-        if (d != null) {
+
+      // Get all query result's document fields
+      final Bson projection = getGeoQuery(table, gen).projection();
+
+      // Perform near query on incidents for all school documents, fanned out over the shared pool
+      List<Callable<List<Document>>> queries = new ArrayList<Callable<List<Document>>>(schools.size());
+      for (final DataFilter school : schools) {
+        queries.add(new Callable<List<Document>>() {
+          @Override
+          public List<Document> call() {
+            String nearFieldName = school.getNestedPredicateA().getName();
+            Document refPoint = geoJson(school.getNestedPredicateA().getGeometry());
+            return geoFetch(collection.find(Filters.near(nearFieldName, refPoint, 500.0, 0.0))
+                .batchSize(2000).projection(projection), geoRowLimit, results);
+          }
+        });
+      }
+
+      // Add to results
+      for (List<Document> docs : GeoFanOut.getShared(getProperties())
+          .invokeAll(queries, "GEO_CASE_GRAFFITI_BY_SCHOOLS_QUERY")) {
+        for (Document d : docs) {
           HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
           geoFillMap(resultMap, d);
           maxGraffiti.add(resultMap);
         }
-        
-//        Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
-////        while (cursor.hasNext()) {
-//        for(Document d : graffitiList) {
-//          HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
-//
-////          Document obj = cursor.next();
-////          geoFillMap(resultMap, obj);
-//          geoFillMap(resultMap, d);
-//          graffitiResults.add(resultMap);
-//        }
-//        if(graffitiResults.size() > maxGraffitiCount) {
-//          maxGraffitiSchool = school.getName() + school.getNestedPredicateA().getValueA().toString();
-//          maxGraffiti = graffitiResults;
-//          maxGraffitiCount = maxGraffiti.size();
-//
-//          System.out.println(maxGraffitiSchool + " graffiti count: " + maxGraffiti.size());
-//        } else {
-//          System.out.println("PASS...");
-//        }
       }
 ////      
 ////      if(maxGraffiti == null) {
@@ -1026,49 +1044,148 @@ public class MongoDbClient extends GeoDB {
   //*********************  GEO USE CASE 2 ********************************
   public Status geoUseCase2(String table, 
       final HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator gen) {
-    MongoCursor<Document> cursor = null;
+    if (case2Execution.equals("scan") || case2Execution.equals("bucket")) {
+      return geoUseCase2Binned(table, result, gen);
+    }
+    final boolean case2Aggregate = case2Execution.equals("aggregate");
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      final MongoCollection<Document> collection = database.getCollection(table);
+      final MongoCollection<RawBsonDocument> rawCollection = getGeoQuery(table, gen).rawCollection();
+      final GeoResults results = GeoResults.current();
+      GeoResultSink sink = GeoResultSink.get();
+
+      // Get all query result's document fields
+      final Bson projection = getGeoQuery(table, gen).projection();
 
       ArrayList<DataFilter> neighborhoods = gen.getGeometryPredicatesList();
       // Loop through grid of city
-      for(int i = 0; i < neighborhoods.size(); i++) {
-        DataFilter cell = neighborhoods.get(i);
-        JSONObject intersectFieldValue = cell.getValueA();
-        HashMap<String, Object> intersectFields = new ObjectMapper()
-            .readValue(intersectFieldValue.toString(), HashMap.class);
-        Document refPoint = new Document(intersectFields);
-        
-        // Query
-        FindIterable<Document> findIterable = collection.find(
-            Filters.geoWithin("geometry", refPoint)).batchSize(2000);
+      List<Callable<Vector<HashMap<String, ByteIterator>>>> queries =
+          new ArrayList<Callable<Vector<HashMap<String, ByteIterator>>>>(neighborhoods.size());
+      for (final DataFilter cell : neighborhoods) {
+        queries.add(new Callable<Vector<HashMap<String, ByteIterator>>>() {
+          @Override
+          public Vector<HashMap<String, ByteIterator>> call() {
+            Bson within = Filters.geoWithin("geometry", geoJson(cell.getGeometry()));
+            Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
+            if (case2Aggregate) {
+              // Count the graffiti of the cell on the server
+              Document count = collection.aggregate(Arrays.asList(Aggregates.match(within),
+                  Aggregates.group(null, Accumulators.sum("count", 1)))).first();
+              HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
+              resultMap.put("count", new StringByteIterator(
+                  String.valueOf(count == null ? 0 : ((Number) count.get("count")).intValue())));
+              graffitiResults.add(resultMap);
+              return graffitiResults;
+            }
 
-        // Get all query result's document fields
-        Document projection = new Document();
-        for (String field : gen.getAllGeoFields().get(table)) {
-          projection.put(field, INCLUDE);
+            // Query
+            List<Document> docs = geoFetch(rawCollection.find(within).batchSize(2000).projection(projection),
+                geoRowLimit, results);
+
+            // If there is graffiti, add the results under the cell's locations
+            for (Document d : docs) {
+              HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
+              geoFillMap(resultMap, d);
+              graffitiResults.add(resultMap);
+            }
+            return graffitiResults;
+          }
+        });
+      }
+
+      List<Vector<HashMap<String, ByteIterator>>> cellResults = GeoFanOut.getShared(getProperties())
+          .invokeAll(queries, "GEO_CASE_GRAFFITI_BY_DENSITY_QUERY");
+      for (int i = 0; i < neighborhoods.size(); i++) {
+        Geometry intersectFieldValue = neighborhoods.get(i).getGeometry();
+        Vector<HashMap<String, ByteIterator>> graffitiResults = cellResults.get(i);
+        result.put(intersectFieldValue.toString(), graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_DENSITY/count", intersectFieldValue, case2Aggregate
+              ? graffitiResults.get(0).get("count").toString() : String.valueOf(graffitiResults.size()));
         }
-        findIterable.projection(projection);
+      }
+      return Status.OK;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Status.ERROR;
+    }
+  }
+  
+  /**
+   * Use case 2 in one pass over the graffiti instead of one query per cell. Cells are found arithmetically from the
+   * point coordinates, either while streaming only the geometry of every graffiti document to the client ("scan") or
+   * by a $group on the computed cell id on the server ("bucket"). The result holds the same per cell counts as the
+   * "aggregate" execution, for every cell of the grid.
+   */
+  private Status geoUseCase2Binned(String table,
+      final HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator gen) {
+    try {
+      MongoCollection<Document> collection = database.getCollection(table);
+      List<DataFilter> grid = gen.getGridPredicates();
+      int[] counts = new int[grid.size()];
+      GeoResultSink sink = GeoResultSink.get();
+
+      if (case2Execution.equals("scan")) {
+        MongoCursor<Document> cursor = collection.find()
+            .projection(new Document("geometry", INCLUDE).append("_id", 0)).batchSize(10000).iterator();
+        try {
+          while (cursor.hasNext()) {
+            Document geometry = (Document) cursor.next().get("geometry");
+            if (geometry == null || !Geometry.TYPE_POINT.equals(geometry.get("type"))) {
+              continue;
+            }
+            List<?> coordinates = (List<?>) geometry.get("coordinates");
+            int cell = gen.getGridCell(((Number) coordinates.get(0)).doubleValue(),
+                ((Number) coordinates.get(1)).doubleValue());
+            if (cell >= 0) {
+              counts[cell]++;
+            }
+          }
+        } finally {
+          cursor.close();
+        }
+      } else {
+        // cell = floor((lat - LAT_MIN) * rows / LAT_OFFSET) * cols + floor((long - LONG_MIN) * cols / LONG_OFFSET)
+        Document x = new Document("$arrayElemAt", Arrays.asList("$geometry.coordinates", 0));
+        Document y = new Document("$arrayElemAt", Arrays.asList("$geometry.coordinates", 1));
+        Document col = new Document("$floor", new Document("$multiply", Arrays.asList(
+            new Document("$subtract", Arrays.asList(x, GeoWorkload.LONG_MIN)),
+            gen.getGridColumns() / GeoWorkload.LONG_OFFSET)));
+        Document row = new Document("$floor", new Document("$multiply", Arrays.asList(
+            new Document("$subtract", Arrays.asList(y, GeoWorkload.LAT_MIN)),
+            gen.getGridRows() / GeoWorkload.LAT_OFFSET)));
+        Bson inGrid = Filters.and(Filters.eq("geometry.type", Geometry.TYPE_POINT),
+            Filters.gte("geometry.coordinates.0", GeoWorkload.LONG_MIN),
+            Filters.lt("geometry.coordinates.0", GeoWorkload.LONG_MIN + GeoWorkload.LONG_OFFSET),
+            Filters.gte("geometry.coordinates.1", GeoWorkload.LAT_MIN),
+            Filters.lt("geometry.coordinates.1", GeoWorkload.LAT_MIN + GeoWorkload.LAT_OFFSET));
+        Document cellId = new Document("$add", Arrays.asList(
+            new Document("$multiply", Arrays.asList(row, gen.getGridColumns())), col));
+        MongoCursor<Document> cursor = collection.aggregate(Arrays.asList(Aggregates.match(inGrid),
+            Aggregates.group(cellId, Accumulators.sum("count", 1)))).iterator();
+        try {
+          while (cursor.hasNext()) {
+            Document bucket = cursor.next();
+            int cell = ((Number) bucket.get("_id")).intValue();
+            if (cell >= 0 && cell < counts.length) {
+              counts[cell] += ((Number) bucket.get("count")).intValue();
+            }
+          }
+        } finally {
+          cursor.close();
+        }
+      }
 
-        // Add to result
-        Document d = findIterable.first();
-//        ArrayList<Document> graffitiList = findIterable.into(new ArrayList<Document>());
-        
-        // If there is graffiti, add the results under the cell's locations
+      for (int i = 0; i < counts.length; i++) {
+        HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
+        resultMap.put("count", new StringByteIterator(String.valueOf(counts[i])));
         Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
-        if (d != null) {
-          HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
-          geoFillMap(resultMap, d);
-          graffitiResults.add(resultMap);
+        graffitiResults.add(resultMap);
+        String key = grid.get(i).getGeometry().toString();
+        result.put(key, graffitiResults);
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_DENSITY/count", key, counts[i]);
         }
-//        Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
-//        for(Document d : graffitiList) {
-//          HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
-//          geoFillMap(resultMap, d);
-//          graffitiResults.add(resultMap);
-//        }
-        result.put(intersectFieldValue.toString(), graffitiResults);
-        System.out.println(intersectFieldValue.toString() + ": COUNT = " + graffitiResults.size());
       }
       return Status.OK;
     } catch (Exception e) {
@@ -1081,88 +1198,93 @@ public class MongoDbClient extends GeoDB {
   public Status geoUseCase3(String table1, String table2, 
       final HashMap<String, Vector<HashMap<String, ByteIterator>>> result, ParameterGenerator gen) {    
     try {
+      GeoResultSink sink = GeoResultSink.get();
       // Get density of BUILDINGS in grid cells (sum of areas)
-      MongoCollection<Document> collection = database.getCollection(table1);
-      MongoCursor<Document> cursor = null;
-      
-      // Contains densities per grid cell
-      HashMap<JSONObject, Double> densities = new HashMap<>();
+      final MongoCollection<Document> buildings = database.getCollection(table1);
+      final String shapeArea = gen.getBuildingsShapeArea();
       
+      // Project
+      final Bson buildingsProjection = getGeoQuery(table1, gen).projection();
+
       // Loop through grid of city
-      for(DataFilter cell : gen.getGeometryPredicatesList()) {
-        String fieldName = cell.getName();
-        JSONObject intersectFieldValue = cell.getValueA();
-        HashMap<String, Object> intersectFields = new ObjectMapper()
-            .readValue(intersectFieldValue.toString(), HashMap.class);
-        Document refPoint = new Document(intersectFields);
-        
-        // Query
-        FindIterable<Document> findIterable = collection.find(
-            Filters.geoIntersects(fieldName, refPoint)).batchSize(2000);
-        
-        // Project
-        Document projection = new Document();
-        for (String field : gen.getAllGeoFields().get(table1)) {
-          projection.put(field, INCLUDE);
-        }
-        findIterable.projection(projection);
-        
-        // Add to result
-        ArrayList<Document> buildingList = findIterable.into(new ArrayList<Document>());
-        
-        // Key of the grid cell = intersectFieldValue
-        // If no buildings in the cell, put value to 0
-        if(buildingList.size() == 0) {
-          densities.put(intersectFieldValue, 0.0);
-          continue;
-        }
-        // If there are buildings, sum their areas
-        double density = 0;
-        for(Document d : buildingList) {
-          JSONObject jobj = new JSONObject(d.toJson());
-          Double area = ((JSONObject) jobj.get("properties")).getDouble(gen.getBuildingsShapeArea());
-          density += area;
-        }
+      ArrayList<DataFilter> cells = gen.getGeometryPredicatesList();
+      List<Callable<Double>> queries = new ArrayList<Callable<Double>>(cells.size());
+      for (final DataFilter cell : cells) {
+        queries.add(new Callable<Double>() {
+          @Override
+          public Double call() {
+            Bson intersects = Filters.geoIntersects(cell.getName(), geoJson(cell.getGeometry()));
+            if (case3Aggregate) {
+              // Sum the building areas of the cell on the server
+              Document sum = buildings.aggregate(Arrays.asList(Aggregates.match(intersects),
+                  Aggregates.group(null, Accumulators.sum("density", "$properties." + shapeArea)))).first();
+              return sum == null ? 0.0 : ((Number) sum.get("density")).doubleValue();
+            }
+
+            // Query, add to result
+            ArrayList<Document> buildingList = buildings.find(intersects).batchSize(2000)
+                .projection(buildingsProjection).into(new ArrayList<Document>());
+
+            // If there are buildings, sum their areas; if not, the density is 0
+            double density = 0;
+            for(Document d : buildingList) {
+              Document properties = (Document) d.get("properties");
+              density += ((Number) properties.get(shapeArea)).doubleValue();
+            }
+            return density;
+          }
+        });
+      }
+
+      // Contains densities per grid cell, key of the grid cell = its geometry
+      HashMap<Geometry, Double> densities = new HashMap<>();
+      long phaseStart = CASE3_DENSITY.start();
+      List<Double> cellDensities = GeoFanOut.getShared(getProperties())
+          .invokeAll(queries, "GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC_QUERY");
+      CASE3_DENSITY.end(phaseStart);
+      for (int i = 0; i < cells.size(); i++) {
+        Geometry intersectFieldValue = cells.get(i).getGeometry();
+        double density = cellDensities.get(i);
         densities.put(intersectFieldValue, density);
-        System.out.println("Cell: " + intersectFieldValue.toString() + " Density: " + density);
+        if (density > 0) {
+          if (sink.isSampled()) {
+            sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/density", intersectFieldValue, density);
+          }
+        }
       }
       
       // Sort densities by value in descending order --> take the top HIGH_TRAFFIC_CELL_COUNT
-      ArrayList<Entry<JSONObject, Double>> sortedDensities = new ArrayList<>(densities.entrySet());
-      Collections.sort(sortedDensities, Collections.reverseOrder(new Comparator<Entry<JSONObject, Double>>() {
+      phaseStart = CASE3_SORT.start();
+      ArrayList<Entry<Geometry, Double>> sortedDensities = new ArrayList<>(densities.entrySet());
+      Collections.sort(sortedDensities, Collections.reverseOrder(new Comparator<Entry<Geometry, Double>>() {
         @Override
-        public int compare(Entry<JSONObject, Double> o1, Entry<JSONObject, Double> o2) {
+        public int compare(Entry<Geometry, Double> o1, Entry<Geometry, Double> o2) {
           return o1.getValue().compareTo(o2.getValue());
         }
       }));
       
+      CASE3_SORT.end(phaseStart);
+      
       // Find graffiti in the top HIGH_TRAFFIC_CELL_COUNT cells
-      collection = database.getCollection(table2);
-      cursor = null;
+      phaseStart = CASE3_GRAFFITI.start();
+      GeoQueryTemplate graffitiQuery = getGeoQuery(table2, gen);
       for(int i = 0; i < GeoWorkload.TOP_CELL_COUNT; i++) {
-        String intersectFieldValue = sortedDensities.get(i).getKey().toString();
-        HashMap<String, Object> intersectFields = new ObjectMapper()
-            .readValue(intersectFieldValue, HashMap.class);
-        Document refPoint = new Document(intersectFields);
+        Geometry intersectFieldValue = sortedDensities.get(i).getKey();
         
         // Query
-        FindIterable<Document> findIterable = collection.find(
-            Filters.geoIntersects("geometry", refPoint)).batchSize(2000);
+        FindIterable<RawBsonDocument> findIterable = graffitiQuery.rawCollection().find(
+            graffitiQuery.intersects("geometry", intersectFieldValue)).batchSize(2000);
         
         // Project
-        Document projection = new Document();
-        for (String field : gen.getAllGeoFields().get(table2)) {
-          projection.put(field, INCLUDE);
-        }
-        findIterable.projection(projection);
+        findIterable.projection(graffitiQuery.projection());
         
         // Add to result
-        Document d = findIterable.first();
+        List<Document> docs = geoFetch(findIterable, geoRowLimit, GeoResults.current());
 //      ArrayList<Document> graffitiList = findIterable.into(new ArrayList<Document>());
       
         // If there is graffiti, add the result under the cell's locations
         Vector<HashMap<String, ByteIterator>> graffitiResults = new Vector<>();
-        if (d != null) {
+        for (Document d : docs) {
           HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
           geoFillMap(resultMap, d);
           graffitiResults.add(resultMap);
@@ -1181,8 +1303,11 @@ public class MongoDbClient extends GeoDB {
 //          graffitiResults.add(resultMap);
 //        }
         result.put(intersectFieldValue.toString(), graffitiResults);
-        System.out.println("Cell: " + intersectFieldValue.toString() + " Graffiti count: " + graffitiResults.size());
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_GRAFFITI_BY_HIGH_TRAFFIC/graffiti", intersectFieldValue, graffitiResults.size());
+        }
       }
+      CASE3_GRAFFITI.end(phaseStart);
       return Status.OK;
     } catch (Exception e) {
       e.printStackTrace();
@@ -1190,12 +1315,49 @@ public class MongoDbClient extends GeoDB {
     }
   }
   
+  private static final Geometry.Renderer<Document> GEO_JSON = new Geometry.Renderer<Document>() {
+    @Override
+    public Document render(Geometry geometry) {
+      return toGeoJson(geometry);
+    }
+  };
+
+  /**
+   * @return the GeoJSON document of a predicate geometry, built once per geometry; it must not be modified
+   */
+  static Document geoJson(Geometry geometry) {
+    return geometry.render(GEO_JSON);
+  }
+
+  /**
+   * Builds the GeoJSON document of a predicate geometry straight from its coordinates.
+   */
+  private static Document toGeoJson(Geometry geometry) {
+    Object coordinates;
+    if (geometry instanceof Geometry.Point) {
+      coordinates = Arrays.asList(geometry.getX(0, 0), geometry.getY(0, 0));
+    } else {
+      List<List<List<Double>>> parts = new ArrayList<>(geometry.getPartCount());
+      for (int i = 0; i < geometry.getPartCount(); i++) {
+        List<List<Double>> part = new ArrayList<>(geometry.getPositionCount(i));
+        for (int j = 0; j < geometry.getPositionCount(i); j++) {
+          part.add(Arrays.asList(geometry.getX(i, j), geometry.getY(i, j)));
+        }
+        parts.add(part);
+      }
+      coordinates = parts;
+    }
+    return new Document("type", geometry.getType()).append("coordinates", coordinates);
+  }
+
   //*********************  GEO USE CASE 4 ********************************
   public Status geoUseCase4(String table, String operation, Set<Integer> deleted, ParameterGenerator gen) {
     HashMap<String, Vector<HashMap<String, ByteIterator>>> toDelete = new HashMap<>();
+    GeoResultSink sink = GeoResultSink.get();
     try {
       Status queryStatus = null;
       // Based on the operation, clean all the graffiti resulting from that search
+      long phaseStart = CASE4_SELECT.start();
       switch(operation) {
       case "geo_case_graffiti_by_schools":
         queryStatus = geoUseCase1(table, toDelete, gen);
@@ -1203,6 +1365,7 @@ public class MongoDbClient extends GeoDB {
       default:
         return Status.ERROR;
       }
+      CASE4_SELECT.end(phaseStart);
       
       if(queryStatus == Status.ERROR) {
         return Status.ERROR;
@@ -1212,17 +1375,22 @@ public class MongoDbClient extends GeoDB {
       
       int counter = 0;
       // deletes query result
+      phaseStart = CASE4_DELETE.start();
       for(String key : toDelete.keySet()) {
-        System.out.println("Graffiti in " + key + ": " + toDelete.get(key).size());
+        if (sink.isSampled()) {
+          sink.log("GEO_CASE_CLEAN_GRAFFITI/select", key, toDelete.get(key).size());
+        }
         for(HashMap<String, ByteIterator> doc : toDelete.get(key)) {
-          System.out.println(doc.get("_id").toString());
           //delete
           BasicDBObject delete = new BasicDBObject();
           delete.put("_id", new ObjectId(doc.get("_id").toString()));
           counter += collection.deleteOne(delete).getDeletedCount();
         }
       }
-      System.out.println("\tDeleted: " + counter);
+      CASE4_DELETE.end(phaseStart);
+      if (sink.isSampled()) {
+        sink.log("GEO_CASE_CLEAN_GRAFFITI/delete", null, counter);
+      }
       
       // deletes hardcoded values
 //      for(ObjectId id : toDelete) { 
@@ -1289,6 +1457,24 @@ public class MongoDbClient extends GeoDB {
       // Set insert batchsize, default 1 - to be YCSB-original equivalent
       batchSize = Integer.parseInt(props.getProperty("batchsize", "1"));
 
+      // Set the batch size of the synthesized geo load
+      geoLoadBatchSize = Integer.parseInt(props.getProperty("mongodb.geo.loadbatchsize", "1000"));
+
+      // Set the batch size and flush interval of geo inserts
+      geoBatchSize = Integer.parseInt(props.getProperty("mongodb.geo.batchsize", "1"));
+      geoFlushInterval = Long.parseLong(props.getProperty("mongodb.geo.flushinterval", "1000"));
+
+      // Set where the density use cases do their per cell work: "client" or "aggregate"
+      case2Execution = getExecution(props, "mongodb.geo.case2execution", "client", "aggregate", "scan", "bucket");
+      case3Aggregate = getExecution(props, "mongodb.geo.case3execution", "client", "aggregate").equals("aggregate");
+
+      // Set how many documents of every geo query are fetched: geo_result_mode first, limit or drain
+      try {
+        geoRowLimit = GeoResults.getRowLimit(props);
+      } catch (IllegalArgumentException e) {
+        throw new DBException(e.getMessage());
+      }
+
       // Set is inserts are done as upserts. Defaults to false.
       useUpsert = Boolean.parseBoolean(
           props.getProperty("mongodb.upsert", "false"));
@@ -1346,6 +1532,15 @@ public class MongoDbClient extends GeoDB {
     }
   }
 
+  private static String getExecution(Properties props, String property, String... allowed) throws DBException {
+    String execution = props.getProperty(property, allowed[0]);
+    if (!Arrays.asList(allowed).contains(execution)) {
+      throw new DBException("Unknown " + property + " \"" + execution + "\", use one of "
+          + Arrays.toString(allowed));
+    }
+    return execution;
+  }
+
   /**
    * Insert a record in the database. Any field/value pairs in the specified
    * values HashMap will be written into the record with the specified record
@@ -1581,7 +1776,7 @@ public class MongoDbClient extends GeoDB {
   }
 
 
-  protected void geoFillMap(Map<String, ByteIterator> resultMap, Document obj) {
+  protected static void geoFillMap(Map<String, ByteIterator> resultMap, Document obj) {
     for (Map.Entry<String, Object> entry : obj.entrySet()) {
       String value = "null";
       if (entry.getValue() != null) {
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2012 - 2015 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Test;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.model.Filters;
+import com.yahoo.ycsb.workloads.geo.Geometry;
+
+/**
+ * Checks that the prepared geo queries match the filters of the driver
+ * builders, also after their coordinates have been overwritten.
+ */
+public class GeoQueryTemplateTest {
+
+  private static BsonDocument render(Bson filter) {
+    return filter.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry());
+  }
+
+  private static GeoQueryTemplate template() {
+    return new GeoQueryTemplate(null, new LinkedHashSet<String>(Arrays.asList("properties", "geometry")));
+  }
+
+  @Test
+  public void testProjection() {
+    assertEquals(render(new Document("properties", 1).append("geometry", 1)), template().projection());
+  }
+
+  @Test
+  public void testNear() {
+    GeoQueryTemplate template = template();
+    Geometry a = new Geometry.Point(-111.9, 33.4);
+    Geometry b = new Geometry.Point(-111.8, 33.5);
+    BsonDocument first = template.near("geometry", a, 1000.0, 0.0);
+    assertEquals(render(Filters.near("geometry", MongoDbClient.geoJson(a), 1000.0, 0.0)), first);
+    BsonDocument second = template.near("geometry", b, 500.0, 0.0);
+    assertSame(first, second);
+    assertEquals(render(Filters.near("geometry", MongoDbClient.geoJson(b), 500.0, 0.0)), second);
+  }
+
+  @Test
+  public void testWithinBox() {
+    GeoQueryTemplate template = template();
+    template.withinBox("geometry", 0, 0, 1, 1);
+    assertEquals(render(Filters.geoWithinBox("geometry", -111.9, 33.4, -111.8, 33.5)),
+        template.withinBox("geometry", -111.9, 33.4, -111.8, 33.5));
+  }
+
+  @Test
+  public void testIntersectsReshapesGeometry() {
+    GeoQueryTemplate template = template();
+    Geometry square = new Geometry.Polygon(new double[] {0, 0, 1, 0, 1, 1, 0, 1, 0, 0});
+    Geometry triangle = new Geometry.Polygon(new double[] {2, 2, 3, 2, 2, 3, 2, 2});
+    Geometry point = new Geometry.Point(0.5, 0.5);
+    for (Geometry g : Arrays.asList(square, triangle, point, square)) {
+      assertEquals(render(Filters.geoIntersects("geometry", MongoDbClient.geoJson(g))),
+          template.intersects("geometry", g));
+    }
+    assertEquals(render(Filters.geoIntersects("location", MongoDbClient.geoJson(point))),
+        template.intersects("location", point));
+  }
+}